@@ -19,5 +19,15 @@ import org.springframework.http.HttpHeaders;
  */
 public interface RestApiAuthorizationHeaderIf {
 
+  /**
+   * The method returns the headers to be added to the REST API call handing off the report.
+   *
+   * @param data The data of the report being submitted. The PublicHealthMessage and the
+   *     HealthcareSetting are always present. When the report is delivered from the submission
+   *     outbox the NotificationContext and the KAR are restored from the database and may be null
+   *     if they no longer exist, and the resources fetched from the EHR, the action outputs and the
+   *     KarExecutionState of the KAR execution are not available.
+   * @return The headers containing the Authorization header.
+   */
   public HttpHeaders getAuthorizationHeader(KarProcessingData data);
 }
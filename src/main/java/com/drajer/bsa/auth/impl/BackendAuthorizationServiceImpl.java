@@ -5,9 +5,12 @@ import com.drajer.bsa.model.FhirServerDetails;
 import com.drajer.sof.model.Response;
 import com.jayway.jsonpath.JsonPath;
 import io.jsonwebtoken.Jwts;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -15,11 +18,21 @@ import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.util.Date;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.transaction.Transactional;
 import net.minidev.json.JSONArray;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,9 +41,12 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 /**
@@ -40,6 +56,12 @@ import org.springframework.web.client.RestTemplate;
  *
  * This class defines the implementation methods to get authorized with the EHRs.
  *
+ * <p>The signing key is loaded from the keystore once and is reloaded only when the keystore file
+ * changes. The token endpoints discovered from the EHRs are cached for a configurable time, the
+ * token requests use a pooled HTTP client, and the client assertion for the next token request is
+ * signed in the background after each request so that getting a token needs a single round trip to
+ * the EHR.
+ *
  * @author kghoreshi
  */
 @Service("backendauth")
@@ -51,6 +73,12 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
       "http://fhir-registry.smarthealthit.org/StructureDefinition/oauth-uris";
   private static final String WELL_KNOWN = ".well-known/smart-configuration";
 
+  /** The lifetime of a client assertion. */
+  private static final long ASSERTION_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  /** A pre-signed client assertion is only used if it is valid for at least this long. */
+  private static final long MIN_ASSERTION_VALIDITY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
   @Value("${jwks.keystore.location}")
   String jwksLocation;
 
@@ -60,6 +88,104 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
   @Value("${jwks.keystore.alias}")
   String alias;
 
+  @Value("${backend.auth.discovery.cache-ttl-seconds:3600}")
+  Long discoveryCacheTtlSeconds = 3600L;
+
+  @Value("${backend.auth.presign-assertions.enabled:false}")
+  Boolean presignAssertionsEnabled = false;
+
+  @Value("${backend.auth.http.max-connections:20}")
+  Integer maxConnections = 20;
+
+  @Value("${rest.template.connection.timeout:10000}")
+  Integer connectionTimeout = 10000;
+
+  @Value("${rest.template.read.timeout:10000}")
+  Integer readTimeout = 10000;
+
+  /** The pooled client used for the discovery and token requests. */
+  private CloseableHttpClient httpClient;
+
+  private RestTemplate restTemplate;
+
+  /** The executor used to sign the client assertions ahead of need. */
+  private ExecutorService assertionSigner;
+
+  /** The signing key and the keystore file attributes at the time the key was loaded. */
+  private Key signingKey;
+
+  private String signingKeyFileVersion;
+
+  /** The discovered token endpoints, the Key is the EHR base url. */
+  private final Map<String, CachedTokenEndpoint> tokenEndpoints = new ConcurrentHashMap<>();
+
+  /** The pre-signed client assertions, the Key is the client id and the token endpoint. */
+  private final Map<String, SignedAssertion> signedAssertions = new ConcurrentHashMap<>();
+
+  private static class CachedTokenEndpoint {
+
+    private final String endpoint;
+
+    private final long expiresAt;
+
+    private CachedTokenEndpoint(String endpoint, long expiresAt) {
+      this.endpoint = endpoint;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private static class SignedAssertion {
+
+    private final String jwt;
+
+    private final long expiresAt;
+
+    private SignedAssertion(String jwt, long expiresAt) {
+      this.jwt = jwt;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  @PostConstruct
+  public void initialize() {
+
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+    httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+
+    HttpComponentsClientHttpRequestFactory requestFactory =
+        new HttpComponentsClientHttpRequestFactory(httpClient);
+    requestFactory.setConnectTimeout(connectionTimeout);
+    requestFactory.setReadTimeout(readTimeout);
+    restTemplate = new RestTemplate(requestFactory);
+
+    if (Boolean.TRUE.equals(presignAssertionsEnabled)) {
+      assertionSigner =
+          Executors.newSingleThreadExecutor(new CustomizableThreadFactory("BackendAuthSigner-"));
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+
+    if (assertionSigner != null) {
+      assertionSigner.shutdownNow();
+    }
+
+    if (httpClient != null) {
+      try {
+        httpClient.close();
+      } catch (IOException e) {
+        logger.error(" Error closing the backend authorization http client ", e);
+      }
+    }
+  }
+
+  private RestTemplate getRestTemplate() {
+    return restTemplate != null ? restTemplate : new RestTemplate();
+  }
+
   /**
    * @param url base url of ehr
    * @param fsd knowledge artifact data
@@ -67,16 +193,16 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
    * @throws KeyStoreException in case of invalid public/private keys
    */
   public JSONObject connectToServer(String url, FhirServerDetails fsd) throws KeyStoreException {
-    RestTemplate resTemplate = new RestTemplate();
     String tokenEndpoint;
+    boolean discovered = false;
 
     tokenEndpoint = fsd.getTokenUrl();
     if (tokenEndpoint == null || tokenEndpoint.isEmpty()) {
-      tokenEndpoint = getTokenEndpoint(url);
+      tokenEndpoint = getCachedTokenEndpoint(url);
+      discovered = true;
     }
     String clientId = fsd.getClientId();
-    String scopes = fsd.getScopes();
-    String jwt = generateJwt(clientId, tokenEndpoint);
+    String jwt = getClientAssertion(clientId, tokenEndpoint);
 
     HttpHeaders headers = new HttpHeaders();
     headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
@@ -88,7 +214,20 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
     map.add("client_assertion_type", "urn:ietf:params:oauth:client-assertion-type:jwt-bearer");
     map.add("client_assertion", jwt);
     HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(map, headers);
-    ResponseEntity<?> response = resTemplate.postForEntity(tokenEndpoint, request, Response.class);
+
+    ResponseEntity<?> response;
+    try {
+      response = getRestTemplate().postForEntity(tokenEndpoint, request, Response.class);
+    } catch (RestClientException e) {
+      // The EHR may have moved the token endpoint, discover it again on the next request.
+      if (discovered) {
+        tokenEndpoints.remove(url);
+      }
+      throw e;
+    } finally {
+      presignClientAssertion(clientId, tokenEndpoint);
+    }
+
     return new JSONObject(Objects.requireNonNull(response.getBody()));
   }
 
@@ -105,17 +244,42 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
     }
   }
 
+  /**
+   * The method returns the token endpoint of the EHR, the endpoint is discovered from the EHR only
+   * when it is not cached or the cached endpoint has expired.
+   *
+   * @param url base ehr url
+   * @return token endpoint of the ehr
+   */
+  public String getCachedTokenEndpoint(String url) {
+
+    CachedTokenEndpoint cached = tokenEndpoints.get(url);
+
+    if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+      return cached.endpoint;
+    }
+
+    String endpoint = getTokenEndpoint(url);
+    tokenEndpoints.put(
+        url,
+        new CachedTokenEndpoint(
+            endpoint,
+            System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(discoveryCacheTtlSeconds)));
+
+    return endpoint;
+  }
+
   /**
    * @param url base ehr url
    * @return token endpoint from the server's capability statement
    */
   public String getTokenEndpoint(String url) {
-    RestTemplate resTemplate = new RestTemplate();
+    RestTemplate resTemplate = getRestTemplate();
     try {
       ResponseEntity<String> response =
           resTemplate.getForEntity(String.format("%s/%s", url, WELL_KNOWN), String.class);
-      JSONArray result = JsonPath.read(response.getBody(), "$.token_endpoint");
-      return result.get(0).toString();
+      String result = JsonPath.read(response.getBody(), "$.token_endpoint");
+      return Objects.requireNonNull(result);
     } catch (Exception e1) {
       try {
         ResponseEntity<String> response =
@@ -138,6 +302,53 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
     }
   }
 
+  /**
+   * The method returns a pre-signed client assertion when one is available, otherwise a new client
+   * assertion is signed. Each client assertion is used only once.
+   */
+  private String getClientAssertion(String clientId, String aud) throws KeyStoreException {
+
+    SignedAssertion assertion = signedAssertions.remove(getAssertionKey(clientId, aud));
+
+    if (assertion != null
+        && assertion.expiresAt - System.currentTimeMillis() >= MIN_ASSERTION_VALIDITY_MILLIS) {
+      logger.debug(" Using pre-signed client assertion for client {}", clientId);
+      return assertion.jwt;
+    }
+
+    return generateJwt(clientId, aud);
+  }
+
+  /** Signs the client assertion for the next token request of the client in the background. */
+  private void presignClientAssertion(String clientId, String aud) {
+
+    if (assertionSigner == null) {
+      return;
+    }
+
+    try {
+      assertionSigner.execute(
+          () -> {
+            try {
+              long expiresAt = System.currentTimeMillis() + ASSERTION_LIFETIME_MILLIS;
+              String jwt = generateJwt(clientId, aud, expiresAt);
+              if (jwt != null) {
+                signedAssertions.put(
+                    getAssertionKey(clientId, aud), new SignedAssertion(jwt, expiresAt));
+              }
+            } catch (Exception e) {
+              logger.error(" Error in pre-signing the client assertion for client {}", clientId, e);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      logger.debug(" Client assertion signer is shut down ");
+    }
+  }
+
+  private static String getAssertionKey(String clientId, String aud) {
+    return clientId + "|" + aud;
+  }
+
   /**
    * @param clientId client id of the app
    * @param aud the token endpoint of the ehr
@@ -145,25 +356,63 @@ public class BackendAuthorizationServiceImpl implements AuthorizationService {
    * @throws KeyStoreException for problems with public/private keys
    */
   public String generateJwt(String clientId, String aud) throws KeyStoreException {
+    return generateJwt(clientId, aud, System.currentTimeMillis() + ASSERTION_LIFETIME_MILLIS);
+  }
+
+  private String generateJwt(String clientId, String aud, long expiresAt) throws KeyStoreException {
+
+    Key key = getSigningKey();
+
+    if (key == null) {
+      return null;
+    }
+
+    return Jwts.builder()
+        .setIssuer(clientId)
+        .setSubject(clientId)
+        .setAudience(aud)
+        .setExpiration(new Date(expiresAt)) // a java.util.Date
+        .setId(UUID.randomUUID().toString())
+        .signWith(key)
+        .compact();
+  }
+
+  /**
+   * The method returns the signing key, the key is loaded from the keystore the first time and
+   * again whenever the keystore file is modified.
+   *
+   * @return The signing key, null when the key could not be loaded.
+   * @throws KeyStoreException for problems with public/private keys
+   */
+  synchronized Key getSigningKey() throws KeyStoreException {
+
+    Path keystorePath = Paths.get(jwksLocation);
 
-    KeyStore ks = KeyStore.getInstance(KeyStore.getDefaultType());
-    char[] passwordChar = password.toCharArray();
     try {
-      InputStream store = new FileInputStream(jwksLocation);
-      ks.load(store, passwordChar);
-      // store.close();
-      Key key = ks.getKey(alias, passwordChar);
-
-      return Jwts.builder()
-          .setIssuer(clientId)
-          .setSubject(clientId)
-          .setAudience(aud)
-          .setExpiration(
-              new Date(
-                  System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5))) // a java.util.Date
-          .setId(UUID.randomUUID().toString())
-          .signWith(key)
-          .compact();
+      BasicFileAttributes attrs = Files.readAttributes(keystorePath, BasicFileAttributes.class);
+      String fileVersion = attrs.lastModifiedTime().toMillis() + ":" + attrs.size();
+
+      if (signingKey != null && fileVersion.equals(signingKeyFileVersion)) {
+        return signingKey;
+      }
+
+      logger.info(" Loading the signing key from the keystore {}", jwksLocation);
+
+      KeyStore ks = KeyStore.getInstance(KeyStore.getDefaultType());
+      char[] passwordChar = password.toCharArray();
+
+      try (InputStream store = Files.newInputStream(keystorePath)) {
+        ks.load(store, passwordChar);
+      }
+
+      signingKey = ks.getKey(alias, passwordChar);
+      signingKeyFileVersion = fileVersion;
+
+      // Assertions signed with the previous key are no longer used.
+      signedAssertions.clear();
+
+      return signingKey;
+
     } catch (IOException
         | NoSuchAlgorithmException
         | CertificateException
@@ -3,6 +3,7 @@ package com.drajer.bsa.controller;
 import com.drajer.bsa.kar.model.KnowledgeArtifactStatus;
 import com.drajer.bsa.model.KnowledgeArtifactRepository;
 import com.drajer.bsa.service.KarService;
+import com.drajer.ecrapp.service.ArtifactReloadService;
 import java.util.List;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -33,6 +34,9 @@ public class KnowledgeArtifactRepositoryController {
   /** The Service class to manage the Knowledge Artifact Repositories */
   @Autowired KarService karService;
 
+  /** The Service class to reload the KARs and the eRSD */
+  @Autowired ArtifactReloadService artifactReloadService;
+
   /**
    * Method to retrieve the Knowledge Artifact Repository by Id
    *
@@ -141,4 +145,29 @@ public class KnowledgeArtifactRepositoryController {
       @RequestParam(value = "hsId") Integer hsId) {
     return karService.getKARStatusByHsId(hsId);
   }
+
+  /**
+   * Method to reload the KARs from the KAR directory without a restart. The executions in progress
+   * continue with the KARs they started with.
+   *
+   * @return - Status of the reload.
+   */
+  @CrossOrigin
+  @PostMapping(value = "/api/kars/reload")
+  public ResponseEntity<Object> reloadKars() {
+    artifactReloadService.reloadKars();
+    return new ResponseEntity<>("KARs reloaded", HttpStatus.OK);
+  }
+
+  /**
+   * Method to reload the eRSD used by the launches that are not based on KARs, without a restart.
+   *
+   * @return - Status of the reload.
+   */
+  @CrossOrigin
+  @PostMapping(value = "/api/ersd/reload")
+  public ResponseEntity<Object> reloadErsd() {
+    artifactReloadService.reloadErsd();
+    return new ResponseEntity<>("ERSD reloaded", HttpStatus.OK);
+  }
 }
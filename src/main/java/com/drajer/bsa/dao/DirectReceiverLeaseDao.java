@@ -0,0 +1,34 @@
+package com.drajer.bsa.dao;
+
+import java.util.Date;
+
+/**
+ *
+ *
+ * <h1>DirectReceiverLeaseDao</h1>
+ *
+ * This interface declares methods to acquire and release the leases of the Direct IMAP receivers.
+ */
+public interface DirectReceiverLeaseDao {
+
+  /**
+   * Method to acquire or renew the lease of a Direct account. The lease is granted when there is no
+   * lease for the account, when the lease has expired or when it is already owned by the owner.
+   *
+   * @param account The Direct account.
+   * @param owner The instance requesting the lease.
+   * @param now The current time.
+   * @param leaseExpiryTime The time until which the lease is granted.
+   * @return true when the owner holds the lease until the expiry time.
+   */
+  public boolean acquireLease(String account, String owner, Date now, Date leaseExpiryTime);
+
+  /**
+   * Method to release the lease of a Direct account, so that another instance can take over the
+   * account without waiting for the lease to expire.
+   *
+   * @param account The Direct account.
+   * @param owner The instance releasing the lease.
+   */
+  public void releaseLease(String account, String owner);
+}
@@ -31,6 +31,14 @@ public interface KarExecutionStateDao {
    */
   public KarExecutionState getKarExecutionStateById(UUID id);
 
+  /**
+   * Method to retrieve the KarExecutionStates saved for a timer.
+   *
+   * @param timerKey The key of the timer.
+   * @return List of KarExecutionStates for the timer.
+   */
+  public List<KarExecutionState> getKarExecutionStatesByTimerKey(String timerKey);
+
   /**
    * Method to to retrieve all Kars
    *
@@ -0,0 +1,66 @@
+package com.drajer.bsa.dao;
+
+import com.drajer.bsa.model.ReportSubmission;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ *
+ *
+ * <h1>ReportSubmissionDao</h1>
+ *
+ * This interface declares methods to perform CRUD operations on the ReportSubmission outbox.
+ */
+public interface ReportSubmissionDao {
+
+  /**
+   * Method to create or update a ReportSubmission.
+   *
+   * @param submission
+   * @return ReportSubmission that was updated
+   */
+  public ReportSubmission saveOrUpdate(ReportSubmission submission);
+
+  /**
+   * Method to retrieve a ReportSubmission by Id from DB.
+   *
+   * @param id The unique id for the ReportSubmission from the DB.
+   * @return ReportSubmission that was retrieved or null.
+   */
+  public ReportSubmission getById(UUID id);
+
+  /**
+   * Method to retrieve the ReportSubmissions for a PublicHealthMessage.
+   *
+   * @param phMessageId The id of the PublicHealthMessage.
+   * @return List of ReportSubmissions for the message.
+   */
+  public List<ReportSubmission> getByPhMessageId(UUID phMessageId);
+
+  /**
+   * Method to claim the submissions that are due for delivery. The due submissions are locked,
+   * submissions locked by another instance are skipped, and the accepted submissions are marked as
+   * in progress until the lease time in a single transaction.
+   *
+   * @param now The current time.
+   * @param leaseTime The time until which the claimed submissions are reserved.
+   * @param maxResults The maximum number of submissions to claim.
+   * @param accept Decides whether a due submission is claimed.
+   * @return List of claimed ReportSubmissions.
+   */
+  public List<ReportSubmission> claimDueSubmissions(
+      Date now, Date leaseTime, int maxResults, Predicate<ReportSubmission> accept);
+
+  /**
+   * Method to extend the lease of the submissions that are still being delivered, so that they are
+   * not claimed again while the delivery is in progress.
+   *
+   * @param ids The ids of the submissions being delivered.
+   * @param leaseTime The time until which the submissions are reserved.
+   * @return The number of submissions whose lease was extended.
+   */
+  public int renewLeases(Collection<UUID> ids, Date leaseTime);
+}
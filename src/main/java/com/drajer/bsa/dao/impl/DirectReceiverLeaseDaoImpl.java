@@ -0,0 +1,59 @@
+package com.drajer.bsa.dao.impl;
+
+import com.drajer.bsa.dao.DirectReceiverLeaseDao;
+import com.drajer.bsa.model.DirectReceiverLease;
+import com.drajer.ecrapp.dao.AbstractDao;
+import java.util.Date;
+import org.hibernate.LockMode;
+import org.hibernate.LockOptions;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ *
+ *
+ * <h1>DirectReceiverLeaseDao</h1>
+ *
+ * This Implementation class to acquire and release the leases of the Direct IMAP receivers. The
+ * lease row is locked while it is checked and updated, when two instances create the lease of a new
+ * account at the same time the insert of one of them fails on the primary key.
+ */
+@Repository
+@Transactional
+public class DirectReceiverLeaseDaoImpl extends AbstractDao implements DirectReceiverLeaseDao {
+
+  @Override
+  public boolean acquireLease(String account, String owner, Date now, Date leaseExpiryTime) {
+
+    DirectReceiverLease lease =
+        getSession().get(DirectReceiverLease.class, account, new LockOptions(LockMode.UPGRADE));
+
+    if (lease == null) {
+      lease = new DirectReceiverLease();
+      lease.setAccount(account);
+      lease.setOwner(owner);
+      lease.setLeaseExpiryTime(leaseExpiryTime);
+      getSession().save(lease);
+    } else if (owner.equals(lease.getOwner()) || !lease.getLeaseExpiryTime().after(now)) {
+      lease.setOwner(owner);
+      lease.setLeaseExpiryTime(leaseExpiryTime);
+    } else {
+      return false;
+    }
+
+    getSession().flush();
+
+    return true;
+  }
+
+  @Override
+  public void releaseLease(String account, String owner) {
+
+    DirectReceiverLease lease =
+        getSession().get(DirectReceiverLease.class, account, new LockOptions(LockMode.UPGRADE));
+
+    if (lease != null && owner.equals(lease.getOwner())) {
+      getSession().delete(lease);
+    }
+  }
+}
@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.UUID;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -46,6 +47,19 @@ public class KarExecutionStateDaoImpl extends AbstractDao implements KarExecutio
     return getSession().get(KarExecutionState.class, id);
   }
 
+  /**
+   * Method to retrieve the KarExecutionStates saved for a timer.
+   *
+   * @param timerKey The key of the timer.
+   * @return List of KarExecutionStates for the timer.
+   */
+  @Override
+  public List<KarExecutionState> getKarExecutionStatesByTimerKey(String timerKey) {
+    Criteria criteria = getSession().createCriteria(KarExecutionState.class);
+    criteria.add(Restrictions.eq("timerKey", timerKey));
+    return criteria.list();
+  }
+
   /**
    * Method to to retrieve all Kars
    *
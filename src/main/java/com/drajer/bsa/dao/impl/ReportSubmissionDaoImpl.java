@@ -0,0 +1,104 @@
+package com.drajer.bsa.dao.impl;
+
+import com.drajer.bsa.dao.ReportSubmissionDao;
+import com.drajer.bsa.model.BsaTypes.ReportDeliveryStatus;
+import com.drajer.bsa.model.ReportSubmission;
+import com.drajer.ecrapp.dao.AbstractDao;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+import org.hibernate.Criteria;
+import org.hibernate.LockMode;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ *
+ *
+ * <h1>ReportSubmissionDao</h1>
+ *
+ * This Implementation class to perform CRUD operations on the ReportSubmission outbox.
+ */
+@Repository
+@Transactional
+public class ReportSubmissionDaoImpl extends AbstractDao implements ReportSubmissionDao {
+
+  public static final String DELIVERY_STATUS = "deliveryStatus";
+  public static final String NEXT_ATTEMPT_TIME = "nextAttemptTime";
+  public static final String PH_MESSAGE_ID = "phMessageId";
+
+  @Override
+  public ReportSubmission saveOrUpdate(ReportSubmission submission) {
+    getSession().saveOrUpdate(submission);
+    return submission;
+  }
+
+  @Override
+  public ReportSubmission getById(UUID id) {
+    return getSession().get(ReportSubmission.class, id);
+  }
+
+  @Override
+  public List<ReportSubmission> getByPhMessageId(UUID phMessageId) {
+    Criteria criteria = getSession().createCriteria(ReportSubmission.class);
+    criteria.add(Restrictions.eq(PH_MESSAGE_ID, phMessageId));
+    return criteria.list();
+  }
+
+  /**
+   * Submissions that are in progress past their lease time were abandoned by an instance that
+   * stopped during the delivery, so they are claimed again.
+   */
+  @Override
+  public List<ReportSubmission> claimDueSubmissions(
+      Date now, Date leaseTime, int maxResults, Predicate<ReportSubmission> accept) {
+
+    Criteria criteria = getSession().createCriteria(ReportSubmission.class);
+    criteria.add(
+        Restrictions.in(
+            DELIVERY_STATUS,
+            Arrays.asList(ReportDeliveryStatus.PENDING, ReportDeliveryStatus.IN_PROGRESS)));
+    criteria.add(Restrictions.le(NEXT_ATTEMPT_TIME, now));
+    criteria.addOrder(Order.asc(NEXT_ATTEMPT_TIME));
+    criteria.setMaxResults(maxResults);
+    criteria.setLockMode(LockMode.UPGRADE_SKIPLOCKED);
+
+    List<ReportSubmission> due = criteria.list();
+    List<ReportSubmission> claimed = new ArrayList<>();
+
+    for (ReportSubmission submission : due) {
+
+      if (accept.test(submission)) {
+        submission.setDeliveryStatus(ReportDeliveryStatus.IN_PROGRESS);
+        submission.setNextAttemptTime(leaseTime);
+        claimed.add(submission);
+      }
+    }
+
+    return claimed;
+  }
+
+  /** Only submissions still in progress are renewed, the delivered ones are left unchanged. */
+  @Override
+  public int renewLeases(Collection<UUID> ids, Date leaseTime) {
+
+    if (ids.isEmpty()) {
+      return 0;
+    }
+
+    return getSession()
+        .createQuery(
+            "update ReportSubmission set nextAttemptTime = :leaseTime"
+                + " where id in (:ids) and deliveryStatus = :status")
+        .setParameter("leaseTime", leaseTime)
+        .setParameterList("ids", ids)
+        .setParameter("status", ReportDeliveryStatus.IN_PROGRESS)
+        .executeUpdate();
+  }
+}
@@ -6,7 +6,11 @@ import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import com.drajer.bsa.auth.AuthorizationUtils;
 import com.drajer.bsa.dao.HealthcareSettingsDao;
 import com.drajer.bsa.ehr.service.EhrQueryService;
+import com.drajer.bsa.kar.model.FhirQueryDateParam;
 import com.drajer.bsa.kar.model.FhirQueryFilter;
+import com.drajer.bsa.kar.model.FhirQueryGroup;
+import com.drajer.bsa.kar.model.KarQueryPlan;
+import com.drajer.bsa.kar.model.KnowledgeArtifact;
 import com.drajer.bsa.model.HealthcareSetting;
 import com.drajer.bsa.model.KarProcessingData;
 import com.drajer.bsa.utils.BsaServiceUtils;
@@ -18,6 +22,7 @@ import java.io.FileFilter;
 import java.io.InputStream;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.EnumMap;
 import java.util.HashMap;
@@ -26,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import org.apache.commons.io.FileUtils;
@@ -37,6 +43,7 @@ import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.r4.model.Attachment;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Bundle.SearchEntryMode;
 import org.hl7.fhir.r4.model.CodeableConcept;
 import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.r4.model.Condition;
@@ -251,8 +258,8 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
 
     // Get Patient by Id always
     Resource res =
-        getResourceById(
-            client, context, PATIENT_RESOURCE, kd.getNotificationContext().getPatientId());
+        getCachedResourceById(
+            kd, client, context, PATIENT_RESOURCE, kd.getNotificationContext().getPatientId());
 
     if (res != null) {
 
@@ -275,7 +282,8 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
           kd.getNotificationContext().getNotificationResourceId());
 
       Resource enc =
-          getResourceById(
+          getCachedResourceById(
+              kd,
               client,
               context,
               ResourceType.Encounter.toString(),
@@ -343,8 +351,8 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
 
     // Get Patient by Id always
     Resource res =
-        getResourceById(
-            client, context, PATIENT_RESOURCE, kd.getNotificationContext().getPatientId());
+        getCachedResourceById(
+            kd, client, context, PATIENT_RESOURCE, kd.getNotificationContext().getPatientId());
     if (res != null) {
 
       logger.info(
@@ -381,7 +389,7 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
           // get the resources
           Set<Resource> resources = kd.getResourcesByType(type.toString());
           if (resources == null || resources.isEmpty()) {
-            resources = fetchResources(client, context, url);
+            resources = fetchResources(kd, client, context, url);
           }
           addFilteredResources(kd, entry, id, type, resources);
         } else {
@@ -417,22 +425,26 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
 
     String accessToken = null;
 
-    if (kd.hasValidAccessToken()) {
+    // KARs processing the same notification in parallel share the Healthcare Setting, so only one
+    // of them should refresh the token.
+    synchronized (kd.getHealthcareSetting()) {
+      if (kd.hasValidAccessToken()) {
 
-      accessToken = kd.getAccessToken();
-      logger.debug(
-          " Reusing Valid Access Token: {}, Expiration Time: {}",
-          accessToken,
-          kd.getHealthcareSetting().getEhrAccessTokenExpirationTime());
+        accessToken = kd.getAccessToken();
+        logger.debug(
+            " Reusing Valid Access Token: {}, Expiration Time: {}",
+            accessToken,
+            kd.getHealthcareSetting().getEhrAccessTokenExpirationTime());
 
-    } else {
+      } else {
 
-      retrieveAndUpdateAccessToken(kd);
-      accessToken = kd.getAccessToken();
-      logger.debug(
-          " Generated New Access Token: {}, Expiration Time: {}",
-          accessToken,
-          kd.getHealthcareSetting().getEhrAccessTokenExpirationTime());
+        retrieveAndUpdateAccessToken(kd);
+        accessToken = kd.getAccessToken();
+        logger.debug(
+            " Generated New Access Token: {}, Expiration Time: {}",
+            accessToken,
+            kd.getHealthcareSetting().getEhrAccessTokenExpirationTime());
+      }
     }
 
     return fhirContextInitializer.createClient(
@@ -552,8 +564,12 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
                 && !kd.containsResourceWithId(practitionerID)) {
               Practitioner practitioner =
                   (Practitioner)
-                      getResourceById(
-                          client, context, ResourceType.Practitioner.toString(), practitionerID);
+                      getCachedResourceById(
+                          kd,
+                          client,
+                          context,
+                          ResourceType.Practitioner.toString(),
+                          practitionerID);
               if (practitioner != null && !practitionerMap.containsKey(practitionerID)) {
                 practitioners.add(practitioner);
                 kd.storeResourceById(practitionerID, practitioner);
@@ -572,7 +588,8 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
                 organizationReference.getReferenceElement().getIdPart())) {
           Organization organization =
               (Organization)
-                  getResourceById(
+                  getCachedResourceById(
+                      kd,
                       client,
                       context,
                       "Organization",
@@ -595,7 +612,8 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
             Reference locationReference = location.getLocation();
             Location locationResource =
                 (Location)
-                    getResourceById(
+                    getCachedResourceById(
+                        kd,
                         client,
                         context,
                         "Location",
@@ -696,6 +714,34 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
     return resource;
   }
 
+  /**
+   * The method retrieves the resources for the search url, reusing the results when another KAR
+   * processing the same notification has already executed the same search.
+   *
+   * @param kd The processing context which may contain the data shared across KARs.
+   * @param genericClient The client to be used to access the EHR.
+   * @param context The FHIR Context.
+   * @param searchUrl The search url to be executed.
+   * @return The set of resources retrieved.
+   */
+  public Set<Resource> fetchResources(
+      KarProcessingData kd, IGenericClient genericClient, FhirContext context, String searchUrl) {
+
+    if (kd.getNotificationDataCache() == null) {
+      return fetchResources(genericClient, context, searchUrl);
+    }
+
+    Set<Resource> resources = new HashSet<>();
+    try {
+      for (BundleEntryComponent comp : searchEntries(kd, genericClient, searchUrl)) {
+        resources.add(comp.getResource());
+      }
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+    }
+    return resources;
+  }
+
   public Set<Resource> fetchResources(
       IGenericClient genericClient, FhirContext context, String searchUrl) {
     logger.info("FhirContext: {}", context);
@@ -752,6 +798,69 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
     return resource;
   }
 
+  /**
+   * The method reads the resource by Id, reusing the resource when another KAR processing the same
+   * notification has already read it from the EHR. Each KAR gets its own copy of the resource, so
+   * that the KARs applied in parallel do not share the resource instances.
+   *
+   * @param kd The processing context which may contain the data shared across KARs.
+   * @param genericClient The client to be used to access the EHR.
+   * @param context The FHIR Context.
+   * @param resourceName The type of the resource.
+   * @param resourceId The id of the resource.
+   * @return The resource if found, otherwise null.
+   */
+  private Resource getCachedResourceById(
+      KarProcessingData kd,
+      IGenericClient genericClient,
+      FhirContext context,
+      String resourceName,
+      String resourceId) {
+
+    if (kd.getNotificationDataCache() != null) {
+      Resource resource =
+          kd.getNotificationDataCache()
+              .get(
+                  resourceName + "/" + resourceId,
+                  () -> getResourceById(genericClient, context, resourceName, resourceId));
+      return resource != null ? resource.copy() : null;
+    }
+
+    return getResourceById(genericClient, context, resourceName, resourceId);
+  }
+
+  /**
+   * The method executes the search along with pagination and returns all the entries, reusing the
+   * entries when another KAR processing the same notification has already executed the search. The
+   * cache holds only the entries of the searches, and each KAR gets its own copy of the entries.
+   *
+   * @param kd The processing context which may contain the data shared across KARs.
+   * @param genericClient The client to be used to access the EHR.
+   * @param searchUrl The search url to be executed.
+   * @return The entries of the search results.
+   */
+  private List<BundleEntryComponent> searchEntries(
+      KarProcessingData kd, IGenericClient genericClient, String searchUrl) {
+
+    Supplier<List<BundleEntryComponent>> search =
+        () -> {
+          Bundle bundle =
+              genericClient.search().byUrl(searchUrl).returnBundle(Bundle.class).execute();
+          getAllR4RecordsUsingPagination(genericClient, bundle);
+          return Collections.unmodifiableList(new ArrayList<>(bundle.getEntry()));
+        };
+
+    if (kd.getNotificationDataCache() != null) {
+      List<BundleEntryComponent> entries = new ArrayList<>();
+      for (BundleEntryComponent comp : kd.getNotificationDataCache().get(searchUrl, search)) {
+        entries.add(comp.copy());
+      }
+      return entries;
+    }
+
+    return search.get();
+  }
+
   public void getResourcesByPatientId(
       IGenericClient genericClient,
       FhirContext context,
@@ -772,15 +881,12 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
           resourceName,
           kd.getNotificationContext().getPatientId());
 
-      Bundle bundle = genericClient.search().byUrl(searchUrl).returnBundle(Bundle.class).execute();
-
-      getAllR4RecordsUsingPagination(genericClient, bundle);
+      List<BundleEntryComponent> entries = searchEntries(kd, genericClient, searchUrl);
 
-      if (bundle.getEntry() != null) {
-        logger.info(
-            "Total No of Entries {} retrieved : {}", resourceName, bundle.getEntry().size());
+      if (entries != null) {
+        logger.info("Total No of Entries {} retrieved : {}", resourceName, entries.size());
 
-        List<BundleEntryComponent> bc = bundle.getEntry();
+        List<BundleEntryComponent> bc = entries;
 
         if (bc != null) {
 
@@ -939,6 +1045,13 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
 
       logger.info(" Run Query for DataReqId: {} as it is not already fetched.", dataReqId);
 
+      FhirQueryGroup group = getQueryGroup(data, dataReqId, query);
+
+      if (group != null) {
+        executeQueryGroup(data, group);
+        return;
+      }
+
       String queryToExecute = getQuery(data, dataReqId, query);
 
       if (!StringUtils.isEmpty(queryToExecute)) {
@@ -1006,54 +1119,75 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
       FhirQueryFilter queryFilter,
       String dataReqId) {
 
-    logger.info("Invoking search url : {}", searchUrl);
     String resType = queryFilter.getResourceType().toString();
+    Set<Resource> resources = searchResources(genericClient, context, searchUrl, kd, resType);
+
+    if (resources != null) {
+      kd.markDataFetched(dataReqId);
+    }
+
+    if (resources != null && !resources.isEmpty()) {
+
+      HashMap<String, Set<Resource>> resMapById = new HashMap<>();
+      resMapById.put(dataReqId, resources);
+      addSearchResults(genericClient, context, kd, resources, resMapById);
+
+      logger.info(" Adding {} resources of type : {}", resources.size(), resType);
+    }
+  }
+
+  /**
+   * The method executes a search and returns the valid resources that matched the search. Resources
+   * that are returned because of _include are stored by id in the KarProcessingData, so that they
+   * do not have to be retrieved again as secondary resources.
+   *
+   * @return The resources found, which is empty when no entries were found, or null when the search
+   *     failed.
+   */
+  private Set<Resource> searchResources(
+      IGenericClient genericClient,
+      FhirContext context,
+      String searchUrl,
+      KarProcessingData kd,
+      String resType) {
+
+    logger.info("Invoking search url : {}", searchUrl);
     Set<Resource> resources = null;
-    HashMap<String, Set<Resource>> resMapById = null;
-    HashMap<ResourceType, Set<Resource>> resMapType = null;
 
     try {
       logger.info("Getting data for resource type {} using query: {}", resType, searchUrl);
 
-      Bundle bundle = genericClient.search().byUrl(searchUrl).returnBundle(Bundle.class).execute();
+      List<BundleEntryComponent> bc = searchEntries(kd, genericClient, searchUrl);
 
-      getAllR4RecordsUsingPagination(genericClient, bundle);
-      if (bundle.hasEntry() && bundle.getEntry().size() > 0) {
+      if (bc != null && !bc.isEmpty()) {
 
         logger.info(
             "Total No of Entries when searching for ResourceType: {} retrieved was: {}",
             resType,
-            bundle.getEntry().size());
+            bc.size());
+
+        for (BundleEntryComponent comp : bc) {
 
-        List<BundleEntryComponent> bc = bundle.getEntry();
+          if (comp.hasSearch() && comp.getSearch().getMode() == SearchEntryMode.INCLUDE) {
+            logger.debug(" Storing included Resource Id : {}", comp.getResource().getId());
+            kd.storeResourceById(comp.getResource().getIdElement().getIdPart(), comp.getResource());
+          }
+        }
 
         resources = new HashSet<>();
-        resMapById = new HashMap<>();
-        resMapType = new HashMap<>();
         for (BundleEntryComponent comp : bc) {
 
           logger.debug(" Adding Resource Id : {}", comp.getResource().getId());
 
-          if (isValidResource(comp)) {
+          if ((!comp.hasSearch() || comp.getSearch().getMode() != SearchEntryMode.INCLUDE)
+              && isValidResource(comp)) {
             resources.add(comp.getResource());
-
-            sortResourcesByType(comp, resMapType);
-            populateSecondaryResources(
-                genericClient,
-                context,
-                comp.getResource(),
-                kd,
-                comp.getResource().getResourceType());
           }
         }
 
-        resMapById.put(dataReqId, resources);
-        kd.addResourcesByType(resMapType);
-        kd.addResourcesById(resMapById);
-
-        logger.info(" Adding {} resources of type : {}", resources.size(), resType);
       } else {
         logger.error(" No entries found for type : {}", resType);
+        resources = new HashSet<>();
       }
 
     } catch (BaseServerResponseException responseException) {
@@ -1067,6 +1201,172 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
     } catch (Exception e) {
       logger.info("Error in getting {} resource using search query {}", resType, searchUrl, e);
     }
+
+    return resources;
+  }
+
+  /**
+   * The method adds the resources found by a search to the KarProcessingData for each of the
+   * DataRequirements along with their secondary resources.
+   */
+  private void addSearchResults(
+      IGenericClient genericClient,
+      FhirContext context,
+      KarProcessingData kd,
+      Set<Resource> resources,
+      HashMap<String, Set<Resource>> resMapById) {
+
+    HashMap<ResourceType, Set<Resource>> resMapType = new HashMap<>();
+    for (Resource res : resources) {
+
+      resMapType.computeIfAbsent(res.getResourceType(), k -> new HashSet<>()).add(res);
+      populateSecondaryResources(genericClient, context, res, kd, res.getResourceType());
+    }
+
+    kd.addResourcesByType(resMapType);
+    kd.addResourcesById(resMapById);
+  }
+
+  /**
+   * The method finds the query group from the query plan of the KAR that can be used to retrieve
+   * the data for the DataRequirement.
+   *
+   * @return The query group or null if the query has to be executed by itself.
+   */
+  private FhirQueryGroup getQueryGroup(
+      KarProcessingData data, String dataReqId, FhirQueryFilter query) {
+
+    KnowledgeArtifact kar = data.getKar();
+
+    if (kar == null || kar.getQueryPlan() == null) return null;
+
+    KarQueryPlan plan = kar.getQueryPlan();
+    String customQueryFile = data.getKarIdForCustomQueries();
+
+    if (customQueries != null && customQueries.containsKey(customQueryFile)) {
+
+      HashMap<String, String> karCustomQueries = customQueries.get(customQueryFile);
+
+      // Custom queries for data requirements that are not part of the plan are run by themselves.
+      if (!plan.hasGroup(dataReqId) && karCustomQueries.containsKey(dataReqId)) return null;
+
+      plan = kar.getCustomizedQueryPlan(karCustomQueries);
+    }
+
+    if (plan.hasGroup(dataReqId)) return plan.getGroup(dataReqId);
+
+    return plan.getGroup(query.getRelatedDataId());
+  }
+
+  /**
+   * The method executes the query of a query group once and adds the results for all the
+   * DataRequirements in the group, applying the date parameters specific to each DataRequirement.
+   *
+   * @param data The KarProcessingData for which the query has to be executed.
+   * @param group The query group from the query plan of the KAR.
+   */
+  private void executeQueryGroup(KarProcessingData data, FhirQueryGroup group) {
+
+    String queryToExecute = substituteContextParams(data, group.getQueryString());
+
+    logger.info(" Run planned Query {} for DataReqIds: {}", queryToExecute, group.getDataReqIds());
+
+    if (Boolean.TRUE.equals(isSearchQuery(queryToExecute))) {
+
+      for (String param : getCoveringDateParams(data, group)) {
+        queryToExecute = queryToExecute + "&" + param;
+      }
+
+      String searchUrl = createSearchUrl(data, queryToExecute);
+
+      FhirContext context = fhirContextInitializer.getFhirContext(R4);
+      IGenericClient client = getClient(data, context);
+
+      Set<Resource> resources =
+          searchResources(client, context, searchUrl, data, group.getResourceType().toString());
+
+      if (resources != null) {
+
+        HashMap<String, Set<Resource>> resMapById = new HashMap<>();
+        Set<Resource> matched = new HashSet<>();
+
+        for (String dataReqId : group.getDataReqIds()) {
+
+          data.markDataFetched(dataReqId);
+
+          Set<Resource> filtered =
+              filterByDateParams(data, group.getDateParams(dataReqId), resources);
+
+          if (!filtered.isEmpty()) {
+            resMapById.put(dataReqId, filtered);
+            matched.addAll(filtered);
+          }
+        }
+
+        addSearchResults(client, context, data, matched, resMapById);
+
+        logger.info(
+            " Adding {} resources of type : {} for {} DataReqIds",
+            matched.size(),
+            group.getResourceType(),
+            resMapById.size());
+      }
+
+    } else {
+
+      logger.info(" Run Get Resource by Id for Query {}", queryToExecute);
+
+      Resource res = getResourceByUrl(data, group.getResourceType().toString(), queryToExecute);
+
+      for (String dataReqId : group.getDataReqIds()) {
+        addResourceToContext(data, res, dataReqId);
+      }
+    }
+  }
+
+  /**
+   * The method creates the date parameters covering the date parameters of all the DataRequirements
+   * in the query group, so that the EHR does not return resources that none of them need.
+   */
+  private List<String> getCoveringDateParams(KarProcessingData data, FhirQueryGroup group) {
+
+    if (group.getDateParams().isEmpty()) return new ArrayList<>();
+
+    List<List<FhirQueryDateParam>> dateParams = new ArrayList<>();
+
+    for (String dataReqId : group.getDataReqIds()) {
+
+      List<FhirQueryDateParam> params = new ArrayList<>();
+
+      for (String param : group.getDateParams(dataReqId)) {
+
+        FhirQueryDateParam dateParam =
+            FhirQueryDateParam.parse(substituteContextParams(data, param));
+
+        if (dateParam != null) params.add(dateParam);
+      }
+
+      dateParams.add(params);
+    }
+
+    return FhirQueryDateParam.getCoveringParams(dateParams);
+  }
+
+  private Set<Resource> filterByDateParams(
+      KarProcessingData data, List<String> dateParams, Set<Resource> resources) {
+
+    Set<Resource> filtered = new HashSet<>(resources);
+
+    for (String param : dateParams) {
+
+      FhirQueryDateParam dateParam = FhirQueryDateParam.parse(substituteContextParams(data, param));
+
+      if (dateParam != null) {
+        filtered.removeIf(res -> !dateParam.matches(res));
+      }
+    }
+
+    return filtered;
   }
 
   public Boolean isValidResource(BundleEntryComponent comp) {
@@ -1307,7 +1607,8 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
 
         if (secRes == null) {
           secRes =
-              getResourceById(
+              getCachedResourceById(
+                  kd,
                   genericClient,
                   context,
                   ResourceType.Medication.toString(),
@@ -1334,7 +1635,8 @@ public class EhrFhirR4QueryServiceImpl implements EhrQueryService {
 
         if (secRes == null) {
           secRes =
-              getResourceById(
+              getCachedResourceById(
+                  kd,
                   genericClient,
                   context,
                   ResourceType.Medication.toString(),
@@ -34,6 +34,9 @@ public class CreateReport extends BsaAction {
 
   PublicHealthMessagesDao phDao;
 
+  /** Indicates if the report is skipped when the data is the same as the last submitted report. */
+  Boolean skipUnchangedReports = false;
+
   public PublicHealthMessagesDao getPhDao() {
     return phDao;
   }
@@ -42,6 +45,14 @@ public class CreateReport extends BsaAction {
     this.phDao = phDao;
   }
 
+  public Boolean getSkipUnchangedReports() {
+    return skipUnchangedReports;
+  }
+
+  public void setSkipUnchangedReports(Boolean skipUnchangedReports) {
+    this.skipUnchangedReports = skipUnchangedReports;
+  }
+
   @Override
   public BsaActionStatus process(KarProcessingData data, EhrQueryService ehrService) {
 
@@ -87,6 +98,23 @@ public class CreateReport extends BsaAction {
 
       ehrService.loadJurisdicationData(data);
 
+      // Skip creating, validating and submitting the report when the data has not changed since
+      // the last report was submitted.
+      String fingerprint = BsaServiceUtils.getReportFingerprint(data, this);
+
+      if (Boolean.TRUE.equals(skipUnchangedReports)
+          && fingerprint.equals(data.getPreviousReportFingerprint())) {
+
+        logger.info(
+            " Data for action {} has not changed since the last report was submitted, skipping the report ",
+            this.getActionId());
+        actStatus.setActionStatus(BsaActionStatusType.COMPLETED);
+        data.addActionStatus(data.getExecutionSequenceId(), actStatus);
+        return actStatus;
+      }
+
+      data.setReportFingerprint(fingerprint);
+
       // Get the Output Data Requirement to determine the type of bundle to create.
       for (DataRequirement dr : outputData) {
 
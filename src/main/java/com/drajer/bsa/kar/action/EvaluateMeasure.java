@@ -1,6 +1,7 @@
 package com.drajer.bsa.kar.action;
 
 import com.drajer.bsa.ehr.service.EhrQueryService;
+import com.drajer.bsa.kar.condition.KarCqlEngine;
 import com.drajer.bsa.kar.model.BsaAction;
 import com.drajer.bsa.model.BsaTypes.BsaActionStatusType;
 import com.drajer.bsa.model.KarProcessingData;
@@ -104,19 +105,38 @@ public class EvaluateMeasure extends BsaAction {
 
       // Evaluate Measure by passing the required parameters
       // Set up and evaluate the measure.
-      MeasureReport result =
-          measureProcessor.evaluateMeasure(
-              measureUri,
-              periodStart,
-              periodEnd,
-              "subject",
-              patientId,
-              null, // practitioner
-              null, // received on
-              endpoint, // Library Bundle
-              endpoint, // Terminology Bundle
-              null, // Endpoint for data
-              additionalData); // Data Bundle
+      MeasureReport result;
+      KarCqlEngine engine = data.getKar().getCqlEngine();
+
+      if (engine != null) {
+
+        // Use the engine of the KAR which retains the libraries and terminology across patients.
+        result =
+            engine.evaluateMeasure(
+                measureUri,
+                periodStart,
+                periodEnd,
+                "subject",
+                patientId,
+                endpoint, // Library Bundle
+                endpoint, // Terminology Bundle
+                additionalData); // Data Bundle
+      } else {
+
+        result =
+            measureProcessor.evaluateMeasure(
+                measureUri,
+                periodStart,
+                periodEnd,
+                "subject",
+                patientId,
+                null, // practitioner
+                null, // received on
+                endpoint, // Library Bundle
+                endpoint, // Terminology Bundle
+                null, // Endpoint for data
+                additionalData); // Data Bundle
+      }
 
       if (result != null) {
 
@@ -10,22 +10,22 @@ import com.drajer.bsa.ehr.service.EhrQueryService;
 import com.drajer.bsa.kar.model.BsaAction;
 import com.drajer.bsa.kar.model.KnowledgeArtifact;
 import com.drajer.bsa.kar.model.KnowledgeArtifactStatus;
-import com.drajer.bsa.model.BsaTypes;
 import com.drajer.bsa.model.BsaTypes.BsaActionStatusType;
 import com.drajer.bsa.model.BsaTypes.OutputContentType;
+import com.drajer.bsa.model.BsaTypes.ReportTransportType;
 import com.drajer.bsa.model.HealthcareSetting;
 import com.drajer.bsa.model.KarExecutionState;
 import com.drajer.bsa.model.KarProcessingData;
 import com.drajer.bsa.model.PublicHealthAuthority;
+import com.drajer.bsa.model.PublicHealthMessage;
 import com.drajer.bsa.routing.impl.DirectTransportImpl;
 import com.drajer.bsa.routing.impl.RestfulTransportImpl;
 import com.drajer.bsa.service.PublicHealthAuthorityService;
+import com.drajer.bsa.service.ReportDeliveryService;
 import com.drajer.bsa.utils.BsaServiceUtils;
-import com.drajer.ecrapp.util.ApplicationUtils;
 import com.drajer.sof.utils.FhirContextInitializer;
 import io.micrometer.core.instrument.util.StringUtils;
 import java.io.InputStream;
-import java.time.Instant;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
@@ -33,13 +33,11 @@ import java.util.Set;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.DataRequirement;
-import org.hl7.fhir.r4.model.Duration;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.UriType;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -49,9 +47,6 @@ public class SubmitReport extends BsaAction {
 
   private String submissionEndpoint;
 
-  private static final int RR_CHECK_TIME = 60;
-  private static final String RR_CHECK_TIME_UNITS = "s";
-
   private static final FhirContext context = FhirContext.forR4();
 
   private BsaServiceUtils bsaServiceUtils;
@@ -62,6 +57,8 @@ public class SubmitReport extends BsaAction {
 
   private RestfulTransportImpl restSubmitter;
 
+  private ReportDeliveryService reportDeliveryService;
+
   private AuthorizationUtils authorizationUtils;
 
   private PublicHealthAuthorityService publicHealthAuthorityService;
@@ -171,47 +168,24 @@ public class SubmitReport extends BsaAction {
 
       logger.info(" Sending payload via Direct Transport ");
 
-      directSender.sendEicrDataUsingDirect(data);
-
-      logger.info(" Finished Sending payload via Direct Transport ");
-
-      // Setup a rrCheck schedule job after a delay of 300 seconds.
+      // The Reportability Response is checked once the report is sent.
       if (Boolean.FALSE.equals(ignoreTimers)) {
-
-        logger.info(" Setting up Timer to check for Reportability Responses after 5 minutes ");
-
-        KarExecutionState st =
-            data.getKarExecutionStateService().saveOrUpdate(data.getKarExecutionState());
-
-        Duration d = new Duration();
-        d.setCode(RR_CHECK_TIME_UNITS);
-        d.setUnit(RR_CHECK_TIME_UNITS);
-        d.setValue(RR_CHECK_TIME);
-        Instant t = ApplicationUtils.convertDurationToInstant(d);
-
-        scheduler.scheduleJob(
-            st.getId(),
-            getCheckResponseActionId(),
-            BsaTypes.ActionType.CHECK_RESPONSE,
-            t,
-            data.getxRequestId(),
-            data.getJobType(),
-            MDC.getCopyOfContextMap());
-
-        logger.info(" Finished scheduling timer for checking RR ");
-
+        sendOrEnqueue(data, ReportTransportType.DIRECT, getCheckResponseActionId());
       } else {
 
         logger.info(
             " Reportability Response will not be ready, so no need to check when timers are ignored ");
+        sendOrEnqueue(data, ReportTransportType.DIRECT, null);
       }
 
+      logger.info(" Finished Sending payload via Direct Transport ");
+
     } else if (Boolean.TRUE.equals(hs.getIsRestAPI())
         && restSubmitter != null
         && !StringUtils.isEmpty(data.getSubmittedCdaData())) {
 
       logger.info(" Submitting to restful endpoint ");
-      restSubmitter.sendEicrDataUsingRestfulApi(data);
+      sendOrEnqueue(data, ReportTransportType.RESTFUL, null);
 
     } else if (Boolean.TRUE.equals(hs.getIsXdr())) {
       logger.info(" Submitting to XDR endpoint :TO DO");
@@ -228,6 +202,61 @@ public class SubmitReport extends BsaAction {
     return true;
   }
 
+  /**
+   * The report is added to the submission outbox when it is enabled, the outbox entry is saved in
+   * the same transaction as the PublicHealthMessage and the report is delivered by the delivery
+   * workers, which save the fingerprint and check for the Reportability Response once the report is
+   * delivered. Otherwise the report is sent inline.
+   *
+   * @param checkResponseActionId The action checking for the Reportability Response once the report
+   *     is sent, null when the response is not checked.
+   */
+  private void sendOrEnqueue(
+      KarProcessingData data, ReportTransportType transport, String checkResponseActionId) {
+
+    if (reportDeliveryService != null
+        && reportDeliveryService.isOutboxEnabled()
+        && data.getPhm() != null) {
+
+      reportDeliveryService.enqueue(data, transport, checkResponseActionId);
+      return;
+    }
+
+    if (transport == ReportTransportType.DIRECT) {
+      directSender.sendEicrDataUsingDirect(data);
+    } else {
+      restSubmitter.sendEicrDataUsingRestfulApi(data);
+    }
+
+    saveSubmittedDataFingerprint(data);
+
+    if (checkResponseActionId != null) {
+
+      logger.info(" Setting up Timer to check for Reportability Responses ");
+
+      KarExecutionState st =
+          data.getKarExecutionStateService().saveOrUpdate(data.getKarExecutionState());
+      scheduler.scheduleResponseCheck(
+          st.getId(), checkResponseActionId, data.getxRequestId(), data.getJobType());
+
+      logger.info(" Finished scheduling timer for checking RR ");
+    }
+  }
+
+  /**
+   * The fingerprint of the input data is saved once the report is submitted, so that the report is
+   * not created again until the data changes.
+   */
+  private void saveSubmittedDataFingerprint(KarProcessingData data) {
+
+    PublicHealthMessage phm = data.getPhm();
+
+    if (phm != null && data.getReportFingerprint() != null && phDao != null) {
+      phm.setSubmittedDataFingerprint(data.getReportFingerprint());
+      phDao.saveOrUpdate(phm);
+    }
+  }
+
   public void submitFhirOutput(
       KarProcessingData data, BsaActionStatus actStatus, EhrQueryService ehrService) {
 
@@ -411,6 +440,14 @@ public class SubmitReport extends BsaAction {
     this.restSubmitter = restSubmitter;
   }
 
+  public ReportDeliveryService getReportDeliveryService() {
+    return reportDeliveryService;
+  }
+
+  public void setReportDeliveryService(ReportDeliveryService reportDeliveryService) {
+    this.reportDeliveryService = reportDeliveryService;
+  }
+
   public AuthorizationUtils getAuthorizationUtils() {
     return authorizationUtils;
   }
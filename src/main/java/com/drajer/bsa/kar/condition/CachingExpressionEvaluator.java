@@ -0,0 +1,212 @@
+package com.drajer.bsa.kar.condition;
+
+import ca.uhn.fhir.context.FhirContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.io.IOUtils;
+import org.cqframework.cql.elm.execution.Library;
+import org.cqframework.cql.elm.execution.VersionedIdentifier;
+import org.opencds.cqf.cql.engine.execution.LibraryLoader;
+import org.opencds.cqf.cql.evaluator.builder.CqlEvaluatorBuilder;
+import org.opencds.cqf.cql.evaluator.builder.DataProviderFactory;
+import org.opencds.cqf.cql.evaluator.builder.EndpointConverter;
+import org.opencds.cqf.cql.evaluator.builder.LibraryContentProviderFactory;
+import org.opencds.cqf.cql.evaluator.builder.ModelResolverFactory;
+import org.opencds.cqf.cql.evaluator.builder.TerminologyProviderFactory;
+import org.opencds.cqf.cql.evaluator.cql2elm.content.LibraryContentProvider;
+import org.opencds.cqf.cql.evaluator.expression.ExpressionEvaluator;
+import org.opencds.cqf.cql.evaluator.library.CqlFhirParametersConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>CachingExpressionEvaluator</h1>
+ *
+ * The ExpressionEvaluator wraps every FHIRPath expression of a Knowledge Artifact into a CQL
+ * library and translates the library to ELM each time the expression is evaluated. This class
+ * caches the translated libraries so that each expression is compiled only once and subsequent
+ * evaluations for other patients only execute the compiled ELM.
+ *
+ * <p>The generated library declares a parameter for each of the input parameters along with its
+ * type, hence the compiled expression is cached using the complete library text, which is the
+ * expression and the signature of the parameters it is evaluated with. The included libraries (for
+ * e.g FHIRHelpers) are shared by all the expressions. The number of compiled expressions is
+ * limited, expressions that are evaluated after the limit is reached are compiled on every
+ * evaluation.
+ */
+public class CachingExpressionEvaluator extends ExpressionEvaluator {
+
+  private static final Logger logger = LoggerFactory.getLogger(CachingExpressionEvaluator.class);
+
+  private static final String EXPRESSION_LIBRARY_ID = "expression";
+
+  private final CompiledLibraries compiledLibraries;
+
+  public CachingExpressionEvaluator(
+      FhirContext fhirContext,
+      CqlFhirParametersConverter cqlFhirParametersConverter,
+      LibraryContentProviderFactory libraryContentProviderFactory,
+      DataProviderFactory dataProviderFactory,
+      TerminologyProviderFactory terminologyProviderFactory,
+      EndpointConverter endpointConverter,
+      ModelResolverFactory fhirModelResolverFactory,
+      int maxCompiledExpressions) {
+    this(
+        fhirContext,
+        cqlFhirParametersConverter,
+        libraryContentProviderFactory,
+        dataProviderFactory,
+        terminologyProviderFactory,
+        endpointConverter,
+        fhirModelResolverFactory,
+        new CompiledLibraries(maxCompiledExpressions));
+  }
+
+  private CachingExpressionEvaluator(
+      FhirContext fhirContext,
+      CqlFhirParametersConverter cqlFhirParametersConverter,
+      LibraryContentProviderFactory libraryContentProviderFactory,
+      DataProviderFactory dataProviderFactory,
+      TerminologyProviderFactory terminologyProviderFactory,
+      EndpointConverter endpointConverter,
+      ModelResolverFactory fhirModelResolverFactory,
+      CompiledLibraries compiledLibraries) {
+    super(
+        fhirContext,
+        cqlFhirParametersConverter,
+        libraryContentProviderFactory,
+        dataProviderFactory,
+        terminologyProviderFactory,
+        endpointConverter,
+        fhirModelResolverFactory,
+        () -> new CachingCqlEvaluatorBuilder(compiledLibraries));
+    this.compiledLibraries = compiledLibraries;
+  }
+
+  public int getCompiledExpressionCount() {
+    return compiledLibraries.expressionLibraries.size();
+  }
+
+  public void clearCache() {
+
+    logger.info(" Clearing {} compiled expressions", compiledLibraries.expressionLibraries.size());
+    compiledLibraries.expressionLibraries.clear();
+    compiledLibraries.includedLibraries.clear();
+  }
+
+  /** The compiled libraries shared by all the evaluations. */
+  private static class CompiledLibraries {
+
+    /** The compiled expression libraries, the Key is the text of the generated library. */
+    private final Map<String, Library> expressionLibraries = new ConcurrentHashMap<>();
+
+    /** The compiled libraries included by the expressions, the Key is the id|version. */
+    private final Map<String, Library> includedLibraries = new ConcurrentHashMap<>();
+
+    private final int maxCompiledExpressions;
+
+    CompiledLibraries(int maxCompiledExpressions) {
+      this.maxCompiledExpressions = maxCompiledExpressions;
+    }
+  }
+
+  /**
+   * The builder captures the library content providers so that the library loader can identify the
+   * generated expression library and use the compiled version from the cache.
+   */
+  private static class CachingCqlEvaluatorBuilder extends CqlEvaluatorBuilder {
+
+    private final CompiledLibraries compiledLibraries;
+    private final List<LibraryContentProvider> contentProviders;
+
+    CachingCqlEvaluatorBuilder(CompiledLibraries compiledLibraries) {
+      this.compiledLibraries = compiledLibraries;
+      this.contentProviders = new ArrayList<>();
+    }
+
+    @Override
+    public CqlEvaluatorBuilder withLibraryContentProvider(LibraryContentProvider provider) {
+      contentProviders.add(provider);
+      return super.withLibraryContentProvider(provider);
+    }
+
+    @Override
+    protected LibraryLoader decorate(LibraryLoader libraryLoader) {
+      return new CachingLibraryLoader(
+          super.decorate(libraryLoader), contentProviders, compiledLibraries);
+    }
+  }
+
+  private static class CachingLibraryLoader implements LibraryLoader {
+
+    private final LibraryLoader libraryLoader;
+    private final List<LibraryContentProvider> contentProviders;
+    private final CompiledLibraries compiledLibraries;
+
+    CachingLibraryLoader(
+        LibraryLoader libraryLoader,
+        List<LibraryContentProvider> contentProviders,
+        CompiledLibraries compiledLibraries) {
+      this.libraryLoader = libraryLoader;
+      this.contentProviders = contentProviders;
+      this.compiledLibraries = compiledLibraries;
+    }
+
+    @Override
+    public Library load(VersionedIdentifier libraryIdentifier) {
+
+      if (EXPRESSION_LIBRARY_ID.equals(libraryIdentifier.getId())) {
+
+        Map<String, Library> expressionLibraries = compiledLibraries.expressionLibraries;
+        String source = getLibrarySource(libraryIdentifier);
+
+        if (source != null
+            && (expressionLibraries.containsKey(source)
+                || expressionLibraries.size() < compiledLibraries.maxCompiledExpressions)) {
+          return expressionLibraries.computeIfAbsent(
+              source,
+              key -> {
+                logger.debug(" Compiling expression library {}", key);
+                return libraryLoader.load(libraryIdentifier);
+              });
+        }
+
+        return libraryLoader.load(libraryIdentifier);
+      }
+
+      return compiledLibraries.includedLibraries.computeIfAbsent(
+          libraryIdentifier.getId() + "|" + libraryIdentifier.getVersion(),
+          key -> libraryLoader.load(libraryIdentifier));
+    }
+
+    private String getLibrarySource(VersionedIdentifier libraryIdentifier) {
+
+      org.hl7.elm.r1.VersionedIdentifier id =
+          new org.hl7.elm.r1.VersionedIdentifier()
+              .withId(libraryIdentifier.getId())
+              .withVersion(libraryIdentifier.getVersion());
+
+      for (LibraryContentProvider provider : contentProviders) {
+
+        try (InputStream source = provider.getLibrarySource(id)) {
+
+          if (source != null) {
+            return IOUtils.toString(source, StandardCharsets.UTF_8);
+          }
+
+        } catch (IOException e) {
+          logger.error(" Unable to read the source of library {}", libraryIdentifier.getId(), e);
+        }
+      }
+
+      return null;
+    }
+  }
+}
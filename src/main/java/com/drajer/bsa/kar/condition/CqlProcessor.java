@@ -40,17 +40,36 @@ public class CqlProcessor implements BsaConditionProcessor {
         parameters.addParameter(paramComponent);
       }
     }
-    Parameters result =
-        (Parameters)
-            this.libraryProcessor.evaluate(
-                cqlCondition.getUrl(),
-                cqlCondition.getPatientId(),
-                parameters,
-                cqlCondition.getLibraryEndpoint(),
-                cqlCondition.getTerminologyEndpoint(),
-                cqlCondition.getDataEndpoint(),
-                kd.getInputResourcesAsBundle(),
-                expressions);
+    Parameters result;
+    KarCqlEngine engine = kd.getKar() != null ? kd.getKar().getCqlEngine() : null;
+
+    if (engine != null) {
+
+      // Use the engine of the KAR which retains the libraries and terminology across patients.
+      result =
+          engine.evaluate(
+              cqlCondition.getUrl(),
+              cqlCondition.getPatientId(),
+              parameters,
+              cqlCondition.getLibraryEndpoint(),
+              cqlCondition.getTerminologyEndpoint(),
+              cqlCondition.getDataEndpoint(),
+              kd.getInputDataView(),
+              expressions);
+    } else {
+
+      result =
+          (Parameters)
+              this.libraryProcessor.evaluate(
+                  cqlCondition.getUrl(),
+                  cqlCondition.getPatientId(),
+                  parameters,
+                  cqlCondition.getLibraryEndpoint(),
+                  cqlCondition.getTerminologyEndpoint(),
+                  cqlCondition.getDataEndpoint(),
+                  kd.getInputResourcesAsBundle(),
+                  expressions);
+    }
 
     BooleanType value =
         (BooleanType) result.getParameter(cond.getLogicExpression().getExpression());
@@ -4,9 +4,12 @@ import com.drajer.bsa.ehr.service.EhrQueryService;
 import com.drajer.bsa.kar.action.CheckTriggerCodeStatus;
 import com.drajer.bsa.kar.model.BsaAction;
 import com.drajer.bsa.kar.model.BsaCondition;
+import com.drajer.bsa.kar.model.TriggerCodeIndex;
+import com.drajer.bsa.model.KarInputDataView;
 import com.drajer.bsa.model.KarProcessingData;
 import com.drajer.bsa.utils.BsaServiceUtils;
 import com.drajer.eca.model.MatchedTriggerCodes;
+import com.drajer.ecrapp.config.TriggerCodeFilter;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -57,7 +60,7 @@ public class FhirPathProcessor implements BsaConditionProcessor {
     Parameters params = kd.getParametersByActionId(act.getActionId());
     if (params == null) {
 
-      params = resolveInputParameters(act.getInputData(), kd, act);
+      params = getInputParameters(act, kd);
     }
 
     logger.info(" Parameters size before resolving variables = {}", params.getParameter().size());
@@ -109,8 +112,8 @@ public class FhirPathProcessor implements BsaConditionProcessor {
 
             logger.info(" Expression after resolution {}", expr);
 
-            Parameters variableResult = (Parameters) expressionEvaluator.evaluate(expr, null);
-
+            // The context variables are resolved directly from the data and do not have to be
+            // evaluated, since they are different for every patient.
             if (exp.getName().contentEquals("encounterStartDate")
                 || exp.getName().contentEquals("encounterEndDate")
                 || exp.getName().contentEquals("lastReportSubmissionDate")) {
@@ -130,6 +133,7 @@ public class FhirPathProcessor implements BsaConditionProcessor {
 
             } else {
 
+              Parameters variableResult = (Parameters) expressionEvaluator.evaluate(expr, null);
               Type value = variableResult.getParameter(PARAM);
               paramComponent.setName("%" + exp.getName());
               paramComponent.setValue(value);
@@ -201,8 +205,11 @@ public class FhirPathProcessor implements BsaConditionProcessor {
 
       for (Resource res : candidates) {
 
-        if (res.getResourceType().toString().contentEquals(dr.getType())
-            && res.getResourceType() == ResourceType.Condition) {
+        if (!res.fhirType().equals(dr.getType())) {
+          continue;
+        }
+
+        if (res.getResourceType() == ResourceType.Condition) {
 
           logger.debug(" Found Condition Resource {}", res.getId());
           Condition cond = (Condition) res;
@@ -210,8 +217,7 @@ public class FhirPathProcessor implements BsaConditionProcessor {
 
           filterByCode(dr, cc, kd, ctc, resources, res, false);
 
-        } else if (res.getResourceType().toString().contentEquals(dr.getType())
-            && res.getResourceType() == ResourceType.Observation) {
+        } else if (res.getResourceType() == ResourceType.Observation) {
 
           logger.debug(" Found Observation Resource {}", res.getId());
           Observation obs = (Observation) res;
@@ -223,24 +229,21 @@ public class FhirPathProcessor implements BsaConditionProcessor {
             CodeableConcept ccv = obs.getValueCodeableConcept();
             filterByCode(dr, ccv, kd, ctc, resources, res, false);
           }
-        } else if (res.getResourceType().toString().contentEquals(dr.getType())
-            && res.getResourceType() == ResourceType.ServiceRequest) {
+        } else if (res.getResourceType() == ResourceType.ServiceRequest) {
 
           logger.debug(" Found ServiceRequest Resource {}", res.getId());
           ServiceRequest sr = (ServiceRequest) res;
           CodeableConcept cc = sr.getCode();
 
           filterByCode(dr, cc, kd, ctc, resources, res, false);
-        } else if (res.getResourceType().toString().contentEquals(dr.getType())
-            && res.getResourceType() == ResourceType.DiagnosticReport) {
+        } else if (res.getResourceType() == ResourceType.DiagnosticReport) {
 
           logger.debug(" Found DiagnosticReport Resource {}", res.getId());
           DiagnosticReport d = (DiagnosticReport) res;
           CodeableConcept cc = d.getCode();
 
           filterByCode(dr, cc, kd, ctc, resources, res, false);
-        } else if (res.getResourceType().toString().contentEquals(dr.getType())
-            && res.getResourceType() == ResourceType.MedicationRequest) {
+        } else if (res.getResourceType() == ResourceType.MedicationRequest) {
 
           logger.debug(" Found MedicationRequest Resource {}", res.getId());
           MedicationRequest mr = (MedicationRequest) res;
@@ -252,8 +255,7 @@ public class FhirPathProcessor implements BsaConditionProcessor {
           } else {
             logger.info(" To be done, to navigate the Med Hiearachy to get the code ");
           }
-        } else if (res.getResourceType().toString().contentEquals(dr.getType())
-            && res.getResourceType() == ResourceType.MedicationAdministration) {
+        } else if (res.getResourceType() == ResourceType.MedicationAdministration) {
 
           logger.debug(" Found MedicationAdministration Resource {}", res.getId());
           MedicationAdministration mr = (MedicationAdministration) res;
@@ -265,8 +267,7 @@ public class FhirPathProcessor implements BsaConditionProcessor {
           } else {
             logger.info(" To be done, to navigate the Med Hiearachy to get the code ");
           }
-        } else if (res.getResourceType().toString().contentEquals(dr.getType())
-            && res.getResourceType() == ResourceType.Procedure) {
+        } else if (res.getResourceType() == ResourceType.Procedure) {
 
           logger.debug(" Found Procedure Resource {}", res.getId());
           Procedure pr = (Procedure) res;
@@ -274,24 +275,21 @@ public class FhirPathProcessor implements BsaConditionProcessor {
           CodeableConcept cc = pr.getCode();
           filterByCode(dr, cc, kd, ctc, resources, res, false);
 
-        } else if (res.getResourceType().toString().contentEquals(dr.getType())
-            && res.getResourceType() == ResourceType.Immunization) {
+        } else if (res.getResourceType() == ResourceType.Immunization) {
 
           logger.debug(" Found Immunization Resource {}", res.getId());
           Immunization immz = (Immunization) res;
 
           CodeableConcept cc = immz.getVaccineCode();
           filterByCode(dr, cc, kd, ctc, resources, res, false);
-        } else if (res.getResourceType().toString().contentEquals(dr.getType())
-            && res.getResourceType() == ResourceType.Encounter) {
+        } else if (res.getResourceType() == ResourceType.Encounter) {
 
           logger.debug(" Found Encounter Resource {}", res.getId());
           Encounter enc = (Encounter) res;
 
           CodeableConcept cc = enc.getReasonCodeFirstRep();
           filterByCode(dr, cc, kd, ctc, resources, res, false);
-        } else if (res.getResourceType().toString().contentEquals(dr.getType())
-            && res.getResourceType() == ResourceType.MeasureReport) {
+        } else if (res.getResourceType() == ResourceType.MeasureReport) {
           if (resources.get(res.fhirType()) != null) {
             resources.get(res.fhirType()).add(res);
           } else {
@@ -299,8 +297,7 @@ public class FhirPathProcessor implements BsaConditionProcessor {
             resources2.add(res);
             resources.put(res.fhirType(), resources2);
           }
-        } else if (res.getResourceType().toString().contentEquals(dr.getType())
-            && res.getResourceType() == ResourceType.ValueSet) {
+        } else if (res.getResourceType() == ResourceType.ValueSet) {
           if (resources.get(res.fhirType()) != null) {
             resources.get(res.fhirType()).add(res);
           } else {
@@ -308,8 +305,7 @@ public class FhirPathProcessor implements BsaConditionProcessor {
             resources2.add(res);
             resources.put(res.fhirType(), resources2);
           }
-        } else if (res.getResourceType().toString().contentEquals(dr.getType())
-            && res.getResourceType() == ResourceType.CodeSystem) {
+        } else if (res.getResourceType() == ResourceType.CodeSystem) {
           if (resources.get(res.fhirType()) != null) {
             resources.get(res.fhirType()).add(res);
           } else {
@@ -333,6 +329,13 @@ public class FhirPathProcessor implements BsaConditionProcessor {
 
     logger.debug("valElem:{}", valElem);
 
+    TriggerCodeFilter filter = kd.getKar().getTriggerCodeFilter();
+
+    if (filter != null && !filter.mightContain(cc)) {
+      logger.debug(" Codes of resource {} are not trigger codes ", resourceMatched.getId());
+      return;
+    }
+
     List<DataRequirementCodeFilterComponent> drcfs = dr.getCodeFilter();
 
     if (drcfs != null) {
@@ -353,8 +356,15 @@ public class FhirPathProcessor implements BsaConditionProcessor {
             ValueSet vs = (ValueSet) vsr;
             String matchPath = dr.getType() + "." + drcf.getPath();
 
-            Pair<Boolean, MatchedTriggerCodes> retInfo =
-                BsaServiceUtils.isCodeableConceptPresentInValueSet(vs, cc, matchPath, false);
+            TriggerCodeIndex index = kd.getKar().getTriggerCodeIndex();
+            Pair<Boolean, MatchedTriggerCodes> retInfo;
+
+            if (index != null && index.isIndexed(drcf.getValueSet())) {
+              retInfo = index.match(drcf.getValueSet(), vs, cc, matchPath, false);
+            } else {
+              retInfo =
+                  BsaServiceUtils.isCodeableConceptPresentInValueSet(vs, cc, matchPath, false);
+            }
 
             if (retInfo != null) {
 
@@ -385,6 +395,38 @@ public class FhirPathProcessor implements BsaConditionProcessor {
     }
   }
 
+  /**
+   * The method returns the input parameters of the action. The parameters are resolved once from
+   * the input data view of the KarProcessingData and reused by the subsequent conditions until new
+   * data is added, only the Parameters container is created for each evaluation since the variables
+   * of the condition are added to it.
+   *
+   * @param act The action whose conditions are evaluated.
+   * @param kd The processing data.
+   * @return The input parameters or null when the action has no input data.
+   */
+  private Parameters getInputParameters(BsaAction act, KarProcessingData kd) {
+
+    KarInputDataView view = kd.getInputDataView();
+    List<ParametersParameterComponent> inputParams = view.getInputParameters(act.getActionId());
+
+    if (inputParams == null) {
+
+      Parameters resolved = resolveInputParameters(act.getInputData(), kd, act);
+
+      if (resolved == null) {
+        return null;
+      }
+
+      inputParams = resolved.getParameter();
+      view.setInputParameters(act.getActionId(), inputParams);
+    }
+
+    Parameters params = new Parameters();
+    params.getParameter().addAll(inputParams);
+    return params;
+  }
+
   private Parameters resolveInputParameters(
       List<DataRequirement> dataRequirements, KarProcessingData kd, BsaAction act) {
     if (dataRequirements == null || dataRequirements.isEmpty()) {
@@ -400,6 +442,8 @@ public class FhirPathProcessor implements BsaConditionProcessor {
         String name = req.getId();
         String fhirType = req.getType();
         String limit = req.hasLimit() ? Integer.toString(req.getLimit()) : "*";
+        ParameterDefinition definition =
+            new ParameterDefinition().setMax(limit).setName("%" + name).setType(fhirType);
 
         Pair<CheckTriggerCodeStatus, Map<String, Set<Resource>>> resources =
             filterResources(req, kd);
@@ -407,9 +451,7 @@ public class FhirPathProcessor implements BsaConditionProcessor {
         if (resources == null || resources.getValue1() == null || resources.getValue1().isEmpty()) {
           ParametersParameterComponent parameter =
               new ParametersParameterComponent().setName("%" + String.format("%s", name));
-          parameter.addExtension(
-              CPG_PARAM_DEFINITION,
-              new ParameterDefinition().setMax(limit).setName("%" + name).setType(fhirType));
+          parameter.addExtension(CPG_PARAM_DEFINITION, definition);
           params.addParameter(parameter);
         } else {
           for (Entry<String, Set<Resource>> entry : resources.getValue1().entrySet()) {
@@ -417,9 +459,7 @@ public class FhirPathProcessor implements BsaConditionProcessor {
               for (Resource resource : entry.getValue()) {
                 ParametersParameterComponent parameter =
                     new ParametersParameterComponent().setName("%" + String.format("%s", name));
-                parameter.addExtension(
-                    CPG_PARAM_DEFINITION,
-                    new ParameterDefinition().setMax(limit).setName("%" + name).setType(fhirType));
+                parameter.addExtension(CPG_PARAM_DEFINITION, definition);
                 parameter.setResource(resource);
                 params.addParameter(parameter);
               }
@@ -432,6 +472,8 @@ public class FhirPathProcessor implements BsaConditionProcessor {
         String name = req.getId();
         String fhirType = req.getType();
         String limit = req.hasLimit() ? Integer.toString(req.getLimit()) : "*";
+        ParameterDefinition definition =
+            new ParameterDefinition().setMax(limit).setName("%" + name).setType(fhirType);
 
         Set<Resource> resources = kd.getDataForId(req.getId(), act.getRelatedDataId(req.getId()));
 
@@ -440,18 +482,14 @@ public class FhirPathProcessor implements BsaConditionProcessor {
 
             ParametersParameterComponent parameter =
                 new ParametersParameterComponent().setName("%" + String.format("%s", name));
-            parameter.addExtension(
-                CPG_PARAM_DEFINITION,
-                new ParameterDefinition().setMax(limit).setName("%" + name).setType(fhirType));
+            parameter.addExtension(CPG_PARAM_DEFINITION, definition);
             parameter.setResource(res);
             params.addParameter(parameter);
           }
         } else {
           ParametersParameterComponent parameter =
               new ParametersParameterComponent().setName("%" + String.format("%s", name));
-          parameter.addExtension(
-              CPG_PARAM_DEFINITION,
-              new ParameterDefinition().setMax(limit).setName("%" + name).setType(fhirType));
+          parameter.addExtension(CPG_PARAM_DEFINITION, definition);
           params.addParameter(parameter);
         }
       }
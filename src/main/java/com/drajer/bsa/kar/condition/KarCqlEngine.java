@@ -0,0 +1,442 @@
+package com.drajer.bsa.kar.condition;
+
+import com.drajer.bsa.model.KarInputDataView;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.lang3.tuple.Pair;
+import org.cqframework.cql.elm.execution.Library;
+import org.cqframework.cql.elm.execution.VersionedIdentifier;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Endpoint;
+import org.hl7.fhir.r4.model.MeasureReport;
+import org.hl7.fhir.r4.model.Parameters;
+import org.opencds.cqf.cql.engine.execution.LibraryLoader;
+import org.opencds.cqf.cql.engine.runtime.Code;
+import org.opencds.cqf.cql.engine.terminology.CodeSystemInfo;
+import org.opencds.cqf.cql.engine.terminology.TerminologyProvider;
+import org.opencds.cqf.cql.engine.terminology.ValueSetInfo;
+import org.opencds.cqf.cql.evaluator.CqlOptions;
+import org.opencds.cqf.cql.evaluator.builder.CqlEvaluatorBuilder;
+import org.opencds.cqf.cql.evaluator.builder.DataProviderComponents;
+import org.opencds.cqf.cql.evaluator.builder.EndpointInfo;
+import org.opencds.cqf.cql.evaluator.cql2elm.content.LibraryContentProvider;
+import org.opencds.cqf.cql.evaluator.fhir.dal.FhirDal;
+import org.opencds.cqf.cql.evaluator.library.LibraryEvaluator;
+import org.opencds.cqf.cql.evaluator.measure.MeasureEvaluationOptions;
+import org.opencds.cqf.cql.evaluator.measure.r4.R4MeasureProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>KarCqlEngine</h1>
+ *
+ * The KarCqlEngine is created once for each Knowledge Artifact and is used to evaluate the CQL
+ * conditions and Measures of the artifact. The library content, terminology and the data that is
+ * part of the artifact are loaded from the endpoints once and reused, the translated ELM libraries
+ * and the value set expansions are cached. Only a light weight data provider over the patient data
+ * is created for each evaluation.
+ */
+public class KarCqlEngine {
+
+  private static final Logger logger = LoggerFactory.getLogger(KarCqlEngine.class);
+
+  private static final String LIBRARY_URL_SEPARATOR = "/Library/";
+  private static final String PATIENT_CONTEXT = "Patient";
+
+  private final KarCqlEngineFactory factory;
+
+  private final String karId;
+
+  /** The resources loaded from each of the endpoints, the Key is the endpoint address. */
+  private final Map<String, EndpointResources> endpointResources;
+
+  /** The measure processors, the Key is the content and terminology endpoint addresses. */
+  private final Map<String, R4MeasureProcessor> measureProcessors;
+
+  public KarCqlEngine(KarCqlEngineFactory factory, String karId) {
+    this.factory = factory;
+    this.karId = karId;
+    this.endpointResources = new ConcurrentHashMap<>();
+    this.measureProcessors = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * The method evaluates the expressions of a CQL library for the patient.
+   *
+   * @param url The canonical url of the Library.
+   * @param patientId The patient for whom the expressions are evaluated.
+   * @param parameters The parameters for the library.
+   * @param libraryEndpoint The endpoint containing the library.
+   * @param terminologyEndpoint The endpoint containing the value sets.
+   * @param dataEndpoint The endpoint containing the data that is part of the artifact.
+   * @param additionalData The patient data.
+   * @param expressions The expressions to be evaluated.
+   * @return The results of the expressions.
+   */
+  public Parameters evaluate(
+      String url,
+      String patientId,
+      Parameters parameters,
+      Endpoint libraryEndpoint,
+      Endpoint terminologyEndpoint,
+      Endpoint dataEndpoint,
+      Bundle additionalData,
+      Set<String> expressions) {
+
+    return evaluate(
+        url,
+        patientId,
+        parameters,
+        libraryEndpoint,
+        terminologyEndpoint,
+        dataEndpoint,
+        additionalData != null ? factory.getDataProviderFactory().create(additionalData) : null,
+        expressions);
+  }
+
+  /**
+   * The method evaluates the expressions of a CQL library for the patient, the patient data is
+   * retrieved directly from the input data of the KAR.
+   *
+   * @param url The canonical url of the Library.
+   * @param patientId The patient for whom the expressions are evaluated.
+   * @param parameters The parameters for the library.
+   * @param libraryEndpoint The endpoint containing the library.
+   * @param terminologyEndpoint The endpoint containing the value sets.
+   * @param dataEndpoint The endpoint containing the data that is part of the artifact.
+   * @param data The patient data.
+   * @param expressions The expressions to be evaluated.
+   * @return The results of the expressions.
+   */
+  public Parameters evaluate(
+      String url,
+      String patientId,
+      Parameters parameters,
+      Endpoint libraryEndpoint,
+      Endpoint terminologyEndpoint,
+      Endpoint dataEndpoint,
+      KarInputDataView data,
+      Set<String> expressions) {
+
+    return evaluate(
+        url,
+        patientId,
+        parameters,
+        libraryEndpoint,
+        terminologyEndpoint,
+        dataEndpoint,
+        data != null && !data.isEmpty() ? factory.createDataProviderComponents(data) : null,
+        expressions);
+  }
+
+  private Parameters evaluate(
+      String url,
+      String patientId,
+      Parameters parameters,
+      Endpoint libraryEndpoint,
+      Endpoint terminologyEndpoint,
+      Endpoint dataEndpoint,
+      DataProviderComponents patientData,
+      Set<String> expressions) {
+
+    EndpointResources libraryResources =
+        libraryEndpoint != null ? getEndpointResources(libraryEndpoint) : null;
+
+    KarCqlEvaluatorBuilder builder = new KarCqlEvaluatorBuilder(libraryResources);
+
+    if (libraryResources != null) {
+      builder.withLibraryContentProvider(libraryResources.getLibraryContentProvider());
+    }
+
+    if (terminologyEndpoint != null) {
+      builder.withTerminologyProvider(
+          getEndpointResources(terminologyEndpoint).getTerminologyProvider());
+    }
+
+    if (dataEndpoint != null) {
+      builder.withDataProviderComponents(
+          getEndpointResources(dataEndpoint).getDataProviderComponents());
+    }
+
+    if (patientData != null) {
+      builder.withDataProviderComponents(patientData);
+    }
+
+    if (dataEndpoint == null && patientData == null) {
+      builder.withModelResolver(
+          factory.getModelResolverFactory().getModelUri(), factory.getModelResolver());
+    }
+
+    LibraryEvaluator evaluator =
+        new LibraryEvaluator(factory.getCqlFhirParametersConverter(), builder.build());
+
+    return (Parameters)
+        evaluator.evaluate(
+            getVersionedIdentifier(url),
+            patientId != null ? Pair.of(PATIENT_CONTEXT, patientId) : null,
+            parameters,
+            expressions);
+  }
+
+  /**
+   * The method evaluates a Measure for the patient.
+   *
+   * @param measureUrl The canonical url of the Measure.
+   * @param periodStart The start of the measurement period.
+   * @param periodEnd The end of the measurement period.
+   * @param reportType The type of the report.
+   * @param subject The patient for whom the measure is evaluated.
+   * @param contentEndpoint The endpoint containing the Measure and the libraries.
+   * @param terminologyEndpoint The endpoint containing the value sets.
+   * @param additionalData The patient data.
+   * @return The MeasureReport
+   */
+  public MeasureReport evaluateMeasure(
+      String measureUrl,
+      String periodStart,
+      String periodEnd,
+      String reportType,
+      String subject,
+      Endpoint contentEndpoint,
+      Endpoint terminologyEndpoint,
+      Bundle additionalData) {
+
+    R4MeasureProcessor processor =
+        measureProcessors.computeIfAbsent(
+            contentEndpoint.getAddress() + "|" + terminologyEndpoint.getAddress(),
+            key -> createMeasureProcessor(contentEndpoint, terminologyEndpoint));
+
+    return processor.evaluateMeasure(
+        measureUrl,
+        periodStart,
+        periodEnd,
+        reportType,
+        subject,
+        null,
+        null,
+        null,
+        null,
+        null,
+        additionalData);
+  }
+
+  private R4MeasureProcessor createMeasureProcessor(
+      Endpoint contentEndpoint, Endpoint terminologyEndpoint) {
+
+    logger.info(
+        " Creating Measure Processor for KAR {} with content from {}",
+        karId,
+        contentEndpoint.getAddress());
+
+    EndpointResources contentResources = getEndpointResources(contentEndpoint);
+
+    return new R4MeasureProcessor(
+        factory.getTerminologyProviderFactory(),
+        factory.getDataProviderFactory(),
+        factory.getLibraryContentProviderFactory(),
+        factory.getFhirDalFactory(),
+        factory.getEndpointConverter(),
+        getEndpointResources(terminologyEndpoint).getTerminologyProvider(),
+        contentResources.getLibraryContentProvider(),
+        null,
+        contentResources.getFhirDal(),
+        MeasureEvaluationOptions.defaultOptions(),
+        CqlOptions.defaultOptions(),
+        new ConcurrentHashMap<>());
+  }
+
+  private EndpointResources getEndpointResources(Endpoint endpoint) {
+    return endpointResources.computeIfAbsent(
+        endpoint.getAddress(),
+        key -> new EndpointResources(factory.getEndpointConverter().getEndpointInfo(endpoint)));
+  }
+
+  private VersionedIdentifier getVersionedIdentifier(String url) {
+
+    if (url == null || !url.contains(LIBRARY_URL_SEPARATOR)) {
+      throw new IllegalArgumentException(
+          "Invalid resource type for determining library version identifier: Library");
+    }
+
+    String[] parts = url.split(LIBRARY_URL_SEPARATOR);
+
+    if (parts.length != 2) {
+      throw new IllegalArgumentException(
+          "Invalid url, Library.url SHALL be <CQL namespace url>/Library/<CQL library name>");
+    }
+
+    VersionedIdentifier id = new VersionedIdentifier();
+
+    if (parts[1].contains("|")) {
+      String[] nameAndVersion = parts[1].split("\\|");
+      id.setId(nameAndVersion[0]);
+      id.setVersion(nameAndVersion[1]);
+    } else {
+      id.setId(parts[1]);
+    }
+
+    return id;
+  }
+
+  public int getCompiledLibraryCount() {
+    return endpointResources.values().stream().mapToInt(res -> res.libraries.size()).sum();
+  }
+
+  public int getExpandedValueSetCount() {
+    return endpointResources
+        .values()
+        .stream()
+        .mapToInt(res -> res.terminologyProvider != null ? res.terminologyProvider.size() : 0)
+        .sum();
+  }
+
+  /** The resources loaded from an endpoint, each of them is created the first time it is used. */
+  private class EndpointResources {
+
+    private final EndpointInfo endpointInfo;
+
+    /** The translated libraries, the Key is the id|version. */
+    private final Map<String, Library> libraries = new ConcurrentHashMap<>();
+
+    private LibraryContentProvider libraryContentProvider;
+    private CachingTerminologyProvider terminologyProvider;
+    private DataProviderComponents dataProviderComponents;
+    private FhirDal fhirDal;
+
+    EndpointResources(EndpointInfo endpointInfo) {
+      this.endpointInfo = endpointInfo;
+    }
+
+    synchronized LibraryContentProvider getLibraryContentProvider() {
+
+      if (libraryContentProvider == null) {
+        logger.info(" Loading CQL libraries for KAR {} from {}", karId, endpointInfo.getAddress());
+        libraryContentProvider = factory.getLibraryContentProviderFactory().create(endpointInfo);
+      }
+
+      return libraryContentProvider;
+    }
+
+    synchronized CachingTerminologyProvider getTerminologyProvider() {
+
+      if (terminologyProvider == null) {
+        logger.info(" Loading terminology for KAR {} from {}", karId, endpointInfo.getAddress());
+        terminologyProvider =
+            new CachingTerminologyProvider(
+                factory.getTerminologyProviderFactory().create(endpointInfo));
+      }
+
+      return terminologyProvider;
+    }
+
+    synchronized DataProviderComponents getDataProviderComponents() {
+
+      if (dataProviderComponents == null) {
+        dataProviderComponents = factory.getDataProviderFactory().create(endpointInfo);
+      }
+
+      return dataProviderComponents;
+    }
+
+    synchronized FhirDal getFhirDal() {
+
+      if (fhirDal == null) {
+        fhirDal = factory.getFhirDalFactory().create(endpointInfo);
+      }
+
+      return fhirDal;
+    }
+  }
+
+  /**
+   * The builder uses the libraries already translated for the endpoint and the long lived
+   * terminology provider instead of creating them for every evaluation.
+   */
+  private static class KarCqlEvaluatorBuilder extends CqlEvaluatorBuilder {
+
+    private final EndpointResources libraryResources;
+
+    KarCqlEvaluatorBuilder(EndpointResources libraryResources) {
+      this.libraryResources = libraryResources;
+    }
+
+    @Override
+    protected LibraryLoader decorate(LibraryLoader libraryLoader) {
+
+      LibraryLoader loader = super.decorate(libraryLoader);
+
+      if (libraryResources == null) return loader;
+
+      return id ->
+          libraryResources.libraries.computeIfAbsent(
+              id.getId() + "|" + id.getVersion(), key -> loader.load(id));
+    }
+
+    @Override
+    protected TerminologyProvider decorate(TerminologyProvider terminologyProvider) {
+
+      // The value set expansions are already cached for the life of the engine.
+      if (terminologyProvider instanceof CachingTerminologyProvider) return terminologyProvider;
+
+      return super.decorate(terminologyProvider);
+    }
+  }
+
+  /** The terminology provider caches the value set expansions and indexes them by code. */
+  static class CachingTerminologyProvider implements TerminologyProvider {
+
+    private final TerminologyProvider terminologyProvider;
+
+    /** The expanded value sets, the Key is the value set id. */
+    private final Map<String, Iterable<Code>> expansions = new ConcurrentHashMap<>();
+
+    /** The codes of the expanded value sets in the form system|code. */
+    private final Map<String, Set<String>> codeIndex = new ConcurrentHashMap<>();
+
+    CachingTerminologyProvider(TerminologyProvider terminologyProvider) {
+      this.terminologyProvider = terminologyProvider;
+    }
+
+    @Override
+    public boolean in(Code code, ValueSetInfo valueSet) {
+
+      Set<String> codes =
+          codeIndex.computeIfAbsent(
+              valueSet.getId(),
+              key -> {
+                Set<String> index = new HashSet<>();
+                for (Code c : expand(valueSet)) {
+                  index.add(c.getSystem() + "|" + c.getCode());
+                }
+                return Collections.unmodifiableSet(index);
+              });
+
+      return codes.contains(code.getSystem() + "|" + code.getCode());
+    }
+
+    @Override
+    public Iterable<Code> expand(ValueSetInfo valueSet) {
+      return expansions.computeIfAbsent(valueSet.getId(), key -> expandValueSet(valueSet));
+    }
+
+    private Iterable<Code> expandValueSet(ValueSetInfo valueSet) {
+
+      Iterable<Code> codes = terminologyProvider.expand(valueSet);
+      return codes != null ? codes : Collections.emptyList();
+    }
+
+    @Override
+    public Code lookup(Code code, CodeSystemInfo codeSystem) {
+      return terminologyProvider.lookup(code, codeSystem);
+    }
+
+    int size() {
+      return expansions.size();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.drajer.bsa.kar.condition;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.drajer.bsa.kar.model.KnowledgeArtifact;
+import com.drajer.bsa.model.KarInputDataView;
+import org.opencds.cqf.cql.engine.model.ModelResolver;
+import org.opencds.cqf.cql.evaluator.builder.DataProviderComponents;
+import org.opencds.cqf.cql.evaluator.builder.DataProviderFactory;
+import org.opencds.cqf.cql.evaluator.builder.EndpointConverter;
+import org.opencds.cqf.cql.evaluator.builder.FhirDalFactory;
+import org.opencds.cqf.cql.evaluator.builder.LibraryContentProviderFactory;
+import org.opencds.cqf.cql.evaluator.builder.ModelResolverFactory;
+import org.opencds.cqf.cql.evaluator.builder.TerminologyProviderFactory;
+import org.opencds.cqf.cql.evaluator.library.CqlFhirParametersConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>KarCqlEngineFactory</h1>
+ *
+ * This class holds the CQL evaluator components that are shared by all the Knowledge Artifacts and
+ * creates the KarCqlEngine for each Knowledge Artifact when it is loaded.
+ */
+@Component
+public class KarCqlEngineFactory {
+
+  private static final String FHIR_VERSION = "4.0.1";
+
+  @Autowired FhirContext fhirContext;
+
+  @Autowired CqlFhirParametersConverter cqlFhirParametersConverter;
+
+  @Autowired LibraryContentProviderFactory libraryContentProviderFactory;
+
+  @Autowired DataProviderFactory dataProviderFactory;
+
+  @Autowired TerminologyProviderFactory terminologyProviderFactory;
+
+  @Autowired FhirDalFactory fhirDalFactory;
+
+  @Autowired EndpointConverter endpointConverter;
+
+  @Autowired ModelResolverFactory modelResolverFactory;
+
+  private ModelResolver modelResolver;
+
+  public KarCqlEngine createEngine(KnowledgeArtifact art) {
+    return new KarCqlEngine(this, art.getKarId());
+  }
+
+  /**
+   * The method creates the data provider over the input data of a KAR for the CQL engine. The model
+   * resolver is shared and only the retrieve provider is created for each evaluation.
+   *
+   * @param data The input data of the KAR.
+   * @return DataProviderComponents
+   */
+  public DataProviderComponents createDataProviderComponents(KarInputDataView data) {
+    return new DataProviderComponents(
+        modelResolverFactory.getModelUri(),
+        getModelResolver(),
+        new KarDataRetrieveProvider(fhirContext, data));
+  }
+
+  public synchronized ModelResolver getModelResolver() {
+
+    if (modelResolver == null) {
+      modelResolver = modelResolverFactory.create(FHIR_VERSION);
+    }
+
+    return modelResolver;
+  }
+
+  public CqlFhirParametersConverter getCqlFhirParametersConverter() {
+    return cqlFhirParametersConverter;
+  }
+
+  public LibraryContentProviderFactory getLibraryContentProviderFactory() {
+    return libraryContentProviderFactory;
+  }
+
+  public DataProviderFactory getDataProviderFactory() {
+    return dataProviderFactory;
+  }
+
+  public TerminologyProviderFactory getTerminologyProviderFactory() {
+    return terminologyProviderFactory;
+  }
+
+  public FhirDalFactory getFhirDalFactory() {
+    return fhirDalFactory;
+  }
+
+  public EndpointConverter getEndpointConverter() {
+    return endpointConverter;
+  }
+
+  public ModelResolverFactory getModelResolverFactory() {
+    return modelResolverFactory;
+  }
+}
@@ -0,0 +1,78 @@
+package com.drajer.bsa.kar.condition;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.drajer.bsa.model.KarInputDataView;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.hl7.fhir.r4.model.Bundle;
+import org.opencds.cqf.cql.engine.retrieve.TerminologyAwareRetrieveProvider;
+import org.opencds.cqf.cql.engine.runtime.Code;
+import org.opencds.cqf.cql.engine.runtime.Interval;
+import org.opencds.cqf.cql.evaluator.engine.retrieve.BundleRetrieveProvider;
+
+/**
+ *
+ *
+ * <h1>KarDataRetrieveProvider</h1>
+ *
+ * The KarDataRetrieveProvider retrieves the patient data for the CQL engine directly from the
+ * KarInputDataView. Each retrieve only looks at the resources of the requested type, the context,
+ * code and date filtering is delegated to a BundleRetrieveProvider over the resources of the type.
+ */
+public class KarDataRetrieveProvider extends TerminologyAwareRetrieveProvider {
+
+  private final FhirContext fhirContext;
+
+  private final KarInputDataView data;
+
+  /** The providers for each of the types retrieved, the Key is the resource type name. */
+  private final Map<String, BundleRetrieveProvider> providers;
+
+  public KarDataRetrieveProvider(FhirContext fhirContext, KarInputDataView data) {
+    this.fhirContext = fhirContext;
+    this.data = data;
+    this.providers = new HashMap<>();
+  }
+
+  @Override
+  public Iterable<Object> retrieve(
+      String context,
+      String contextPath,
+      Object contextValue,
+      String dataType,
+      String templateId,
+      String codePath,
+      Iterable<Code> codes,
+      String valueSet,
+      String datePath,
+      String dateLowPath,
+      String dateHighPath,
+      Interval dateRange) {
+
+    Bundle bund = data.getBundleByType(dataType);
+
+    if (bund == null) {
+      return Collections.emptyList();
+    }
+
+    BundleRetrieveProvider provider =
+        providers.computeIfAbsent(dataType, key -> new BundleRetrieveProvider(fhirContext, bund));
+    provider.setTerminologyProvider(getTerminologyProvider());
+    provider.setExpandValueSets(isExpandValueSets());
+
+    return provider.retrieve(
+        context,
+        contextPath,
+        contextValue,
+        dataType,
+        templateId,
+        codePath,
+        codes,
+        valueSet,
+        datePath,
+        dateLowPath,
+        dateHighPath,
+        dateRange);
+  }
+}
@@ -7,7 +7,6 @@ import com.drajer.bsa.model.BsaTypes;
 import com.drajer.bsa.model.BsaTypes.ActionType;
 import com.drajer.bsa.model.BsaTypes.BsaActionStatusType;
 import com.drajer.bsa.model.BsaTypes.BsaJobType;
-import com.drajer.bsa.model.KarExecutionState;
 import com.drajer.bsa.model.KarProcessingData;
 import com.drajer.bsa.scheduler.BsaScheduler;
 import com.drajer.bsa.utils.BsaServiceUtils;
@@ -30,7 +29,6 @@ import org.hl7.fhir.r4.model.ResourceType;
 import org.hl7.fhir.r5.model.Enumerations.QuantityComparator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 import org.springframework.web.client.RestTemplate;
 
 /**
@@ -268,16 +266,8 @@ public abstract class BsaAction {
 
     logger.info(" Setting timer for Instant {}", t);
 
-    KarExecutionState st = kd.getKarExecutionStateService().saveOrUpdate(kd.getKarExecutionState());
-
-    scheduler.scheduleJob(
-        st.getId(),
-        ract.getAction().getActionId(),
-        ract.getAction().getType(),
-        t,
-        kd.getxRequestId(),
-        kd.getJobType(),
-        MDC.getCopyOfContextMap());
+    scheduler.scheduleCoalescedJob(
+        kd, ract.getAction().getActionId(), ract.getAction().getType(), t);
   }
 
   public BsaActionStatusType processTimingData(KarProcessingData kd) {
@@ -0,0 +1,341 @@
+package com.drajer.bsa.kar.model;
+
+import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.hl7.fhir.exceptions.FHIRException;
+import org.hl7.fhir.r4.model.Base;
+import org.hl7.fhir.r4.model.BaseDateTimeType;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Period;
+import org.hl7.fhir.r4.model.Property;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>FhirQueryDateParam</h1>
+ *
+ * This class represents a date search parameter (for e.g date=ge2021-01-01) of a FHIR query. When
+ * queries for different data requirements are merged by the KarQueryPlan, the date parameters of
+ * each data requirement are applied on the results using this class, and only the date range
+ * covering all the data requirements is sent to the EHR. The matching follows the FHIR date search
+ * semantics for the prefixes eq, ge, gt, le and lt.
+ */
+public class FhirQueryDateParam {
+
+  private static final Logger logger = LoggerFactory.getLogger(FhirQueryDateParam.class);
+
+  private static final String LAST_UPDATED_PARAM = "_lastUpdated";
+
+  /**
+   * The date search parameters that can be applied on the results, the Key is the search parameter
+   * name and the value is the element of the resource that is searched.
+   */
+  private static final Map<ResourceType, Map<String, String>> SUPPORTED_PARAMS = new HashMap<>();
+
+  static {
+    SUPPORTED_PARAMS.put(ResourceType.Observation, Collections.singletonMap("date", "effective"));
+    SUPPORTED_PARAMS.put(
+        ResourceType.DiagnosticReport, Collections.singletonMap("date", "effective"));
+    SUPPORTED_PARAMS.put(ResourceType.Immunization, Collections.singletonMap("date", "occurrence"));
+    SUPPORTED_PARAMS.put(ResourceType.Procedure, Collections.singletonMap("date", "performed"));
+    SUPPORTED_PARAMS.put(ResourceType.Encounter, Collections.singletonMap("date", "period"));
+    SUPPORTED_PARAMS.put(
+        ResourceType.MedicationAdministration,
+        Collections.singletonMap("effective-time", "effective"));
+    SUPPORTED_PARAMS.put(
+        ResourceType.MedicationRequest, Collections.singletonMap("authoredon", "authoredOn"));
+    SUPPORTED_PARAMS.put(
+        ResourceType.ServiceRequest, Collections.singletonMap("authored", "authoredOn"));
+
+    Map<String, String> conditionParams = new HashMap<>();
+    conditionParams.put("onset-date", "onset");
+    conditionParams.put("recorded-date", "recordedDate");
+    SUPPORTED_PARAMS.put(ResourceType.Condition, conditionParams);
+  }
+
+  private static final List<String> SUPPORTED_PREFIXES =
+      Collections.unmodifiableList(Arrays.asList("eq", "ge", "gt", "le", "lt"));
+
+  private static final List<String> LOWER_BOUND_PREFIXES =
+      Collections.unmodifiableList(Arrays.asList("eq", "ge", "gt"));
+
+  private static final List<String> UPPER_BOUND_PREFIXES =
+      Collections.unmodifiableList(Arrays.asList("eq", "le", "lt"));
+
+  /** The name of the search parameter */
+  private String name;
+
+  /** The prefix of the search parameter, defaults to eq */
+  private String prefix;
+
+  /** The date specified in the search parameter without the prefix */
+  private String value;
+
+  /** The lower bound of the date specified in the search parameter */
+  private Date lowerBound;
+
+  /** The upper bound of the date specified in the search parameter based on its precision */
+  private Date upperBound;
+
+  /**
+   * The method identifies if a query parameter of the form name=value is a date search parameter
+   * that can be applied on the results of a query for the resource type.
+   *
+   * @param rt The resource type being queried.
+   * @param param The query parameter in the form name=value.
+   * @return true if the parameter can be applied on the results, false otherwise.
+   */
+  public static boolean isSupported(ResourceType rt, String param) {
+
+    int index = param.indexOf('=');
+
+    if (index <= 0) return false;
+
+    String paramName = param.substring(0, index);
+    String paramValue = param.substring(index + 1);
+
+    if (!LAST_UPDATED_PARAM.equals(paramName)
+        && (!SUPPORTED_PARAMS.containsKey(rt) || !SUPPORTED_PARAMS.get(rt).containsKey(paramName)))
+      return false;
+
+    // Only single values with the supported prefixes can be applied.
+    if (paramValue.isEmpty() || paramValue.contains(",")) return false;
+
+    if (Character.isLetter(paramValue.charAt(0))) {
+      return paramValue.length() > 2 && SUPPORTED_PREFIXES.contains(paramValue.substring(0, 2));
+    }
+
+    return true;
+  }
+
+  /**
+   * The method creates the date parameter from a query parameter of the form name=value after the
+   * context parameters have been substituted.
+   *
+   * @param param The substituted query parameter.
+   * @return The FhirQueryDateParam or null if the date cannot be parsed.
+   */
+  public static FhirQueryDateParam parse(String param) {
+
+    int index = param.indexOf('=');
+
+    if (index <= 0) return null;
+
+    FhirQueryDateParam dateParam = new FhirQueryDateParam();
+    dateParam.name = param.substring(0, index);
+
+    String value = param.substring(index + 1);
+
+    if (!value.isEmpty() && Character.isLetter(value.charAt(0)) && value.length() > 2) {
+      dateParam.prefix = value.substring(0, 2);
+      value = value.substring(2);
+    } else {
+      dateParam.prefix = "eq";
+    }
+
+    try {
+
+      DateTimeType dt = new DateTimeType(value);
+      dateParam.value = value;
+      dateParam.lowerBound = dt.getValue();
+      dateParam.upperBound = getUpperBound(dt);
+
+    } catch (Exception e) {
+
+      logger.error(" Unable to parse date {} for search parameter {}", value, dateParam.name);
+      return null;
+    }
+
+    return dateParam;
+  }
+
+  /**
+   * The method creates the date parameters that can be sent to the EHR for a merged query, so that
+   * the EHR returns only the resources in the date range covering all the data requirements instead
+   * of the complete history of the patient. A lower or upper bound is created for a search
+   * parameter only when every data requirement has such a bound for the parameter, the results are
+   * then still filtered using the date parameters of each data requirement.
+   *
+   * @param dateParams The parsed date parameters of each data requirement in the merged query.
+   * @return The date parameters in the form name=value covering all the data requirements.
+   */
+  public static List<String> getCoveringParams(List<List<FhirQueryDateParam>> dateParams) {
+
+    List<String> covering = new ArrayList<>();
+
+    if (dateParams == null || dateParams.isEmpty()) return covering;
+
+    Set<String> names = new TreeSet<>();
+    dateParams.get(0).forEach(param -> names.add(param.getName()));
+
+    for (String paramName : names) {
+
+      FhirQueryDateParam lowest = null;
+      FhirQueryDateParam highest = null;
+      boolean allLower = true;
+      boolean allUpper = true;
+
+      for (List<FhirQueryDateParam> params : dateParams) {
+
+        FhirQueryDateParam lower = null;
+        FhirQueryDateParam upper = null;
+
+        // The parameters of a data requirement are all applied, so the tightest bounds are used.
+        for (FhirQueryDateParam param : params) {
+
+          if (!paramName.equals(param.getName())) continue;
+
+          if (LOWER_BOUND_PREFIXES.contains(param.getPrefix())
+              && (lower == null || param.getLowerBound().after(lower.getLowerBound()))) {
+            lower = param;
+          }
+
+          if (UPPER_BOUND_PREFIXES.contains(param.getPrefix())
+              && (upper == null || param.getUpperBound().before(upper.getUpperBound()))) {
+            upper = param;
+          }
+        }
+
+        allLower = allLower && lower != null;
+        allUpper = allUpper && upper != null;
+
+        if (lower != null
+            && (lowest == null || lower.getLowerBound().before(lowest.getLowerBound()))) {
+          lowest = lower;
+        }
+
+        if (upper != null
+            && (highest == null || upper.getUpperBound().after(highest.getUpperBound()))) {
+          highest = upper;
+        }
+      }
+
+      if (allLower && lowest != null) covering.add(paramName + "=ge" + lowest.value);
+
+      if (allUpper && highest != null) covering.add(paramName + "=le" + highest.value);
+    }
+
+    return covering;
+  }
+
+  /**
+   * The method checks if the resource satisfies the date parameter. Resources that do not have the
+   * element being searched do not satisfy the parameter, as is the case for FHIR searches.
+   *
+   * @param res The resource to be checked.
+   * @return true if the resource satisfies the date parameter.
+   */
+  public boolean matches(Resource res) {
+
+    Date[] range = getResourceDateRange(res);
+
+    if (range == null) return false;
+
+    Date resLower = range[0];
+    Date resUpper = range[1];
+
+    switch (prefix) {
+      case "ge":
+        return resUpper == null || !resUpper.before(lowerBound);
+      case "gt":
+        return resUpper == null || resUpper.after(upperBound);
+      case "le":
+        return resLower == null || !resLower.after(upperBound);
+      case "lt":
+        return resLower == null || resLower.before(lowerBound);
+      default:
+        return resLower != null
+            && resUpper != null
+            && !resLower.before(lowerBound)
+            && !resUpper.after(upperBound);
+    }
+  }
+
+  private Date[] getResourceDateRange(Resource res) {
+
+    if (LAST_UPDATED_PARAM.equals(name)) {
+
+      if (res.hasMeta() && res.getMeta().hasLastUpdated())
+        return getRange(res.getMeta().getLastUpdatedElement());
+
+      return null;
+    }
+
+    Map<String, String> params = SUPPORTED_PARAMS.get(res.getResourceType());
+
+    if (params == null || !params.containsKey(name)) return null;
+
+    try {
+
+      Property property = res.getNamedProperty(params.get(name));
+
+      if (property == null || !property.hasValues()) return null;
+
+      Base value = property.getValues().get(0);
+
+      if (value instanceof BaseDateTimeType) {
+        return getRange((BaseDateTimeType) value);
+      } else if (value instanceof Period) {
+
+        Period period = (Period) value;
+        Date start = period.hasStart() ? period.getStart() : null;
+        Date end = period.hasEnd() ? getUpperBound(period.getEndElement()) : null;
+
+        if (start != null || end != null) return new Date[] {start, end};
+      }
+
+    } catch (FHIRException e) {
+      logger.error(" Unable to get the {} element from {}", name, res.getResourceType(), e);
+    }
+
+    return null;
+  }
+
+  private static Date[] getRange(BaseDateTimeType dt) {
+
+    if (dt.getValue() == null) return null;
+
+    return new Date[] {dt.getValue(), getUpperBound(dt)};
+  }
+
+  private static Date getUpperBound(BaseDateTimeType dt) {
+
+    TemporalPrecisionEnum precision = dt.getPrecision();
+
+    if (precision == null || precision == TemporalPrecisionEnum.MILLI) return dt.getValue();
+
+    return new Date(precision.add(dt.getValue(), 1).getTime() - 1);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getPrefix() {
+    return prefix;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  public Date getLowerBound() {
+    return lowerBound;
+  }
+
+  public Date getUpperBound() {
+    return upperBound;
+  }
+}
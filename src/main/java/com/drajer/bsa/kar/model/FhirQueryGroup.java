@@ -0,0 +1,97 @@
+package com.drajer.bsa.kar.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>FhirQueryGroup</h1>
+ *
+ * This class represents a single query that is executed against the EHR on behalf of one or more
+ * DataRequirements of a Knowledge Artifact. The results of the query are shared by all the
+ * DataRequirements in the group. When the DataRequirements in the group differ only by their date
+ * parameters, the date parameters are not part of the query and are applied on the results for each
+ * DataRequirement instead.
+ */
+public class FhirQueryGroup {
+
+  private final Logger logger = LoggerFactory.getLogger(FhirQueryGroup.class);
+
+  /** The resource type being queried */
+  private ResourceType resourceType;
+
+  /** The query to be executed, before the context parameters are substituted. */
+  private String queryString;
+
+  /** The DataRequirement Ids that are satisfied by the query. */
+  private Set<String> dataReqIds;
+
+  /**
+   * The date parameters that have to be applied on the results of the query for a specific
+   * DataRequirement. The Key is the DataRequirement Id.
+   */
+  private HashMap<String, List<String>> dateParams;
+
+  public FhirQueryGroup(ResourceType rt, String query) {
+    resourceType = rt;
+    queryString = query;
+    dataReqIds = new LinkedHashSet<>();
+    dateParams = new HashMap<>();
+  }
+
+  public void addDataReqId(String dataReqId, List<String> params) {
+
+    dataReqIds.add(dataReqId);
+
+    if (params != null && !params.isEmpty()) {
+      dateParams.put(dataReqId, new ArrayList<>(params));
+    }
+  }
+
+  public List<String> getDateParams(String dataReqId) {
+
+    if (dateParams.containsKey(dataReqId)) return dateParams.get(dataReqId);
+
+    return new ArrayList<>();
+  }
+
+  public ResourceType getResourceType() {
+    return resourceType;
+  }
+
+  public void setResourceType(ResourceType resourceType) {
+    this.resourceType = resourceType;
+  }
+
+  public String getQueryString() {
+    return queryString;
+  }
+
+  public void setQueryString(String queryString) {
+    this.queryString = queryString;
+  }
+
+  public Set<String> getDataReqIds() {
+    return dataReqIds;
+  }
+
+  public Map<String, List<String>> getDateParams() {
+    return dateParams;
+  }
+
+  public void log() {
+
+    logger.info(" Query : {}, Resource Type : {}", queryString, resourceType);
+    logger.info(" Data Req Ids : {}", dataReqIds);
+    dateParams.forEach(
+        (key, value) -> logger.info(" Date parameters for Data Req Id {} : {}", key, value));
+  }
+}
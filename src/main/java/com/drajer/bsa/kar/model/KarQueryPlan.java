@@ -0,0 +1,285 @@
+package com.drajer.bsa.kar.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>KarQueryPlan</h1>
+ *
+ * The KarQueryPlan is created once when the Knowledge Artifact is loaded and merges the queries
+ * specified by the DataRequirements of all the actions in the artifact. DataRequirements whose
+ * queries are the same (ignoring the order of the parameters) or differ only by the date parameters
+ * are grouped together, so that the EHR is queried once for the group and the results are shared by
+ * all the actions that need them. Optionally the referenced resources (for e.g Medications) are
+ * retrieved as part of the same query using _include.
+ */
+public class KarQueryPlan {
+
+  private final Logger logger = LoggerFactory.getLogger(KarQueryPlan.class);
+
+  private static final String INCLUDE_PARAM = "_include=";
+
+  /** The references that can be retrieved along with the resource using _include. */
+  private static final Map<ResourceType, String> REFERENCE_INCLUDES =
+      new EnumMap<>(ResourceType.class);
+
+  static {
+    REFERENCE_INCLUDES.put(ResourceType.MedicationRequest, "MedicationRequest:medication");
+    REFERENCE_INCLUDES.put(
+        ResourceType.MedicationAdministration, "MedicationAdministration:medication");
+    REFERENCE_INCLUDES.put(ResourceType.MedicationDispense, "MedicationDispense:medication");
+    REFERENCE_INCLUDES.put(ResourceType.DiagnosticReport, "DiagnosticReport:result");
+  }
+
+  /** The queries from which the plan was created, the Key is the DataRequirement Id. */
+  private Map<String, FhirQueryFilter> queries;
+
+  /** Indicates if referenced resources have to be retrieved using _include. */
+  private boolean includeReferences;
+
+  /** The query groups in the plan. */
+  private List<FhirQueryGroup> groups;
+
+  /** The query group for each DataRequirement Id. */
+  private HashMap<String, FhirQueryGroup> groupsByDataReqId;
+
+  private KarQueryPlan() {
+    groups = new ArrayList<>();
+    groupsByDataReqId = new HashMap<>();
+  }
+
+  /**
+   * The method creates the query plan for the queries of a Knowledge Artifact.
+   *
+   * @param queries The queries of the Knowledge Artifact keyed by DataRequirement Id.
+   * @param includeReferences Indicates if the referenced resources have to be retrieved using
+   *     _include.
+   * @return The query plan.
+   */
+  public static KarQueryPlan createPlan(
+      Map<String, FhirQueryFilter> queries, boolean includeReferences) {
+
+    KarQueryPlan plan = new KarQueryPlan();
+    plan.queries = queries != null ? queries : new HashMap<>();
+    plan.includeReferences = includeReferences;
+
+    // Collect the queries that can be merged, sorted by data req id to keep the plan stable.
+    Map<String, List<PlannedQuery>> queriesByKey = new LinkedHashMap<>();
+
+    for (Map.Entry<String, FhirQueryFilter> entry : new TreeMap<>(plan.queries).entrySet()) {
+
+      PlannedQuery pq = PlannedQuery.parse(entry.getKey(), entry.getValue());
+
+      if (pq != null) {
+        queriesByKey.computeIfAbsent(pq.getKey(), k -> new ArrayList<>()).add(pq);
+      }
+    }
+
+    for (List<PlannedQuery> pqs : queriesByKey.values()) {
+      plan.addGroup(pqs);
+    }
+
+    return plan;
+  }
+
+  /**
+   * The method creates a new query plan after replacing the default queries with the custom queries
+   * configured for the Knowledge Artifact.
+   *
+   * @param customQueries The custom queries keyed by DataRequirement Id.
+   * @return The query plan with the custom queries.
+   */
+  public KarQueryPlan customize(Map<String, String> customQueries) {
+
+    HashMap<String, FhirQueryFilter> customizedQueries = new HashMap<>();
+
+    for (Map.Entry<String, FhirQueryFilter> entry : queries.entrySet()) {
+
+      FhirQueryFilter filter = entry.getValue();
+      FhirQueryFilter customized = filter;
+
+      String customQueryId = null;
+      if (customQueries.containsKey(entry.getKey())) customQueryId = entry.getKey();
+      else if (filter.getRelatedDataId() != null
+          && customQueries.containsKey(filter.getRelatedDataId()))
+        customQueryId = filter.getRelatedDataId();
+
+      if (customQueryId != null) {
+        customized =
+            new FhirQueryFilter(customQueries.get(customQueryId), true, filter.getResourceType());
+        customized.setDataReqId(filter.getDataReqId());
+        customized.setRelatedDataId(filter.getRelatedDataId());
+      }
+
+      customizedQueries.put(entry.getKey(), customized);
+    }
+
+    return createPlan(customizedQueries, includeReferences);
+  }
+
+  private void addGroup(List<PlannedQuery> pqs) {
+
+    PlannedQuery first = pqs.get(0);
+
+    boolean sameDateParams = true;
+    boolean customized = false;
+    for (PlannedQuery pq : pqs) {
+      sameDateParams = sameDateParams && pq.getDateParams().equals(first.getDateParams());
+      customized = customized || pq.isCustomized();
+    }
+
+    // Date parameters are dropped from the query and applied on the results when they differ.
+    String query = first.getQuery();
+    if (!sameDateParams) {
+      query = first.getPath() + "?" + String.join("&", first.getParams());
+    }
+
+    String include = REFERENCE_INCLUDES.get(first.getResourceType());
+    if (includeReferences
+        && !customized
+        && include != null
+        && query.contains("?")
+        && !query.contains(INCLUDE_PARAM)) {
+      query = query + "&" + INCLUDE_PARAM + include;
+    }
+
+    FhirQueryGroup group = new FhirQueryGroup(first.getResourceType(), query);
+
+    for (PlannedQuery pq : pqs) {
+      group.addDataReqId(pq.getDataReqId(), sameDateParams ? null : pq.getDateParams());
+      groupsByDataReqId.put(pq.getDataReqId(), group);
+    }
+
+    groups.add(group);
+  }
+
+  public boolean hasGroup(String dataReqId) {
+    return dataReqId != null && groupsByDataReqId.containsKey(dataReqId);
+  }
+
+  public FhirQueryGroup getGroup(String dataReqId) {
+    return dataReqId != null ? groupsByDataReqId.get(dataReqId) : null;
+  }
+
+  public List<FhirQueryGroup> getGroups() {
+    return Collections.unmodifiableList(groups);
+  }
+
+  public boolean isIncludeReferences() {
+    return includeReferences;
+  }
+
+  public void log() {
+
+    logger.info(
+        " Query Plan has {} queries for {} data requirements",
+        groups.size(),
+        groupsByDataReqId.size());
+
+    groups.forEach(FhirQueryGroup::log);
+  }
+
+  /** The query for a single DataRequirement split into its parts for planning. */
+  private static class PlannedQuery {
+
+    private String dataReqId;
+    private ResourceType resourceType;
+    private boolean customized;
+    private String query;
+    private String path;
+    private List<String> params;
+    private List<String> dateParams;
+    private String key;
+
+    static PlannedQuery parse(String dataReqId, FhirQueryFilter filter) {
+
+      if (filter == null
+          || filter.getResourceType() == null
+          || StringUtils.isBlank(filter.getQueryString())) return null;
+
+      PlannedQuery pq = new PlannedQuery();
+      pq.dataReqId = dataReqId;
+      pq.resourceType = filter.getResourceType();
+      pq.customized = Boolean.TRUE.equals(filter.getCustomized());
+      pq.query = StringUtils.removeStart(filter.getQueryString().trim(), "/");
+      pq.params = new ArrayList<>();
+      pq.dateParams = new ArrayList<>();
+
+      int index = pq.query.indexOf('?');
+
+      if (index < 0) {
+
+        // Reads by id are only merged when they are identical.
+        pq.path = pq.query;
+        pq.key = pq.query;
+        return pq;
+      }
+
+      pq.path = pq.query.substring(0, index);
+
+      for (String param : pq.query.substring(index + 1).split("&")) {
+
+        if (param.isEmpty()) continue;
+
+        if (FhirQueryDateParam.isSupported(pq.resourceType, param)) pq.dateParams.add(param);
+        else pq.params.add(param);
+      }
+
+      Collections.sort(pq.dateParams);
+
+      List<String> sortedParams = new ArrayList<>(pq.params);
+      Collections.sort(sortedParams);
+
+      // Queries without any other parameters are merged only if the date parameters are the same.
+      if (sortedParams.isEmpty()) sortedParams.addAll(pq.dateParams);
+
+      pq.key = pq.path + "?" + String.join("&", sortedParams);
+
+      return pq;
+    }
+
+    String getDataReqId() {
+      return dataReqId;
+    }
+
+    ResourceType getResourceType() {
+      return resourceType;
+    }
+
+    boolean isCustomized() {
+      return customized;
+    }
+
+    String getQuery() {
+      return query;
+    }
+
+    String getPath() {
+      return path;
+    }
+
+    List<String> getParams() {
+      return params;
+    }
+
+    List<String> getDateParams() {
+      return dateParams;
+    }
+
+    String getKey() {
+      return key;
+    }
+  }
+}
@@ -0,0 +1,243 @@
+package com.drajer.bsa.kar.model;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.hl7.fhir.r4.model.Bundle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>KarSnapshotCache</h1>
+ *
+ * The KarSnapshotCache reads the KAR Bundles from the KAR files. Each parsed Bundle is written to
+ * the snapshot directory as a serialized snapshot named by the SHA-256 hash of the KAR file, when
+ * the KAR file is unchanged on a restart the Bundle is read from the snapshot instead of being
+ * parsed from JSON. The snapshots of KAR files that no longer exist are removed by {@link
+ * #removeUnusedSnapshots()}.
+ *
+ * <p>The snapshots are read using a serialization filter, only the FHIR model classes and the JDK
+ * classes they use can be read and the depth and size of a snapshot are limited. When the JVM does
+ * not support serialization filters the snapshots are not read. The snapshot directory should still
+ * only be writable by the application. The methods are thread safe, a new JSON parser is created
+ * for each KAR file.
+ */
+public class KarSnapshotCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(KarSnapshotCache.class);
+
+  private static final String SNAPSHOT_EXT = ".ser";
+  private static final String TEMP_EXT = ".tmp";
+
+  /** The classes that can be read from a snapshot, any other class is rejected. */
+  private static final String SNAPSHOT_CLASSES =
+      "org.hl7.fhir.**;ca.uhn.fhir.model.api.*;java.lang.Object;java.lang.Enum;java.lang.Boolean;"
+          + "java.lang.Number;java.lang.Integer;java.lang.Long;java.lang.String;java.math.*;"
+          + "java.util.*;sun.util.calendar.ZoneInfo;!*";
+
+  /** The maximum nesting depth of the objects of a snapshot. */
+  private static final int MAX_SNAPSHOT_DEPTH = 100;
+
+  /** The maximum size of a snapshot relative to the size of its KAR file. */
+  private static final int MAX_SNAPSHOT_SIZE_RATIO = 10;
+
+  private static final long MIN_SNAPSHOT_SIZE_LIMIT = 1024L * 1024L;
+
+  private final FhirContext context;
+  private final File snapshotDirectory;
+
+  /** The snapshots read or written since the cache was created. */
+  private final Set<String> usedSnapshots = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param context The FhirContext used to parse the KAR files.
+   * @param snapshotDirectory The directory of the snapshots, when null the KAR files are always
+   *     parsed.
+   */
+  public KarSnapshotCache(FhirContext context, String snapshotDirectory) {
+    this.context = context;
+    this.snapshotDirectory = snapshotDirectory != null ? new File(snapshotDirectory) : null;
+
+    if (this.snapshotDirectory != null
+        && !this.snapshotDirectory.isDirectory()
+        && !this.snapshotDirectory.mkdirs()) {
+      logger.error(" Unable to create the KAR snapshot directory {}", snapshotDirectory);
+    }
+  }
+
+  /**
+   * The method reads the KAR Bundle from the snapshot of the KAR file when it exists, otherwise the
+   * KAR file is parsed and the snapshot is written.
+   *
+   * @param kar The KAR file.
+   * @return The Bundle, null if the KAR file cannot be read.
+   */
+  public Bundle readKar(File kar) {
+
+    if (snapshotDirectory == null || !snapshotDirectory.isDirectory()) {
+      return parseKar(kar);
+    }
+
+    String hash;
+    try {
+      hash = Files.asByteSource(kar).hash(Hashing.sha256()).toString();
+    } catch (IOException e) {
+      logger.error(" Unable to compute the hash of KAR File {}", kar, e);
+      return parseKar(kar);
+    }
+
+    usedSnapshots.add(hash + SNAPSHOT_EXT);
+    File snapshot = new File(snapshotDirectory, hash + SNAPSHOT_EXT);
+
+    if (snapshot.isFile()) {
+
+      Bundle bundle =
+          readSnapshot(
+              snapshot, Math.max(MIN_SNAPSHOT_SIZE_LIMIT, kar.length() * MAX_SNAPSHOT_SIZE_RATIO));
+
+      if (bundle != null) {
+        logger.info(" Read KAR File {} from snapshot {}", kar, snapshot.getName());
+        return bundle;
+      }
+    }
+
+    Bundle bundle = parseKar(kar);
+
+    if (bundle != null) {
+      writeSnapshot(bundle, snapshot);
+    }
+
+    return bundle;
+  }
+
+  /** The method removes the snapshots that were not read or written by this cache. */
+  public void removeUnusedSnapshots() {
+
+    if (snapshotDirectory == null) {
+      return;
+    }
+
+    File[] snapshots = snapshotDirectory.listFiles((dir, name) -> name.endsWith(SNAPSHOT_EXT));
+
+    if (snapshots != null) {
+      for (File snapshot : snapshots) {
+
+        if (!usedSnapshots.contains(snapshot.getName()) && snapshot.delete()) {
+          logger.info(" Removed unused KAR snapshot {}", snapshot.getName());
+        }
+      }
+    }
+  }
+
+  private Bundle parseKar(File kar) {
+
+    logger.info(" Parsing KAR File {}", kar);
+
+    try (InputStream in = new FileInputStream(kar)) {
+      return context.newJsonParser().parseResource(Bundle.class, in);
+    } catch (Exception e) {
+      logger.error(" Exception Reading KAR File {}", kar, e);
+    }
+
+    return null;
+  }
+
+  private Bundle readSnapshot(File snapshot, long maxSize) {
+
+    if (snapshot.length() > maxSize) {
+      logger.error(
+          " KAR snapshot {} is larger than {} bytes, parsing the KAR File", snapshot, maxSize);
+      return null;
+    }
+
+    try (ObjectInputStream in =
+        new ObjectInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+
+      if (!setSnapshotFilter(in, maxSize)) {
+        logger.error(" Serialization filters are not supported, parsing the KAR File");
+        return null;
+      }
+
+      return (Bundle) in.readObject();
+    } catch (Exception e) {
+      logger.error(" Unable to read KAR snapshot {}, parsing the KAR File", snapshot, e);
+    }
+
+    return null;
+  }
+
+  /**
+   * The method sets the serialization filter of the snapshot stream. The filter API is in java.io
+   * from Java 9 and in sun.misc in Java 8, so it is used by reflection.
+   *
+   * @return true if the filter is set, false if the JVM does not support serialization filters.
+   */
+  private static boolean setSnapshotFilter(ObjectInputStream in, long maxSize)
+      throws ReflectiveOperationException {
+
+    String pattern =
+        "maxdepth=" + MAX_SNAPSHOT_DEPTH + ";maxbytes=" + maxSize + ";" + SNAPSHOT_CLASSES;
+
+    try {
+      Class<?> filterClass = Class.forName("java.io.ObjectInputFilter");
+      Object filter =
+          Class.forName("java.io.ObjectInputFilter$Config")
+              .getMethod("createFilter", String.class)
+              .invoke(null, pattern);
+      ObjectInputStream.class.getMethod("setObjectInputFilter", filterClass).invoke(in, filter);
+      return true;
+    } catch (ClassNotFoundException e) {
+      logger.debug(" java.io.ObjectInputFilter is not available");
+    }
+
+    try {
+      Class<?> filterClass = Class.forName("sun.misc.ObjectInputFilter");
+      Class<?> configClass = Class.forName("sun.misc.ObjectInputFilter$Config");
+      Object filter = configClass.getMethod("createFilter", String.class).invoke(null, pattern);
+      Method setFilter =
+          configClass.getMethod("setObjectInputFilter", ObjectInputStream.class, filterClass);
+      setFilter.invoke(null, in, filter);
+      return true;
+    } catch (ClassNotFoundException e) {
+      logger.debug(" sun.misc.ObjectInputFilter is not available");
+    }
+
+    return false;
+  }
+
+  private void writeSnapshot(Bundle bundle, File snapshot) {
+
+    File temp = new File(snapshotDirectory, snapshot.getName() + TEMP_EXT);
+
+    try {
+      try (ObjectOutputStream out =
+          new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+        out.writeObject(bundle);
+      }
+
+      java.nio.file.Files.move(
+          temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (Exception e) {
+      logger.error(" Unable to write KAR snapshot {}", snapshot, e);
+
+      if (temp.exists() && !temp.delete()) {
+        logger.error(" Unable to delete {}", temp);
+      }
+    }
+  }
+}
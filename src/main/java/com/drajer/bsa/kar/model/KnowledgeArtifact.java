@@ -1,5 +1,7 @@
 package com.drajer.bsa.kar.model;
 
+import com.drajer.bsa.kar.condition.KarCqlEngine;
+import com.drajer.ecrapp.config.TriggerCodeFilter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -73,6 +75,38 @@ public class KnowledgeArtifact {
    */
   private HashMap<String, FhirQueryFilter> defaultQueries;
 
+  /**
+   * This attribute represents the plan for executing the default queries, where queries that can be
+   * shared across DataRequirements are merged.
+   */
+  private KarQueryPlan queryPlan;
+
+  /**
+   * This attribute represents the query plan with the custom queries configured for the Knowledge
+   * Artifact, created when it is first used. It is kept with the Knowledge Artifact so that it is
+   * discarded when the Knowledge Artifact is reloaded.
+   */
+  private volatile KarQueryPlan customizedQueryPlan;
+
+  /**
+   * This attribute represents the index of the codes of the ValueSets used by the code filters of
+   * the DataRequirements, used to match the codes of the resources against the ValueSets.
+   */
+  private TriggerCodeIndex triggerCodeIndex;
+
+  /**
+   * This attribute represents the Bloom filter of the codes of the ValueSets of the artifact, used
+   * to reject the codes that are not trigger codes before the codes are matched.
+   */
+  private TriggerCodeFilter triggerCodeFilter;
+
+  /**
+   * This attribute represents the CQL engine used to evaluate the CQL conditions and measures of
+   * the artifact, the translated libraries and value set expansions are retained for the life of
+   * the artifact.
+   */
+  private KarCqlEngine cqlEngine;
+
   /**
    * This attribute stores different types of resources that are required for the processing of the
    * Knowledge Artifact. These include the following currently 1. ValueSet Instances that are
@@ -370,6 +404,72 @@ public class KnowledgeArtifact {
     this.defaultQueries = defaultQueries;
   }
 
+  public KarQueryPlan getQueryPlan() {
+    return queryPlan;
+  }
+
+  public void setQueryPlan(KarQueryPlan queryPlan) {
+    this.queryPlan = queryPlan;
+    this.customizedQueryPlan = null;
+  }
+
+  /**
+   * The method returns the query plan with the custom queries, the plan is created on the first
+   * call.
+   *
+   * @param customQueries The custom queries of the Knowledge Artifact keyed by DataRequirement Id.
+   * @return The query plan with the custom queries, or null when there is no query plan.
+   */
+  public KarQueryPlan getCustomizedQueryPlan(Map<String, String> customQueries) {
+
+    KarQueryPlan plan = customizedQueryPlan;
+
+    if (plan == null && queryPlan != null) {
+      plan = queryPlan.customize(customQueries);
+      customizedQueryPlan = plan;
+    }
+
+    return plan;
+  }
+
+  public TriggerCodeIndex getTriggerCodeIndex() {
+    return triggerCodeIndex;
+  }
+
+  public void setTriggerCodeIndex(TriggerCodeIndex triggerCodeIndex) {
+    this.triggerCodeIndex = triggerCodeIndex;
+  }
+
+  public TriggerCodeFilter getTriggerCodeFilter() {
+    return triggerCodeFilter;
+  }
+
+  public void setTriggerCodeFilter(TriggerCodeFilter triggerCodeFilter) {
+    this.triggerCodeFilter = triggerCodeFilter;
+  }
+
+  /** Returns the ValueSets that the artifact depends on. */
+  public List<ValueSet> getDependentValueSets() {
+
+    List<ValueSet> valueSets = new ArrayList<>();
+
+    if (dependencies.containsKey(ResourceType.ValueSet)) {
+      for (Resource res : dependencies.get(ResourceType.ValueSet).values()) {
+        valueSets.add((ValueSet) res);
+      }
+    }
+
+    return valueSets;
+  }
+
+  public KarCqlEngine getCqlEngine() {
+    return cqlEngine;
+  }
+
+  public void setCqlEngine(KarCqlEngine cqlEngine) {
+    this.cqlEngine = cqlEngine;
+  }
+
   public HashMap<String, String> getDataIdRelatedDataIdMap() {
     return dataIdRelatedDataIdMap;
   }
@@ -408,6 +508,10 @@ public class KnowledgeArtifact {
           (key, value) -> logger.info(" Data Req Id : {}, Query String: {}", key, value));
     }
 
+    if (queryPlan != null) {
+      queryPlan.log();
+    }
+
     logger.info(" **** END Printing KnowledgeArtifactSummary **** ");
   }
 
@@ -1,6 +1,9 @@
 package com.drajer.bsa.kar.model;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -11,6 +14,10 @@ import org.springframework.stereotype.Component;
  * point of time. The class implements a Singleton pattern so that it can be accessed
  * anytime/anywhere from the rest of the modules.
  *
+ * <p>The artifacts are held in a map that is never modified after it is published, changes copy the
+ * map and replace it. Reloading a KAR therefore never exposes a partially updated map, and the
+ * executions that already obtained an artifact continue with that version.
+ *
  * @author nbashyam
  * @since 2021-04-15
  */
@@ -20,34 +27,66 @@ public class KnowledgeArtifactRepositorySystem {
   private final Logger logger = LoggerFactory.getLogger(KnowledgeArtifactRepositorySystem.class);
 
   /** The list of Knowledge Artifacts accessible by its identifiers. */
-  HashMap<String, KnowledgeArtifact> artifacts;
+  volatile HashMap<String, KnowledgeArtifact> artifacts;
 
   private KnowledgeArtifactRepositorySystem() {
     artifacts = new HashMap<>();
   }
 
-  public HashMap<String, KnowledgeArtifact> getArtifacts() {
-    return artifacts;
+  /**
+   * Returns a read only view of the artifacts, the view is not affected by later changes to the
+   * repository.
+   *
+   * @return The artifacts keyed by their version unique id.
+   */
+  public Map<String, KnowledgeArtifact> getArtifacts() {
+    return Collections.unmodifiableMap(artifacts);
   }
 
-  public void setArtifacts(HashMap<String, KnowledgeArtifact> artifacts) {
-    this.artifacts = artifacts;
+  public synchronized void setArtifacts(Map<String, KnowledgeArtifact> artifacts) {
+    this.artifacts = new HashMap<>(artifacts);
   }
 
-  public void remove(String karId) {
+  public synchronized void remove(String karId) {
 
-    if (artifacts.containsKey(karId)) artifacts.remove(karId);
+    if (artifacts.containsKey(karId)) {
+      HashMap<String, KnowledgeArtifact> arts = new HashMap<>(artifacts);
+      arts.remove(karId);
+      artifacts = arts;
+    }
   }
 
-  public void add(KnowledgeArtifact kar) {
+  public synchronized void add(KnowledgeArtifact kar) {
 
-    if (!artifacts.containsKey(kar.getVersionUniqueId()))
-      artifacts.put(kar.getVersionUniqueId(), kar);
+    if (!artifacts.containsKey(kar.getVersionUniqueId())) {
+      HashMap<String, KnowledgeArtifact> arts = new HashMap<>(artifacts);
+      arts.put(kar.getVersionUniqueId(), kar);
+      artifacts = arts;
+    }
+  }
+
+  /**
+   * Adds or replaces the artifacts with a single update of the repository, used when the KARs are
+   * reloaded.
+   *
+   * @param kars The artifacts, replacing the artifacts with the same version unique id.
+   */
+  public synchronized void replace(Collection<KnowledgeArtifact> kars) {
+
+    HashMap<String, KnowledgeArtifact> arts = new HashMap<>(artifacts);
+
+    for (KnowledgeArtifact kar : kars) {
+      arts.put(kar.getVersionUniqueId(), kar);
+    }
+
+    artifacts = arts;
   }
 
   public KnowledgeArtifact getById(String id) {
 
-    if (artifacts != null && artifacts.containsKey(id)) return artifacts.get(id);
+    HashMap<String, KnowledgeArtifact> arts = artifacts;
+
+    if (arts != null && arts.containsKey(id)) return arts.get(id);
     else return null;
   }
 
@@ -0,0 +1,189 @@
+package com.drajer.bsa.kar.model;
+
+import com.drajer.eca.model.MatchedTriggerCodes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.DataRequirement;
+import org.hl7.fhir.r4.model.DataRequirement.DataRequirementCodeFilterComponent;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.ValueSet.ConceptReferenceComponent;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
+import org.hl7.fhir.r4.model.ValueSet.ValueSetExpansionContainsComponent;
+import org.javatuples.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>TriggerCodeIndex</h1>
+ *
+ * The TriggerCodeIndex is created once when the Knowledge Artifact is loaded. It maps each code
+ * (system|code) of the ValueSets used by the code filters of the DataRequirements in the artifact
+ * to the urls of the ValueSets containing the code. The codes of a resource are then matched
+ * against the ValueSets of all the code filters using one lookup per coding, instead of searching
+ * each ValueSet for each coding.
+ *
+ * <p>The matches produced are the same as the matches produced by
+ * BsaServiceUtils.isCodeableConceptPresentInValueSet.
+ */
+public class TriggerCodeIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(TriggerCodeIndex.class);
+
+  /** The urls of the ValueSets containing the code, the Key is system|code. */
+  private final Map<String, Set<String>> valueSetsByCode = new HashMap<>();
+
+  /** The urls of the ValueSets that are indexed. */
+  private final Set<String> indexedValueSets = new HashSet<>();
+
+  private TriggerCodeIndex() {}
+
+  /**
+   * The method creates the index for the ValueSets referenced by the code filters of the
+   * DataRequirements of all the actions in the artifact, the action map includes the sub actions.
+   *
+   * @param art The Knowledge Artifact.
+   * @return The index.
+   */
+  public static TriggerCodeIndex createIndex(KnowledgeArtifact art) {
+
+    TriggerCodeIndex index = new TriggerCodeIndex();
+
+    if (art.getActionMap() != null) {
+
+      for (BsaAction act : art.getActionMap().values()) {
+        index.addAction(art, act);
+      }
+    }
+
+    logger.info(
+        " Created trigger code index with {} codes for {} value sets ",
+        index.valueSetsByCode.size(),
+        index.indexedValueSets.size());
+
+    return index;
+  }
+
+  private void addAction(KnowledgeArtifact art, BsaAction act) {
+
+    if (act.getInputData() != null) {
+
+      for (DataRequirement dr : act.getInputData()) {
+
+        for (DataRequirementCodeFilterComponent drcf : dr.getCodeFilter()) {
+
+          if (drcf.getValueSet() != null) {
+
+            Resource vsr = art.getDependentResource(ResourceType.ValueSet, drcf.getValueSet());
+
+            if (vsr != null) {
+              addValueSet(drcf.getValueSet(), (ValueSet) vsr);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private void addValueSet(String url, ValueSet vs) {
+
+    if (!indexedValueSets.add(url)) {
+      return;
+    }
+
+    if (vs.hasCompose()) {
+
+      for (ConceptSetComponent csc : vs.getCompose().getInclude()) {
+
+        if (csc.getSystem() != null) {
+
+          for (ConceptReferenceComponent crc : csc.getConcept()) {
+            addCode(csc.getSystem(), crc.getCode(), url);
+          }
+        }
+      }
+    }
+
+    if (vs.hasExpansion()) {
+
+      for (ValueSetExpansionContainsComponent vsecc : vs.getExpansion().getContains()) {
+        addCode(vsecc.getSystem(), vsecc.getCode(), url);
+      }
+    }
+  }
+
+  private void addCode(String system, String code, String url) {
+
+    if (system != null && code != null) {
+      valueSetsByCode.computeIfAbsent(system + "|" + code, key -> new HashSet<>()).add(url);
+    }
+  }
+
+  /**
+   * @param url The url of the ValueSet.
+   * @return true if the codes of the ValueSet are in the index.
+   */
+  public boolean isIndexed(String url) {
+    return indexedValueSets.contains(url);
+  }
+
+  /**
+   * @param system The code system.
+   * @param code The code.
+   * @return The urls of the indexed ValueSets containing the code.
+   */
+  public Set<String> getValueSetsForCode(String system, String code) {
+    return valueSetsByCode.getOrDefault(system + "|" + code, Collections.emptySet());
+  }
+
+  /**
+   * The method checks if one of the codings of the CodeableConcept is present in the ValueSet.
+   *
+   * @param url The url of the ValueSet used by the code filter.
+   * @param vs The ValueSet.
+   * @param cd The CodeableConcept whose codes are matched.
+   * @param path The path of the CodeableConcept in the resource.
+   * @param valElem true if the CodeableConcept is the value of the resource.
+   * @return The matched code, null if none of the codes are present in the ValueSet.
+   */
+  public Pair<Boolean, MatchedTriggerCodes> match(
+      String url, ValueSet vs, CodeableConcept cd, String path, boolean valElem) {
+
+    if (cd == null) {
+      return null;
+    }
+
+    for (Coding c : cd.getCoding()) {
+
+      if (c.hasCode()
+          && c.hasSystem()
+          && getValueSetsForCode(c.getSystem(), c.getCode()).contains(url)) {
+
+        logger.info(" Match Found for code {} | {}", c.getSystem(), c.getCode());
+
+        MatchedTriggerCodes mtc = new MatchedTriggerCodes();
+        mtc.setValueSet(vs.getUrl());
+        mtc.setValueSetVersion(vs.getVersion());
+        mtc.setMatchedPath(path);
+
+        if (valElem) {
+          mtc.addValue(c.getSystem() + "|" + c.getCode());
+        } else {
+          mtc.addCode(c.getSystem() + "|" + c.getCode());
+        }
+
+        return new Pair<>(true, mtc);
+      }
+    }
+
+    return null;
+  }
+}
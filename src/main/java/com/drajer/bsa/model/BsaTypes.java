@@ -57,6 +57,18 @@ public final class BsaTypes {
     ABORTED
   }
 
+  public enum ReportTransportType {
+    DIRECT,
+    RESTFUL
+  }
+
+  public enum ReportDeliveryStatus {
+    PENDING,
+    IN_PROGRESS,
+    DELIVERED,
+    DEAD_LETTER
+  }
+
   public enum MessageType {
     CANCER_REPORT_MESSAGE,
     HEP_C_REPORT_MESSAGE,
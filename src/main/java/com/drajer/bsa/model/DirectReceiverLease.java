@@ -0,0 +1,63 @@
+package com.drajer.bsa.model;
+
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import org.hibernate.annotations.DynamicUpdate;
+
+/**
+ *
+ *
+ * <h1>DirectReceiverLease</h1>
+ *
+ * The Entity represents the ownership of the IMAP receiver of a Direct account. Only the instance
+ * holding an unexpired lease for the account receives its messages, the owner renews the lease
+ * periodically and another instance takes over the account when the lease expires.
+ */
+@Entity
+@Table(name = "direct_receiver_lease")
+@DynamicUpdate
+public class DirectReceiverLease {
+
+  /** The attribute represents the Direct account, the IMAP host, port and Direct user. */
+  @Id
+  @Column(name = "account", nullable = false, columnDefinition = "TEXT")
+  private String account;
+
+  /** The attribute represents the instance which owns the receiver of the account. */
+  @Column(name = "owner", nullable = false, columnDefinition = "TEXT")
+  private String owner;
+
+  /** The attribute represents the time after which the lease can be taken by another instance. */
+  @Column(name = "lease_expiry_time", nullable = false)
+  @Temporal(TemporalType.TIMESTAMP)
+  private Date leaseExpiryTime;
+
+  public String getAccount() {
+    return account;
+  }
+
+  public void setAccount(String account) {
+    this.account = account;
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  public void setOwner(String owner) {
+    this.owner = owner;
+  }
+
+  public Date getLeaseExpiryTime() {
+    return leaseExpiryTime;
+  }
+
+  public void setLeaseExpiryTime(Date leaseExpiryTime) {
+    this.leaseExpiryTime = leaseExpiryTime;
+  }
+}
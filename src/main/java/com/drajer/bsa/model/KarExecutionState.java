@@ -7,6 +7,7 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -39,7 +40,9 @@ import org.slf4j.LoggerFactory;
  * @since 2021-04-15
  */
 @Entity
-@Table(name = "kar_execution_state")
+@Table(
+    name = "kar_execution_state",
+    indexes = {@Index(name = "kar_execution_state_timer_key_idx", columnList = "timer_key")})
 @DynamicUpdate
 public class KarExecutionState {
 
@@ -78,6 +81,14 @@ public class KarExecutionState {
   @Column(name = "action_status", nullable = true, columnDefinition = "TEXT")
   private String actionStatus;
 
+  /**
+   * The attribute identifies the timer for which the state was saved, the key is made up of the
+   * HealthcareSetting, patient, encounter, Knowledge Artifact and action. It is used to coalesce
+   * the timers that are set for the same encounter by different notifications.
+   */
+  @Column(name = "timer_key", nullable = true, columnDefinition = "TEXT")
+  private String timerKey;
+
   /**
    * This attribute used for convenience to exchange the information as objects. The data itself
    * gets stored in the actionStatus attribute in the database.
@@ -117,4 +128,12 @@ public class KarExecutionState {
   public void setKarUniqueId(String karUniqueId) {
     this.karUniqueId = karUniqueId;
   }
+
+  public String getTimerKey() {
+    return timerKey;
+  }
+
+  public void setTimerKey(String timerKey) {
+    this.timerKey = timerKey;
+  }
 }
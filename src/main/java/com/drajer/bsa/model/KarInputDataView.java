@@ -0,0 +1,122 @@
+package com.drajer.bsa.model;
+
+import com.drajer.sof.utils.ResourceUtils;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Parameters.ParametersParameterComponent;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ResourceType;
+
+/**
+ *
+ *
+ * <h1>KarInputDataView</h1>
+ *
+ * The KarInputDataView is a read only snapshot of the input data of a KarProcessingData indexed by
+ * resource type. The CQL and FHIR Path engines retrieve the patient data from the view instead of
+ * rebuilding Bundles and Parameters for every condition. The view and everything derived from it is
+ * discarded by the KarProcessingData whenever new resources are added.
+ */
+public class KarInputDataView {
+
+  /** The deduplicated resources, the Key is the resource type name. */
+  private final Map<String, List<Resource>> resourcesByType;
+
+  /** The bundles containing the resources of a single type, the Key is the resource type name. */
+  private final Map<String, Bundle> bundlesByType;
+
+  /** The resolved input parameters of the actions, the Key is the action id. */
+  private final Map<String, List<ParametersParameterComponent>> inputParametersByAction;
+
+  /** The bundle containing all the resources, created when it is first requested. */
+  private Bundle bundle;
+
+  public KarInputDataView(Map<ResourceType, Set<Resource>> fhirInputDataByType) {
+
+    Map<String, List<Resource>> resources = new HashMap<>();
+
+    if (fhirInputDataByType != null) {
+      for (Map.Entry<ResourceType, Set<Resource>> entry : fhirInputDataByType.entrySet()) {
+
+        if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+          resources.put(
+              entry.getKey().toString(),
+              Collections.unmodifiableList(ResourceUtils.deduplicate(entry.getValue())));
+        }
+      }
+    }
+
+    this.resourcesByType = Collections.unmodifiableMap(resources);
+    this.bundlesByType = new ConcurrentHashMap<>();
+    this.inputParametersByAction = new ConcurrentHashMap<>();
+  }
+
+  public boolean isEmpty() {
+    return resourcesByType.isEmpty();
+  }
+
+  public List<Resource> getResourcesByType(String type) {
+    return resourcesByType.getOrDefault(type, Collections.emptyList());
+  }
+
+  /**
+   * The method returns a Bundle containing all the resources of the view. The Bundle is shared by
+   * all the callers and must not be modified.
+   *
+   * @return The Bundle or null when there are no resources.
+   */
+  public synchronized Bundle getBundle() {
+
+    if (bundle == null && !isEmpty()) {
+
+      Bundle bund = new Bundle();
+      for (List<Resource> resources : resourcesByType.values()) {
+        addEntries(bund, resources);
+      }
+      bundle = bund;
+    }
+
+    return bundle;
+  }
+
+  /**
+   * The method returns a Bundle containing the resources of a single type. The Bundle is shared by
+   * all the callers and must not be modified.
+   *
+   * @param type The resource type name.
+   * @return The Bundle or null when there are no resources of the type.
+   */
+  public Bundle getBundleByType(String type) {
+
+    List<Resource> resources = resourcesByType.get(type);
+
+    if (resources == null) {
+      return null;
+    }
+
+    return bundlesByType.computeIfAbsent(type, key -> addEntries(new Bundle(), resources));
+  }
+
+  public List<ParametersParameterComponent> getInputParameters(String actionId) {
+    return inputParametersByAction.get(actionId);
+  }
+
+  public void setInputParameters(String actionId, List<ParametersParameterComponent> params) {
+    inputParametersByAction.put(actionId, Collections.unmodifiableList(params));
+  }
+
+  private static Bundle addEntries(Bundle bund, List<Resource> resources) {
+
+    for (Resource r : resources) {
+      bund.addEntry(new BundleEntryComponent().setResource(r));
+    }
+
+    return bund;
+  }
+}
@@ -135,6 +135,15 @@ public class KarProcessingData {
   /** The public health message logged into the db as per the execution */
   PublicHealthMessage phm;
 
+  /** The fingerprint of the input data used to create the report in the current execution. */
+  String reportFingerprint;
+
+  /**
+   * The fingerprint of the input data of the last report submitted for the same patient, notified
+   * resource and KAR.
+   */
+  String previousReportFingerprint;
+
   /** The response data received from the TTP/PHA in FHIR format. */
   String fhirResponseData;
 
@@ -171,8 +180,28 @@ public class KarProcessingData {
   /** The type of job to be executed on the infrastructure */
   private BsaJobType jobType;
 
+  /**
+   * The EHR data shared by all the KARs processing the same notification, this may be null when the
+   * KAR is processed by itself (for e.g scheduled jobs).
+   */
+  private NotificationDataCache notificationDataCache;
+
+  /**
+   * The DataRequirement Ids whose queries were executed successfully, including the queries that
+   * did not return any resources, so that they are not executed again.
+   */
+  private Set<String> fetchedDataReqIds;
+
+  /**
+   * The read only view of the input data used by the condition evaluations, this is discarded
+   * whenever new input data or action output is added.
+   */
+  private KarInputDataView inputDataView;
+
   public void addActionOutput(String actionId, Resource res) {
 
+    invalidateInputDataView();
+
     if (actionOutputData.containsKey(actionId)) {
 
       actionOutputData.get(actionId).put(res.getIdElement().getId(), res);
@@ -186,6 +215,8 @@ public class KarProcessingData {
 
   public void addActionOutputById(String id, Resource res) {
 
+    invalidateInputDataView();
+
     if (res != null) {
 
       if (actionOutputDataById.containsKey(id)) actionOutputDataById.get(id).add(res);
@@ -278,6 +309,8 @@ public class KarProcessingData {
 
   public void addResourcesByType(ResourceType type, Set<Resource> res) {
 
+    invalidateInputDataView();
+
     if (res != null && !res.isEmpty()) {
 
       logger.info(" Resource Sizes : {}", res.size());
@@ -295,6 +328,8 @@ public class KarProcessingData {
 
   public void addResourceByType(ResourceType type, Resource res) {
 
+    invalidateInputDataView();
+
     if (res != null) {
 
       if (fhirInputDataByType.containsKey(type)) {
@@ -313,6 +348,8 @@ public class KarProcessingData {
   }
 
   public void addResourcesById(String id, Set<Resource> res) {
+
+    invalidateInputDataView();
     if (res != null && !res.isEmpty()) {
       fhirInputDataById.put(id, res);
     }
@@ -320,6 +357,8 @@ public class KarProcessingData {
 
   public void addResourceById(String dataReqId, Resource res) {
 
+    invalidateInputDataView();
+
     if (fhirInputDataById.containsKey(dataReqId)) {
       Set<Resource> resources = fhirInputDataById.get(dataReqId);
       resources.add(res);
@@ -335,6 +374,8 @@ public class KarProcessingData {
 
   public void addResourcesById(HashMap<String, Set<Resource>> res) {
 
+    invalidateInputDataView();
+
     if (res != null && res.size() > 0) {
 
       logger.info(RESOURCE_SIZES, res.size());
@@ -364,6 +405,8 @@ public class KarProcessingData {
 
   public void resetResourcesById(HashMap<String, Set<Resource>> res) {
 
+    invalidateInputDataView();
+
     if (res != null && res.size() > 0) {
 
       logger.info(RESOURCE_SIZES, res.size());
@@ -402,6 +445,7 @@ public class KarProcessingData {
     actionStatus = new HashMap<>();
     parametersForConditionEvaluation = new HashMap<>();
     resourcesById = new HashMap<>();
+    fetchedDataReqIds = new HashSet<>();
   }
 
   /**
@@ -422,27 +466,33 @@ public class KarProcessingData {
     return st;
   }
 
+  /**
+   * The method returns the input resources as a Bundle. The Bundle is built once and shared until
+   * new resources are added, hence it must not be modified by the callers.
+   *
+   * @return The Bundle or null when there are no input resources.
+   */
   public Bundle getInputResourcesAsBundle() {
+    return getInputDataView().getBundle();
+  }
 
-    Bundle bund = null;
-
-    if (fhirInputDataByType != null && fhirInputDataByType.size() > 0) {
-
-      bund = new Bundle();
-
-      for (Map.Entry<ResourceType, Set<Resource>> entry : fhirInputDataByType.entrySet()) {
-
-        Set<Resource> res = entry.getValue();
-
-        List<Resource> uniqueResources = ResourceUtils.deduplicate(res);
+  /**
+   * The method returns the read only view of the input resources, the view is built when it is
+   * first requested after the input data changes.
+   *
+   * @return KarInputDataView
+   */
+  public synchronized KarInputDataView getInputDataView() {
 
-        for (Resource r : uniqueResources) {
-          bund.addEntry(new BundleEntryComponent().setResource(r));
-        }
-      }
+    if (inputDataView == null) {
+      inputDataView = new KarInputDataView(fhirInputDataByType);
     }
 
-    return bund;
+    return inputDataView;
+  }
+
+  private synchronized void invalidateInputDataView() {
+    inputDataView = null;
   }
 
   public KnowledgeArtifact getKar() {
@@ -458,6 +508,7 @@ public class KarProcessingData {
   }
 
   public void setActionOutputData(HashMap<String, HashMap<String, Resource>> actionOutputData) {
+    invalidateInputDataView();
     this.actionOutputData = actionOutputData;
   }
 
@@ -498,6 +549,7 @@ public class KarProcessingData {
   }
 
   public void setFhirInputDataByType(HashMap<ResourceType, Set<Resource>> fhirInputDataByType) {
+    invalidateInputDataView();
     this.fhirInputDataByType = fhirInputDataByType;
   }
 
@@ -506,6 +558,7 @@ public class KarProcessingData {
   }
 
   public void setFhirInputDataById(HashMap<String, Set<Resource>> fhirInputDataById) {
+    invalidateInputDataView();
     this.fhirInputDataById = fhirInputDataById;
   }
 
@@ -622,6 +675,22 @@ public class KarProcessingData {
     this.phm = phm;
   }
 
+  public String getReportFingerprint() {
+    return reportFingerprint;
+  }
+
+  public void setReportFingerprint(String reportFingerprint) {
+    this.reportFingerprint = reportFingerprint;
+  }
+
+  public String getPreviousReportFingerprint() {
+    return previousReportFingerprint;
+  }
+
+  public void setPreviousReportFingerprint(String previousReportFingerprint) {
+    this.previousReportFingerprint = previousReportFingerprint;
+  }
+
   public String getKarIdForCustomQueries() {
 
     return kar.getKarId() + "-" + kar.getKarVersion();
@@ -664,6 +733,14 @@ public class KarProcessingData {
     this.jobType = jobType;
   }
 
+  public NotificationDataCache getNotificationDataCache() {
+    return notificationDataCache;
+  }
+
+  public void setNotificationDataCache(NotificationDataCache notificationDataCache) {
+    this.notificationDataCache = notificationDataCache;
+  }
+
   public boolean isDataAlreadyFetched(String dataReqId, String relatedDataId) {
 
     boolean returnVal = false;
@@ -673,13 +750,24 @@ public class KarProcessingData {
     // Check if the data is already retrieved.
     if (fhirInputDataById.containsKey(dataReqId)
         || (relatedDataId != null && fhirInputDataById.containsKey(relatedDataId))
-        || fhirInputDataById.containsKey(finalRelatedDataId)) {
+        || fhirInputDataById.containsKey(finalRelatedDataId)
+        || fetchedDataReqIds.contains(dataReqId)) {
       returnVal = true;
     }
 
     return returnVal;
   }
 
+  /**
+   * The method records that the query for the DataRequirement was executed, so that it is not
+   * executed again even when it did not return any resources.
+   *
+   * @param dataReqId The DataRequirement Id whose query was executed.
+   */
+  public void markDataFetched(String dataReqId) {
+    fetchedDataReqIds.add(dataReqId);
+  }
+
   public String getContextEncounterId() {
 
     if (notificationContext
@@ -769,6 +857,7 @@ public class KarProcessingData {
   }
 
   public void setActionOutputDataById(HashMap<String, Set<Resource>> actionOutputDataById) {
+    invalidateInputDataView();
     this.actionOutputDataById = actionOutputDataById;
   }
 
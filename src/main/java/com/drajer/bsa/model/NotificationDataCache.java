@@ -0,0 +1,92 @@
+package com.drajer.bsa.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>NotificationDataCache</h1>
+ *
+ * The NotificationDataCache holds the data retrieved from the EHR while processing a single
+ * notification. When multiple KARs are applied to the same notification, each KAR gets its own
+ * KarProcessingData but all of them share the same cache, so that a query needed by more than one
+ * KAR is executed against the EHR only once. Each KAR then applies its own filters on the shared
+ * results.
+ *
+ * <p>The cache is safe to be used from multiple threads. When two threads ask for the same key at
+ * the same time, only one of them executes the loader and the other waits for the result.
+ */
+public class NotificationDataCache {
+
+  private final Logger logger = LoggerFactory.getLogger(NotificationDataCache.class);
+
+  /**
+   * The data retrieved so far. The Key is either the search url or the Resource Type/Id that was
+   * used to read the data from the EHR.
+   */
+  private final ConcurrentHashMap<String, FutureTask<Object>> data;
+
+  public NotificationDataCache() {
+    data = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * The method returns the data for the key, executing the loader only if no other KAR has
+   * retrieved the data already. Null results and failures are not cached, so that a subsequent
+   * request can try again.
+   *
+   * @param key The search url or the Resource Type/Id to be retrieved.
+   * @param loader The loader that retrieves the data from the EHR.
+   * @return The data retrieved for the key.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(String key, Supplier<T> loader) {
+
+    FutureTask<Object> task = new FutureTask<>(loader::get);
+    FutureTask<Object> existing = data.putIfAbsent(key, task);
+
+    if (existing == null) {
+      logger.debug(" Retrieving data from the EHR for key {}", key);
+      task.run();
+      existing = task;
+    } else {
+      logger.info(" Reusing data already retrieved for key {}", key);
+    }
+
+    try {
+
+      Object result = existing.get();
+
+      if (result == null) data.remove(key, existing);
+
+      return (T) result;
+
+    } catch (InterruptedException e) {
+
+      data.remove(key, existing);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while retrieving data for " + key, e);
+
+    } catch (ExecutionException e) {
+
+      data.remove(key, existing);
+
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+
+      throw new IllegalStateException("Unable to retrieve data for " + key, e.getCause());
+    }
+  }
+
+  public boolean contains(String key) {
+    return data.containsKey(key);
+  }
+
+  public int size() {
+    return data.size();
+  }
+}
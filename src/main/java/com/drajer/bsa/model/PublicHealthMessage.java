@@ -202,6 +202,13 @@ public class PublicHealthMessage {
   @Column(name = "trigger_match_status", nullable = true, columnDefinition = "TEXT")
   private String triggerMatchStatus;
 
+  /**
+   * Stores the fingerprint of the input data used to create the message. The fingerprint is only
+   * set once the message is submitted, so that unchanged data is not reported again.
+   */
+  @Column(name = "submitted_data_fingerprint", nullable = true, columnDefinition = "TEXT")
+  private String submittedDataFingerprint;
+
   /**
    * Stores the data linker Id which is used if the data is de-identified. When the data is
    * de-identified, this Id is passed to the PHA and the PHA may want to link back to the Patient.
@@ -451,6 +458,14 @@ public class PublicHealthMessage {
     this.triggerMatchStatus = triggerMatchStatus;
   }
 
+  public String getSubmittedDataFingerprint() {
+    return submittedDataFingerprint;
+  }
+
+  public void setSubmittedDataFingerprint(String submittedDataFingerprint) {
+    this.submittedDataFingerprint = submittedDataFingerprint;
+  }
+
   public String getPatientLinkerId() {
     return patientLinkerId;
   }
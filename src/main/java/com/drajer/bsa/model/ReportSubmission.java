@@ -0,0 +1,280 @@
+package com.drajer.bsa.model;
+
+import com.drajer.bsa.model.BsaTypes.BsaJobType;
+import com.drajer.bsa.model.BsaTypes.ReportDeliveryStatus;
+import com.drajer.bsa.model.BsaTypes.ReportTransportType;
+import java.util.Date;
+import java.util.UUID;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
+
+/**
+ *
+ *
+ * <h1>ReportSubmission</h1>
+ *
+ * The Entity represents a report waiting in the outbox to be delivered to the PHA/TTP. The
+ * submission is saved in the same transaction as the PublicHealthMessage containing the report, the
+ * report is then delivered by the delivery workers outside of the KAR processing. A submission that
+ * cannot be delivered is retried with a backoff until the maximum number of attempts, after which
+ * it is moved to the dead letter status. The fingerprint of the report and the check for the
+ * Reportability Response are applied only once the report is delivered.
+ */
+@Entity
+@Table(
+    name = "report_submission_outbox",
+    indexes = {
+      @Index(
+          name = "report_submission_outbox_due_idx",
+          columnList = "delivery_status, next_attempt_time")
+    })
+@DynamicUpdate
+public class ReportSubmission {
+
+  /** The attribute represents the primary key for the table and is auto generated. */
+  @Id @GeneratedValue private UUID id;
+
+  /** The attribute represents the id of the PublicHealthMessage containing the report. */
+  @Column(name = "ph_message_id", nullable = false, columnDefinition = "uuid")
+  private UUID phMessageId;
+
+  /** The attribute represents the id of the HealthcareSetting used to deliver the report. */
+  @Column(name = "hs_id", nullable = false)
+  private Integer hsId;
+
+  /** The attribute represents the transport used to deliver the report. */
+  @Enumerated(EnumType.STRING)
+  @Column(name = "transport", nullable = false, columnDefinition = "TEXT")
+  private ReportTransportType transport;
+
+  /**
+   * The attribute represents the destination (HISP or Restful endpoint) of the report, the number
+   * of concurrent deliveries is limited for each destination.
+   */
+  @Column(name = "destination", nullable = false, columnDefinition = "TEXT")
+  private String destination;
+
+  /** The attribute represents the status of the delivery. */
+  @Enumerated(EnumType.STRING)
+  @Column(name = "delivery_status", nullable = false, columnDefinition = "TEXT")
+  private ReportDeliveryStatus deliveryStatus;
+
+  /** The attribute represents the number of delivery attempts that have been made. */
+  @Column(name = "attempts", nullable = false)
+  private Integer attempts;
+
+  /**
+   * The attribute represents the time of the next delivery attempt. When the delivery is in
+   * progress, it is the time after which the submission is considered abandoned and is delivered
+   * again.
+   */
+  @Column(name = "next_attempt_time", nullable = false)
+  @Temporal(TemporalType.TIMESTAMP)
+  private Date nextAttemptTime;
+
+  /** The attribute represents the error of the last failed delivery attempt. */
+  @Column(name = "last_error", nullable = true, columnDefinition = "TEXT")
+  private String lastError;
+
+  /** This attribute tracks the API Request Id of the KAR execution which created the report. */
+  @Column(name = "x_request_id", nullable = true, columnDefinition = "TEXT")
+  private String xRequestId;
+
+  /** This attribute is used to correlate the delivery with the KAR execution. */
+  @Column(name = "correlation_id", nullable = true, columnDefinition = "TEXT")
+  private String xCorrelationId;
+
+  /**
+   * The attribute represents the fingerprint of the data of the report, saved in the
+   * PublicHealthMessage once the report is delivered.
+   */
+  @Column(name = "report_fingerprint", nullable = true, columnDefinition = "TEXT")
+  private String reportFingerprint;
+
+  /**
+   * The attribute represents the action checking for the Reportability Response, scheduled once the
+   * report is delivered. It is null when the response is not checked.
+   */
+  @Column(name = "check_response_action_id", nullable = true, columnDefinition = "TEXT")
+  private String checkResponseActionId;
+
+  /** The attribute represents the id of the KarExecutionState used by the response check. */
+  @Column(name = "kar_execution_state_id", nullable = true, columnDefinition = "uuid")
+  private UUID karExecutionStateId;
+
+  /**
+   * The attribute represents the id of the NotificationContext of the KAR execution which created
+   * the report, it is provided to the transports when the report is delivered.
+   */
+  @Column(name = "nc_id", nullable = true, columnDefinition = "uuid")
+  private UUID ncId;
+
+  /** The attribute represents the job type of the KAR execution which created the report. */
+  @Enumerated(EnumType.STRING)
+  @Column(name = "job_type", nullable = true, columnDefinition = "TEXT")
+  private BsaJobType jobType;
+
+  /** This attribute represents the time when the report was added to the outbox. */
+  @Column(name = "created_ts", nullable = false)
+  @CreationTimestamp
+  private Date createdTime;
+
+  /** This attribute represents the time when the report was delivered. */
+  @Column(name = "delivered_ts", nullable = true)
+  @Temporal(TemporalType.TIMESTAMP)
+  private Date deliveredTime;
+
+  public UUID getId() {
+    return id;
+  }
+
+  public void setId(UUID id) {
+    this.id = id;
+  }
+
+  public UUID getPhMessageId() {
+    return phMessageId;
+  }
+
+  public void setPhMessageId(UUID phMessageId) {
+    this.phMessageId = phMessageId;
+  }
+
+  public Integer getHsId() {
+    return hsId;
+  }
+
+  public void setHsId(Integer hsId) {
+    this.hsId = hsId;
+  }
+
+  public ReportTransportType getTransport() {
+    return transport;
+  }
+
+  public void setTransport(ReportTransportType transport) {
+    this.transport = transport;
+  }
+
+  public String getDestination() {
+    return destination;
+  }
+
+  public void setDestination(String destination) {
+    this.destination = destination;
+  }
+
+  public ReportDeliveryStatus getDeliveryStatus() {
+    return deliveryStatus;
+  }
+
+  public void setDeliveryStatus(ReportDeliveryStatus deliveryStatus) {
+    this.deliveryStatus = deliveryStatus;
+  }
+
+  public Integer getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(Integer attempts) {
+    this.attempts = attempts;
+  }
+
+  public Date getNextAttemptTime() {
+    return nextAttemptTime;
+  }
+
+  public void setNextAttemptTime(Date nextAttemptTime) {
+    this.nextAttemptTime = nextAttemptTime;
+  }
+
+  public String getLastError() {
+    return lastError;
+  }
+
+  public void setLastError(String lastError) {
+    this.lastError = lastError;
+  }
+
+  public String getxRequestId() {
+    return xRequestId;
+  }
+
+  public void setxRequestId(String xRequestId) {
+    this.xRequestId = xRequestId;
+  }
+
+  public String getxCorrelationId() {
+    return xCorrelationId;
+  }
+
+  public void setxCorrelationId(String xCorrelationId) {
+    this.xCorrelationId = xCorrelationId;
+  }
+
+  public Date getCreatedTime() {
+    return createdTime;
+  }
+
+  public void setCreatedTime(Date createdTime) {
+    this.createdTime = createdTime;
+  }
+
+  public Date getDeliveredTime() {
+    return deliveredTime;
+  }
+
+  public void setDeliveredTime(Date deliveredTime) {
+    this.deliveredTime = deliveredTime;
+  }
+
+  public String getReportFingerprint() {
+    return reportFingerprint;
+  }
+
+  public void setReportFingerprint(String reportFingerprint) {
+    this.reportFingerprint = reportFingerprint;
+  }
+
+  public String getCheckResponseActionId() {
+    return checkResponseActionId;
+  }
+
+  public void setCheckResponseActionId(String checkResponseActionId) {
+    this.checkResponseActionId = checkResponseActionId;
+  }
+
+  public UUID getKarExecutionStateId() {
+    return karExecutionStateId;
+  }
+
+  public void setKarExecutionStateId(UUID karExecutionStateId) {
+    this.karExecutionStateId = karExecutionStateId;
+  }
+
+  public UUID getNcId() {
+    return ncId;
+  }
+
+  public void setNcId(UUID ncId) {
+    this.ncId = ncId;
+  }
+
+  public BsaJobType getJobType() {
+    return jobType;
+  }
+
+  public void setJobType(BsaJobType jobType) {
+    this.jobType = jobType;
+  }
+}
@@ -0,0 +1,486 @@
+package com.drajer.bsa.routing.impl;
+
+import com.drajer.bsa.dao.DirectReceiverLeaseDao;
+import com.drajer.bsa.dao.HealthcareSettingsDao;
+import com.drajer.bsa.model.HealthcareSetting;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import io.micrometer.core.instrument.Metrics;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.FetchProfile;
+import javax.mail.Flags;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Store;
+import javax.mail.UIDFolder;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>DirectImapReceiver</h1>
+ *
+ * The DirectImapReceiver receives the Reportability Responses of the Direct accounts as they
+ * arrive, instead of reading the inbox when the check-response action runs. A long lived IMAP
+ * connection is kept for each Direct account of the Healthcare Settings, the inbox is watched using
+ * IMAP IDLE, or polled when the HISP does not support IDLE. Only the messages with a UID greater
+ * than the last message seen are fetched, and each message is handed to the RrReceiver and then
+ * removed from the inbox.
+ *
+ * <p>When several instances are running, the receiver of an account is owned by the instance
+ * holding the lease of the account. The leases are renewed periodically, after which the IDLE
+ * connections are woken up so that a dropped connection is detected. The IMAP calls to wake up or
+ * close a connection are made on the receiver threads, so a slow HISP does not delay the renewal of
+ * the leases. When an instance stops, another instance takes over its accounts after the leases
+ * expire.
+ */
+@Component
+public class DirectImapReceiver {
+
+  private static final Logger logger = LoggerFactory.getLogger(DirectImapReceiver.class);
+
+  private static final String IMAP = "imap";
+  private static final String INBOX = "Inbox";
+  private static final String IDLE = "IDLE";
+
+  private static final String MESSAGES_METRIC = "ecrnow.direct.imap.messages";
+  private static final String RECONNECTS_METRIC = "ecrnow.direct.imap.reconnects";
+  private static final String HOST_TAG = "host";
+
+  @Autowired HealthcareSettingsDao hsDao;
+
+  @Autowired DirectReceiverLeaseDao leaseDao;
+
+  @Autowired DirectTransportImpl directTransport;
+
+  @Value("${direct.imap.receiver.enabled:false}")
+  Boolean receiverEnabled;
+
+  @Value("${direct.imap.receiver.lease-ms:90000}")
+  Long leaseTime;
+
+  @Value("${direct.imap.receiver.poll-interval-ms:60000}")
+  Long pollInterval;
+
+  @Value("${direct.imap.receiver.reconnect-delay-ms:30000}")
+  Long reconnectDelay;
+
+  @Value("${direct.imap.timeout-ms:300000}")
+  Integer timeout;
+
+  @Value("${db-scheduler.scheduler-name:eCRNow}")
+  String instanceName;
+
+  /** The id of this instance for the leases, unique across restarts. */
+  private String owner;
+
+  private ExecutorService receiverExecutor;
+
+  /** The receivers owned by this instance, the Key is the account. */
+  private final Map<String, AccountReceiver> receivers = new ConcurrentHashMap<>();
+
+  @PostConstruct
+  public void initializeExecutor() {
+
+    owner = instanceName + "-" + UUID.randomUUID();
+
+    if (Boolean.TRUE.equals(receiverEnabled)) {
+      logger.info(" Initializing the Direct IMAP receivers for instance {}", owner);
+      receiverExecutor =
+          Executors.newCachedThreadPool(new CustomizableThreadFactory("DirectImapReceiver-"));
+    }
+  }
+
+  @PreDestroy
+  public synchronized void shutdownReceivers() {
+
+    for (String account : new ArrayList<>(receivers.keySet())) {
+      stopReceiver(account);
+    }
+
+    if (receiverExecutor != null) {
+      receiverExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * The method acquires or renews the leases of the Direct accounts, starts the receivers of the
+   * accounts owned by this instance and stops the receivers of the accounts that are no longer
+   * owned.
+   */
+  @Scheduled(
+      fixedDelayString = "${direct.imap.receiver.lease-renewal-ms:30000}",
+      initialDelayString = "${direct.imap.receiver.lease-renewal-ms:30000}")
+  public synchronized void manageReceivers() {
+
+    if (receiverExecutor == null) {
+      return;
+    }
+
+    Map<String, HealthcareSetting> accounts = getDirectAccounts();
+
+    for (String account : new ArrayList<>(receivers.keySet())) {
+      if (!accounts.containsKey(account)) {
+        logger.info(" Direct account {} is no longer configured ", account);
+        stopReceiver(account);
+      }
+    }
+
+    Date now = new Date();
+    List<AccountReceiver> idleReceivers = new ArrayList<>();
+
+    for (Map.Entry<String, HealthcareSetting> entry : accounts.entrySet()) {
+
+      String account = entry.getKey();
+      HealthcareSetting hs = entry.getValue();
+      AccountReceiver receiver = receivers.get(account);
+
+      boolean owned;
+      try {
+        owned = leaseDao.acquireLease(account, owner, now, new Date(now.getTime() + leaseTime));
+      } catch (RuntimeException e) {
+        logger.error(" Unable to renew the lease of Direct account {}", account, e);
+        owned = false;
+      }
+
+      if (!owned) {
+        if (receiver != null) {
+          logger.info(" Direct account {} is owned by another instance ", account);
+          receiver.stop();
+          receivers.remove(account);
+        }
+      } else if (receiver != null
+          && receiver.isRunning()
+          && StringUtils.equals(receiver.password, hs.getDirectPwd())) {
+        idleReceivers.add(receiver);
+      } else {
+        if (receiver != null) {
+          receiver.stop();
+        }
+        startReceiver(account, hs);
+      }
+    }
+
+    // The leases are all renewed before the connections are woken up.
+    idleReceivers.forEach(AccountReceiver::wakeUp);
+  }
+
+  private void startReceiver(String account, HealthcareSetting hs) {
+
+    logger.info(" Starting the IMAP receiver for Direct account {}", account);
+
+    AccountReceiver receiver =
+        createReceiver(
+            getImapHost(hs),
+            Integer.parseInt(hs.getImapPort()),
+            hs.getDirectUser(),
+            hs.getDirectPwd());
+
+    receivers.put(account, receiver);
+    receiverExecutor.execute(receiver);
+  }
+
+  private void stopReceiver(String account) {
+
+    AccountReceiver receiver = receivers.remove(account);
+
+    if (receiver != null) {
+      logger.info(" Stopping the IMAP receiver for Direct account {}", account);
+      receiver.stop();
+
+      try {
+        leaseDao.releaseLease(account, owner);
+      } catch (RuntimeException e) {
+        logger.error(" Unable to release the lease of Direct account {}", account, e);
+      }
+    }
+  }
+
+  /** @return The Direct accounts of the Healthcare Settings, the Key is the account. */
+  private Map<String, HealthcareSetting> getDirectAccounts() {
+
+    Map<String, HealthcareSetting> accounts = new LinkedHashMap<>();
+
+    for (HealthcareSetting hs : hsDao.getAllHealthcareSettings()) {
+
+      String host = getImapHost(hs);
+
+      if (Boolean.TRUE.equals(hs.getIsDirect())
+          && !StringUtils.isEmpty(host)
+          && StringUtils.isNumeric(hs.getImapPort())
+          && !StringUtils.isEmpty(hs.getDirectUser())) {
+        accounts.putIfAbsent(host + ":" + hs.getImapPort() + ":" + hs.getDirectUser(), hs);
+      }
+    }
+
+    return accounts;
+  }
+
+  private static String getImapHost(HealthcareSetting hs) {
+    return !StringUtils.isEmpty(hs.getImapUrl()) ? hs.getImapUrl() : hs.getDirectHost();
+  }
+
+  AccountReceiver createReceiver(String host, int port, String username, String password) {
+    return new AccountReceiver(host, port, username, password);
+  }
+
+  /** The AccountReceiver keeps the connection to the inbox of an account and reads its messages. */
+  class AccountReceiver implements Runnable {
+
+    private final String host;
+
+    private final int port;
+
+    private final String username;
+
+    private final String password;
+
+    private volatile boolean running = true;
+
+    private volatile Store store;
+
+    private volatile Folder inbox;
+
+    /** Set while a wake up is in progress, so that a slow connection is not woken up again. */
+    private final AtomicBoolean wakingUp = new AtomicBoolean();
+
+    /** The UID validity of the inbox, the UIDs are only valid for the same UID validity. */
+    private long uidValidity = -1;
+
+    /** The highest UID of the messages seen in the inbox. */
+    private long lastUid = 0;
+
+    AccountReceiver(String host, int port, String username, String password) {
+      this.host = host;
+      this.port = port;
+      this.username = username;
+      this.password = password;
+    }
+
+    boolean isRunning() {
+      return running;
+    }
+
+    @Override
+    public void run() {
+
+      while (running) {
+
+        try {
+          receive();
+        } catch (Exception e) {
+
+          if (!running) {
+            break;
+          }
+
+          logger.error(
+              " Error receiving from Direct account {}, reconnecting in {} ms ",
+              username,
+              reconnectDelay,
+              e);
+          Metrics.counter(RECONNECTS_METRIC, HOST_TAG, host).increment();
+          await(reconnectDelay);
+
+        } finally {
+          close();
+        }
+      }
+
+      logger.info(" Stopped the IMAP receiver for Direct account {}", username);
+    }
+
+    /** Connects to the inbox and receives the messages until the receiver is stopped. */
+    void receive() throws MessagingException {
+
+      Properties props = new Properties();
+      props.put("mail.imap.auth", "true");
+      props.put("mail.imap.ssl.enable", "true");
+      props.put("mail.imap.ssl.trust", "*");
+      props.put("mail.imap.connectiontimeout", String.valueOf(timeout));
+      props.put("mail.imap.timeout", String.valueOf(timeout));
+
+      Session session = Session.getInstance(props, null);
+
+      store = session.getStore(IMAP);
+      store.connect(host, port, username, password);
+
+      Folder folder = store.getFolder(INBOX);
+      folder.open(Folder.READ_WRITE);
+      inbox = folder;
+
+      UIDFolder uidFolder = (UIDFolder) folder;
+
+      if (uidFolder.getUIDValidity() != uidValidity) {
+        uidValidity = uidFolder.getUIDValidity();
+        lastUid = 0;
+      }
+
+      boolean idleSupported =
+          folder instanceof IMAPFolder
+              && store instanceof IMAPStore
+              && ((IMAPStore) store).hasCapability(IDLE);
+
+      logger.info(
+          " Connected to the inbox of Direct account {}, {}",
+          username,
+          idleSupported ? "waiting for messages using IDLE" : "polling for messages");
+
+      while (running) {
+
+        receiveNewMessages(folder, uidFolder);
+
+        if (!running) {
+          break;
+        }
+
+        if (idleSupported) {
+          // Returns when the inbox changes or when it is used by another thread.
+          ((IMAPFolder) folder).idle();
+        } else {
+          await(pollInterval);
+        }
+      }
+    }
+
+    private void receiveNewMessages(Folder folder, UIDFolder uidFolder) throws MessagingException {
+
+      Message[] messages = uidFolder.getMessagesByUID(lastUid + 1, UIDFolder.LASTUID);
+
+      FetchProfile fp = new FetchProfile();
+      fp.add(FetchProfile.Item.FLAGS);
+      fp.add(UIDFolder.FetchProfileItem.UID);
+      folder.fetch(messages, fp);
+
+      boolean expunge = false;
+
+      for (Message message : messages) {
+
+        long uid = uidFolder.getUID(message);
+
+        // The range always contains the last message, even when it was seen already.
+        if (uid <= lastUid) {
+          continue;
+        }
+        lastUid = uid;
+
+        if (message.isExpunged()
+            || message.isSet(Flags.Flag.SEEN)
+            || message.isSet(Flags.Flag.DELETED)) {
+          continue;
+        }
+
+        logger.info(" Received message {} for Direct account {}", uid, username);
+        Metrics.counter(MESSAGES_METRIC, HOST_TAG, host).increment();
+
+        try {
+          directTransport.processMessage(message);
+          message.setFlag(Flags.Flag.DELETED, true);
+          expunge = true;
+        } catch (Exception e) {
+          // The message is left in the inbox as seen.
+          logger.error(" Error processing message {} for Direct account {}", uid, username, e);
+        }
+      }
+
+      if (expunge) {
+        folder.expunge();
+      }
+    }
+
+    /**
+     * Ends the IDLE, so that the receiver checks for new messages and the connection. The inbox is
+     * used from a receiver thread, since the call blocks until the HISP responds.
+     */
+    void wakeUp() {
+
+      if (!wakingUp.compareAndSet(false, true)) {
+        return;
+      }
+
+      try {
+        receiverExecutor.execute(
+            () -> {
+              Folder folder = inbox;
+
+              try {
+                if (folder != null && folder.isOpen()) {
+                  folder.getMessageCount();
+                }
+              } catch (MessagingException e) {
+                logger.debug(" Unable to wake up the receiver of Direct account {}", username, e);
+              } finally {
+                wakingUp.set(false);
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        wakingUp.set(false);
+        logger.debug(" Unable to wake up the receiver of Direct account {}", username, e);
+      }
+    }
+
+    void stop() {
+      running = false;
+
+      synchronized (this) {
+        notifyAll();
+      }
+
+      // Closing the connection waits for the HISP, so it is closed from a receiver thread.
+      try {
+        receiverExecutor.execute(this::close);
+      } catch (RejectedExecutionException e) {
+        close();
+      }
+    }
+
+    private synchronized void await(long millis) {
+
+      try {
+        if (running) {
+          wait(millis);
+        }
+      } catch (InterruptedException e) {
+        running = false;
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void close() {
+
+      Store s = store;
+      store = null;
+      inbox = null;
+
+      if (s != null) {
+        try {
+          s.close();
+        } catch (MessagingException e) {
+          logger.debug(" Error closing IMAP connection ", e);
+        }
+      }
+    }
+  }
+}
@@ -6,12 +6,11 @@ import com.drajer.bsa.routing.DataTransportInterface;
 import com.drajer.bsa.service.RrReceiver;
 import com.drajer.ecrapp.model.EicrTypes;
 import com.drajer.ecrapp.model.ReportabilityResponse;
-import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 import java.util.Properties;
-import java.util.UUID;
 import javax.activation.DataHandler;
 import javax.activation.DataSource;
 import javax.mail.Address;
@@ -31,13 +30,13 @@ import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
 import javax.mail.search.FlagTerm;
 import javax.mail.util.ByteArrayDataSource;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /*
@@ -56,6 +55,11 @@ public class DirectTransportImpl implements DataTransportInterface {
 
   @Autowired RrReceiver rrReceiver;
 
+  @Autowired SmtpConnectionPool smtpConnectionPool;
+
+  @Value("${direct.imap.receiver.enabled:false}")
+  Boolean imapReceiverEnabled;
+
   public class DirectMimeMessage extends MimeMessage {
 
     Session sessions;
@@ -152,18 +156,24 @@ public class DirectTransportImpl implements DataTransportInterface {
       String correlationId)
       throws Exception {
 
-    Properties props = new Properties();
+    Session session;
+
+    if (smtpConnectionPool != null) {
+      session = smtpConnectionPool.getSession(host, port, username);
+    } else {
+      Properties props = new Properties();
 
-    // Setup the property to authenticate.
-    props.put("mail.smtp.auth", "true");
+      // Setup the property to authenticate.
+      props.put("mail.smtp.auth", "true");
 
-    // Trust all certificates
-    props.setProperty("mail.smtp.ssl.trust", "*");
+      // Trust all certificates
+      props.setProperty("mail.smtp.ssl.trust", "*");
 
-    //  Enable SSL Connections from the client.
-    props.setProperty("mail.smtp.ssl.enable", "true");
+      //  Enable SSL Connections from the client.
+      props.setProperty("mail.smtp.ssl.enable", "true");
 
-    Session session = Session.getInstance(props, null);
+      session = Session.getInstance(props, null);
+    }
 
     logger.info(" Retrieve Session instance for sending Direct mail ");
 
@@ -194,14 +204,22 @@ public class DirectTransportImpl implements DataTransportInterface {
     message.setContent(multipart);
 
     logger.info(" Completed constructing the Message ");
-    Transport transport = session.getTransport("smtp");
-    transport.connect(host, Integer.parseInt(port), username, password);
 
-    logger.info(" Connection successful to the direct host {}", host);
-    transport.sendMessage(message, message.getAllRecipients());
+    if (smtpConnectionPool != null) {
 
-    logger.info("Finished sending Direct message successfully, closing connection ");
-    transport.close();
+      // The connection to the HISP is reused for the following messages.
+      smtpConnectionPool.send(host, port, username, password, message);
+
+    } else {
+      Transport transport = session.getTransport("smtp");
+      transport.connect(host, Integer.parseInt(port), username, password);
+
+      logger.info(" Connection successful to the direct host {}", host);
+      transport.sendMessage(message, message.getAllRecipients());
+
+      logger.info("Finished sending Direct message successfully, closing connection ");
+      transport.close();
+    }
 
     logger.info(" Finished sending Direct Message ");
   }
@@ -216,6 +234,11 @@ public class DirectTransportImpl implements DataTransportInterface {
   @Override
   public void receiveRrDataUsingDirect(KarProcessingData data) {
 
+    if (Boolean.TRUE.equals(imapReceiverEnabled)) {
+      logger.info(" Reportability Responses are received by the Direct IMAP receiver ");
+      return;
+    }
+
     logger.info(" Start receiving process from Direct HISP ");
 
     HealthcareSetting hs = data.getHealthcareSetting();
@@ -267,7 +290,6 @@ public class DirectTransportImpl implements DataTransportInterface {
 
     try {
 
-      String mId;
       logger.info("Reading mail..");
       logger.info("coorleationId:{}", coorleationId);
 
@@ -295,114 +317,87 @@ public class DirectTransportImpl implements DataTransportInterface {
       for (Message message : messages) {
 
         logger.info("Found unread email");
-        message.getAllHeaders();
+        processMessage(message);
 
-        mId = getMessageId(message);
-        logger.info("Message-ID: {}", mId);
+        // The message is removed when the inbox is closed.
+        message.setFlag(Flags.Flag.DELETED, true);
+      } // for all messages
 
-        Address[] froms = message.getFrom();
-        String senderAddress = froms == null ? null : ((InternetAddress) froms[0]).getAddress();
+      // Close the inbox since all the reads are done, this also removes the read messages.
+      inbox.close(true);
+      store.close();
 
-        if (message.getContent() instanceof Multipart) {
-          Multipart multipart = (Multipart) message.getContent();
-          for (int i = 0; i < multipart.getCount(); i++) {
-            BodyPart bodyPart = multipart.getBodyPart(i);
+    } catch (Exception e) {
 
-            if (bodyPart.getFileName() != null
-                && (bodyPart.getFileName().contains(".xml")
-                    || bodyPart.getFileName().contains(".XML"))) {
+      logger.error("Error while reading mail", e);
+    }
+  }
 
-              logger.debug("Found XML Attachment");
+  /**
+   * The method handles a message received from the HISP. The XML attachments of the message are
+   * handed to the RrReceiver as Reportability Responses.
+   *
+   * @param message The message received.
+   * @throws MessagingException When the message cannot be read.
+   * @throws IOException When an attachment cannot be read.
+   */
+  public void processMessage(Message message) throws MessagingException, IOException {
 
-              try (InputStream stream = bodyPart.getInputStream()) {
+    message.getAllHeaders();
 
-                ReportabilityResponse data = new ReportabilityResponse();
-                data.setResponseType(EicrTypes.RrType.REPORTABILITY_RESPONSE.toString());
-                String rrXml = "<?xml version=\"1.0\"?>";
-                rrXml += IOUtils.toString(stream, StandardCharsets.UTF_8);
-                data.setRrXml(rrXml);
+    String mId = getMessageId(message);
+    logger.info("Message-ID: {}", mId);
 
-                String filename = UUID.randomUUID() + ".xml";
-                FileUtils.writeStringToFile(
-                    new File(filename), data.getRrXml(), StandardCharsets.UTF_8);
+    Address[] froms = message.getFrom();
+    String senderAddress = froms == null ? null : ((InternetAddress) froms[0]).getAddress();
 
-                // Invoke the rrReceiver Handler for handling Reportability Response.
-                logger.debug(" RrXML : {}", data.getRrXml());
+    if (message.getContent() instanceof Multipart) {
+      Multipart multipart = (Multipart) message.getContent();
+      for (int i = 0; i < multipart.getCount(); i++) {
+        BodyPart bodyPart = multipart.getBodyPart(i);
 
-                rrReceiver.handleReportabilityResponse(data, mId);
-              }
+        if (bodyPart.getFileName() != null
+            && (bodyPart.getFileName().contains(".xml")
+                || bodyPart.getFileName().contains(".XML"))) {
 
-              logger.info(
-                  " Need to determine what to do with the response received from :  {}",
-                  senderAddress);
-            } else {
+          logger.debug("Found XML Attachment");
 
-              logger.info(" Not an XML attachment, so ignoring the multipart file ");
-            }
-          }
-        } else {
+          try (InputStream stream = bodyPart.getInputStream()) {
 
-          // Handle Processed and Failure MDN Messages
-          // The MDN format according to RFC3798 is as outlined at
-          // https://datatracker.ietf.org/doc/html/rfc3798#section-3.2.6:
+            ReportabilityResponse data = new ReportabilityResponse();
+            data.setResponseType(EicrTypes.RrType.REPORTABILITY_RESPONSE.toString());
+            String rrXml = "<?xml version=\"1.0\"?>";
+            rrXml += IOUtils.toString(stream, StandardCharsets.UTF_8);
+            data.setRrXml(rrXml);
 
-          // Retrieve the Disposition Header
+            // Invoke the rrReceiver Handler for handling Reportability Response.
+            logger.debug(" RrXML : {}", data.getRrXml());
 
-          // Parse to remove the Disposition Mode attribute and retrieve Disposition Type
+            rrReceiver.handleReportabilityResponse(data, mId);
+          }
 
-          // If Type is Processed, dispatchedjust ignore it.
-          // If Type is failed - process Failure MDN
+          logger.info(
+              " Need to determine what to do with the response received from :  {}", senderAddress);
+        } else {
 
-          logger.info("Not a multipart email, so ignoring for now ");
+          logger.info(" Not an XML attachment, so ignoring the multipart file ");
         }
-      } // for all messages
-
-      // Close the inbox since all the reads are done.
-      inbox.close(true);
-
-      // Open a new connection to remove all the deleted messages.
-      deleteMailUsingImap(host, portNum, username, password, session);
-
-    } catch (Exception e) {
-
-      logger.error("Error while reading mail", e);
-    }
-  }
-
-  /**
-   * The method connects to a Direct HISP's INBOX for a specific account and deletes all emails that
-   * have been read already.
-   *
-   * @param host
-   * @param port
-   * @param username
-   * @param password
-   * @param session
-   * @throws Exception
-   */
-  public void deleteMailUsingImap(
-      String host, int port, String username, String password, Session session) throws Exception {
-    logger.info("Deleting mail..");
-
-    Store store = session.getStore(IMAP);
+      }
+    } else {
 
-    logger.info("Connecting to IMAP Inbox");
-    store.connect(host, port, username, password);
+      // Handle Processed and Failure MDN Messages
+      // The MDN format according to RFC3798 is as outlined at
+      // https://datatracker.ietf.org/doc/html/rfc3798#section-3.2.6:
 
-    Folder inbox = store.getFolder(INBOX);
-    inbox.open(Folder.READ_WRITE);
-    Flags seen = new Flags(Flags.Flag.SEEN);
+      // Retrieve the Disposition Header
 
-    FlagTerm seenFlagTerm = new FlagTerm(seen, true);
-    Message[] messages = inbox.search(seenFlagTerm);
+      // Parse to remove the Disposition Mode attribute and retrieve Disposition Type
 
-    for (Message message : messages) {
+      // If Type is Processed, dispatchedjust ignore it.
+      // If Type is failed - process Failure MDN
 
-      logger.info(" Deleting message with id {}", getMessageId(message));
-      message.setFlag(Flags.Flag.DELETED, true);
+      logger.info("Not a multipart email, so ignoring for now ");
     }
-
-    inbox.close(true);
   }
 
   /**
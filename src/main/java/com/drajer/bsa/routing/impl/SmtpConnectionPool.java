@@ -0,0 +1,298 @@
+package com.drajer.bsa.routing.impl;
+
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Metrics;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import javax.annotation.PreDestroy;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>SmtpConnectionPool</h1>
+ *
+ * The SmtpConnectionPool keeps the authenticated SMTP connections to each HISP account open, so
+ * that consecutive Direct messages are sent on the same connection instead of connecting, doing the
+ * TLS handshake and authenticating for every message. An account is identified by the host, port
+ * and Direct user.
+ *
+ * <p>The number of connections to an account is bounded, senders wait for a free connection when
+ * all of them are in use. A connection that has been idle for a while is checked before it is
+ * reused, and when a send fails because the HISP has closed the connection the message is sent
+ * again on a new connection. Idle connections are closed after the idle timeout. The messages sent
+ * to an account can also be limited to a rate per minute.
+ */
+@Component
+public class SmtpConnectionPool {
+
+  private static final Logger logger = LoggerFactory.getLogger(SmtpConnectionPool.class);
+
+  private static final String CONNECTIONS_METRIC = "ecrnow.direct.smtp.connections";
+  private static final String HOST_TAG = "host";
+  private static final String EVENT_TAG = "event";
+
+  @Value("${direct.smtp.pool.max-connections:4}")
+  Integer maxConnections;
+
+  @Value("${direct.smtp.pool.idle-timeout-ms:60000}")
+  Long idleTimeout;
+
+  @Value("${direct.smtp.pool.validate-after-idle-ms:5000}")
+  Long validateAfterIdle;
+
+  @Value("${direct.smtp.timeout-ms:60000}")
+  Integer timeout;
+
+  @Value("${direct.smtp.rate-limit.messages-per-minute:0}")
+  Integer messagesPerMinute;
+
+  /** The connections of each HISP account, the Key is the host, port and user of the account. */
+  private final Map<String, AccountPool> pools = new ConcurrentHashMap<>();
+
+  private static class PooledConnection {
+
+    private final Transport transport;
+
+    private volatile long lastUsed;
+
+    private PooledConnection(Transport transport) {
+      this.transport = transport;
+      this.lastUsed = System.currentTimeMillis();
+    }
+  }
+
+  private static class AccountPool {
+
+    private final String host;
+
+    private final int port;
+
+    private final String username;
+
+    private final Session session;
+
+    /** The permits bound the number of connections that are open or in use. */
+    private final Semaphore permits;
+
+    /** The idle connections, the most recently used first. */
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+
+    private final RateLimiter rateLimiter;
+
+    private AccountPool(
+        String host,
+        int port,
+        String username,
+        Session session,
+        int maxConnections,
+        RateLimiter rateLimiter) {
+      this.host = host;
+      this.port = port;
+      this.username = username;
+      this.session = session;
+      this.permits = new Semaphore(maxConnections, true);
+      this.rateLimiter = rateLimiter;
+    }
+  }
+
+  /**
+   * The method returns the Session of the account, the messages sent to the account are created
+   * using the Session.
+   *
+   * @param host The SMTP host of the HISP.
+   * @param port The SMTP port of the HISP.
+   * @param username The Direct user.
+   * @return The Session shared by the connections of the account.
+   */
+  public Session getSession(String host, String port, String username) {
+    return getPool(host, Integer.parseInt(port), username).session;
+  }
+
+  /**
+   * The method sends the message on a pooled connection of the account, a new connection is opened
+   * when there is no idle connection and the pool is not full.
+   *
+   * @param host The SMTP host of the HISP.
+   * @param port The SMTP port of the HISP.
+   * @param username The Direct user.
+   * @param password The password of the Direct user, used when a new connection is opened.
+   * @param message The message to send.
+   * @throws MessagingException When the message cannot be sent.
+   */
+  public void send(String host, String port, String username, String password, Message message)
+      throws MessagingException {
+
+    AccountPool pool = getPool(host, Integer.parseInt(port), username);
+
+    if (pool.rateLimiter != null) {
+      pool.rateLimiter.acquire();
+    }
+
+    try {
+      pool.permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MessagingException("Interrupted while waiting for an SMTP connection to " + host);
+    }
+
+    PooledConnection connection = null;
+
+    try {
+      connection = borrowConnection(pool, password);
+
+      try {
+        connection.transport.sendMessage(message, message.getAllRecipients());
+      } catch (MessagingException e) {
+
+        if (e instanceof SendFailedException || connection.transport.isConnected()) {
+          throw e;
+        }
+
+        logger.info(" SMTP connection to {} was closed by the HISP, reconnecting ", host);
+        close(connection);
+        connection = connect(pool, password);
+        connection.transport.sendMessage(message, message.getAllRecipients());
+      }
+
+      connection.lastUsed = System.currentTimeMillis();
+      pool.idle.offerFirst(connection);
+      connection = null;
+
+    } finally {
+      if (connection != null) {
+        close(connection);
+      }
+      pool.permits.release();
+    }
+  }
+
+  /** The method closes the connections that have been idle for longer than the idle timeout. */
+  @Scheduled(
+      fixedDelayString = "${direct.smtp.pool.idle-timeout-ms:60000}",
+      initialDelayString = "${direct.smtp.pool.idle-timeout-ms:60000}")
+  public void closeIdleConnections() {
+
+    long expiry = System.currentTimeMillis() - idleTimeout;
+
+    for (AccountPool pool : pools.values()) {
+
+      Iterator<PooledConnection> it = pool.idle.descendingIterator();
+
+      while (it.hasNext()) {
+        PooledConnection connection = it.next();
+
+        if (connection.lastUsed < expiry && pool.idle.removeLastOccurrence(connection)) {
+          logger.debug(" Closing idle SMTP connection to {}", pool.host);
+          close(connection);
+        }
+      }
+    }
+  }
+
+  @PreDestroy
+  public void closeAllConnections() {
+
+    for (AccountPool pool : pools.values()) {
+
+      PooledConnection connection;
+      while ((connection = pool.idle.pollFirst()) != null) {
+        close(connection);
+      }
+    }
+  }
+
+  private PooledConnection borrowConnection(AccountPool pool, String password)
+      throws MessagingException {
+
+    long now = System.currentTimeMillis();
+    PooledConnection connection;
+
+    while ((connection = pool.idle.pollFirst()) != null) {
+
+      long idleTime = now - connection.lastUsed;
+
+      if (idleTime < idleTimeout
+          && (idleTime < validateAfterIdle || connection.transport.isConnected())) {
+
+        Metrics.counter(CONNECTIONS_METRIC, HOST_TAG, pool.host, EVENT_TAG, "reused").increment();
+        return connection;
+      }
+
+      close(connection);
+    }
+
+    return connect(pool, password);
+  }
+
+  private PooledConnection connect(AccountPool pool, String password) throws MessagingException {
+
+    Transport transport = pool.session.getTransport("smtp");
+    transport.connect(pool.host, pool.port, pool.username, password);
+
+    logger.info(" Connection successful to the direct host {}", pool.host);
+    Metrics.counter(CONNECTIONS_METRIC, HOST_TAG, pool.host, EVENT_TAG, "opened").increment();
+
+    return new PooledConnection(transport);
+  }
+
+  private void close(PooledConnection connection) {
+
+    try {
+      connection.transport.close();
+    } catch (MessagingException e) {
+      logger.debug(" Error closing SMTP connection ", e);
+    }
+  }
+
+  private AccountPool getPool(String host, int port, String username) {
+
+    return pools.computeIfAbsent(
+        host + ":" + port + ":" + username,
+        key ->
+            new AccountPool(
+                host,
+                port,
+                username,
+                createSession(),
+                Math.max(1, maxConnections),
+                messagesPerMinute != null && messagesPerMinute > 0
+                    ? RateLimiter.create(messagesPerMinute / 60.0)
+                    : null));
+  }
+
+  Session createSession() {
+
+    Properties props = new Properties();
+
+    // Setup the property to authenticate.
+    props.put("mail.smtp.auth", "true");
+
+    // Trust all certificates
+    props.setProperty("mail.smtp.ssl.trust", "*");
+
+    //  Enable SSL Connections from the client.
+    props.setProperty("mail.smtp.ssl.enable", "true");
+
+    // Pooled connections must not block a sender indefinitely.
+    props.setProperty("mail.smtp.connectiontimeout", String.valueOf(timeout));
+    props.setProperty("mail.smtp.timeout", String.valueOf(timeout));
+    props.setProperty("mail.smtp.writetimeout", String.valueOf(timeout));
+
+    return Session.getInstance(props, null);
+  }
+}
@@ -2,13 +2,25 @@ package com.drajer.bsa.scheduler;
 
 import com.drajer.bsa.model.BsaTypes;
 import com.drajer.bsa.model.BsaTypes.BsaJobType;
+import com.drajer.bsa.model.KarExecutionState;
+import com.drajer.bsa.model.KarProcessingData;
+import com.drajer.bsa.service.KarExecutionStateService;
+import com.drajer.ecrapp.model.ScheduledTasks;
+import com.drajer.ecrapp.service.SchedulerService;
 import com.github.kagkarlsson.scheduler.Scheduler;
+import com.github.kagkarlsson.scheduler.task.SchedulableInstance;
+import com.github.kagkarlsson.scheduler.task.TaskInstanceId;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,6 +31,10 @@ import org.springframework.transaction.annotation.Transactional;
  *
  * This class is used to schedule the various persistent scheduled jobs for the BSA.
  *
+ * <p>The timers set by the actions are coalesced, so that there is at most one pending job for a
+ * HealthcareSetting, patient, encounter, Knowledge Artifact and action irrespective of the number
+ * of notifications and relaunches received for the encounter.
+ *
  * @author nbashyam
  */
 @Service
@@ -27,10 +43,29 @@ public class BsaScheduler {
 
   private final Logger logger = LoggerFactory.getLogger(BsaScheduler.class);
 
+  static final String BSA_SCHEDULED_JOB = "BsaScheduledJob";
+
+  /** The delay after which the Reportability Response of a report sent using Direct is checked. */
+  private static final long RESPONSE_CHECK_DELAY_SECONDS = 60;
+
   @Autowired ScheduleJobConfiguration schedulerConfig;
 
   @Autowired Scheduler scheduler;
 
+  @Autowired SchedulerService schedulerService;
+
+  @Autowired KarExecutionStateService karExecutionStateService;
+
+  @Value("${bsa.timer.coalescing.enabled:false}")
+  Boolean timerCoalescingEnabled;
+
+  /**
+   * When true the pending job is pushed to the execution time of the latest timer, otherwise the
+   * pending job is executed at the earlier of the two times.
+   */
+  @Value("${bsa.timer.coalescing.push-execution-time:false}")
+  Boolean pushExecutionTime;
+
   public void scheduleJob(
       UUID karExecId,
       String actionId,
@@ -40,23 +75,215 @@ public class BsaScheduler {
       BsaJobType jobtype,
       Map<String, String> mdc) {
 
+    ScheduledJobData data = createJob(karExecId, actionId, type, t, xReqId, jobtype, mdc);
+
+    logger.info(" Scheduling Job Id {} to be executed at : {}", data.getJobId(), t);
+
+    scheduler.schedule(schedulerConfig.sampleOneTimeJob().instance(data.getJobId(), data), t);
+  }
+
+  /**
+   * The method sets up the timer checking for the Reportability Response of a report, once the
+   * report has been sent using Direct.
+   *
+   * @param karExecId The id of the saved KarExecutionState of the KAR execution.
+   * @param actionId The action checking for the Reportability Response.
+   * @param xReqId The request id of the KAR execution.
+   * @param jobType The job type of the KAR execution.
+   */
+  public void scheduleResponseCheck(
+      UUID karExecId, String actionId, String xReqId, BsaJobType jobType) {
+
+    scheduleJob(
+        karExecId,
+        actionId,
+        BsaTypes.ActionType.CHECK_RESPONSE,
+        Instant.now().plusSeconds(RESPONSE_CHECK_DELAY_SECONDS),
+        xReqId,
+        jobType,
+        MDC.getCopyOfContextMap());
+  }
+
+  /**
+   * The method sets up a timer for an action. When a job is already pending for the same
+   * HealthcareSetting, patient, encounter, Knowledge Artifact and action, the pending job is reused
+   * and the execution time of the job is merged with the new time instead of scheduling another
+   * job. The pending job is updated to use the latest notification. KarExecutionStates of the timer
+   * that do not have a pending or executing job any more are deleted.
+   *
+   * @param kd The processing data of the action setting up the timer.
+   * @param actionId The action to be executed when the timer expires.
+   * @param type The type of the action.
+   * @param t The time at which the timer expires.
+   */
+  public void scheduleCoalescedJob(
+      KarProcessingData kd, String actionId, BsaTypes.ActionType type, Instant t) {
+
+    KarExecutionState newState = kd.getKarExecutionState();
+
+    if (!Boolean.TRUE.equals(timerCoalescingEnabled)) {
+      KarExecutionState st = karExecutionStateService.saveOrUpdate(newState);
+      scheduleJob(
+          st.getId(),
+          actionId,
+          type,
+          t,
+          kd.getxRequestId(),
+          kd.getJobType(),
+          MDC.getCopyOfContextMap());
+      return;
+    }
+
+    String timerKey = getTimerKey(kd, actionId);
+    newState.setTimerKey(timerKey);
+
+    KarExecutionState pendingState = null;
+    ScheduledTasks pendingJob = null;
+    List<KarExecutionState> superseded = new ArrayList<>();
+
+    for (KarExecutionState st :
+        karExecutionStateService.getKarExecutionStatesByTimerKey(timerKey)) {
+
+      List<ScheduledTasks> jobs =
+          schedulerService.getScheduledTasksByPrefix(BSA_SCHEDULED_JOB, getJobIdPrefix(st.getId()));
+
+      ScheduledTasks job = jobs.stream().filter(j -> !j.isPicked()).findFirst().orElse(null);
+
+      if (job != null && pendingJob == null) {
+        pendingState = st;
+        pendingJob = job;
+      } else if (jobs.stream().noneMatch(ScheduledTasks::isPicked)) {
+        // Either a duplicate pending job or a state left behind by a job that already completed.
+        superseded.add(st);
+      }
+    }
+
+    if (!superseded.isEmpty()) {
+      List<UUID> ids = new ArrayList<>();
+      superseded.forEach(st -> ids.add(st.getId()));
+      cancelJobs(ids);
+      superseded.forEach(karExecutionStateService::delete);
+      logger.info(" Deleted {} superseded KarExecutionStates for timer {}", ids.size(), timerKey);
+    }
+
+    if (pendingJob == null) {
+      KarExecutionState st = karExecutionStateService.saveOrUpdate(newState);
+      scheduleJob(
+          st.getId(),
+          actionId,
+          type,
+          t,
+          kd.getxRequestId(),
+          kd.getJobType(),
+          MDC.getCopyOfContextMap());
+      return;
+    }
+
+    pendingState.setNcId(newState.getNcId());
+    karExecutionStateService.saveOrUpdate(pendingState);
+
+    Instant existing = pendingJob.getExecution_time().toInstant();
+    Instant next = Boolean.TRUE.equals(pushExecutionTime) || t.isBefore(existing) ? t : existing;
+
+    if (!next.equals(existing)) {
+      scheduler.reschedule(
+          TaskInstanceId.of(BSA_SCHEDULED_JOB, pendingJob.getTask_instance()), next);
+    }
+
+    logger.info(
+        " Coalesced timer {} with pending Job Id {} to be executed at : {}",
+        timerKey,
+        pendingJob.getTask_instance(),
+        next);
+  }
+
+  /**
+   * The method creates the data for a job to be scheduled. The job id starts with the
+   * KarExecutionState id so that the jobs for a KarExecutionState can be cancelled together.
+   */
+  public ScheduledJobData createJob(
+      UUID karExecId,
+      String actionId,
+      BsaTypes.ActionType type,
+      Instant t,
+      String xReqId,
+      BsaJobType jobtype,
+      Map<String, String> mdc) {
+
     String jobId =
-        actionId
+        getJobIdPrefix(karExecId)
+            + actionId
             + "_"
             + type.toString()
             + "_"
-            + karExecId.toString()
-            + "_"
             + java.util.UUID.randomUUID().toString();
 
-    logger.info(" Scheduling Job Id {} to be executed at : {}", jobId, t);
+    return new ScheduledJobData(karExecId, actionId, type, t, jobId, xReqId, jobtype, mdc);
+  }
+
+  /**
+   * The method schedules many jobs using a single batch.
+   *
+   * @param jobs The jobs created using createJob.
+   * @return The number of jobs scheduled.
+   */
+  public int scheduleJobs(List<ScheduledJobData> jobs) {
+
+    List<SchedulableInstance<?>> instances = new ArrayList<>();
+
+    for (ScheduledJobData data : jobs) {
+      instances.add(
+          SchedulableInstance.of(
+              schedulerConfig.sampleOneTimeJob().instance(data.getJobId(), data),
+              data.getExpirationTime()));
+    }
+
+    int count = schedulerService.scheduleTasks(instances);
+    logger.info(" Scheduled {} jobs ", count);
+    return count;
+  }
+
+  /**
+   * The method cancels all the jobs that are not currently executing for the KarExecutionStates
+   * using a single batch. The jobs scheduled before the job ids started with the KarExecutionState
+   * id have the id after the action id and type, and are cancelled as well.
+   *
+   * @param karExecIds The ids of the KarExecutionStates whose jobs have to be cancelled.
+   * @return The number of jobs cancelled.
+   */
+  public int cancelJobs(Collection<UUID> karExecIds) {
+
+    List<String> prefixes = new ArrayList<>();
+    List<String> legacyParts = new ArrayList<>();
+
+    for (UUID karExecId : karExecIds) {
+      prefixes.add(getJobIdPrefix(karExecId));
+      legacyParts.add("_" + getJobIdPrefix(karExecId));
+    }
+
+    int count = schedulerService.cancelScheduledTasks(BSA_SCHEDULED_JOB, prefixes, legacyParts);
+    logger.info(" Cancelled {} jobs for {} KarExecutionStates", count, karExecIds.size());
+    return count;
+  }
+
+  /** The key identifies the timers of an action that can be coalesced. */
+  static String getTimerKey(KarProcessingData kd, String actionId) {
+
+    String encounterId = kd.getContextEncounterId();
+    if (encounterId.isEmpty() && kd.getContextEncounter() != null) {
+      encounterId = kd.getContextEncounter().getIdElement().getIdPart();
+    }
+
+    return String.join(
+        "|",
+        kd.getHealthcareSetting().getFhirServerBaseURL(),
+        kd.getContextPatientId(),
+        encounterId,
+        kd.getKar().getVersionUniqueId(),
+        actionId);
+  }
 
-    scheduler.schedule(
-        schedulerConfig
-            .sampleOneTimeJob()
-            .instance(
-                jobId,
-                new ScheduledJobData(karExecId, actionId, type, t, jobId, xReqId, jobtype, mdc)),
-        t);
+  private static String getJobIdPrefix(UUID karExecId) {
+    return karExecId.toString() + "_";
   }
 }
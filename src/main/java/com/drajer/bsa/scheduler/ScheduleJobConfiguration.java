@@ -38,7 +38,7 @@ public class ScheduleJobConfiguration {
   public Task<ScheduledJobData> sampleOneTimeJob() {
     logger.info("Initializing the One time task");
 
-    return Tasks.oneTime("BsaScheduledJob", ScheduledJobData.class)
+    return Tasks.oneTime(BsaScheduler.BSA_SCHEDULED_JOB, ScheduledJobData.class)
         .onFailureRetryLater()
         .execute(
             (inst, ctx) -> {
@@ -33,6 +33,14 @@ public interface KarExecutionStateService {
    */
   public KarExecutionState getKarExecutionStateById(UUID id);
 
+  /**
+   * Method to retrieve the KarExecutionStates saved for a timer.
+   *
+   * @param timerKey The key of the timer.
+   * @return List of KarExecutionStates for the timer.
+   */
+  public List<KarExecutionState> getKarExecutionStatesByTimerKey(String timerKey);
+
   /**
    * Method to to retrieve all KarExecutionStates
    *
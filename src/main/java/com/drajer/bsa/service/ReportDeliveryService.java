@@ -0,0 +1,40 @@
+package com.drajer.bsa.service;
+
+import com.drajer.bsa.model.BsaTypes.ReportTransportType;
+import com.drajer.bsa.model.KarProcessingData;
+import com.drajer.bsa.model.ReportSubmission;
+
+/**
+ *
+ *
+ * <h1>ReportDeliveryService Interface</h1>
+ *
+ * The ReportDeliveryService Interface class defines the methods to add reports to the submission
+ * outbox and to deliver the reports from the outbox to the PHA/TTP.
+ */
+public interface ReportDeliveryService {
+
+  /**
+   * Method to check whether reports are delivered using the outbox.
+   *
+   * @return true when the reports are added to the outbox, false when they have to be sent inline.
+   */
+  public boolean isOutboxEnabled();
+
+  /**
+   * Method to add the report of the KarProcessingData to the outbox. The submission joins the
+   * transaction of the caller, so it is delivered only if the PublicHealthMessage is saved.
+   *
+   * @param data The KarProcessingData containing the saved PublicHealthMessage and the
+   *     HealthcareSetting.
+   * @param transport The transport used to deliver the report.
+   * @param checkResponseActionId The action checking for the Reportability Response once the report
+   *     is delivered, null when the response is not checked.
+   * @return ReportSubmission that was added to the outbox.
+   */
+  public ReportSubmission enqueue(
+      KarProcessingData data, ReportTransportType transport, String checkResponseActionId);
+
+  /** Method to claim the submissions that are due and deliver them using the delivery workers. */
+  public void deliverDueSubmissions();
+}
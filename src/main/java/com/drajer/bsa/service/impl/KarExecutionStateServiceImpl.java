@@ -49,6 +49,17 @@ public class KarExecutionStateServiceImpl implements KarExecutionStateService {
     return karExecutionStateDao.getKarExecutionStateById(id);
   }
 
+  /**
+   * Method to retrieve the KarExecutionStates saved for a timer.
+   *
+   * @param timerKey The key of the timer.
+   * @return List of KarExecutionStates for the timer.
+   */
+  @Override
+  public List<KarExecutionState> getKarExecutionStatesByTimerKey(String timerKey) {
+    return karExecutionStateDao.getKarExecutionStatesByTimerKey(timerKey);
+  }
+
   /**
    * Method to to retrieve all Kars
    *
@@ -1,5 +1,7 @@
 package com.drajer.bsa.service.impl;
 
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.parser.IParser;
 import com.drajer.bsa.auth.AuthorizationUtils;
 import com.drajer.bsa.dao.HealthcareSettingsDao;
@@ -13,12 +15,16 @@ import com.drajer.bsa.kar.action.SubmitReport;
 import com.drajer.bsa.kar.action.ValidateReport;
 import com.drajer.bsa.kar.condition.BsaCqlCondition;
 import com.drajer.bsa.kar.condition.BsaFhirPathCondition;
+import com.drajer.bsa.kar.condition.KarCqlEngineFactory;
 import com.drajer.bsa.kar.model.BsaAction;
 import com.drajer.bsa.kar.model.BsaRelatedAction;
 import com.drajer.bsa.kar.model.FhirQueryFilter;
+import com.drajer.bsa.kar.model.KarQueryPlan;
+import com.drajer.bsa.kar.model.KarSnapshotCache;
 import com.drajer.bsa.kar.model.KnowledgeArtifact;
 import com.drajer.bsa.kar.model.KnowledgeArtifactRepositorySystem;
 import com.drajer.bsa.kar.model.KnowledgeArtifactStatus;
+import com.drajer.bsa.kar.model.TriggerCodeIndex;
 import com.drajer.bsa.model.BsaTypes;
 import com.drajer.bsa.model.BsaTypes.ActionType;
 import com.drajer.bsa.model.HealthcareSetting;
@@ -31,10 +37,12 @@ import com.drajer.bsa.scheduler.BsaScheduler;
 import com.drajer.bsa.service.KarParser;
 import com.drajer.bsa.service.KarService;
 import com.drajer.bsa.service.PublicHealthAuthorityService;
+import com.drajer.bsa.service.ReportDeliveryService;
 import com.drajer.bsa.utils.BsaConstants;
 import com.drajer.bsa.utils.BsaServiceUtils;
 import com.drajer.bsa.utils.SubscriptionUtils;
 import com.drajer.cda.utils.CdaGeneratorConstants;
+import com.drajer.ecrapp.config.TriggerCodeFilter;
 import com.drajer.sof.utils.FhirContextInitializer;
 import java.io.File;
 import java.io.FileFilter;
@@ -43,20 +51,27 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.annotation.PostConstruct;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r4.model.CanonicalType;
 import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.r4.model.DataRequirement;
+import org.hl7.fhir.r4.model.DataRequirement.DataRequirementCodeFilterComponent;
 import org.hl7.fhir.r4.model.Endpoint;
 import org.hl7.fhir.r4.model.Expression;
 import org.hl7.fhir.r4.model.Extension;
@@ -85,6 +100,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.client.RestTemplate;
@@ -131,9 +147,30 @@ public class KarParserImpl implements KarParser {
   @Value("${fhirpath.enabled:true}")
   boolean fhirpathEnabled;
 
+  @Value("${kar.query-plan.include-references:false}")
+  boolean queryPlanIncludeReferences;
+
   @Value("${bsa.output.directory:bsa-output}")
   String logDirectory;
 
+  @Value("${report.skip-unchanged.enabled:false}")
+  Boolean skipUnchangedReports;
+
+  @Value("${kar.loading.threads:4}")
+  Integer karLoadingThreads;
+
+  @Value("${kar.snapshot.enabled:false}")
+  Boolean karSnapshotEnabled;
+
+  @Value("${kar.snapshot.directory:}")
+  String karSnapshotDirectory;
+
+  @Value("${trigger.code.filter.enabled:false}")
+  Boolean triggerCodeFilterEnabled;
+
+  @Value("${trigger.code.filter.fpp:0.01}")
+  Double triggerCodeFilterFpp;
+
   @Autowired BsaServiceUtils utils;
 
   // Autowired to pass to action processors.
@@ -150,6 +187,9 @@ public class KarParserImpl implements KarParser {
   // Autowired to pass to FhirPathProcessors.
   @Autowired LibraryProcessor libraryProcessor;
 
+  // Autowired to create the CQL engine for each KAR.
+  @Autowired KarCqlEngineFactory cqlEngineFactory;
+
   // Autowired to pass to Actions
   @Autowired PublicHealthMessagesDao phDao;
 
@@ -163,6 +203,8 @@ public class KarParserImpl implements KarParser {
 
   @Autowired RestfulTransportImpl restSubmitter;
 
+  @Autowired ReportDeliveryService reportDeliveryService;
+
   @Autowired AuthorizationUtils authUtils;
 
   @Autowired FhirContextInitializer fhirContextInitializer;
@@ -253,13 +295,43 @@ public class KarParserImpl implements KarParser {
 
   @PostConstruct
   public void initializeRepository() {
-    localKarRepoUrlToName = new HashMap<>();
-    localKars = new HashMap<>();
+    validateSnapshotDirectory();
     loadKars();
   }
 
+  /**
+   * The snapshots are deserialized, so they are only read from a directory that is explicitly
+   * configured with an absolute path and already exists.
+   */
+  void validateSnapshotDirectory() {
+
+    if (!Boolean.TRUE.equals(karSnapshotEnabled)) {
+      return;
+    }
+
+    if (StringUtils.isBlank(karSnapshotDirectory)
+        || !new File(karSnapshotDirectory).isAbsolute()
+        || !new File(karSnapshotDirectory).isDirectory()) {
+
+      String msg =
+          "kar.snapshot.directory must be an existing absolute directory when KAR snapshots are"
+              + " enabled, configured value: "
+              + karSnapshotDirectory;
+      logger.error(msg);
+      throw new RuntimeException(msg);
+    }
+  }
+
+  /**
+   * The method loads the KARs from the KAR directory, it is also used to reload the KARs without a
+   * restart. The KARs that are loaded replace the KARs with the same version in the
+   * KnowledgeArtifactRepositorySystem in a single update, the executions in progress continue with
+   * the KARs they started with.
+   */
   @Override
-  public void loadKars() {
+  public synchronized void loadKars() {
+    localKarRepoUrlToName = new HashMap<>();
+    localKars = new HashMap<>();
     loadKarsFromDirectory(karDirectory, LOCAL_HOST_REPO_BASE_URL, LOCAL_HOST_REPO_NAME);
     persistLocalKars();
   }
@@ -293,7 +365,54 @@ public class KarParserImpl implements KarParser {
 
   public void loadKarsFromDirectory(String dirName, String repoUrl, String repoName) {
 
-    // Load each of the Knowledge Artifact Bundles.
+    List<KarFile> karFiles = new ArrayList<>();
+    findKarFiles(dirName, repoUrl, repoName, karFiles);
+
+    KarSnapshotCache snapshotCache =
+        new KarSnapshotCache(
+            FhirContext.forCached(FhirVersionEnum.R4),
+            Boolean.TRUE.equals(karSnapshotEnabled) ? karSnapshotDirectory : null);
+
+    // Read the KAR Bundles in parallel, the KARs are processed in order after the reads.
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.max(1, Math.min(karLoadingThreads, karFiles.size())),
+            new CustomizableThreadFactory("KarLoader-"));
+
+    // The KARs are created off to the side and added to the repository system together.
+    Map<String, KnowledgeArtifact> arts = new LinkedHashMap<>();
+
+    try {
+      for (KarFile karFile : karFiles) {
+        karFile.bundle = executor.submit(() -> snapshotCache.readKar(karFile.file));
+      }
+
+      for (KarFile karFile : karFiles) {
+
+        logger.info(" Processing KAR {}", karFile.file.getName());
+        KnowledgeArtifact art =
+            processKar(karFile.file, getKarBundle(karFile), karFile.repoUrl, karFile.repoName);
+
+        if (art != null) {
+          arts.putIfAbsent(art.getVersionUniqueId(), art);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    knowledgeArtifactRepositorySystem.replace(arts.values());
+    logger.info(" Loaded {} KARs from {}", arts.size(), dirName);
+
+    if (Boolean.TRUE.equals(karSnapshotEnabled)) {
+      snapshotCache.removeUnusedSnapshots();
+    }
+  }
+
+  private void findKarFiles(
+      String dirName, String repoUrl, String repoName, List<KarFile> karFiles) {
+
+    // Find each of the Knowledge Artifact Bundles.
     File folder = new File(dirName);
 
     File[] files = folder.listFiles((FileFilter) FileFilterUtils.fileFileFilter());
@@ -303,8 +422,7 @@ public class KarParserImpl implements KarParser {
 
         if (kar.isFile() && JSON_KAR_EXT.contentEquals(FilenameUtils.getExtension(kar.getName()))) {
 
-          logger.info(" Processing KAR {}", kar.getName());
-          processKar(kar, repoUrl, repoName);
+          karFiles.add(new KarFile(kar, repoUrl, repoName));
         } // For a File
       }
     }
@@ -319,16 +437,44 @@ public class KarParserImpl implements KarParser {
         String url = repoUrl + "/" + dir.getName();
         String name = repoName + "-" + dir.getName();
 
-        loadKarsFromDirectory(dir.getPath(), url, name);
+        findKarFiles(dir.getPath(), url, name, karFiles);
       }
     }
   }
 
-  private void processKar(File kar, String repoUrl, String repoName) {
+  private Bundle getKarBundle(KarFile karFile) {
 
-    logger.info(" Processing File : {}", kar);
+    try {
+      return karFile.bundle.get();
+    } catch (InterruptedException e) {
+      logger.error(" Interrupted while reading KAR File {}", karFile.file, e);
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      logger.error(" Exception Reading KAR File {}", karFile.file, e);
+    }
+
+    return null;
+  }
 
-    Bundle karBundle = utils.readKarFromFile(kar.getPath());
+  /** A KAR file found in the KAR directory and the read of its Bundle. */
+  private static class KarFile {
+
+    private final File file;
+    private final String repoUrl;
+    private final String repoName;
+    private Future<Bundle> bundle;
+
+    KarFile(File file, String repoUrl, String repoName) {
+      this.file = file;
+      this.repoUrl = repoUrl;
+      this.repoName = repoName;
+    }
+  }
+
+  private KnowledgeArtifact processKar(
+      File kar, Bundle karBundle, String repoUrl, String repoName) {
+
+    logger.info(" Processing File : {}", kar);
 
     if (karBundle != null && (karBundle.getType() == Bundle.BundleType.COLLECTION)) {
 
@@ -389,16 +535,30 @@ public class KarParserImpl implements KarParser {
        * for (HealthcareSetting healthcareSetting : allHealthcareSettings) { KarProcessingData kd =
        * makeData(healthcareSetting, art); subscriptionGeneratorService.createSubscriptions(kd); }
        */
+      art.setQueryPlan(
+          KarQueryPlan.createPlan(art.getDefaultQueries(), queryPlanIncludeReferences));
+      art.setTriggerCodeIndex(TriggerCodeIndex.createIndex(art));
+
+      if (Boolean.TRUE.equals(triggerCodeFilterEnabled)) {
+        art.setTriggerCodeFilter(
+            TriggerCodeFilter.create(
+                art.getKarId(), art.getDependentValueSets(), triggerCodeFilterFpp));
+      }
+      art.setCqlEngine(cqlEngineFactory.createEngine(art));
+
       addArtifactForPersistence(art, repoUrl, repoName);
-      knowledgeArtifactRepositorySystem.add(art);
       art.printKarSummary();
 
+      return art;
+
     } else {
 
       logger.error(
           " Bundle for Path : {} cannot be processed because it is either non existent or of the wrong bundle type.",
           kar);
     }
+
+    return null;
   }
 
   /**
@@ -637,6 +797,13 @@ public class KarParserImpl implements KarParser {
           action.addRelatedDataId(dr.getId(), st);
         }
 
+        // Parse the code filter paths once so that they are not parsed for every resource.
+        for (DataRequirementCodeFilterComponent cf : dr.getCodeFilter()) {
+          if (cf.hasPath()) {
+            BsaServiceUtils.getCompiledFhirPath(cf.getPath());
+          }
+        }
+
       } catch (FHIRException ex) {
         logger.error(" Type specified is not a resource Type {}", dr.getType());
       }
@@ -699,6 +866,7 @@ public class KarParserImpl implements KarParser {
       sr.setPhDao(phDao);
       sr.setDirectSender(directInterface);
       sr.setRestSubmitter(restSubmitter);
+      sr.setReportDeliveryService(reportDeliveryService);
       sr.setFhirContextInitializer(fhirContextInitializer);
       sr.setAuthorizationUtils(authUtils);
       sr.setPublicHealthAuthorityService(publicHealthAuthorityService);
@@ -706,6 +874,7 @@ public class KarParserImpl implements KarParser {
     } else if (action.getType() == ActionType.CREATE_REPORT) {
       CreateReport cr = (CreateReport) action;
       cr.setPhDao(phDao);
+      cr.setSkipUnchangedReports(skipUnchangedReports);
     }
 
     art.populateDefaultQueries(action);
@@ -102,6 +102,9 @@ public class KarProcessorImpl implements KarProcessor {
       data.setPreviousTriggerMatchStatus(
           BsaServiceUtils.getTriggerMatchStatus(phm.getTriggerMatchStatus()));
     }
+    if (phm != null) {
+      data.setPreviousReportFingerprint(phm.getSubmittedDataFingerprint());
+    }
 
     logger.info(" *** START Executing Trigger Actions *** ");
     Set<BsaAction> actions = kar.getActionsForTriggerEvent(namedEvent);
@@ -185,6 +188,9 @@ public class KarProcessorImpl implements KarProcessor {
           kd.setPreviousTriggerMatchStatus(
               BsaServiceUtils.getTriggerMatchStatus(phm.getTriggerMatchStatus()));
         }
+        if (phm != null) {
+          kd.setPreviousReportFingerprint(phm.getSubmittedDataFingerprint());
+        }
 
         // Setup the Kar Status for the specific job.
         if (kd.getHealthcareSetting() != null && kd.getHealthcareSetting().getKars() != null) {
@@ -0,0 +1,523 @@
+package com.drajer.bsa.service.impl;
+
+import com.drajer.bsa.dao.HealthcareSettingsDao;
+import com.drajer.bsa.dao.NotificationContextDao;
+import com.drajer.bsa.dao.PublicHealthMessagesDao;
+import com.drajer.bsa.dao.ReportSubmissionDao;
+import com.drajer.bsa.kar.model.KnowledgeArtifactRepositorySystem;
+import com.drajer.bsa.model.BsaTypes.ReportDeliveryStatus;
+import com.drajer.bsa.model.BsaTypes.ReportTransportType;
+import com.drajer.bsa.model.HealthcareSetting;
+import com.drajer.bsa.model.KarExecutionState;
+import com.drajer.bsa.model.KarProcessingData;
+import com.drajer.bsa.model.NotificationContext;
+import com.drajer.bsa.model.PublicHealthMessage;
+import com.drajer.bsa.model.ReportSubmission;
+import com.drajer.bsa.routing.impl.DirectTransportImpl;
+import com.drajer.bsa.routing.impl.RestfulTransportImpl;
+import com.drajer.bsa.scheduler.BsaScheduler;
+import com.drajer.bsa.service.ReportDeliveryService;
+import com.drajer.ecrapp.util.MDCUtils;
+import io.micrometer.core.instrument.Metrics;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ *
+ *
+ * <h1>ReportDeliveryServiceImpl</h1>
+ *
+ * The ReportDeliveryServiceImpl delivers the reports from the submission outbox. The due
+ * submissions are claimed periodically and delivered by a pool of delivery workers, so the KAR
+ * processing threads do not wait for the PHA/TTP and do not hold their database connection during
+ * the delivery.
+ *
+ * <p>The number of concurrent deliveries to a single destination is limited, submissions for a
+ * destination without a free permit stay in the outbox until the next poll. A failed delivery is
+ * retried with an exponential backoff, after the maximum number of attempts the submission is moved
+ * to the dead letter status and is not retried. The fingerprint of the report is saved and the
+ * check for the Reportability Response is scheduled only once the report is delivered.
+ *
+ * <p>The transports receive the report, the HealthcareSetting, the NotificationContext and the KAR
+ * of the KAR execution which created the report, the resources fetched from the EHR and the action
+ * outputs of the KAR execution are not available when the report is delivered.
+ *
+ * <p>The claimed submissions are leased to this instance, the lease is renewed while the delivery
+ * is in progress so that a slow delivery is not claimed again by another instance.
+ */
+@Service
+public class ReportDeliveryServiceImpl implements ReportDeliveryService {
+
+  private static final Logger logger = LoggerFactory.getLogger(ReportDeliveryServiceImpl.class);
+
+  private static final String DELIVERY_METRIC = "ecrnow.report.delivery";
+  private static final String DELIVERY_DURATION_METRIC = "ecrnow.report.delivery.duration";
+  private static final String IN_FLIGHT_METRIC = "ecrnow.report.delivery.in.flight";
+  private static final String TRANSPORT_TAG = "transport";
+  private static final String OUTCOME_TAG = "outcome";
+
+  @Autowired ReportSubmissionDao submissionDao;
+
+  @Autowired PublicHealthMessagesDao phDao;
+
+  @Autowired HealthcareSettingsDao hsDao;
+
+  @Autowired NotificationContextDao ncDao;
+
+  @Autowired KnowledgeArtifactRepositorySystem knowledgeArtifactRepositorySystem;
+
+  @Autowired DirectTransportImpl directSender;
+
+  @Autowired RestfulTransportImpl restSubmitter;
+
+  @Autowired BsaScheduler scheduler;
+
+  @Value("${report.delivery.outbox.enabled:false}")
+  Boolean outboxEnabled;
+
+  @Value("${report.delivery.threads:10}")
+  Integer deliveryThreads;
+
+  @Value("${report.delivery.max-per-destination:2}")
+  Integer maxDeliveriesPerDestination;
+
+  @Value("${report.delivery.max-attempts:10}")
+  Integer maxAttempts;
+
+  @Value("${report.delivery.retry.initial-delay-ms:30000}")
+  Long initialRetryDelay;
+
+  @Value("${report.delivery.retry.max-delay-ms:3600000}")
+  Long maxRetryDelay;
+
+  @Value("${report.delivery.lease-ms:600000}")
+  Long leaseTime;
+
+  @Value("${report.delivery.lease-renewal-ms:200000}")
+  Long leaseRenewalInterval;
+
+  /** The executor of the delivery workers. */
+  private ExecutorService deliveryExecutor;
+
+  /** The permits for delivering to each destination, the Key is the destination. */
+  private final Map<String, Semaphore> destinationPermits = new ConcurrentHashMap<>();
+
+  /** The ids of the submissions being delivered, their leases are renewed. */
+  private final Set<UUID> leasedSubmissions = ConcurrentHashMap.newKeySet();
+
+  /** The number of deliveries that are claimed and not yet completed. */
+  private final AtomicInteger inFlight =
+      Metrics.gauge(IN_FLIGHT_METRIC, new AtomicInteger(), AtomicInteger::get);
+
+  @PostConstruct
+  public void initializeExecutor() {
+
+    if (Boolean.TRUE.equals(outboxEnabled)) {
+
+      if (leaseRenewalInterval >= leaseTime) {
+        String msg =
+            "The report delivery lease renewal interval "
+                + leaseRenewalInterval
+                + " ms must be shorter than the lease time "
+                + leaseTime
+                + " ms";
+        logger.error(msg);
+        throw new RuntimeException(msg);
+      }
+
+      logger.info(
+          " Initializing report delivery with {} threads and {} deliveries per destination ",
+          deliveryThreads,
+          maxDeliveriesPerDestination);
+      deliveryExecutor =
+          Executors.newFixedThreadPool(
+              deliveryThreads, new CustomizableThreadFactory("ReportDelivery-"));
+    }
+  }
+
+  @PreDestroy
+  public void shutdownExecutor() {
+
+    if (deliveryExecutor != null) {
+      deliveryExecutor.shutdown();
+    }
+  }
+
+  @Override
+  public boolean isOutboxEnabled() {
+    return Boolean.TRUE.equals(outboxEnabled);
+  }
+
+  @Override
+  public ReportSubmission enqueue(
+      KarProcessingData data, ReportTransportType transport, String checkResponseActionId) {
+
+    HealthcareSetting hs = data.getHealthcareSetting();
+
+    ReportSubmission submission = new ReportSubmission();
+    submission.setPhMessageId(data.getPhm().getId());
+    submission.setHsId(hs.getId());
+    submission.setTransport(transport);
+    submission.setDestination(getDestination(transport, hs));
+    submission.setDeliveryStatus(ReportDeliveryStatus.PENDING);
+    submission.setAttempts(0);
+    submission.setNextAttemptTime(new Date());
+    submission.setxRequestId(data.getxRequestId());
+    submission.setxCorrelationId(data.getxCorrelationId());
+    submission.setReportFingerprint(data.getReportFingerprint());
+    submission.setJobType(data.getJobType());
+
+    if (data.getNotificationContext() != null) {
+      submission.setNcId(data.getNotificationContext().getId());
+    }
+
+    if (checkResponseActionId != null) {
+
+      KarExecutionState st =
+          data.getKarExecutionStateService().saveOrUpdate(data.getKarExecutionState());
+      submission.setKarExecutionStateId(st.getId());
+      submission.setCheckResponseActionId(checkResponseActionId);
+    }
+
+    submissionDao.saveOrUpdate(submission);
+
+    logger.info(
+        " Added report {} to the outbox for delivery to {}",
+        submission.getPhMessageId(),
+        submission.getDestination());
+
+    return submission;
+  }
+
+  @Override
+  @Scheduled(
+      fixedDelayString = "${report.delivery.polling-interval-ms:5000}",
+      initialDelayString = "${report.delivery.polling-interval-ms:5000}")
+  public void deliverDueSubmissions() {
+
+    if (deliveryExecutor == null) {
+      return;
+    }
+
+    int capacity = deliveryThreads - inFlight.get();
+
+    if (capacity <= 0) {
+      return;
+    }
+
+    Date now = new Date();
+    List<Semaphore> acquired = new ArrayList<>();
+    List<ReportSubmission> claimed;
+
+    try {
+      claimed =
+          submissionDao.claimDueSubmissions(
+              now,
+              new Date(now.getTime() + leaseTime),
+              capacity,
+              submission -> {
+                Semaphore permits = getPermits(submission.getDestination());
+                if (permits.tryAcquire()) {
+                  acquired.add(permits);
+                  return true;
+                }
+                return false;
+              });
+    } catch (RuntimeException e) {
+      logger.error(" Unable to claim the reports that are due for delivery ", e);
+      acquired.forEach(Semaphore::release);
+      return;
+    }
+
+    for (ReportSubmission submission : claimed) {
+
+      inFlight.incrementAndGet();
+      leasedSubmissions.add(submission.getId());
+
+      try {
+        deliveryExecutor.execute(() -> deliverAndRelease(submission));
+      } catch (RejectedExecutionException e) {
+        // The submission is delivered again once its lease expires.
+        logger.error(" Unable to start the delivery of report {}", submission.getPhMessageId(), e);
+        release(submission);
+      }
+    }
+  }
+
+  private void deliverAndRelease(ReportSubmission submission) {
+
+    try {
+      MDCUtils.addCorrelationId(submission.getxCorrelationId());
+      deliver(submission);
+    } finally {
+      MDCUtils.removeCorrelationId();
+      release(submission);
+    }
+  }
+
+  private void release(ReportSubmission submission) {
+    leasedSubmissions.remove(submission.getId());
+    getPermits(submission.getDestination()).release();
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * The method renews the leases of the submissions being delivered. A send can take longer than
+   * the lease, for example when waiting for a connection to the HISP, and the submission would then
+   * be claimed and delivered again by another instance.
+   */
+  @Scheduled(
+      fixedDelayString = "${report.delivery.lease-renewal-ms:200000}",
+      initialDelayString = "${report.delivery.lease-renewal-ms:200000}")
+  public void renewLeases() {
+
+    if (leasedSubmissions.isEmpty()) {
+      return;
+    }
+
+    try {
+      int renewed =
+          submissionDao.renewLeases(
+              new ArrayList<>(leasedSubmissions), new Date(System.currentTimeMillis() + leaseTime));
+      logger.debug(" Renewed the lease of {} reports being delivered", renewed);
+    } catch (RuntimeException e) {
+      logger.error(" Unable to renew the lease of the reports being delivered ", e);
+    }
+  }
+
+  /**
+   * The method makes a single delivery attempt for the submission and records the outcome.
+   *
+   * @param submission The claimed submission.
+   */
+  void deliver(ReportSubmission submission) {
+
+    String transport = submission.getTransport().toString();
+    long start = System.nanoTime();
+    KarProcessingData data;
+
+    try {
+
+      data = getDeliveryData(submission);
+
+      if (data == null) {
+        moveToDeadLetter(submission, "The report or the Healthcare Setting no longer exists");
+        return;
+      }
+
+      logger.info(
+          " Delivering report {} to {}, attempt {}",
+          submission.getPhMessageId(),
+          submission.getDestination(),
+          submission.getAttempts() + 1);
+
+      if (submission.getTransport() == ReportTransportType.DIRECT) {
+        directSender.sendEicrDataUsingDirect(data);
+      } else {
+        restSubmitter.sendEicrDataUsingRestfulApi(data);
+      }
+
+    } catch (RuntimeException e) {
+
+      logger.error(" Unable to deliver report {}", submission.getPhMessageId(), e);
+      recordFailure(submission, e.toString());
+      return;
+
+    } finally {
+      Metrics.timer(DELIVERY_DURATION_METRIC, TRANSPORT_TAG, transport)
+          .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    saveSubmittedDataFingerprint(submission, data.getPhm());
+    scheduleResponseCheck(submission);
+
+    submission.setAttempts(submission.getAttempts() + 1);
+    submission.setDeliveryStatus(ReportDeliveryStatus.DELIVERED);
+    submission.setDeliveredTime(new Date());
+    submission.setLastError(null);
+    saveOutcome(submission);
+
+    Metrics.counter(DELIVERY_METRIC, TRANSPORT_TAG, transport, OUTCOME_TAG, "delivered")
+        .increment();
+    logger.info(" Delivered report {}", submission.getPhMessageId());
+  }
+
+  /**
+   * The fingerprint is saved once the report is delivered, so that the report is not created again
+   * until the data changes. A report that is not delivered does not prevent a new report.
+   */
+  private void saveSubmittedDataFingerprint(ReportSubmission submission, PublicHealthMessage phm) {
+
+    if (submission.getReportFingerprint() == null) {
+      return;
+    }
+
+    try {
+      phm.setSubmittedDataFingerprint(submission.getReportFingerprint());
+      phDao.saveOrUpdate(phm);
+    } catch (RuntimeException e) {
+      logger.error(
+          " Unable to save the fingerprint of delivered report {}", submission.getPhMessageId(), e);
+    }
+  }
+
+  private void scheduleResponseCheck(ReportSubmission submission) {
+
+    if (submission.getCheckResponseActionId() == null) {
+      return;
+    }
+
+    try {
+      logger.info(" Setting up Timer to check for the Reportability Response ");
+      scheduler.scheduleResponseCheck(
+          submission.getKarExecutionStateId(),
+          submission.getCheckResponseActionId(),
+          submission.getxRequestId(),
+          submission.getJobType());
+    } catch (RuntimeException e) {
+      logger.error(
+          " Unable to schedule the Reportability Response check of report {}",
+          submission.getPhMessageId(),
+          e);
+    }
+  }
+
+  private KarProcessingData getDeliveryData(ReportSubmission submission) {
+
+    PublicHealthMessage phm = phDao.getById(submission.getPhMessageId());
+    HealthcareSetting hs = hsDao.getHealthcareSettingById(submission.getHsId());
+
+    if (phm == null || hs == null) {
+      return null;
+    }
+
+    KarProcessingData data = new KarProcessingData();
+    data.setPhm(phm);
+    data.setHealthcareSetting(hs);
+    data.setSubmittedCdaData(phm.getSubmittedCdaData());
+    data.setxRequestId(submission.getxRequestId());
+    data.setxCorrelationId(submission.getxCorrelationId());
+    data.setJobType(submission.getJobType());
+
+    if (submission.getNcId() != null) {
+      NotificationContext nc = ncDao.getNotificationContextById(submission.getNcId());
+      data.setNotificationContext(nc);
+    }
+
+    if (phm.getKarUniqueId() != null) {
+      data.setKar(knowledgeArtifactRepositorySystem.getById(phm.getKarUniqueId()));
+    }
+
+    return data;
+  }
+
+  private void recordFailure(ReportSubmission submission, String error) {
+
+    int attempts = submission.getAttempts() + 1;
+
+    if (attempts >= maxAttempts) {
+      submission.setAttempts(attempts);
+      moveToDeadLetter(submission, error);
+      return;
+    }
+
+    long delay = getRetryDelay(attempts);
+
+    submission.setAttempts(attempts);
+    submission.setDeliveryStatus(ReportDeliveryStatus.PENDING);
+    submission.setNextAttemptTime(new Date(System.currentTimeMillis() + delay));
+    submission.setLastError(error);
+    saveOutcome(submission);
+
+    Metrics.counter(
+            DELIVERY_METRIC,
+            TRANSPORT_TAG,
+            submission.getTransport().toString(),
+            OUTCOME_TAG,
+            "retry")
+        .increment();
+    logger.info(" Report {} will be delivered again in {} ms", submission.getPhMessageId(), delay);
+  }
+
+  private void moveToDeadLetter(ReportSubmission submission, String error) {
+
+    submission.setDeliveryStatus(ReportDeliveryStatus.DEAD_LETTER);
+    submission.setLastError(error);
+    saveOutcome(submission);
+
+    Metrics.counter(
+            DELIVERY_METRIC,
+            TRANSPORT_TAG,
+            submission.getTransport().toString(),
+            OUTCOME_TAG,
+            "dead_letter")
+        .increment();
+    logger.error(
+        " Report {} could not be delivered after {} attempts, moved to dead letter: {}",
+        submission.getPhMessageId(),
+        submission.getAttempts(),
+        error);
+  }
+
+  /**
+   * When the outcome cannot be saved the submission stays in progress, and it is delivered again
+   * after its lease expires.
+   */
+  private void saveOutcome(ReportSubmission submission) {
+
+    try {
+      submissionDao.saveOrUpdate(submission);
+    } catch (RuntimeException e) {
+      logger.error(
+          " Unable to save the delivery status of report {}", submission.getPhMessageId(), e);
+    }
+  }
+
+  /**
+   * @param attempts The number of failed attempts.
+   * @return The delay before the next attempt, doubled for each failed attempt up to the maximum.
+   */
+  long getRetryDelay(int attempts) {
+
+    int doublings = Math.min(Math.max(attempts - 1, 0), 30);
+    return Math.min(initialRetryDelay << doublings, maxRetryDelay);
+  }
+
+  private Semaphore getPermits(String destination) {
+
+    return destinationPermits.computeIfAbsent(
+        destination, key -> new Semaphore(Math.max(1, maxDeliveriesPerDestination)));
+  }
+
+  static String getDestination(ReportTransportType transport, HealthcareSetting hs) {
+
+    if (transport == ReportTransportType.DIRECT) {
+      return Objects.toString(
+          StringUtils.isNotEmpty(hs.getSmtpUrl()) ? hs.getSmtpUrl() : hs.getDirectHost(), "");
+    }
+
+    return Objects.toString(hs.getRestApiUrl(), "");
+  }
+}
@@ -10,16 +10,24 @@ import com.drajer.bsa.kar.model.KnowledgeArtifactStatus;
 import com.drajer.bsa.model.HealthcareSetting;
 import com.drajer.bsa.model.KarProcessingData;
 import com.drajer.bsa.model.NotificationContext;
+import com.drajer.bsa.model.NotificationDataCache;
 import com.drajer.bsa.model.PatientLaunchContext;
 import com.drajer.bsa.service.KarProcessor;
 import com.drajer.bsa.service.SubscriptionNotificationReceiver;
 import com.drajer.bsa.utils.SubscriptionUtils;
+import com.drajer.ecrapp.service.WorkflowService;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.hl7.fhir.r4.model.Bundle;
@@ -28,8 +36,11 @@ import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ResourceType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -50,12 +61,42 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
 
   @Autowired KnowledgeArtifactRepositorySystem knowledgeArtifactRepositorySystem;
 
+  @Autowired WorkflowService workflowService;
+
   @Autowired
   @Qualifier("jsonParser")
   IParser jsonParser;
 
+  @Value("${kar.parallel-execution.enabled:false}")
+  Boolean parallelExecutionEnabled;
+
+  @Value("${kar.parallel-execution.threads:4}")
+  Integer parallelExecutionThreads;
+
+  /** The executor used to apply the KARs for a notification in parallel. */
+  private ExecutorService karExecutor;
+
   private final Logger logger = LoggerFactory.getLogger(SubscriptionNotificationReceiverImpl.class);
 
+  @PostConstruct
+  public void initializeExecutor() {
+
+    if (Boolean.TRUE.equals(parallelExecutionEnabled)) {
+      logger.info(" Initializing KAR executor with {} threads ", parallelExecutionThreads);
+      karExecutor =
+          Executors.newFixedThreadPool(
+              parallelExecutionThreads, new CustomizableThreadFactory("KarExecutor-"));
+    }
+  }
+
+  @PreDestroy
+  public void shutdownExecutor() {
+
+    if (karExecutor != null) {
+      karExecutor.shutdown();
+    }
+  }
+
   /** The method that processes the notification. */
   @Override
   public List<KarProcessingData> processNotification(
@@ -80,6 +121,8 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
 
       ncDao.saveOrUpdate(nc);
 
+      updateLaunchForEncounter(nc);
+
       try {
 
         // Start processing the relaunch notification.
@@ -103,6 +146,9 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
 
             Set<KnowledgeArtifactStatus> stat = arfts.getArtifactStatus();
 
+            // The EHR data is shared by all the KARs processing the notification.
+            NotificationDataCache dataCache = new NotificationDataCache();
+
             for (KnowledgeArtifactStatus ks : stat) {
 
               if (ks.getIsActive().booleanValue()) {
@@ -127,6 +173,7 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
                   kd.setKarStatus(ks);
                   kd.setxRequestId(nc.getxRequestId());
                   kd.setxCorrelationId(nc.getxCorrelationId());
+                  kd.setNotificationDataCache(dataCache);
 
                   if (nc.getNotifiedResource() != null) {
                     logger.info("Adding notified resource to the set of inputs ");
@@ -141,7 +188,6 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
                     }
                   }
 
-                  karProcessor.applyKarForNotification(kd);
                   dataList.add(kd);
                 } else {
 
@@ -158,6 +204,8 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
               }
             }
 
+            applyKarsForNotification(dataList);
+
           } else {
             logger.error(
                 " Cannot proceed with the processing because the Healthcare Settings does not contain any Knowledge Artifacts that are operational.");
@@ -231,6 +279,9 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
 
             Set<KnowledgeArtifactStatus> stat = arfts.getArtifactStatus();
 
+            // The EHR data is shared by all the KARs processing the notification.
+            NotificationDataCache dataCache = new NotificationDataCache();
+
             for (KnowledgeArtifactStatus ks : stat) {
 
               if (ks.getIsActive().booleanValue()) {
@@ -255,6 +306,7 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
                   kd.setKarStatus(ks);
                   kd.setxRequestId(nc.getxRequestId());
                   kd.setxCorrelationId(nc.getxCorrelationId());
+                  kd.setNotificationDataCache(dataCache);
 
                   if (nc.getNotifiedResource() != null) {
                     logger.info("Adding notified resource to the set of inputs ");
@@ -269,7 +321,6 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
                     }
                   }
 
-                  karProcessor.applyKarForNotification(kd);
                   dataList.add(kd);
                 } else {
 
@@ -286,6 +337,8 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
               }
             }
 
+            applyKarsForNotification(dataList);
+
           } else {
             logger.error(
                 " Cannot proceed with the processing because the Healthcare Settings does not contain any Knowledge Artifacts that are operational.");
@@ -312,4 +365,82 @@ public class SubscriptionNotificationReceiverImpl implements SubscriptionNotific
     logger.info(" End processing notification ");
     return dataList;
   }
+
+  /**
+   * The method updates the eCR launch for the notified Encounter, if one exists, so that the
+   * encounter closure is detected without the timers having to query the EHR.
+   *
+   * @param nc The context of the notification.
+   */
+  private void updateLaunchForEncounter(NotificationContext nc) {
+
+    if (nc.getNotifiedResource() == null
+        || nc.getNotifiedResource().getResourceType() != ResourceType.Encounter) {
+      return;
+    }
+
+    try {
+      workflowService.handleEncounterNotification(
+          nc.getFhirServerBaseUrl(), nc.getPatientId(), (Encounter) nc.getNotifiedResource());
+    } catch (Exception e) {
+      logger.error(" Error updating the launch for the notified Encounter ", e);
+    }
+  }
+
+  /**
+   * The method applies each of the KARs to the notification. When parallel execution is enabled and
+   * there is more than one KAR, the KARs are applied concurrently and the method waits for all of
+   * them to finish. A failure in one KAR does not stop the processing of the other KARs in that
+   * case.
+   *
+   * @param dataList The processing data for each of the KARs to be applied.
+   */
+  private void applyKarsForNotification(List<KarProcessingData> dataList) {
+
+    if (karExecutor == null || dataList.size() <= 1) {
+
+      for (KarProcessingData kd : dataList) {
+        karProcessor.applyKarForNotification(kd);
+      }
+
+      return;
+    }
+
+    logger.info(" Applying {} KARs in parallel for the notification ", dataList.size());
+
+    Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+    List<Future<?>> results = new ArrayList<>();
+
+    for (KarProcessingData kd : dataList) {
+
+      results.add(
+          karExecutor.submit(
+              () -> {
+                try {
+                  if (mdcContext != null) {
+                    MDC.setContextMap(mdcContext);
+                  }
+                  karProcessor.applyKarForNotification(kd);
+                } finally {
+                  MDC.clear();
+                }
+              }));
+    }
+
+    for (int i = 0; i < results.size(); i++) {
+
+      try {
+        results.get(i).get();
+      } catch (ExecutionException e) {
+        logger.error(
+            " Error during processing of KAR {} for the notification ",
+            dataList.get(i).getKar().getVersionUniqueId(),
+            e.getCause());
+      } catch (InterruptedException e) {
+        logger.error(" Interrupted while waiting for the KARs to be applied ", e);
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+  }
 }
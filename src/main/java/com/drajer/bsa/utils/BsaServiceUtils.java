@@ -1,17 +1,19 @@
 package com.drajer.bsa.utils;
 
 import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.fhirpath.IFhirPath;
+import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.parser.IParser;
 import com.drajer.bsa.kar.action.BsaActionStatus;
 import com.drajer.bsa.kar.action.CheckTriggerCodeStatusList;
 import com.drajer.bsa.kar.model.BsaAction;
 import com.drajer.bsa.kar.model.FhirQueryFilter;
 import com.drajer.bsa.kar.model.KnowledgeArtifact;
+import com.drajer.bsa.kar.model.KnowledgeArtifactStatus;
 import com.drajer.bsa.model.BsaTypes;
 import com.drajer.bsa.model.BsaTypes.MessageType;
 import com.drajer.bsa.model.KarProcessingData;
 import com.drajer.eca.model.MatchedTriggerCodes;
+import com.drajer.ecrapp.config.CodeDictionary;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.BufferedOutputStream;
@@ -26,20 +28,19 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.hl7.fhir.instance.model.api.IBase;
-import org.hl7.fhir.r4.hapi.fluentpath.FhirPathR4;
+import org.hl7.fhir.r4.hapi.ctx.HapiWorkerContext;
 import org.hl7.fhir.r4.model.*;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r4.model.Bundle.BundleType;
 import org.hl7.fhir.r4.model.DocumentReference.DocumentReferenceContentComponent;
 import org.hl7.fhir.r4.model.Parameters.ParametersParameterComponent;
-import org.hl7.fhir.r4.model.ValueSet.ConceptReferenceComponent;
-import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
-import org.hl7.fhir.r4.model.ValueSet.ValueSetComposeComponent;
-import org.hl7.fhir.r4.model.ValueSet.ValueSetExpansionComponent;
-import org.hl7.fhir.r4.model.ValueSet.ValueSetExpansionContainsComponent;
+import org.hl7.fhir.r4.utils.FHIRPathEngine;
 import org.javatuples.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,7 +81,10 @@ public class BsaServiceUtils {
   private static boolean SAVE_DEBUG_TO_FILES;
 
   private static final String FHIR_PATH_VARIABLE_PREFIX = "%";
-  private static IFhirPath FHIR_PATH = new FhirPathR4(FhirContext.forR4());
+  private static final FHIRPathEngine FHIR_PATH_ENGINE = createFhirPathEngine();
+
+  /** The parsed FHIRPath expressions used by the DataRequirements, the Key is the path. */
+  private static final Map<String, ExpressionNode> COMPILED_FHIR_PATHS = new ConcurrentHashMap<>();
 
   @PostConstruct
   public void initialize() {
@@ -89,6 +93,22 @@ public class BsaServiceUtils {
     SAVE_DEBUG_TO_FILES = saveDebugToFiles;
   }
 
+  private static FHIRPathEngine createFhirPathEngine() {
+    FhirContext context = FhirContext.forR4();
+    return new FHIRPathEngine(new HapiWorkerContext(context, context.getValidationSupport()));
+  }
+
+  /**
+   * The method returns the parsed version of a FHIRPath expression, the expression is parsed only
+   * the first time and reused after that.
+   *
+   * @param path The FHIRPath expression
+   * @return The parsed expression
+   */
+  public static ExpressionNode getCompiledFhirPath(String path) {
+    return COMPILED_FHIR_PATHS.computeIfAbsent(path, FHIR_PATH_ENGINE::parse);
+  }
+
   public static String getFhirPathVariableString(String id) {
 
     if (id.length() > 2) {
@@ -223,14 +243,15 @@ public class BsaServiceUtils {
     // any of the codes match its a match.
 
     // we dont know what this will return
-    List<IBase> search = FHIR_PATH.evaluate(resource, codeFilter.getPath(), IBase.class);
+    List<Base> search =
+        FHIR_PATH_ENGINE.evaluate(resource, getCompiledFhirPath(codeFilter.getPath()));
     if (search == null || search.isEmpty()) {
       return false;
     }
 
     boolean retVal = false;
 
-    for (IBase ib : search) {
+    for (Base ib : search) {
       if (codeFilter.hasValueSet()) {
         logger.info("Code Filter has value set");
         if (matchesValueSet(ib, codeFilter.getValueSet(), kd)) {
@@ -381,62 +402,10 @@ public class BsaServiceUtils {
 
   public static Boolean isCodePresentInValueSet(ValueSet vs, String system, String code) {
 
-    boolean retVal = false;
-
-    if (vs != null && vs.hasCompose()) {
-
-      ValueSetComposeComponent vsc = vs.getCompose();
-
-      List<ConceptSetComponent> cscs = vsc.getInclude();
-
-      if (cscs != null) {
-
-        for (ConceptSetComponent csc : cscs) {
-
-          if (csc.getSystem() != null && csc.getSystem().contentEquals(system)) {
-
-            logger.info(" Found Code System {} in value set ", system);
-
-            List<ConceptReferenceComponent> crcs = csc.getConcept();
-
-            if (crcs != null) {
-
-              for (ConceptReferenceComponent crc : crcs) {
-
-                if (crc.getCode().contentEquals(code)) {
-                  logger.info(" Found code system {} and code {} in value set ", system, code);
-                  retVal = true;
-                  break;
-                }
-              }
-            }
-          }
-        }
-      }
-    }
-
-    if (!retVal && vs.hasExpansion()) {
-
-      ValueSetExpansionComponent vsec = vs.getExpansion();
-
-      if (vsec.hasContains()) {
-
-        List<ValueSetExpansionContainsComponent> expansion = vsec.getContains();
-
-        for (ValueSetExpansionContainsComponent vsecc : expansion) {
-
-          if (vsecc.getSystem() != null
-              && vsecc.getSystem().contentEquals(system)
-              && vsecc.getCode() != null
-              && vsecc.getCode().contentEquals(code)) {
+    boolean retVal = CodeDictionary.getInstance().isCodePresentInValueSet(vs, system, code);
 
-            logger.info(
-                " Found Match for CodeSystem {} and Code {} in ValueSet {}", system, code, vs);
-            retVal = true;
-            break;
-          }
-        }
-      }
+    if (retVal) {
+      logger.info(" Found Match for CodeSystem {} and Code {} in ValueSet {}", system, code, vs);
     }
 
     return retVal;
@@ -668,6 +637,79 @@ public class BsaServiceUtils {
     return queries;
   }
 
+  /**
+   * The method computes a fingerprint of the input data collected for creating a report. The
+   * fingerprint is made up of the id, version id and last updated time of each resource, the
+   * content of resources that do not have a version id or last updated time is used instead. The
+   * same data retrieved in a different order results in the same fingerprint. The action and the
+   * profiles and format of the report are part of the fingerprint, so that reports created by
+   * different actions or in a different format from the same data are not considered unchanged.
+   *
+   * @param kd The processing data containing the input resources.
+   * @param action The action creating the report.
+   * @return The fingerprint of the input data.
+   */
+  public static String getReportFingerprint(KarProcessingData kd, BsaAction action) {
+
+    Set<String> entries = new TreeSet<>();
+
+    if (kd.getFhirInputDataByType() != null) {
+      for (Set<Resource> resources : kd.getFhirInputDataByType().values()) {
+        for (Resource res : resources) {
+          entries.add(getResourceFingerprint(res));
+        }
+      }
+    }
+
+    if (kd.getContextEncounter() != null) {
+      entries.add(getResourceFingerprint(kd.getContextEncounter()));
+    }
+
+    StringBuilder data = new StringBuilder(kd.getKar().getVersionUniqueId());
+    data.append('|').append(action.getActionId());
+
+    if (action.getOutputData() != null) {
+      for (DataRequirement dr : action.getOutputData()) {
+        for (CanonicalType profile : dr.getProfile()) {
+          data.append('|').append(profile.asStringValue());
+        }
+      }
+    }
+
+    KnowledgeArtifactStatus artStatus =
+        kd.getHealthcareSetting() != null
+            ? kd.getHealthcareSetting().getArtifactStatus(kd.getKar().getVersionUniqueId())
+            : null;
+    if (artStatus != null) {
+      data.append('|').append(artStatus.getOutputFormat());
+    }
+
+    for (String entry : entries) {
+      data.append('\n').append(entry);
+    }
+
+    return DigestUtils.sha256Hex(data.toString());
+  }
+
+  private static String getResourceFingerprint(Resource res) {
+
+    String key = res.getResourceType() + "/" + res.getIdElement().getIdPart();
+    Meta meta = res.getMeta();
+
+    if (meta.hasVersionId() || meta.hasLastUpdated()) {
+      return key
+          + "|"
+          + meta.getVersionId()
+          + "|"
+          + (meta.hasLastUpdated() ? meta.getLastUpdated().getTime() : "");
+    }
+
+    return key
+        + "|"
+        + DigestUtils.sha256Hex(
+            FhirContext.forCached(FhirVersionEnum.R4).newJsonParser().encodeResourceToString(res));
+  }
+
   public static CheckTriggerCodeStatusList getTriggerMatchStatus(String data) {
 
     ObjectMapper mapper = new ObjectMapper();
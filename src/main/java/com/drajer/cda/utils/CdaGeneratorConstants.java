@@ -3,7 +3,9 @@ package com.drajer.cda.utils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.lang3.StringUtils;
 import org.javatuples.Pair;
 import org.slf4j.Logger;
@@ -927,6 +929,12 @@ public class CdaGeneratorConstants {
   // Map to hold OID to Name
   private static HashMap<String, String> oidNameMap = new HashMap<>();
 
+  // The translated code systems, the Key is the FHIR code system url.
+  // The mappings do not change once loaded so the translation is only done once for each url.
+  private static final int MAX_CACHED_CODE_SYSTEM_URLS = 10000;
+  private static final Map<String, Pair<String, String>> codeSystemsByUrl =
+      new ConcurrentHashMap<>();
+
   // Static block to load OID to URI mapping from property file
   static {
     try (InputStream input =
@@ -1031,11 +1039,28 @@ public class CdaGeneratorConstants {
 
   public static Pair<String, String> getCodeSystemFromUrl(String url) {
 
-    logger.debug(" Url passed = {}", url);
-
     if (StringUtils.isEmpty(url)) {
       return new Pair<>("", "");
-    } else if (uriMap.containsKey(url)) {
+    }
+
+    Pair<String, String> codeSystem = codeSystemsByUrl.get(url);
+
+    if (codeSystem == null) {
+      codeSystem = lookupCodeSystemFromUrl(url);
+
+      if (codeSystemsByUrl.size() < MAX_CACHED_CODE_SYSTEM_URLS) {
+        codeSystemsByUrl.put(url, codeSystem);
+      }
+    }
+
+    return codeSystem;
+  }
+
+  private static Pair<String, String> lookupCodeSystemFromUrl(String url) {
+
+    logger.debug(" Url passed = {}", url);
+
+    if (uriMap.containsKey(url)) {
       Pair<String, String> retVal = uriMap.get(url);
 
       if (oidNameMap.containsKey(retVal.getValue0())) {
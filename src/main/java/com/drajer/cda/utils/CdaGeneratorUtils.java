@@ -1,6 +1,8 @@
 package com.drajer.cda.utils;
 
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
@@ -24,6 +26,11 @@ public class CdaGeneratorUtils {
 
   public static final Logger logger = LoggerFactory.getLogger(CdaGeneratorUtils.class);
 
+  // The formatters are thread safe and are created once instead of for every date formatted.
+  private static final DateTimeFormatter DATE_TIME_FORMATTER =
+      DateTimeFormatter.ofPattern("yyyyMMddHHmmssZ");
+  private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
   public static String getGuid() {
     return java.util.UUID.randomUUID().toString();
   }
@@ -46,11 +53,11 @@ public class CdaGeneratorUtils {
     if (d != null && t != null) {
 
       ZonedDateTime zt = ZonedDateTime.ofInstant(d.toInstant(), t.toZoneId());
-      DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmssZ");
-      return zt.format(formatter);
+      return zt.format(DATE_TIME_FORMATTER);
     } else if (d != null) {
-      SimpleDateFormat formatter = new SimpleDateFormat("yyyyMMdd");
-      return formatter.format(d);
+      ZonedDateTime zt =
+          ZonedDateTime.ofInstant(Instant.ofEpochMilli(d.getTime()), ZoneId.systemDefault());
+      return zt.format(DATE_FORMATTER);
     } else return CdaGeneratorConstants.UNKNOWN_VALUE;
   }
 
@@ -0,0 +1,156 @@
+package com.drajer.cda.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>CdaSectionRenderer</h1>
+ *
+ * The CdaSectionRenderer generates the sections of the eICR body. When the FHIR data contains at
+ * least the configured number of resources the sections are generated concurrently, each section
+ * into its own buffer, and the sections are concatenated in the order in which they were added.
+ * Smaller documents are generated sequentially in the calling thread since the overhead of handing
+ * off the sections is higher than the time taken to generate them.
+ *
+ * <p>The section generators only read the FHIR data, so the sections can be generated in any order.
+ */
+@Component
+public class CdaSectionRenderer {
+
+  private static final Logger logger = LoggerFactory.getLogger(CdaSectionRenderer.class);
+
+  @Value("${cda.section.parallel-rendering.enabled:false}")
+  Boolean parallelRenderingEnabled;
+
+  @Value("${cda.section.parallel-rendering.threads:4}")
+  Integer parallelRenderingThreads;
+
+  @Value("${cda.section.parallel-rendering.min-resources:200}")
+  Integer minResources;
+
+  /** The executor used to generate the sections, null when parallel rendering is disabled. */
+  private static ExecutorService sectionExecutor;
+
+  /** The minimum number of resources in the FHIR data for rendering the sections in parallel. */
+  private static int parallelRenderingThreshold = Integer.MAX_VALUE;
+
+  @PostConstruct
+  public void initializeExecutor() {
+
+    if (Boolean.TRUE.equals(parallelRenderingEnabled)) {
+      logger.info(
+          " Initializing CDA Section executor with {} threads, minimum resources {} ",
+          parallelRenderingThreads,
+          minResources);
+      sectionExecutor =
+          Executors.newFixedThreadPool(
+              parallelRenderingThreads, new CustomizableThreadFactory("CdaSectionRenderer-"));
+      parallelRenderingThreshold = minResources;
+    }
+  }
+
+  @PreDestroy
+  public void shutdownExecutor() {
+
+    if (sectionExecutor != null) {
+      sectionExecutor.shutdownNow();
+      sectionExecutor = null;
+    }
+    parallelRenderingThreshold = Integer.MAX_VALUE;
+  }
+
+  /**
+   * The method generates the sections and returns them concatenated in order.
+   *
+   * @param sections The section generators, the Key is the name of the section used for logging.
+   * @param resourceCount The number of resources in the FHIR data used to generate the sections.
+   * @return The generated sections.
+   */
+  public static String renderSections(Map<String, Supplier<String>> sections, int resourceCount) {
+
+    ExecutorService executor = sectionExecutor;
+
+    if (executor == null || resourceCount < parallelRenderingThreshold || sections.size() <= 1) {
+      return renderSequentially(sections);
+    }
+
+    logger.info(
+        " Generating {} sections for {} resources in parallel ", sections.size(), resourceCount);
+
+    Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+    List<Future<String>> futures = new ArrayList<>();
+
+    for (Map.Entry<String, Supplier<String>> section : sections.entrySet()) {
+      futures.add(executor.submit(() -> renderSection(section, mdcContext)));
+    }
+
+    StringBuilder sb = new StringBuilder();
+
+    try {
+      for (Future<String> future : futures) {
+        sb.append(future.get());
+      }
+    } catch (InterruptedException e) {
+      futures.forEach(f -> f.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while generating the CDA sections", e);
+    } catch (ExecutionException e) {
+      futures.forEach(f -> f.cancel(true));
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException("Error in generating the CDA sections", e.getCause());
+    }
+
+    return sb.toString();
+  }
+
+  private static String renderSequentially(Map<String, Supplier<String>> sections) {
+
+    StringBuilder sb = new StringBuilder();
+
+    for (Map.Entry<String, Supplier<String>> section : sections.entrySet()) {
+      logger.info("Starting {} generation ", section.getKey());
+      sb.append(section.getValue().get());
+    }
+
+    return sb.toString();
+  }
+
+  private static String renderSection(
+      Map.Entry<String, Supplier<String>> section, Map<String, String> mdcContext) {
+
+    try {
+      if (mdcContext != null) {
+        MDC.setContextMap(mdcContext);
+      }
+
+      logger.info("Starting {} generation ", section.getKey());
+      return section.getValue().get();
+    } finally {
+      MDC.clear();
+    }
+  }
+
+  /** Creates the map used to add the section generators in the order of the sections. */
+  public static Map<String, Supplier<String>> newSectionMap() {
+    return new LinkedHashMap<>();
+  }
+}
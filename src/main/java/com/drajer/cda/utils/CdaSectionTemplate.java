@@ -0,0 +1,137 @@
+package com.drajer.cda.utils;
+
+import java.util.Arrays;
+
+/**
+ *
+ *
+ * <h1>CdaSectionTemplate</h1>
+ *
+ * The CdaSectionTemplate holds the parts of a CDA section that are the same for every eICR, these
+ * are the section template ids, the section code, the title and the narrative table header. The
+ * parts are rendered once when the template is created, the section generators append the rendered
+ * parts and only create the patient specific narrative rows and entries.
+ *
+ * <p>A section is generated as:
+ *
+ * <pre>
+ *   getHeader() + getTableStart() + rows + TABLE_END + entries + SECTION_END
+ * </pre>
+ *
+ * and a section without data is generated using getEmptySection.
+ */
+public class CdaSectionTemplate {
+
+  /** The end of the narrative table body, table and text elements. */
+  public static final String TABLE_END =
+      CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME)
+          + CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_EL_NAME)
+          + CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TEXT_EL_NAME);
+
+  /** The end of the section and component elements. */
+  public static final String SECTION_END =
+      CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME)
+          + CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME);
+
+  /** The component and section start elements followed by the section identification. */
+  private final String header;
+
+  /** The same as the header, with a NI null flavor on the section element. */
+  private final String nullFlavorHeader;
+
+  /** The start of the narrative text up to and including the table body start element. */
+  private final String tableStart;
+
+  private CdaSectionTemplate(
+      String templateId,
+      String templateIdExt,
+      String code,
+      String codeName,
+      String title,
+      String... tableColumns) {
+
+    StringBuilder ident = new StringBuilder();
+    ident.append(CdaGeneratorUtils.getXmlForTemplateId(templateId));
+
+    if (templateIdExt != null) {
+      ident.append(CdaGeneratorUtils.getXmlForTemplateId(templateId, templateIdExt));
+    }
+
+    ident.append(
+        CdaGeneratorUtils.getXmlForCD(
+            CdaGeneratorConstants.CODE_EL_NAME,
+            code,
+            CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
+            CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
+            codeName));
+
+    ident.append(CdaGeneratorUtils.getXmlForText(CdaGeneratorConstants.TITLE_EL_NAME, title));
+
+    String comp = CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME);
+
+    header =
+        comp
+            + CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.SECTION_EL_NAME)
+            + ident;
+
+    nullFlavorHeader =
+        comp
+            + CdaGeneratorUtils.getXmlForNFSection(
+                CdaGeneratorConstants.SECTION_EL_NAME, CdaGeneratorConstants.NF_NI)
+            + ident;
+
+    tableStart =
+        CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TEXT_EL_NAME)
+            + CdaGeneratorUtils.getXmlForTableHeader(
+                Arrays.asList(tableColumns),
+                CdaGeneratorConstants.TABLE_BORDER,
+                CdaGeneratorConstants.TABLE_WIDTH)
+            + CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME);
+  }
+
+  /**
+   * Creates the template for a section identified by a LOINC code.
+   *
+   * @param templateId The section template id.
+   * @param templateIdExt The extension of the section template id, null when the section only has
+   *     the template id without extension.
+   * @param code The LOINC code of the section.
+   * @param codeName The display name of the LOINC code.
+   * @param title The title of the section.
+   * @param tableColumns The column titles of the narrative table.
+   * @return The template with the rendered static parts.
+   */
+  public static CdaSectionTemplate of(
+      String templateId,
+      String templateIdExt,
+      String code,
+      String codeName,
+      String title,
+      String... tableColumns) {
+    return new CdaSectionTemplate(templateId, templateIdExt, code, codeName, title, tableColumns);
+  }
+
+  public String getHeader() {
+    return header;
+  }
+
+  public String getNullFlavorHeader() {
+    return nullFlavorHeader;
+  }
+
+  public String getTableStart() {
+    return tableStart;
+  }
+
+  /**
+   * Renders the section used when there is no data for the section.
+   *
+   * @param text The narrative text of the section.
+   * @return The complete section with a NI null flavor.
+   */
+  public String getEmptySection(String text) {
+    return nullFlavorHeader
+        + CdaGeneratorUtils.getXmlForText(CdaGeneratorConstants.TEXT_EL_NAME, text)
+        + SECTION_END;
+  }
+}
@@ -2,15 +2,14 @@ package com.drajer.cdafromdstu2;
 
 import com.drajer.cda.utils.CdaGeneratorConstants;
 import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaSectionRenderer;
 import com.drajer.sof.model.Dstu2FhirData;
 import com.drajer.sof.model.LaunchDetails;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.Map;
+import java.util.function.Supplier;
 
 public class Dstu2CdaBodyGenerator {
 
-  private static final Logger logger = LoggerFactory.getLogger(Dstu2CdaBodyGenerator.class);
-
   public static String generateCdaBody(Dstu2FhirData data, LaunchDetails details) {
 
     StringBuilder eICRBody = new StringBuilder(200);
@@ -21,35 +20,34 @@ public class Dstu2CdaBodyGenerator {
 
     if (data != null) {
 
-      logger.info("Starting Problem generation ");
-      eICRBody.append(Dstu2CdaProblemGenerator.generateProblemSection(data, details));
-
-      logger.info("Starting Encounter generation ");
-      eICRBody.append(Dstu2CdaEncounterGenerator.generateEncounterSection(data, details));
-
-      logger.info("Starting Result Section generation ");
-      eICRBody.append(Dstu2CdaResultGenerator.generateResultsSection(data, details));
-
-      logger.info("Starting Medication Administered Section generation ");
-      eICRBody.append(Dstu2CdaMedicationGenerator.generateMedicationSection(data, details));
-
-      logger.info("Starting Immunization Section generation ");
-      eICRBody.append(Dstu2CdaImmunizationGenerator.generateImmunizationSection(data, details));
-
-      logger.info("Starting Social History Section generation ");
-      eICRBody.append(Dstu2CdaSocialHistoryGenerator.generateSocialHistorySection(data, details));
-
-      logger.info("Starting Plan Of Treatment Section generation ");
-      eICRBody.append(
-          Dstu2CdaPlanOfTreatmentGenerator.generatePlanOfTreatmentSection(data, details));
-
-      logger.info("Starting History of Present Illness Section generation ");
-      eICRBody.append(
-          Dstu2CdaHistoryOfPresentIllnessGenerator.generateHistoryOfPresentIllnessSection(
-              data, details));
-
-      logger.info("Starting Reason For Visit Section generation ");
-      eICRBody.append(Dstu2CdaReasonForVisitGenerator.generateReasonForVisitSection(data, details));
+      Map<String, Supplier<String>> sections = CdaSectionRenderer.newSectionMap();
+      sections.put("Problem", () -> Dstu2CdaProblemGenerator.generateProblemSection(data, details));
+      sections.put(
+          "Encounter", () -> Dstu2CdaEncounterGenerator.generateEncounterSection(data, details));
+      sections.put(
+          "Result Section", () -> Dstu2CdaResultGenerator.generateResultsSection(data, details));
+      sections.put(
+          "Medication Administered Section",
+          () -> Dstu2CdaMedicationGenerator.generateMedicationSection(data, details));
+      sections.put(
+          "Immunization Section",
+          () -> Dstu2CdaImmunizationGenerator.generateImmunizationSection(data, details));
+      sections.put(
+          "Social History Section",
+          () -> Dstu2CdaSocialHistoryGenerator.generateSocialHistorySection(data, details));
+      sections.put(
+          "Plan Of Treatment Section",
+          () -> Dstu2CdaPlanOfTreatmentGenerator.generatePlanOfTreatmentSection(data, details));
+      sections.put(
+          "History of Present Illness Section",
+          () ->
+              Dstu2CdaHistoryOfPresentIllnessGenerator.generateHistoryOfPresentIllnessSection(
+                  data, details));
+      sections.put(
+          "Reason For Visit Section",
+          () -> Dstu2CdaReasonForVisitGenerator.generateReasonForVisitSection(data, details));
+
+      eICRBody.append(CdaSectionRenderer.renderSections(sections, getResourceCount(data)));
     }
 
     eICRBody.append(
@@ -58,4 +56,9 @@ public class Dstu2CdaBodyGenerator {
 
     return eICRBody.toString();
   }
+
+  /** Returns the number of resources in the FHIR data, used to decide how the body is generated. */
+  private static int getResourceCount(Dstu2FhirData data) {
+    return data.getData() != null ? data.getData().getEntry().size() : 0;
+  }
 }
@@ -2,17 +2,16 @@ package com.drajer.cdafromr4;
 
 import com.drajer.cda.utils.CdaGeneratorConstants;
 import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaSectionRenderer;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.model.R4FhirData;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.Map;
+import java.util.function.Supplier;
 
 public class CdaBodyGenerator {
 
   private CdaBodyGenerator() {}
 
-  private static final Logger logger = LoggerFactory.getLogger(CdaBodyGenerator.class);
-
   public static String generateCdaBody(R4FhirData data, LaunchDetails details) {
 
     StringBuilder eICRBody = new StringBuilder();
@@ -23,33 +22,32 @@ public class CdaBodyGenerator {
 
     if (data != null) {
 
-      logger.info("Starting Problem generation ");
-      eICRBody.append(CdaProblemGenerator.generateProblemSection(data, details));
-
-      logger.info("Starting Encounter generation ");
-      eICRBody.append(CdaEncounterGenerator.generateEncounterSection(data, details));
-
-      logger.info("Starting Result Section generation ");
-      eICRBody.append(CdaResultGenerator.generateResultsSection(data, details));
-
-      logger.info("Starting Medication Administered Section generation ");
-      eICRBody.append(CdaMedicationGenerator.generateMedicationSection(data, details));
-
-      logger.info("Starting Immunization Section generation ");
-      eICRBody.append(CdaImmunizationGenerator.generateImmunizationSection(data, details));
-
-      logger.info("Starting Social History Section generation ");
-      eICRBody.append(CdaSocialHistoryGenerator.generateSocialHistorySection(data, details));
-
-      logger.info("Starting Plan Of Treatment Section generation ");
-      eICRBody.append(CdaPlanOfTreatmentGenerator.generatePlanOfTreatmentSection(data, details));
-
-      logger.info("Starting History of Present Illness Section generation ");
-      eICRBody.append(
-          CdaHistoryOfPresentIllnessGenerator.generateHistoryOfPresentIllnessSection(data));
-
-      logger.info("Starting Reason For Visit Section generation ");
-      eICRBody.append(CdaReasonForVisitGenerator.generateReasonForVisitSection(data));
+      Map<String, Supplier<String>> sections = CdaSectionRenderer.newSectionMap();
+      sections.put("Problem", () -> CdaProblemGenerator.generateProblemSection(data, details));
+      sections.put(
+          "Encounter", () -> CdaEncounterGenerator.generateEncounterSection(data, details));
+      sections.put(
+          "Result Section", () -> CdaResultGenerator.generateResultsSection(data, details));
+      sections.put(
+          "Medication Administered Section",
+          () -> CdaMedicationGenerator.generateMedicationSection(data, details));
+      sections.put(
+          "Immunization Section",
+          () -> CdaImmunizationGenerator.generateImmunizationSection(data, details));
+      sections.put(
+          "Social History Section",
+          () -> CdaSocialHistoryGenerator.generateSocialHistorySection(data, details));
+      sections.put(
+          "Plan Of Treatment Section",
+          () -> CdaPlanOfTreatmentGenerator.generatePlanOfTreatmentSection(data, details));
+      sections.put(
+          "History of Present Illness Section",
+          () -> CdaHistoryOfPresentIllnessGenerator.generateHistoryOfPresentIllnessSection(data));
+      sections.put(
+          "Reason For Visit Section",
+          () -> CdaReasonForVisitGenerator.generateReasonForVisitSection(data));
+
+      eICRBody.append(CdaSectionRenderer.renderSections(sections, getResourceCount(data)));
     }
 
     eICRBody.append(
@@ -58,4 +56,9 @@ public class CdaBodyGenerator {
 
     return eICRBody.toString();
   }
+
+  /** Returns the number of resources in the FHIR data, used to decide how the body is generated. */
+  private static int getResourceCount(R4FhirData data) {
+    return data.getData() != null ? data.getData().getEntry().size() : 0;
+  }
 }
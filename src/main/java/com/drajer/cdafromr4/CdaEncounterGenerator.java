@@ -2,6 +2,7 @@ package com.drajer.cdafromr4;
 
 import com.drajer.cda.utils.CdaGeneratorConstants;
 import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaSectionTemplate;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.model.R4FhirData;
 import java.util.ArrayList;
@@ -24,6 +25,16 @@ public class CdaEncounterGenerator {
 
   private static final Logger logger = LoggerFactory.getLogger(CdaEncounterGenerator.class);
 
+  private static final CdaSectionTemplate SECTION_TEMPLATE =
+      CdaSectionTemplate.of(
+          CdaGeneratorConstants.ENC_SEC_TEMPLATE_ID,
+          CdaGeneratorConstants.ENC_SEC_TEMPLATE_ID_EXT,
+          CdaGeneratorConstants.ENC_SEC_CODE,
+          CdaGeneratorConstants.ENC_SEC_NAME,
+          CdaGeneratorConstants.ENC_SEC_TITLE,
+          CdaGeneratorConstants.ENC_TABLE_COL_1_TITLE,
+          CdaGeneratorConstants.ENC_TABLE_COL_2_TITLE);
+
   private CdaEncounterGenerator() {}
 
   public static String generateEncounterSection(R4FhirData data, LaunchDetails details) {
@@ -35,42 +46,9 @@ public class CdaEncounterGenerator {
 
       logger.debug("Generating Encounter section");
 
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.SECTION_EL_NAME));
-
-      sb.append(CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.ENC_SEC_TEMPLATE_ID));
-      sb.append(
-          CdaGeneratorUtils.getXmlForTemplateId(
-              CdaGeneratorConstants.ENC_SEC_TEMPLATE_ID,
-              CdaGeneratorConstants.ENC_SEC_TEMPLATE_ID_EXT));
-
-      sb.append(
-          CdaGeneratorUtils.getXmlForCD(
-              CdaGeneratorConstants.CODE_EL_NAME,
-              CdaGeneratorConstants.ENC_SEC_CODE,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-              CdaGeneratorConstants.ENC_SEC_NAME));
-
-      // Add Title
-      sb.append(
-          CdaGeneratorUtils.getXmlForText(
-              CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.ENC_SEC_TITLE));
-
-      // Add Narrative Text
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TEXT_EL_NAME));
-
-      // Create Table Header.
-      List<String> list = new ArrayList<>();
-      list.add(CdaGeneratorConstants.ENC_TABLE_COL_1_TITLE);
-      list.add(CdaGeneratorConstants.ENC_TABLE_COL_2_TITLE);
-
-      sb.append(
-          CdaGeneratorUtils.getXmlForTableHeader(
-              list, CdaGeneratorConstants.TABLE_BORDER, CdaGeneratorConstants.TABLE_WIDTH));
-
-      // Add Body
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
+      // Add the section header and the start of the narrative table.
+      sb.append(SECTION_TEMPLATE.getHeader());
+      sb.append(SECTION_TEMPLATE.getTableStart());
 
       String actDisplayName = CdaGeneratorConstants.UNKNOWN_VALUE;
 
@@ -107,11 +85,7 @@ public class CdaEncounterGenerator {
 
       sb.append(CdaGeneratorUtils.addTableRow(bodyvals, 1));
 
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
-
-      // End Table.
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TEXT_EL_NAME));
+      sb.append(CdaSectionTemplate.TABLE_END);
 
       // Add the Entries.
       sb.append(CdaGeneratorUtils.getXmlForActEntry(CdaGeneratorConstants.TYPE_CODE_DEF));
@@ -178,8 +152,7 @@ public class CdaEncounterGenerator {
       sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.ENTRY_EL_NAME));
 
       // Complete the section end tags.
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
+      sb.append(CdaSectionTemplate.SECTION_END);
 
     } else {
 
@@ -309,43 +282,7 @@ public class CdaEncounterGenerator {
   }
 
   public static String generateEmptyEncounterSection() {
-    StringBuilder sb = new StringBuilder();
-
-    // Generate the component and section end tags
-    sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-    sb.append(
-        CdaGeneratorUtils.getXmlForNFSection(
-            CdaGeneratorConstants.SECTION_EL_NAME, CdaGeneratorConstants.NF_NI));
-
-    sb.append(CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.ENC_SEC_TEMPLATE_ID));
-    sb.append(
-        CdaGeneratorUtils.getXmlForTemplateId(
-            CdaGeneratorConstants.ENC_SEC_TEMPLATE_ID,
-            CdaGeneratorConstants.ENC_SEC_TEMPLATE_ID_EXT));
-
-    sb.append(
-        CdaGeneratorUtils.getXmlForCD(
-            CdaGeneratorConstants.CODE_EL_NAME,
-            CdaGeneratorConstants.ENC_SEC_CODE,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-            CdaGeneratorConstants.ENC_SEC_NAME));
-
-    // Add Title
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.ENC_SEC_TITLE));
-
-    // Add Narrative Text
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TEXT_EL_NAME, "No Encounter Information"));
-
-    // Complete the section end tags.
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
-
-    return sb.toString();
+    return SECTION_TEMPLATE.getEmptySection("No Encounter Information");
   }
 
   public static String getEncounterCodeXml(Encounter encounter, String contentRef) {
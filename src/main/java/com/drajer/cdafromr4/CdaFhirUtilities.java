@@ -1909,7 +1909,7 @@ public class CdaFhirUtilities {
       String codeSystemUrl,
       Boolean csOptional,
       DomainResource res,
-      List<Medication> medList) {
+      R4FhirData data) {
 
     if (dt instanceof Reference) {
 
@@ -1946,22 +1946,16 @@ public class CdaFhirUtilities {
 
         logger.info(" Checking medication references ");
         // check if the medications have been extracted for non contained references.
-        if (medList != null && !medList.isEmpty()) {
+        if (data != null && data.getMedicationList() != null) {
 
           String id = med.getReferenceElement().getIdPart();
-          Medication medRes = null;
-          for (Medication m : medList) {
-            if (m.getIdElement().getIdPart().contentEquals(id)) {
-
-              logger.info(" Found the non-contained medication reference resource {}", id);
-              medRes = m;
-              break;
-            }
-          }
+          List<Medication> medRes = data.getMedicationsById(id);
 
           // Found the reference, check the code and ingredients.
-          if (medRes != null) {
-            codeXml = getXmlForMedication(medRes, elName, valFlag, codeSystemUrl, csOptional);
+          if (!medRes.isEmpty()) {
+            logger.info(" Found the non-contained medication reference resource {}", id);
+            codeXml =
+                getXmlForMedication(medRes.get(0), elName, valFlag, codeSystemUrl, csOptional);
           }
         }
       }
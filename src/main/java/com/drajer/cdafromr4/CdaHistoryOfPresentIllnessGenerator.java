@@ -2,8 +2,8 @@ package com.drajer.cdafromr4;
 
 import com.drajer.cda.utils.CdaGeneratorConstants;
 import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaSectionTemplate;
 import com.drajer.sof.model.R4FhirData;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -13,6 +13,15 @@ import org.springframework.util.StringUtils;
 
 public class CdaHistoryOfPresentIllnessGenerator {
 
+  private static final CdaSectionTemplate SECTION_TEMPLATE =
+      CdaSectionTemplate.of(
+          CdaGeneratorConstants.HISTORY_OF_PRESENT_ILLNESS_SEC_TEMPLATE_ID,
+          null,
+          CdaGeneratorConstants.HISTORY_OF_PRESENT_ILLNESS_SEC_CODE,
+          CdaGeneratorConstants.HISTORY_OF_PRESENT_ILLNESS_SEC_CODE_NAME,
+          CdaGeneratorConstants.HISTORY_OF_PRESENT_ILLNESS_SEC_TITLE,
+          CdaGeneratorConstants.NARRATIVE_TEXT_EL_NAME);
+
   private CdaHistoryOfPresentIllnessGenerator() {}
 
   public static String generateHistoryOfPresentIllnessSection(R4FhirData data) {
@@ -23,42 +32,12 @@ public class CdaHistoryOfPresentIllnessGenerator {
     // that information reliably..
     // Then we can generate better text.
 
-    sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-    sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.SECTION_EL_NAME));
-
-    sb.append(
-        CdaGeneratorUtils.getXmlForTemplateId(
-            CdaGeneratorConstants.HISTORY_OF_PRESENT_ILLNESS_SEC_TEMPLATE_ID));
-
-    sb.append(
-        CdaGeneratorUtils.getXmlForCD(
-            CdaGeneratorConstants.CODE_EL_NAME,
-            CdaGeneratorConstants.HISTORY_OF_PRESENT_ILLNESS_SEC_CODE,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-            CdaGeneratorConstants.HISTORY_OF_PRESENT_ILLNESS_SEC_CODE_NAME));
-
-    // Add Title
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TITLE_EL_NAME,
-            CdaGeneratorConstants.HISTORY_OF_PRESENT_ILLNESS_SEC_TITLE));
-
-    // Add Narrative Text
-    sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TEXT_EL_NAME));
+    // Add the section header and the start of the narrative table.
+    sb.append(SECTION_TEMPLATE.getHeader());
+    sb.append(SECTION_TEMPLATE.getTableStart());
 
     List<Condition> conds = data.getEncounterDiagnosisConditions();
 
-    // Create Table Header.
-    List<String> list = new ArrayList<>();
-    list.add(CdaGeneratorConstants.NARRATIVE_TEXT_EL_NAME);
-    sb.append(
-        CdaGeneratorUtils.getXmlForTableHeader(
-            list, CdaGeneratorConstants.TABLE_BORDER, CdaGeneratorConstants.TABLE_WIDTH));
-
-    // Add Table Body
-    sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
-
     String text = CdaGeneratorConstants.UNKNOWN_HISTORY_OF_PRESENT_ILLNESS;
     int rowNum = 1;
 
@@ -92,15 +71,10 @@ public class CdaHistoryOfPresentIllnessGenerator {
       sb.append(CdaGeneratorUtils.addTableRow(bodyvals, rowNum));
     }
 
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
-
-    // End Table.
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_EL_NAME));
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TEXT_EL_NAME));
+    sb.append(CdaSectionTemplate.TABLE_END);
 
     // Complete the section end tags.
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
+    sb.append(CdaSectionTemplate.SECTION_END);
 
     return sb.toString();
   }
@@ -2,6 +2,7 @@ package com.drajer.cdafromr4;
 
 import com.drajer.cda.utils.CdaGeneratorConstants;
 import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaSectionTemplate;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.model.R4FhirData;
 import java.util.ArrayList;
@@ -21,6 +22,16 @@ public class CdaImmunizationGenerator {
 
   private static final Logger logger = LoggerFactory.getLogger(CdaImmunizationGenerator.class);
 
+  private static final CdaSectionTemplate SECTION_TEMPLATE =
+      CdaSectionTemplate.of(
+          CdaGeneratorConstants.IMMUNIZATION_SEC_TEMPLATE_ID,
+          CdaGeneratorConstants.IMMUNIZATION_SEC_TEMPLATE_ID_EXT,
+          CdaGeneratorConstants.IMMUNIZATION_SEC_CODE,
+          CdaGeneratorConstants.IMMUNIZATION_SEC_NAME,
+          CdaGeneratorConstants.IMMUNIZATION_SEC_TITLE,
+          CdaGeneratorConstants.IMM_TABLE_COL_1_TITLE,
+          CdaGeneratorConstants.IMM_TABLE_COL_2_TITLE);
+
   public static String generateImmunizationSection(R4FhirData data, LaunchDetails details) {
 
     StringBuilder sb = new StringBuilder(2000);
@@ -30,44 +41,9 @@ public class CdaImmunizationGenerator {
     if (imms != null && !imms.isEmpty()) {
 
       // Generate the component and section end tags
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.SECTION_EL_NAME));
-
-      sb.append(
-          CdaGeneratorUtils.getXmlForTemplateId(
-              CdaGeneratorConstants.IMMUNIZATION_SEC_TEMPLATE_ID));
-      sb.append(
-          CdaGeneratorUtils.getXmlForTemplateId(
-              CdaGeneratorConstants.IMMUNIZATION_SEC_TEMPLATE_ID,
-              CdaGeneratorConstants.IMMUNIZATION_SEC_TEMPLATE_ID_EXT));
-
-      sb.append(
-          CdaGeneratorUtils.getXmlForCD(
-              CdaGeneratorConstants.CODE_EL_NAME,
-              CdaGeneratorConstants.IMMUNIZATION_SEC_CODE,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-              CdaGeneratorConstants.IMMUNIZATION_SEC_NAME));
-
-      // add Title
-      sb.append(
-          CdaGeneratorUtils.getXmlForText(
-              CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.IMMUNIZATION_SEC_TITLE));
-
-      // add Narrative Text
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TEXT_EL_NAME));
-
-      // Create Table Header.
-      List<String> list = new ArrayList<>();
-      list.add(CdaGeneratorConstants.IMM_TABLE_COL_1_TITLE);
-      list.add(CdaGeneratorConstants.IMM_TABLE_COL_2_TITLE);
-
-      sb.append(
-          CdaGeneratorUtils.getXmlForTableHeader(
-              list, CdaGeneratorConstants.TABLE_BORDER, CdaGeneratorConstants.TABLE_WIDTH));
-
-      // add Table Body
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
+      // Add the section header and the start of the narrative table.
+      sb.append(SECTION_TEMPLATE.getHeader());
+      sb.append(SECTION_TEMPLATE.getTableStart());
 
       // add Body Rows
       int rowNum = 1;
@@ -95,12 +71,7 @@ public class CdaImmunizationGenerator {
         ++rowNum;
       }
 
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
-
-      // End Table.
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_EL_NAME));
-
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TEXT_EL_NAME));
+      sb.append(CdaSectionTemplate.TABLE_END);
 
       for (Immunization imm : imms) {
         // add the Entries.
@@ -205,8 +176,7 @@ public class CdaImmunizationGenerator {
       }
 
       // Complete the section end tags.
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
+      sb.append(CdaSectionTemplate.SECTION_END);
 
     } else {
       sb.append(generateEmptyImmunizations());
@@ -216,44 +186,6 @@ public class CdaImmunizationGenerator {
   }
 
   public static String generateEmptyImmunizations() {
-
-    StringBuilder sb = new StringBuilder();
-
-    // Generate the component and section end tags
-    sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-    sb.append(
-        CdaGeneratorUtils.getXmlForNFSection(
-            CdaGeneratorConstants.SECTION_EL_NAME, CdaGeneratorConstants.NF_NI));
-
-    sb.append(
-        CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.IMMUNIZATION_SEC_TEMPLATE_ID));
-    sb.append(
-        CdaGeneratorUtils.getXmlForTemplateId(
-            CdaGeneratorConstants.IMMUNIZATION_SEC_TEMPLATE_ID,
-            CdaGeneratorConstants.IMMUNIZATION_SEC_TEMPLATE_ID_EXT));
-
-    sb.append(
-        CdaGeneratorUtils.getXmlForCD(
-            CdaGeneratorConstants.CODE_EL_NAME,
-            CdaGeneratorConstants.IMMUNIZATION_SEC_CODE,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-            CdaGeneratorConstants.IMMUNIZATION_SEC_NAME));
-
-    // add Title
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.IMMUNIZATION_SEC_TITLE));
-
-    // add Narrative Text
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TEXT_EL_NAME, "No ImmunizationInformation"));
-
-    // Complete the section end tags.
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
-
-    return sb.toString();
+    return SECTION_TEMPLATE.getEmptySection("No ImmunizationInformation");
   }
 }
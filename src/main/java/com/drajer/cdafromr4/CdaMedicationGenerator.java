@@ -2,8 +2,10 @@ package com.drajer.cdafromr4;
 
 import com.drajer.cda.utils.CdaGeneratorConstants;
 import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaSectionTemplate;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.model.R4FhirData;
+import com.drajer.sof.model.ResourceIdIndex;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -34,6 +36,16 @@ public class CdaMedicationGenerator {
 
   private static final Logger logger = LoggerFactory.getLogger(CdaMedicationGenerator.class);
 
+  private static final CdaSectionTemplate SECTION_TEMPLATE =
+      CdaSectionTemplate.of(
+          CdaGeneratorConstants.MED_ADM_SEC_TEMPLATE_ID,
+          CdaGeneratorConstants.MED_SEC_TEMPLATE_ID_EXT,
+          CdaGeneratorConstants.MED_ADM_SEC_CODE,
+          CdaGeneratorConstants.MED_ADM_SEC_NAME,
+          CdaGeneratorConstants.MED_ADM_SEC_TITLE,
+          CdaGeneratorConstants.MED_TABLE_COL_1_TITLE,
+          CdaGeneratorConstants.MED_TABLE_COL_2_TITLE);
+
   public static String generateMedicationSection(R4FhirData data, LaunchDetails details) {
 
     StringBuilder sb = new StringBuilder(2000);
@@ -48,43 +60,9 @@ public class CdaMedicationGenerator {
 
       logger.info("Medications found for processing ");
       // Generate the component and section end tags
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.SECTION_EL_NAME));
-
-      sb.append(
-          CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.MED_ADM_SEC_TEMPLATE_ID));
-      sb.append(
-          CdaGeneratorUtils.getXmlForTemplateId(
-              CdaGeneratorConstants.MED_ADM_SEC_TEMPLATE_ID,
-              CdaGeneratorConstants.MED_SEC_TEMPLATE_ID_EXT));
-
-      sb.append(
-          CdaGeneratorUtils.getXmlForCD(
-              CdaGeneratorConstants.CODE_EL_NAME,
-              CdaGeneratorConstants.MED_ADM_SEC_CODE,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-              CdaGeneratorConstants.MED_ADM_SEC_NAME));
-
-      // add Title
-      sb.append(
-          CdaGeneratorUtils.getXmlForText(
-              CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.MED_ADM_SEC_TITLE));
-
-      // add Narrative Text
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TEXT_EL_NAME));
-
-      // Create Table Header.
-      List<String> list = new ArrayList<>();
-      list.add(CdaGeneratorConstants.MED_TABLE_COL_1_TITLE);
-      list.add(CdaGeneratorConstants.MED_TABLE_COL_2_TITLE);
-
-      sb.append(
-          CdaGeneratorUtils.getXmlForTableHeader(
-              list, CdaGeneratorConstants.TABLE_BORDER, CdaGeneratorConstants.TABLE_WIDTH));
-
-      // add Table Body
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
+      // Add the section header and the start of the narrative table.
+      sb.append(SECTION_TEMPLATE.getHeader());
+      sb.append(SECTION_TEMPLATE.getTableStart());
 
       // add Body Rows
       int rowNum = 1;
@@ -134,7 +112,7 @@ public class CdaMedicationGenerator {
                 null,
                 CdaGeneratorConstants.MOOD_CODE_DEF,
                 med,
-                medList));
+                data));
       }
 
       // Add Medication Administration
@@ -186,7 +164,7 @@ public class CdaMedicationGenerator {
                 null,
                 CdaGeneratorConstants.MOOD_CODE_DEF,
                 medAdm,
-                medList));
+                data));
       }
 
       // Add Medication Requests
@@ -270,22 +248,16 @@ public class CdaMedicationGenerator {
                 startDate,
                 moodCode,
                 medReq,
-                medList));
+                data));
       }
 
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
-
-      // End Table.
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_EL_NAME));
-
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TEXT_EL_NAME));
+      sb.append(CdaSectionTemplate.TABLE_END);
 
       // Add Medication Entries
       sb.append(medEntries);
 
       // Complete the section end tags.
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
+      sb.append(CdaSectionTemplate.SECTION_END);
 
     } else {
       sb.append(generateEmptyMedications());
@@ -305,7 +277,7 @@ public class CdaMedicationGenerator {
       DateTimeType startDate,
       String moodCode,
       DomainResource res,
-      List<Medication> medList) {
+      R4FhirData data) {
 
     logger.info(" Adding medication entry ");
     StringBuilder sb = new StringBuilder();
@@ -404,7 +376,7 @@ public class CdaMedicationGenerator {
             CdaGeneratorConstants.FHIR_RXNORM_URL,
             false,
             res,
-            medList);
+            data);
 
     if (!codeXml.isEmpty()) {
       sb.append(codeXml);
@@ -430,44 +402,7 @@ public class CdaMedicationGenerator {
   }
 
   public static String generateEmptyMedications() {
-
-    StringBuilder sb = new StringBuilder();
-
-    // Generate the component and section end tags
-    sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-    sb.append(
-        CdaGeneratorUtils.getXmlForNFSection(
-            CdaGeneratorConstants.SECTION_EL_NAME, CdaGeneratorConstants.NF_NI));
-
-    sb.append(CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.MED_ADM_SEC_TEMPLATE_ID));
-    sb.append(
-        CdaGeneratorUtils.getXmlForTemplateId(
-            CdaGeneratorConstants.MED_ADM_SEC_TEMPLATE_ID,
-            CdaGeneratorConstants.MED_SEC_TEMPLATE_ID_EXT));
-
-    sb.append(
-        CdaGeneratorUtils.getXmlForCD(
-            CdaGeneratorConstants.CODE_EL_NAME,
-            CdaGeneratorConstants.MED_ADM_SEC_CODE,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-            CdaGeneratorConstants.MED_ADM_SEC_NAME));
-
-    // add Title
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.MED_ADM_SEC_TITLE));
-
-    // add Narrative Text
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TEXT_EL_NAME, "No Medication Administered Information"));
-
-    // Complete the section end tags.
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
-
-    return sb.toString();
+    return SECTION_TEMPLATE.getEmptySection("No Medication Administered Information");
   }
 
   public static List<MedicationRequest> getValidMedicationRequests(
@@ -475,6 +410,9 @@ public class CdaMedicationGenerator {
 
     List<MedicationRequest> mr = new ArrayList<>();
 
+    // Resolves the external medication references without scanning the medications each time.
+    ResourceIdIndex<Medication> cmedIndex = new ResourceIdIndex<>();
+
     if (data.getMedicationRequests() != null && !data.getMedicationRequests().isEmpty()) {
 
       logger.info(
@@ -560,57 +498,53 @@ public class CdaMedicationGenerator {
 
             if (cmeds != null) {
 
-              for (Medication emed : cmeds) {
-
-                if (emed.getIdElement()
-                    .getIdPart()
-                    .contentEquals(med.getReferenceElement().getIdPart())) {
-
-                  if (emed.getCode() != null
-                      && emed.getCode().getCoding() != null
-                      && !emed.getCode().getCoding().isEmpty()
-                      && Boolean.TRUE.equals(
-                          CdaFhirUtilities.isCodingPresentForCodeSystem(
-                              emed.getCode().getCoding(), CdaGeneratorConstants.FHIR_RXNORM_URL))) {
-
-                    // Found the Medication that matters.
-                    logger.info("Adding Medication and MedicationRequest - due to code ");
-                    mr.add(m);
-                    break;
-                  } // if code present
-
-                  // If code is absent check ingredient
-                  Boolean found = false;
-                  // Check Ingredients also.
-                  if (emed.hasIngredient() && emed.getIngredient() != null) {
-
-                    List<MedicationIngredientComponent> ings = emed.getIngredient();
-
-                    for (MedicationIngredientComponent ing : ings) {
-
-                      logger.info("starting to examine contained ingredients ");
-                      if (ing.hasItem() && ing.getItem() instanceof CodeableConcept) {
-
-                        CodeableConcept cc = (CodeableConcept) ing.getItem();
-
-                        if (cc.getCoding() != null
-                            && !cc.getCoding().isEmpty()
-                            && Boolean.TRUE.equals(
-                                CdaFhirUtilities.isCodingPresentForCodeSystem(
-                                    cc.getCoding(), CdaGeneratorConstants.FHIR_RXNORM_URL))) {
-
-                          logger.info("Adding Med Req due to ingredient ");
-                          mr.add(m);
-                          found = true;
-                          break;
-                        } // Code check.
-                      } // Ingredient is a Codeable Concept
-                    } // Ingredients present
-                  } // Ingredient present
-
-                  // break the outer loop.
-                  if (Boolean.TRUE.equals(found)) break;
-                } // if same reference
+              for (Medication emed :
+                  cmedIndex.getResourcesById(cmeds, med.getReferenceElement().getIdPart())) {
+
+                if (emed.getCode() != null
+                    && emed.getCode().getCoding() != null
+                    && !emed.getCode().getCoding().isEmpty()
+                    && Boolean.TRUE.equals(
+                        CdaFhirUtilities.isCodingPresentForCodeSystem(
+                            emed.getCode().getCoding(), CdaGeneratorConstants.FHIR_RXNORM_URL))) {
+
+                  // Found the Medication that matters.
+                  logger.info("Adding Medication and MedicationRequest - due to code ");
+                  mr.add(m);
+                  break;
+                } // if code present
+
+                // If code is absent check ingredient
+                Boolean found = false;
+                // Check Ingredients also.
+                if (emed.hasIngredient() && emed.getIngredient() != null) {
+
+                  List<MedicationIngredientComponent> ings = emed.getIngredient();
+
+                  for (MedicationIngredientComponent ing : ings) {
+
+                    logger.info("starting to examine contained ingredients ");
+                    if (ing.hasItem() && ing.getItem() instanceof CodeableConcept) {
+
+                      CodeableConcept cc = (CodeableConcept) ing.getItem();
+
+                      if (cc.getCoding() != null
+                          && !cc.getCoding().isEmpty()
+                          && Boolean.TRUE.equals(
+                              CdaFhirUtilities.isCodingPresentForCodeSystem(
+                                  cc.getCoding(), CdaGeneratorConstants.FHIR_RXNORM_URL))) {
+
+                        logger.info("Adding Med Req due to ingredient ");
+                        mr.add(m);
+                        found = true;
+                        break;
+                      } // Code check.
+                    } // Ingredient is a Codeable Concept
+                  } // Ingredients present
+                } // Ingredient present
+
+                // break the outer loop.
+                if (Boolean.TRUE.equals(found)) break;
               } // for all medications
 
             } // if cmeds
@@ -2,6 +2,7 @@ package com.drajer.cdafromr4;
 
 import com.drajer.cda.utils.CdaGeneratorConstants;
 import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaSectionTemplate;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.model.R4FhirData;
 import java.util.ArrayList;
@@ -21,6 +22,16 @@ public class CdaPlanOfTreatmentGenerator {
 
   private static final Logger logger = LoggerFactory.getLogger(CdaPlanOfTreatmentGenerator.class);
 
+  private static final CdaSectionTemplate SECTION_TEMPLATE =
+      CdaSectionTemplate.of(
+          CdaGeneratorConstants.CAREPLAN_SEC_TEMPLATE_ID,
+          CdaGeneratorConstants.CAREPLAN_SEC_TEMPLATE_ID_EXT,
+          CdaGeneratorConstants.CAREPLAN_SEC_CODE,
+          CdaGeneratorConstants.CAREPLAN_SEC_NAME,
+          CdaGeneratorConstants.CAREPLAN_SEC_TITLE,
+          CdaGeneratorConstants.POT_OBS_TABLE_COL_1_TITLE,
+          CdaGeneratorConstants.POT_OBS_TABLE_COL_2_TITLE);
+
   private CdaPlanOfTreatmentGenerator() {}
 
   public static String generatePlanOfTreatmentSection(R4FhirData data, LaunchDetails details) {
@@ -34,42 +45,9 @@ public class CdaPlanOfTreatmentGenerator {
       logger.debug("Found a total of {} service request objects to translate to CDA.", sr.size());
 
       // Generate the component and section end tags
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.SECTION_EL_NAME));
-
-      sb.append(
-          CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.CAREPLAN_SEC_TEMPLATE_ID));
-      sb.append(
-          CdaGeneratorUtils.getXmlForTemplateId(
-              CdaGeneratorConstants.CAREPLAN_SEC_TEMPLATE_ID,
-              CdaGeneratorConstants.CAREPLAN_SEC_TEMPLATE_ID_EXT));
-
-      sb.append(
-          CdaGeneratorUtils.getXmlForCD(
-              CdaGeneratorConstants.CODE_EL_NAME,
-              CdaGeneratorConstants.CAREPLAN_SEC_CODE,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-              CdaGeneratorConstants.CAREPLAN_SEC_NAME));
-
-      // Add Title
-      sb.append(
-          CdaGeneratorUtils.getXmlForText(
-              CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.CAREPLAN_SEC_TITLE));
-
-      // Add Narrative Text
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TEXT_EL_NAME));
-
-      // Create Table Header.
-      List<String> list = new ArrayList<>();
-      list.add(CdaGeneratorConstants.POT_OBS_TABLE_COL_1_TITLE);
-      list.add(CdaGeneratorConstants.POT_OBS_TABLE_COL_2_TITLE);
-      sb.append(
-          CdaGeneratorUtils.getXmlForTableHeader(
-              list, CdaGeneratorConstants.TABLE_BORDER, CdaGeneratorConstants.TABLE_WIDTH));
-
-      // Add Table Body
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
+      // Add the section header and the start of the narrative table.
+      sb.append(SECTION_TEMPLATE.getHeader());
+      sb.append(SECTION_TEMPLATE.getTableStart());
 
       int rowNum = 1;
       StringBuilder potObsXml = new StringBuilder();
@@ -139,17 +117,14 @@ public class CdaPlanOfTreatmentGenerator {
       }
 
       // Close the Text Element
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TEXT_EL_NAME));
+      sb.append(CdaSectionTemplate.TABLE_END);
 
       // Add Entries
       sb.append(potObsXml);
       sb.append(drXml);
 
       // Complete the section end tags.
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
+      sb.append(CdaSectionTemplate.SECTION_END);
 
     } else {
 
@@ -396,46 +371,7 @@ public class CdaPlanOfTreatmentGenerator {
   }
 
   public static String generateEmptyPlanOfTreatmentSection() {
-
-    StringBuilder sb = new StringBuilder();
-
-    // Generate the component and section end tags
-    sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-    sb.append(
-        CdaGeneratorUtils.getXmlForNFSection(
-            CdaGeneratorConstants.SECTION_EL_NAME, CdaGeneratorConstants.NF_NI));
-
-    // Add Plan of Treatment Template Id
-    sb.append(
-        CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.CAREPLAN_SEC_TEMPLATE_ID));
-    sb.append(
-        CdaGeneratorUtils.getXmlForTemplateId(
-            CdaGeneratorConstants.CAREPLAN_SEC_TEMPLATE_ID,
-            CdaGeneratorConstants.CAREPLAN_SEC_TEMPLATE_ID_EXT));
-
-    sb.append(
-        CdaGeneratorUtils.getXmlForCD(
-            CdaGeneratorConstants.CODE_EL_NAME,
-            CdaGeneratorConstants.CAREPLAN_SEC_CODE,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-            CdaGeneratorConstants.CAREPLAN_SEC_NAME));
-
-    // Add Title
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.CAREPLAN_SEC_TITLE));
-
-    // Add Narrative Text
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TEXT_EL_NAME, "No Plan Of Treatment Information"));
-
-    // Complete the section end tags.
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
-
-    return sb.toString();
+    return SECTION_TEMPLATE.getEmptySection("No Plan Of Treatment Information");
   }
 
   public static List<DiagnosticReport> getValidDiagnosticOrders(R4FhirData data) {
@@ -2,6 +2,7 @@ package com.drajer.cdafromr4;
 
 import com.drajer.cda.utils.CdaGeneratorConstants;
 import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaSectionTemplate;
 import com.drajer.eca.model.MatchedTriggerCodes;
 import com.drajer.eca.model.PatientExecutionState;
 import com.drajer.ecrapp.util.ApplicationUtils;
@@ -29,6 +30,16 @@ public class CdaProblemGenerator {
 
   private static final Logger logger = LoggerFactory.getLogger(CdaProblemGenerator.class);
 
+  private static final CdaSectionTemplate SECTION_TEMPLATE =
+      CdaSectionTemplate.of(
+          CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID,
+          CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID_EXT,
+          CdaGeneratorConstants.PROB_SEC_CODE,
+          CdaGeneratorConstants.PROB_SEC_NAME,
+          CdaGeneratorConstants.PROB_SEC_TITLE,
+          CdaGeneratorConstants.PROB_TABLE_COL_1_TITLE,
+          CdaGeneratorConstants.PROB_TABLE_COL_2_TITLE);
+
   public static String generateProblemSection(R4FhirData data, LaunchDetails details) {
 
     StringBuilder sb = new StringBuilder(2000);
@@ -38,41 +49,9 @@ public class CdaProblemGenerator {
     if (conds != null && !conds.isEmpty()) {
 
       // Generate the component and section end tags
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.SECTION_EL_NAME));
-
-      sb.append(CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID));
-      sb.append(
-          CdaGeneratorUtils.getXmlForTemplateId(
-              CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID,
-              CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID_EXT));
-
-      sb.append(
-          CdaGeneratorUtils.getXmlForCD(
-              CdaGeneratorConstants.CODE_EL_NAME,
-              CdaGeneratorConstants.PROB_SEC_CODE,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-              CdaGeneratorConstants.PROB_SEC_NAME));
-
-      // Add Title
-      sb.append(
-          CdaGeneratorUtils.getXmlForText(
-              CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.PROB_SEC_TITLE));
-
-      // Add Narrative Text
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TEXT_EL_NAME));
-
-      // Create Table Header.
-      List<String> list = new ArrayList<>();
-      list.add(CdaGeneratorConstants.PROB_TABLE_COL_1_TITLE);
-      list.add(CdaGeneratorConstants.PROB_TABLE_COL_2_TITLE);
-      sb.append(
-          CdaGeneratorUtils.getXmlForTableHeader(
-              list, CdaGeneratorConstants.TABLE_BORDER, CdaGeneratorConstants.TABLE_WIDTH));
-
-      // Add Table Body
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
+      // Add the section header and the start of the narrative table.
+      sb.append(SECTION_TEMPLATE.getHeader());
+      sb.append(SECTION_TEMPLATE.getTableStart());
 
       // Add Body Rows
       int rowNum = 1;
@@ -118,11 +97,7 @@ public class CdaProblemGenerator {
         ++rowNum;
       }
 
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
-
-      // End Table.
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TEXT_EL_NAME));
+      sb.append(CdaSectionTemplate.TABLE_END);
 
       for (Condition pr : conds) {
         // Add the Entries.
@@ -265,8 +240,7 @@ public class CdaProblemGenerator {
       }
 
       // Complete the section end tags.
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
+      sb.append(CdaSectionTemplate.SECTION_END);
 
     } else {
 
@@ -399,43 +373,6 @@ public class CdaProblemGenerator {
   }
 
   public static String generateEmptyProblemSection() {
-
-    StringBuilder sb = new StringBuilder();
-
-    // Generate the component and section end tags
-    sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-    sb.append(
-        CdaGeneratorUtils.getXmlForNFSection(
-            CdaGeneratorConstants.SECTION_EL_NAME, CdaGeneratorConstants.NF_NI));
-
-    sb.append(CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID));
-    sb.append(
-        CdaGeneratorUtils.getXmlForTemplateId(
-            CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID,
-            CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID_EXT));
-
-    sb.append(
-        CdaGeneratorUtils.getXmlForCD(
-            CdaGeneratorConstants.CODE_EL_NAME,
-            CdaGeneratorConstants.PROB_SEC_CODE,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-            CdaGeneratorConstants.PROB_SEC_NAME));
-
-    // Add Title
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.PROB_SEC_TITLE));
-
-    // Add Narrative Text
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TEXT_EL_NAME, "No Problem Information"));
-
-    // Complete the section end tags.
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
-
-    return sb.toString();
+    return SECTION_TEMPLATE.getEmptySection("No Problem Information");
   }
 }
@@ -2,6 +2,7 @@ package com.drajer.cdafromr4;
 
 import com.drajer.cda.utils.CdaGeneratorConstants;
 import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaSectionTemplate;
 import com.drajer.eca.model.MatchedTriggerCodes;
 import com.drajer.eca.model.PatientExecutionState;
 import com.drajer.ecrapp.util.ApplicationUtils;
@@ -34,6 +35,17 @@ public class CdaResultGenerator {
 
   private static final Logger logger = LoggerFactory.getLogger(CdaResultGenerator.class);
 
+  private static final CdaSectionTemplate SECTION_TEMPLATE =
+      CdaSectionTemplate.of(
+          CdaGeneratorConstants.LAB_RESULTS_SEC_TEMPLATE_ID,
+          CdaGeneratorConstants.LAB_RESULTS_SEC_TEMPLATE_ID_EXT,
+          CdaGeneratorConstants.LAB_RESULTS_SEC_CODE,
+          CdaGeneratorConstants.LAB_RESULTS_SEC_NAME,
+          CdaGeneratorConstants.LAB_RESULTS_SEC_TITLE,
+          CdaGeneratorConstants.LABTEST_TABLE_COL_1_TITLE,
+          CdaGeneratorConstants.LABTEST_TABLE_COL_2_TITLE,
+          CdaGeneratorConstants.LABTEST_TABLE_COL_3_TITLE);
+
   public static String generateResultsSection(R4FhirData data, LaunchDetails details) {
 
     StringBuilder hsb = new StringBuilder(5000);
@@ -48,43 +60,9 @@ public class CdaResultGenerator {
 
     if ((results != null && !results.isEmpty()) || (reports != null && !reports.isEmpty())) {
 
-      hsb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-      hsb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.SECTION_EL_NAME));
-
-      hsb.append(
-          CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.LAB_RESULTS_SEC_TEMPLATE_ID));
-      hsb.append(
-          CdaGeneratorUtils.getXmlForTemplateId(
-              CdaGeneratorConstants.LAB_RESULTS_SEC_TEMPLATE_ID,
-              CdaGeneratorConstants.LAB_RESULTS_SEC_TEMPLATE_ID_EXT));
-
-      hsb.append(
-          CdaGeneratorUtils.getXmlForCD(
-              CdaGeneratorConstants.CODE_EL_NAME,
-              CdaGeneratorConstants.LAB_RESULTS_SEC_CODE,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-              CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-              CdaGeneratorConstants.LAB_RESULTS_SEC_NAME));
-
-      // Add Title
-      hsb.append(
-          CdaGeneratorUtils.getXmlForText(
-              CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.LAB_RESULTS_SEC_TITLE));
-
-      // Add Narrative Text
-      hsb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TEXT_EL_NAME));
-
-      // Create Table Header.
-      List<String> list = new ArrayList<>();
-      list.add(CdaGeneratorConstants.LABTEST_TABLE_COL_1_TITLE);
-      list.add(CdaGeneratorConstants.LABTEST_TABLE_COL_2_TITLE);
-      list.add(CdaGeneratorConstants.LABTEST_TABLE_COL_3_TITLE);
-      hsb.append(
-          CdaGeneratorUtils.getXmlForTableHeader(
-              list, CdaGeneratorConstants.TABLE_BORDER, CdaGeneratorConstants.TABLE_WIDTH));
-
-      // Add Table Body
-      hsb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
+      // Add the section header and the start of the narrative table.
+      hsb.append(SECTION_TEMPLATE.getHeader());
+      hsb.append(SECTION_TEMPLATE.getTableStart());
 
       int rowNum = 1;
       for (Observation obs : results) {
@@ -198,11 +176,7 @@ public class CdaResultGenerator {
       }
 
       // End the Sb string.
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
-
-      // End Table.
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TEXT_EL_NAME));
+      sb.append(CdaSectionTemplate.TABLE_END);
 
       hsb.append(sb);
 
@@ -210,8 +184,7 @@ public class CdaResultGenerator {
       hsb.append(resultEntries);
 
       // Complete the section end tags.
-      hsb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-      hsb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
+      hsb.append(CdaSectionTemplate.SECTION_END);
 
     } else {
       hsb.append(generateEmptyLabResults());
@@ -864,44 +837,7 @@ public class CdaResultGenerator {
   }
 
   public static String generateEmptyLabResults() {
-    StringBuilder sb = new StringBuilder();
-
-    // Generate the component and section end tags
-    sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-    sb.append(
-        CdaGeneratorUtils.getXmlForNFSection(
-            CdaGeneratorConstants.SECTION_EL_NAME, CdaGeneratorConstants.NF_NI));
-
-    sb.append(
-        CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.LAB_RESULTS_SEC_TEMPLATE_ID));
-    sb.append(
-        CdaGeneratorUtils.getXmlForTemplateId(
-            CdaGeneratorConstants.LAB_RESULTS_SEC_TEMPLATE_ID,
-            CdaGeneratorConstants.LAB_RESULTS_SEC_TEMPLATE_ID_EXT));
-
-    sb.append(
-        CdaGeneratorUtils.getXmlForCD(
-            CdaGeneratorConstants.CODE_EL_NAME,
-            CdaGeneratorConstants.LAB_RESULTS_SEC_CODE,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-            CdaGeneratorConstants.LAB_RESULTS_SEC_NAME));
-
-    // Add Title
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.LAB_RESULTS_SEC_TITLE));
-
-    // Add Narrative Text
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TEXT_EL_NAME, "No Lab Results Information"));
-
-    // Complete the section end tags.
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
-
-    return sb.toString();
+    return SECTION_TEMPLATE.getEmptySection("No Lab Results Information");
   }
 
   public static List<Observation> getValidLabResults(R4FhirData data) {
@@ -2,6 +2,7 @@ package com.drajer.cdafromr4;
 
 import com.drajer.cda.utils.CdaGeneratorConstants;
 import com.drajer.cda.utils.CdaGeneratorUtils;
+import com.drajer.cda.utils.CdaSectionTemplate;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.model.R4FhirData;
 import java.util.ArrayList;
@@ -26,6 +27,16 @@ public class CdaSocialHistoryGenerator {
 
   private static final Logger logger = LoggerFactory.getLogger(CdaSocialHistoryGenerator.class);
 
+  private static final CdaSectionTemplate SECTION_TEMPLATE =
+      CdaSectionTemplate.of(
+          CdaGeneratorConstants.SOC_HISTORY_SEC_TEMPLATE_ID,
+          CdaGeneratorConstants.SOC_HISTORY_SEC_TEMPLATE_ID_EXT,
+          CdaGeneratorConstants.SOC_HISTORY_SEC_CODE,
+          CdaGeneratorConstants.SOC_HISTORY_SEC_NAME,
+          CdaGeneratorConstants.SOC_HISTORY_SEC_TITLE,
+          CdaGeneratorConstants.SOC_HISTORY_TABLE_COL_1_TITLE,
+          CdaGeneratorConstants.SOC_HISTORY_TABLE_COL_2_TITLE);
+
   public static String generateSocialHistorySection(R4FhirData data, LaunchDetails details) {
     logger.info("LaunchDetails in generateSocialHistorySection:{}", details);
 
@@ -50,18 +61,7 @@ public class CdaSocialHistoryGenerator {
 
       sb.append(generateSocialHistorySectionHeader(""));
 
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TEXT_EL_NAME));
-
-      // Create Table Header.
-      List<String> list = new ArrayList<>();
-      list.add(CdaGeneratorConstants.SOC_HISTORY_TABLE_COL_1_TITLE);
-      list.add(CdaGeneratorConstants.SOC_HISTORY_TABLE_COL_2_TITLE);
-      sb.append(
-          CdaGeneratorUtils.getXmlForTableHeader(
-              list, CdaGeneratorConstants.TABLE_BORDER, CdaGeneratorConstants.TABLE_WIDTH));
-
-      // Add Table Body
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
+      sb.append(SECTION_TEMPLATE.getTableStart());
 
       String birthSexXml = "";
       String pregObsXml = "";
@@ -168,9 +168,7 @@ public class CdaSocialHistoryGenerator {
       }
 
       // Close the Table.
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_EL_NAME));
-      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TEXT_EL_NAME));
+      sb.append(CdaSectionTemplate.TABLE_END);
 
       // Add entry
       if (!StringUtils.isEmpty(birthSexXml)) {
@@ -415,51 +413,15 @@ public class CdaSocialHistoryGenerator {
 
   public static String generateSocialHistorySectionHeader(String nf) {
 
-    StringBuilder sb = new StringBuilder();
-
-    // Generate the component and section end tags
-    sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME));
-
     if (!StringUtils.isEmpty(nf)) {
-      sb.append(
-          CdaGeneratorUtils.getXmlForNFSection(
-              CdaGeneratorConstants.SECTION_EL_NAME, CdaGeneratorConstants.NF_NI));
+      return SECTION_TEMPLATE.getNullFlavorHeader();
     } else {
-      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.SECTION_EL_NAME));
+      return SECTION_TEMPLATE.getHeader();
     }
-
-    sb.append(
-        CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.SOC_HISTORY_SEC_TEMPLATE_ID));
-    sb.append(
-        CdaGeneratorUtils.getXmlForTemplateId(
-            CdaGeneratorConstants.SOC_HISTORY_SEC_TEMPLATE_ID,
-            CdaGeneratorConstants.SOC_HISTORY_SEC_TEMPLATE_ID_EXT));
-
-    sb.append(
-        CdaGeneratorUtils.getXmlForCD(
-            CdaGeneratorConstants.CODE_EL_NAME,
-            CdaGeneratorConstants.SOC_HISTORY_SEC_CODE,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
-            CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
-            CdaGeneratorConstants.SOC_HISTORY_SEC_NAME));
-
-    // Add Title
-    sb.append(
-        CdaGeneratorUtils.getXmlForText(
-            CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.SOC_HISTORY_SEC_TITLE));
-
-    return sb.toString();
   }
 
   public static String generateSocialHistorySectionEndHeader() {
-
-    StringBuilder sb = new StringBuilder();
-
-    // Complete the section end tags.
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME));
-    sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME));
-
-    return sb.toString();
+    return CdaSectionTemplate.SECTION_END;
   }
 
   public static String generateEmptySocialHistorySection() {
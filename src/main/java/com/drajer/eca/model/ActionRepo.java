@@ -29,9 +29,9 @@ public class ActionRepo {
 
   private static ActionRepo instance;
 
-  private Map<EcrActionTypes, Set<AbstractAction>> actions;
+  private volatile Map<EcrActionTypes, Set<AbstractAction>> actions;
 
-  private Map<TriggerType, Set<AbstractAction>> actionsByTriggers;
+  private volatile Map<TriggerType, Set<AbstractAction>> actionsByTriggers;
 
   // These are other services that the action classes use and we are storing it once for all of them
   // instead
@@ -241,11 +241,18 @@ public class ActionRepo {
     this.directReceiver = directReceiver;
   }
 
+  /**
+   * Rebuilds the actions by trigger type from the current actions, the map is replaced as a whole
+   * so the eRSD can be reloaded while the actions are being used.
+   */
   public void setupTriggerBasedActions() {
 
-    if (actions != null) {
+    Map<EcrActionTypes, Set<AbstractAction>> currentActions = actions;
+    Map<TriggerType, Set<AbstractAction>> triggers = null;
 
-      for (Map.Entry<EcrActionTypes, Set<AbstractAction>> ent : actions.entrySet()) {
+    if (currentActions != null) {
+
+      for (Map.Entry<EcrActionTypes, Set<AbstractAction>> ent : currentActions.entrySet()) {
 
         Set<AbstractAction> aa = ent.getValue();
 
@@ -258,19 +265,19 @@ public class ActionRepo {
 
             if (td != null && !td.isEmpty()) {
 
-              if (actionsByTriggers == null) actionsByTriggers = new HashMap<>();
+              if (triggers == null) triggers = new HashMap<>();
 
               for (ActionData ad : td) {
 
-                if (actionsByTriggers.containsKey(ad.getTriggerType())) {
+                if (triggers.containsKey(ad.getTriggerType())) {
 
-                  actionsByTriggers.get(ad.getTriggerType()).add(a);
+                  triggers.get(ad.getTriggerType()).add(a);
 
                 } else {
                   Set<AbstractAction> la = new HashSet<>();
                   la.add(a);
 
-                  actionsByTriggers.put(ad.getTriggerType(), la);
+                  triggers.put(ad.getTriggerType(), la);
                 }
               }
             }
@@ -281,19 +288,19 @@ public class ActionRepo {
 
             if (ts != null && !ts.isEmpty()) {
 
-              if (actionsByTriggers == null) actionsByTriggers = new HashMap<>();
+              if (triggers == null) triggers = new HashMap<>();
 
               for (TimingSchedule tsd : ts) {
 
-                if (actionsByTriggers.containsKey(tsd.getTriggerType())) {
+                if (triggers.containsKey(tsd.getTriggerType())) {
 
-                  actionsByTriggers.get(tsd.getTriggerType()).add(a);
+                  triggers.get(tsd.getTriggerType()).add(a);
 
                 } else {
                   Set<AbstractAction> la = new HashSet<>();
                   la.add(a);
 
-                  actionsByTriggers.put(tsd.getTriggerType(), la);
+                  triggers.put(tsd.getTriggerType(), la);
                 }
               }
             }
@@ -301,6 +308,8 @@ public class ActionRepo {
         }
       }
     }
+
+    actionsByTriggers = triggers;
   }
 
   private ActionRepo() {}
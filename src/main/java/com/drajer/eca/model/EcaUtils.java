@@ -10,6 +10,7 @@ import com.drajer.cdafromr4.CdaEicrGeneratorFromR4;
 import com.drajer.eca.model.EventTypes.EcrActionTypes;
 import com.drajer.eca.model.EventTypes.WorkflowEvent;
 import com.drajer.ecrapp.config.AppConfig;
+import com.drajer.ecrapp.config.TriggerCodeFilter;
 import com.drajer.ecrapp.config.ValueSetSingleton;
 import com.drajer.ecrapp.model.Eicr;
 import com.drajer.ecrapp.service.WorkflowService;
@@ -21,13 +22,18 @@ import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.model.R4FhirData;
 import com.drajer.sof.utils.FhirContextInitializer;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.collections4.SetUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.r4.model.CodeableConcept;
 import org.hl7.fhir.r4.model.Encounter;
@@ -43,6 +49,9 @@ public class EcaUtils {
 
   private static Logger logger = LoggerFactory.getLogger(EcaUtils.class);
 
+  /** The mapper for the execution state, it is thread safe and shared by all the actions. */
+  private static final ObjectMapper STATE_MAPPER = new ObjectMapper();
+
   public static boolean matchTriggerCodesForDSTU2(
       List<ActionData> codePaths,
       Dstu2FhirData data,
@@ -104,26 +113,36 @@ public class EcaUtils {
   public static boolean matchTriggerCodes(
       LaunchDetails details, ActionData ad, Set<String> codesToMatch, PatientExecutionState state) {
     boolean matchfound = false;
-    Set<String> codesToMatchAgainst = null;
+    Set<String> intersection = null;
+    Set<String> candidateCodes = codesToMatch;
 
-    if (details.getIsCovid() || details.getIsEmergentReportingEnabled()) {
+    ValueSetSingleton valueSets = ValueSetSingleton.getInstance();
+    TriggerCodeFilter filter = valueSets.getTriggerCodeFilter();
 
-      codesToMatchAgainst =
-          ValueSetSingleton.getInstance().getEmergentValueSetsAsStringForGrouper(ad.getPath());
+    if (filter != null) {
+      candidateCodes = filter.filter(codesToMatch);
       logger.debug(
-          "Total # of {} Codes in Trigger Code Value Set for matching for Emergent Reporting",
-          codesToMatchAgainst.size());
+          "{} of {} Codes passed the Trigger Code Filter",
+          candidateCodes.size(),
+          codesToMatch.size());
+    }
+
+    if (candidateCodes.isEmpty()) {
+
+      intersection = Collections.emptySet();
+    } else if (details.getIsCovid() || details.getIsEmergentReportingEnabled()) {
+
+      intersection = valueSets.getMatchedCodesForGrouper(ad.getPath(), candidateCodes, true);
+      logger.debug(
+          "Matched {} Codes against Trigger Code Value Sets for Emergent Reporting",
+          intersection.size());
     } else {
 
-      codesToMatchAgainst =
-          ValueSetSingleton.getInstance().getValueSetsAsStringForGrouper(ad.getPath());
+      intersection = valueSets.getMatchedCodesForGrouper(ad.getPath(), candidateCodes, false);
       logger.debug(
-          "Total # of {} Codes in Trigger Code Value Set for matching for Full EICR ",
-          codesToMatchAgainst.size());
+          "Matched {} Codes against Trigger Code Value Sets for Full EICR ", intersection.size());
     }
 
-    Set<String> intersection = SetUtils.intersection(codesToMatch, codesToMatchAgainst);
-
     if (intersection != null && !intersection.isEmpty()) {
 
       logger.info("Number of Matched Codes = {}", intersection.size());
@@ -213,9 +232,8 @@ public class EcaUtils {
   }
 
   public static void updateDetailStatus(LaunchDetails details, PatientExecutionState state) {
-    ObjectMapper mapper = new ObjectMapper();
     try {
-      details.setStatus(mapper.writeValueAsString(state));
+      details.setStatus(STATE_MAPPER.writeValueAsString(state));
 
     } catch (JsonProcessingException e) {
 
@@ -225,6 +243,98 @@ public class EcaUtils {
     }
   }
 
+  /**
+   * The method merges the changes made to the execution state by an action into the latest state
+   * stored for the launch, which may have been changed concurrently by another action. The sections
+   * of the state that were not changed by the action are left as is, the sections that hold
+   * multiple statuses (for e.g the submit statuses) are merged entry by entry and the other changed
+   * sections replace the stored sections.
+   *
+   * @param baseStatus The status the action started from, may be null.
+   * @param status The status written by the action.
+   * @param currentStatus The latest status stored for the launch.
+   * @return The merged status.
+   */
+  public static String mergeDetailStatus(String baseStatus, String status, String currentStatus) {
+
+    if (status == null || currentStatus == null) {
+      return status != null ? status : currentStatus;
+    }
+
+    try {
+
+      JsonNode base =
+          baseStatus != null ? STATE_MAPPER.readTree(baseStatus) : STATE_MAPPER.createObjectNode();
+      JsonNode changed = STATE_MAPPER.readTree(status);
+      JsonNode current = STATE_MAPPER.readTree(currentStatus);
+
+      if (!changed.isObject() || !current.isObject()) {
+        return status;
+      }
+
+      ObjectNode merged = (ObjectNode) current;
+      Iterator<Map.Entry<String, JsonNode>> fields = changed.fields();
+
+      while (fields.hasNext()) {
+
+        Map.Entry<String, JsonNode> field = fields.next();
+        JsonNode baseValue = base.get(field.getKey());
+        JsonNode currentValue = merged.get(field.getKey());
+
+        if (field.getValue().equals(baseValue)) {
+          // Section was not changed by the action.
+          continue;
+        }
+
+        if (field.getValue().isArray() && currentValue != null && currentValue.isArray()) {
+          merged.set(field.getKey(), mergeStatusEntries(baseValue, field.getValue(), currentValue));
+        } else {
+          merged.set(field.getKey(), field.getValue());
+        }
+      }
+
+      return STATE_MAPPER.writeValueAsString(merged);
+
+    } catch (JsonProcessingException e) {
+
+      String msg = "Unable to merge execution state.";
+      logger.error(msg, e);
+      throw new RuntimeException(msg, e);
+    }
+  }
+
+  private static ArrayNode mergeStatusEntries(
+      JsonNode baseEntries, JsonNode changedEntries, JsonNode currentEntries) {
+
+    Set<JsonNode> base = new HashSet<>();
+    if (baseEntries != null) {
+      baseEntries.forEach(base::add);
+    }
+
+    Set<JsonNode> changed = new HashSet<>();
+    changedEntries.forEach(changed::add);
+
+    ArrayNode merged = STATE_MAPPER.createArrayNode();
+    Set<JsonNode> added = new HashSet<>();
+
+    // Keep the current entries unless the action removed them.
+    for (JsonNode entry : currentEntries) {
+      if (!base.contains(entry) || changed.contains(entry)) {
+        merged.add(entry);
+        added.add(entry);
+      }
+    }
+
+    // Add the entries created by the action.
+    for (JsonNode entry : changedEntries) {
+      if (!base.contains(entry) && !added.contains(entry)) {
+        merged.add(entry);
+      }
+    }
+
+    return merged;
+  }
+
   public static PatientExecutionState recheckTriggerCodes(
       LaunchDetails details, WorkflowEvent launchType) {
 
@@ -315,6 +425,29 @@ public class EcaUtils {
 
     boolean retVal = false;
 
+    if (details != null && Boolean.TRUE.equals(details.getEncounterClosed())) {
+
+      logger.info(
+          " Encounter {} was reported closed by the EHR with a status value of {}",
+          details.getEncounterId(),
+          details.getEncounterStatus());
+      return true;
+    }
+
+    if (details != null
+        && details.getStartDate() != null
+        && isEncounterNotificationCurrent(details)) {
+
+      // The EHR notifies changes to the Encounter, so polling is only a fallback for stale state.
+      // The Encounter is still queried when its start is unknown, as the start is needed by the
+      // check for long running encounters.
+      logger.info(
+          " Encounter {} was reported open by the EHR at {}, skipping the Encounter query ",
+          details.getEncounterId(),
+          details.getEncounterNotificationTime());
+      return false;
+    }
+
     if (details != null
         && details.getEncounterId() != null
         && !details.getEncounterId().isEmpty()) {
@@ -407,6 +540,81 @@ public class EcaUtils {
     return retVal;
   }
 
+  /**
+   * The method updates the Encounter period and status of the launch using the Encounter received
+   * in a subscription notification. The period of the launch is only widened, so that the data
+   * already in the launch period is still queried, and only the elements present in the
+   * notification are updated.
+   *
+   * @param details The launch for the Encounter.
+   * @param encounter The Encounter from the notification.
+   * @return true if the Encounter is closed.
+   */
+  public static boolean updateEncounterFromNotification(
+      LaunchDetails details, Encounter encounter) {
+
+    Boolean closed = null;
+
+    if (encounter.hasPeriod()) {
+
+      Date start = encounter.getPeriod().getStart();
+      if (start != null
+          && (details.getStartDate() == null || start.before(details.getStartDate()))) {
+        details.setStartDate(start);
+      }
+
+      Date end = encounter.getPeriod().getEnd();
+      if (end != null) {
+        if (details.getEndDate() == null || end.after(details.getEndDate())) {
+          details.setEndDate(end);
+        }
+        closed = true;
+      }
+    }
+
+    if (encounter.hasStatus()) {
+      details.setEncounterStatus(encounter.getStatus().toCode());
+      closed =
+          Boolean.TRUE.equals(closed)
+              || encounter.getStatus() == EncounterStatus.CANCELLED
+              || encounter.getStatus() == EncounterStatus.FINISHED
+              || encounter.getStatus() == EncounterStatus.ENTEREDINERROR;
+    }
+
+    if (closed != null) {
+      details.setEncounterClosed(closed);
+    }
+    details.setEncounterNotificationTime(new Date());
+
+    logger.info(
+        " Encounter {} updated from notification, status {} closed {}",
+        details.getEncounterId(),
+        details.getEncounterStatus(),
+        details.getEncounterClosed());
+
+    return Boolean.TRUE.equals(details.getEncounterClosed());
+  }
+
+  /**
+   * The method checks if the Encounter status received in a subscription notification is recent
+   * enough to be used instead of querying the EHR.
+   *
+   * @param details The launch for the Encounter.
+   * @return true if a notification was received within the configured age.
+   */
+  public static boolean isEncounterNotificationCurrent(LaunchDetails details) {
+
+    if (details.getEncounterNotificationTime() == null) {
+      return false;
+    }
+
+    AppConfig appConfig = ActionRepo.getInstance().getAppConfig();
+
+    Date thresholdDate =
+        DateUtils.addMinutes(new Date(), -appConfig.getEncounterNotificationMaxAge());
+    return details.getEncounterNotificationTime().after(thresholdDate);
+  }
+
   public static boolean checkLongRunningEncounters(LaunchDetails details) {
     AppConfig appConfig = ActionRepo.getInstance().getAppConfig();
     if (appConfig.isEnableSuspend()) {
@@ -12,6 +12,9 @@ public class AppConfig {
   @Value("${longencounter.suspendThreshold:45}")
   private int suspendThreshold;
 
+  @Value("${encounter.notification.maxAgeMinutes:60}")
+  private int encounterNotificationMaxAge;
+
   public boolean isEnableSuspend() {
     return enableSuspend;
   }
@@ -27,4 +30,12 @@ public class AppConfig {
   public void setSuspendThreshold(final int suspendThreshold) {
     this.suspendThreshold = suspendThreshold;
   }
+
+  public int getEncounterNotificationMaxAge() {
+    return encounterNotificationMaxAge;
+  }
+
+  public void setEncounterNotificationMaxAge(final int encounterNotificationMaxAge) {
+    this.encounterNotificationMaxAge = encounterNotificationMaxAge;
+  }
 }
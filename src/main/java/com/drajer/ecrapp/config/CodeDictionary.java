@@ -0,0 +1,419 @@
+package com.drajer.ecrapp.config;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.ValueSet.ConceptReferenceComponent;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
+import org.hl7.fhir.r4.model.ValueSet.ValueSetExpansionContainsComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>CodeDictionary</h1>
+ *
+ * The CodeDictionary holds the codes of the ValueSets used for trigger code matching in a compact
+ * form, it is shared by the BSA and the ECA trigger matching. The code systems are dictionary
+ * encoded as integers and the codes of each code system are stored as sorted UTF-8 bytes in a
+ * single array, so a code is matched using a binary search without creating the codes as strings
+ * for each match.
+ *
+ * <p>The codes of a ValueSet are encoded the first time the ValueSet is matched and are retained as
+ * long as the ValueSet is retained. ValueSets with the same url and version and the same codes, for
+ * example the same ValueSet used by different Knowledge Artifacts, share the encoded codes. The
+ * shared codes are held weakly, so they are released with the last ValueSet using them, for example
+ * when the Knowledge Artifacts are reloaded.
+ */
+public class CodeDictionary {
+
+  private static final Logger logger = LoggerFactory.getLogger(CodeDictionary.class);
+
+  private static final CodeDictionary instance = new CodeDictionary();
+
+  /** The dictionary of the code systems, the Key is the code system url. */
+  private final Map<String, Integer> systemIds = new ConcurrentHashMap<>();
+
+  private final AtomicInteger nextSystemId = new AtomicInteger();
+
+  /** The encoded codes of the ValueSets, the ValueSets are compared by identity. */
+  private final Map<ValueSet, ValueSetCodes> codesByValueSet =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  /**
+   * The encoded codes that are shared, the Key is url|version of the ValueSet. The codes are
+   * retained by the ValueSets using them.
+   */
+  private final Map<String, SharedCodes> sharedCodes = new ConcurrentHashMap<>();
+
+  /** The shared codes that are no longer used by any ValueSet. */
+  private final ReferenceQueue<ValueSetCodes> releasedCodes = new ReferenceQueue<>();
+
+  private CodeDictionary() {}
+
+  public static CodeDictionary getInstance() {
+    return instance;
+  }
+
+  /**
+   * The method checks if the code is part of the compose or the expansion of the ValueSet.
+   *
+   * @param vs The ValueSet.
+   * @param system The code system of the code.
+   * @param code The code.
+   * @return true if the code is present in the ValueSet.
+   */
+  public boolean isCodePresentInValueSet(ValueSet vs, String system, String code) {
+
+    if (vs == null || system == null || code == null) {
+      return false;
+    }
+
+    ValueSetCodes codes = getValueSetCodes(vs);
+    Integer systemId = systemIds.get(system);
+
+    return systemId != null
+        && (codes.compose.contains(systemId, code) || codes.expansion.contains(systemId, code));
+  }
+
+  /**
+   * The method checks if the code is part of the expansion of the ValueSet.
+   *
+   * @param vs The ValueSet.
+   * @param system The code system of the code.
+   * @param code The code.
+   * @return true if the code is present in the expansion.
+   */
+  public boolean isCodePresentInExpansion(ValueSet vs, String system, String code) {
+
+    if (vs == null || system == null || code == null) {
+      return false;
+    }
+
+    ValueSetCodes codes = getValueSetCodes(vs);
+    Integer systemId = systemIds.get(system);
+
+    return systemId != null && codes.expansion.contains(systemId, code);
+  }
+
+  /**
+   * The method returns the codes that are part of the expansion of any of the ValueSets.
+   *
+   * @param valueSets The ValueSets.
+   * @param codesToMatch The codes to match as system|code.
+   * @return The matched codes as system|code.
+   */
+  public Set<String> getCodesPresentInExpansions(
+      Collection<ValueSet> valueSets, Set<String> codesToMatch) {
+
+    Set<String> retVal = new HashSet<>();
+
+    if (valueSets == null || valueSets.isEmpty() || codesToMatch == null) {
+      return retVal;
+    }
+
+    for (String codeToMatch : codesToMatch) {
+
+      int index = codeToMatch != null ? codeToMatch.indexOf('|') : -1;
+
+      if (index > 0) {
+
+        String system = codeToMatch.substring(0, index);
+        String code = codeToMatch.substring(index + 1);
+
+        for (ValueSet vs : valueSets) {
+
+          if (isCodePresentInExpansion(vs, system, code)) {
+            retVal.add(codeToMatch);
+            break;
+          }
+        }
+      }
+    }
+
+    return retVal;
+  }
+
+  private ValueSetCodes getValueSetCodes(ValueSet vs) {
+
+    ValueSetCodes codes = codesByValueSet.get(vs);
+
+    if (codes == null) {
+
+      codes = encode(vs);
+
+      if (vs.getUrl() != null) {
+        codes = share(vs.getUrl() + "|" + vs.getVersion(), codes);
+      }
+
+      codesByValueSet.put(vs, codes);
+    }
+
+    return codes;
+  }
+
+  /** Returns the shared codes when they are the same as the codes, else shares the codes. */
+  private ValueSetCodes share(String key, ValueSetCodes codes) {
+
+    removeReleasedCodes();
+
+    SharedCodes ref = new SharedCodes(key, codes, releasedCodes);
+    SharedCodes existing;
+
+    while ((existing = sharedCodes.putIfAbsent(key, ref)) != null) {
+
+      ValueSetCodes shared = existing.get();
+
+      if (shared != null && shared.equals(codes)) {
+        return shared;
+      }
+
+      if (sharedCodes.replace(key, existing, ref)) {
+        break;
+      }
+    }
+
+    return codes;
+  }
+
+  private void removeReleasedCodes() {
+
+    SharedCodes ref;
+    while ((ref = (SharedCodes) releasedCodes.poll()) != null) {
+      sharedCodes.remove(ref.key, ref);
+    }
+  }
+
+  private ValueSetCodes encode(ValueSet vs) {
+
+    CodeSetBuilder compose = new CodeSetBuilder();
+    CodeSetBuilder expansion = new CodeSetBuilder();
+
+    if (vs.hasCompose()) {
+
+      for (ConceptSetComponent csc : vs.getCompose().getInclude()) {
+
+        if (csc.getSystem() != null) {
+
+          for (ConceptReferenceComponent crc : csc.getConcept()) {
+            compose.add(getSystemId(csc.getSystem()), crc.getCode());
+          }
+        }
+      }
+    }
+
+    if (vs.hasExpansion()) {
+
+      for (ValueSetExpansionContainsComponent vsecc : vs.getExpansion().getContains()) {
+
+        if (vsecc.getSystem() != null) {
+          expansion.add(getSystemId(vsecc.getSystem()), vsecc.getCode());
+        }
+      }
+    }
+
+    logger.debug(" Encoded codes of Value Set {}", vs.getId());
+
+    return new ValueSetCodes(compose.build(), expansion.build());
+  }
+
+  private int getSystemId(String system) {
+    return systemIds.computeIfAbsent(system, key -> nextSystemId.getAndIncrement());
+  }
+
+  private static final class SharedCodes extends WeakReference<ValueSetCodes> {
+
+    private final String key;
+
+    private SharedCodes(String key, ValueSetCodes codes, ReferenceQueue<ValueSetCodes> queue) {
+      super(codes, queue);
+      this.key = key;
+    }
+  }
+
+  private static final class ValueSetCodes {
+
+    private final CodeSet compose;
+    private final CodeSet expansion;
+
+    private ValueSetCodes(CodeSet compose, CodeSet expansion) {
+      this.compose = compose;
+      this.expansion = expansion;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+      if (!(obj instanceof ValueSetCodes)) {
+        return false;
+      }
+
+      ValueSetCodes other = (ValueSetCodes) obj;
+      return compose.equals(other.compose) && expansion.equals(other.expansion);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * compose.hashCode() + expansion.hashCode();
+    }
+  }
+
+  /** The codes grouped by code system, the codes of each code system are sorted. */
+  private static final class CodeSet {
+
+    /** The sorted ids of the code systems. */
+    private final int[] systems;
+
+    /** The index of the first code of each code system, followed by the number of codes. */
+    private final int[] systemStarts;
+
+    /** The offset of each code in the data, followed by the length of the data. */
+    private final int[] offsets;
+
+    /** The UTF-8 bytes of the codes. */
+    private final byte[] data;
+
+    private CodeSet(int[] systems, int[] systemStarts, int[] offsets, byte[] data) {
+      this.systems = systems;
+      this.systemStarts = systemStarts;
+      this.offsets = offsets;
+      this.data = data;
+    }
+
+    private boolean contains(int systemId, String code) {
+
+      int index = Arrays.binarySearch(systems, systemId);
+
+      if (index < 0) {
+        return false;
+      }
+
+      byte[] key = code.getBytes(StandardCharsets.UTF_8);
+      int low = systemStarts[index];
+      int high = systemStarts[index + 1] - 1;
+
+      while (low <= high) {
+
+        int mid = (low + high) >>> 1;
+        int cmp = compare(data, offsets[mid], offsets[mid + 1], key);
+
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+
+      if (!(obj instanceof CodeSet)) {
+        return false;
+      }
+
+      CodeSet other = (CodeSet) obj;
+      return Arrays.equals(systems, other.systems)
+          && Arrays.equals(systemStarts, other.systemStarts)
+          && Arrays.equals(offsets, other.offsets)
+          && Arrays.equals(data, other.data);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Arrays.hashCode(systems) + Arrays.hashCode(data);
+    }
+  }
+
+  private static final class CodeSetBuilder {
+
+    private final TreeMap<Integer, List<byte[]>> codesBySystem = new TreeMap<>();
+
+    private void add(int systemId, String code) {
+
+      if (code != null) {
+        codesBySystem
+            .computeIfAbsent(systemId, key -> new ArrayList<>())
+            .add(code.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    private CodeSet build() {
+
+      int[] systems = new int[codesBySystem.size()];
+      int[] systemStarts = new int[codesBySystem.size() + 1];
+      List<byte[]> codes = new ArrayList<>();
+      int index = 0;
+
+      for (Map.Entry<Integer, List<byte[]>> entry : codesBySystem.entrySet()) {
+
+        List<byte[]> systemCodes = entry.getValue();
+        systemCodes.sort((a, b) -> compare(a, 0, a.length, b));
+
+        systems[index] = entry.getKey();
+        systemStarts[index] = codes.size();
+
+        for (byte[] code : systemCodes) {
+          if (codes.size() == systemStarts[index]
+              || compare(code, 0, code.length, codes.get(codes.size() - 1)) != 0) {
+            codes.add(code);
+          }
+        }
+        index++;
+      }
+      systemStarts[index] = codes.size();
+
+      int[] offsets = new int[codes.size() + 1];
+      int length = 0;
+
+      for (int i = 0; i < codes.size(); i++) {
+        offsets[i] = length;
+        length += codes.get(i).length;
+      }
+      offsets[codes.size()] = length;
+
+      byte[] data = new byte[length];
+
+      for (int i = 0; i < codes.size(); i++) {
+        System.arraycopy(codes.get(i), 0, data, offsets[i], codes.get(i).length);
+      }
+
+      return new CodeSet(systems, systemStarts, offsets, data);
+    }
+  }
+
+  /** Compares the bytes from start to end with the key as unsigned bytes. */
+  private static int compare(byte[] bytes, int start, int end, byte[] key) {
+
+    int length = Math.min(end - start, key.length);
+
+    for (int i = 0; i < length; i++) {
+
+      int cmp = (bytes[start + i] & 0xff) - (key[i] & 0xff);
+
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+
+    return (end - start) - key.length;
+  }
+}
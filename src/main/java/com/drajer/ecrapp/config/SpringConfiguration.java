@@ -4,16 +4,26 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import ca.uhn.fhir.rest.client.interceptor.BearerTokenAuthInterceptor;
+import com.drajer.bsa.kar.condition.CachingExpressionEvaluator;
 import com.drajer.ecrapp.fhir.utils.FHIRRetryTemplateConfig;
 import com.drajer.ecrapp.fhir.utils.ecrretry.RetryStatusCode;
+import org.opencds.cqf.cql.evaluator.builder.DataProviderFactory;
+import org.opencds.cqf.cql.evaluator.builder.EndpointConverter;
+import org.opencds.cqf.cql.evaluator.builder.LibraryContentProviderFactory;
+import org.opencds.cqf.cql.evaluator.builder.ModelResolverFactory;
+import org.opencds.cqf.cql.evaluator.builder.TerminologyProviderFactory;
+import org.opencds.cqf.cql.evaluator.expression.ExpressionEvaluator;
+import org.opencds.cqf.cql.evaluator.library.CqlFhirParametersConverter;
 import org.opencds.cqf.cql.evaluator.spring.EvaluatorConfiguration;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
 import org.springframework.retry.support.RetryTemplate;
 
 @ComponentScan(
@@ -79,4 +89,27 @@ public class SpringConfiguration {
   public FhirContext fhirContext() {
     return ctx;
   }
+
+  // Compiles the FHIRPath expressions of the Knowledge Artifacts once instead of every evaluation
+  @Bean
+  @Primary
+  public ExpressionEvaluator cachingExpressionEvaluator(
+      FhirContext fhirContext,
+      CqlFhirParametersConverter cqlFhirParametersConverter,
+      LibraryContentProviderFactory libraryContentProviderFactory,
+      DataProviderFactory dataProviderFactory,
+      TerminologyProviderFactory terminologyProviderFactory,
+      EndpointConverter endpointConverter,
+      ModelResolverFactory fhirModelResolverFactory,
+      @Value("${kar.expression-cache.max-size:1000}") int maxCompiledExpressions) {
+    return new CachingExpressionEvaluator(
+        fhirContext,
+        cqlFhirParametersConverter,
+        libraryContentProviderFactory,
+        dataProviderFactory,
+        terminologyProviderFactory,
+        endpointConverter,
+        fhirModelResolverFactory,
+        maxCompiledExpressions);
+  }
 }
@@ -0,0 +1,194 @@
+package com.drajer.ecrapp.config;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.ValueSet.ConceptReferenceComponent;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
+import org.hl7.fhir.r4.model.ValueSet.ValueSetExpansionContainsComponent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>TriggerCodeFilter</h1>
+ *
+ * The TriggerCodeFilter is a Bloom filter of all the codes (system|code) of the ValueSets of a
+ * Knowledge Artifact or of the eRSD, it is created when the Knowledge Artifact or the eRSD is
+ * loaded. Most of the codes of a patient are not trigger codes, the filter rejects these codes
+ * before the codes are matched against the ValueSets. The filter never rejects a trigger code, a
+ * code that is not a trigger code is accepted with the configured false positive probability.
+ *
+ * <p>The expected false positive probability of each filter is published as the
+ * ecrnow.trigger.code.filter.expected.fpp gauge and the rejected codes are counted by the
+ * ecrnow.trigger.code.filter.rejected counter, both tagged with the source of the filter.
+ */
+public class TriggerCodeFilter {
+
+  private static final Logger logger = LoggerFactory.getLogger(TriggerCodeFilter.class);
+
+  public static final String EXPECTED_FPP_METRIC = "ecrnow.trigger.code.filter.expected.fpp";
+  public static final String REJECTED_METRIC = "ecrnow.trigger.code.filter.rejected";
+  public static final String SOURCE_TAG = "source";
+
+  /** The current filter for each source, used by the gauges when a source is reloaded. */
+  private static final Map<String, TriggerCodeFilter> currentFilters = new ConcurrentHashMap<>();
+
+  private final String source;
+  private final BloomFilter<CharSequence> filter;
+  private final int codeCount;
+  private final Counter rejected;
+
+  private TriggerCodeFilter(String source, BloomFilter<CharSequence> filter, int codeCount) {
+    this.source = source;
+    this.filter = filter;
+    this.codeCount = codeCount;
+    this.rejected = Metrics.counter(REJECTED_METRIC, SOURCE_TAG, source);
+  }
+
+  /**
+   * The method creates the filter for the codes of the compose and the expansion of the ValueSets
+   * and publishes the expected false positive probability of the filter.
+   *
+   * @param source The Knowledge Artifact or eRSD the ValueSets belong to.
+   * @param valueSets The ValueSets.
+   * @param fpp The false positive probability, between 0 and 1.
+   * @return The filter.
+   */
+  public static TriggerCodeFilter create(
+      String source, Collection<ValueSet> valueSets, double fpp) {
+
+    List<String> codes = new ArrayList<>();
+
+    if (valueSets != null) {
+      for (ValueSet vs : valueSets) {
+        addCodes(vs, codes);
+      }
+    }
+
+    BloomFilter<CharSequence> bf =
+        BloomFilter.create(
+            Funnels.stringFunnel(StandardCharsets.UTF_8), Math.max(codes.size(), 1), fpp);
+    codes.forEach(bf::put);
+
+    TriggerCodeFilter tcf = new TriggerCodeFilter(source, bf, codes.size());
+
+    if (currentFilters.put(source, tcf) == null) {
+      Gauge.builder(EXPECTED_FPP_METRIC, currentFilters, filters -> getExpectedFpp(source))
+          .tag(SOURCE_TAG, source)
+          .description("Expected false positive probability of the trigger code filter")
+          .register(Metrics.globalRegistry);
+    }
+
+    logger.info(
+        " Created trigger code filter for {} with {} codes, expected fpp {}",
+        source,
+        codes.size(),
+        tcf.getExpectedFpp());
+
+    return tcf;
+  }
+
+  private static double getExpectedFpp(String source) {
+
+    TriggerCodeFilter tcf = currentFilters.get(source);
+    return tcf != null ? tcf.getExpectedFpp() : Double.NaN;
+  }
+
+  private static void addCodes(ValueSet vs, List<String> codes) {
+
+    if (vs.hasCompose()) {
+
+      for (ConceptSetComponent csc : vs.getCompose().getInclude()) {
+
+        if (csc.getSystem() != null) {
+
+          for (ConceptReferenceComponent crc : csc.getConcept()) {
+            if (crc.getCode() != null) {
+              codes.add(csc.getSystem() + "|" + crc.getCode());
+            }
+          }
+        }
+      }
+    }
+
+    if (vs.hasExpansion()) {
+
+      for (ValueSetExpansionContainsComponent vsecc : vs.getExpansion().getContains()) {
+        if (vsecc.getSystem() != null && vsecc.getCode() != null) {
+          codes.add(vsecc.getSystem() + "|" + vsecc.getCode());
+        }
+      }
+    }
+  }
+
+  /**
+   * @param code The code as system|code.
+   * @return false if the code is not a trigger code, true if the code may be a trigger code.
+   */
+  public boolean mightContain(String code) {
+
+    if (code != null && filter.mightContain(code)) {
+      return true;
+    }
+
+    rejected.increment();
+    return false;
+  }
+
+  /**
+   * @param cc The CodeableConcept.
+   * @return false if none of the codes of the CodeableConcept are trigger codes.
+   */
+  public boolean mightContain(CodeableConcept cc) {
+
+    if (cc != null) {
+
+      for (Coding c : cc.getCoding()) {
+
+        if (c.hasSystem()
+            && c.hasCode()
+            && filter.mightContain(c.getSystem() + "|" + c.getCode())) {
+          return true;
+        }
+      }
+    }
+
+    rejected.increment();
+    return false;
+  }
+
+  /**
+   * @param codes The codes as system|code.
+   * @return The codes that may be trigger codes.
+   */
+  public Set<String> filter(Set<String> codes) {
+    return codes.stream().filter(this::mightContain).collect(Collectors.toSet());
+  }
+
+  public String getSource() {
+    return source;
+  }
+
+  public int getCodeCount() {
+    return codeCount;
+  }
+
+  public double getExpectedFpp() {
+    return filter.expectedFpp();
+  }
+}
@@ -11,7 +11,11 @@ import org.slf4j.LoggerFactory;
 
 public class ValueSetSingleton {
 
-  private static ValueSetSingleton instance;
+  /**
+   * The current instance, replaced as a whole when the eRSD is reloaded so that readers holding the
+   * previous instance continue to see a consistent set of value sets.
+   */
+  private static volatile ValueSetSingleton instance;
 
   private final Logger logger = LoggerFactory.getLogger(ValueSetSingleton.class);
 
@@ -25,6 +29,13 @@ public class ValueSetSingleton {
   private Map<String, Set<ValueSet>> grouperToValueSetMap;
   private Map<String, Set<ValueSet>> grouperToEmergentValueSetMap;
 
+  private TriggerCodeFilter triggerCodeFilter;
+
+  /** The value sets by their lower case id and url, created when the value sets are set. */
+  private Map<String, ValueSet> valueSetIndex = new HashMap<>();
+
+  private Map<String, ValueSet> emergentValueSetIndex = new HashMap<>();
+
   public void print() {
 
     if (logger.isInfoEnabled()) {
@@ -101,10 +112,26 @@ public class ValueSetSingleton {
     this.emergentValueSetsAsString = emergentValueSetsAsString;
   }
 
+  public TriggerCodeFilter getTriggerCodeFilter() {
+    return triggerCodeFilter;
+  }
+
+  public void setTriggerCodeFilter(TriggerCodeFilter triggerCodeFilter) {
+    this.triggerCodeFilter = triggerCodeFilter;
+  }
+
   public static void setInstance(ValueSetSingleton instance) {
     ValueSetSingleton.instance = instance;
   }
 
+  /**
+   * Creates an empty instance that is populated when the eRSD is reloaded and then made current
+   * using setInstance.
+   */
+  public static ValueSetSingleton newInstance() {
+    return new ValueSetSingleton();
+  }
+
   public static ValueSetSingleton getInstance() {
     if (instance == null) {
       instance = new ValueSetSingleton();
@@ -122,6 +149,7 @@ public class ValueSetSingleton {
   public void setEmergentValueSets(Set<ValueSet> emergentValueSets) {
     this.emergentValueSets = emergentValueSets;
     this.emergentValueSetsAsString = ApplicationUtils.convertValueSetsToString(emergentValueSets);
+    this.emergentValueSetIndex = createIndex(emergentValueSets);
   }
 
   public Set<ValueSet> getValueSets() {
@@ -133,6 +161,43 @@ public class ValueSetSingleton {
 
   public void setValueSets(Set<ValueSet> valueSets) {
     this.valueSets = valueSets;
+    this.valueSetIndex = createIndex(valueSets);
+  }
+
+  /**
+   * @param idOrUrl The id or canonical url of the value set, ignoring case.
+   * @return The value set, null if it is not present.
+   */
+  public ValueSet findValueSet(String idOrUrl) {
+    return idOrUrl != null ? valueSetIndex.get(idOrUrl.toLowerCase()) : null;
+  }
+
+  /**
+   * @param idOrUrl The id or canonical url of the emergent value set, ignoring case.
+   * @return The emergent value set, null if it is not present.
+   */
+  public ValueSet findEmergentValueSet(String idOrUrl) {
+    return idOrUrl != null ? emergentValueSetIndex.get(idOrUrl.toLowerCase()) : null;
+  }
+
+  private static Map<String, ValueSet> createIndex(Set<ValueSet> valueSets) {
+
+    Map<String, ValueSet> index = new HashMap<>();
+
+    if (valueSets != null) {
+      for (ValueSet vs : valueSets) {
+
+        if (vs.getId() != null) {
+          index.putIfAbsent(vs.getId().toLowerCase(), vs);
+        }
+
+        if (vs.getUrl() != null) {
+          index.putIfAbsent(vs.getUrl().toLowerCase(), vs);
+        }
+      }
+    }
+
+    return index;
   }
 
   public Set<ValueSet> getGrouperValueSets() {
@@ -228,34 +293,47 @@ public class ValueSetSingleton {
 
   public Set<String> getValueSetsAsStringForGrouper(String path) {
 
-    String grouperId = null;
-    Set<String> retVal = new HashSet<>();
-    Set<ValueSet> grouperValueSet = getTriggerPathToGrouperMap().get(path);
-    if (grouperValueSet != null) {
-      logger.debug("Found the grouper value set for {} with size {}", path, grouperValueSet.size());
-      for (ValueSet g : grouperValueSet) {
-        grouperId = g.getId();
-        if (grouperId != null && getGrouperToValueSetMap() != null) {
-          Set<ValueSet> valueSet = getGrouperToValueSetMap().get(grouperId);
-          if (valueSet != null && !valueSet.isEmpty()) {
-            logger.debug("Found {} Value Sets for grouper {}", valueSet.size(), grouperId);
-            retVal.addAll(ApplicationUtils.convertValueSetsToString(valueSet));
-          } else {
-            logger.debug("Didn't find value sets for grouper {}", grouperId);
-          }
-        } else {
-          logger.debug("Didn't find the value sets for the grouper for path {}", path);
-        }
-      }
-    }
+    Set<String> retVal =
+        ApplicationUtils.convertValueSetsToString(
+            getValueSetsForGrouper(path, getGrouperToValueSetMap()));
     logger.debug("Found {} Value Sets for path {}", retVal.size(), path);
     return retVal;
   }
 
   public Set<String> getEmergentValueSetsAsStringForGrouper(String path) {
 
+    Set<String> retVal =
+        ApplicationUtils.convertValueSetsToString(
+            getValueSetsForGrouper(path, getGrouperToEmergentValueSetMap()));
+    logger.info("Found {} Value Sets for path {}", retVal.size(), path);
+    return retVal;
+  }
+
+  /**
+   * The method returns the codes that are present in the value sets of the groupers for the path,
+   * the codes are matched using the CodeDictionary instead of creating the codes of all the value
+   * sets as strings.
+   *
+   * @param path The trigger path.
+   * @param codesToMatch The codes to match as system|code.
+   * @param emergent true if the codes are matched against the emergent value sets.
+   * @return The matched codes as system|code.
+   */
+  public Set<String> getMatchedCodesForGrouper(
+      String path, Set<String> codesToMatch, boolean emergent) {
+
+    Set<ValueSet> valueSets =
+        getValueSetsForGrouper(
+            path, emergent ? getGrouperToEmergentValueSetMap() : getGrouperToValueSetMap());
+
+    return CodeDictionary.getInstance().getCodesPresentInExpansions(valueSets, codesToMatch);
+  }
+
+  private Set<ValueSet> getValueSetsForGrouper(
+      String path, Map<String, Set<ValueSet>> grouperValueSetMap) {
+
     String grouperId = null;
-    Set<String> retVal = new HashSet<>();
+    Set<ValueSet> retVal = new HashSet<>();
 
     Set<ValueSet> grouperValueSet = getTriggerPathToGrouperMap().get(path);
 
@@ -263,15 +341,14 @@ public class ValueSetSingleton {
       logger.debug("Found the grouper value set for {} with size {}", path, grouperValueSet.size());
       for (ValueSet g : grouperValueSet) {
         grouperId = g.getId();
-        if (grouperId != null && getGrouperToEmergentValueSetMap() != null) {
-          Set<ValueSet> valueSet = getGrouperToEmergentValueSetMap().get(grouperId);
+        if (grouperId != null && grouperValueSetMap != null) {
+          Set<ValueSet> valueSet = grouperValueSetMap.get(grouperId);
           if (valueSet != null && !valueSet.isEmpty()) {
             logger.debug("Found {} Value Sets for grouper {}", valueSet.size(), grouperId);
-            retVal.addAll(ApplicationUtils.convertValueSetsToString(valueSet));
+            retVal.addAll(valueSet);
           } else {
             logger.debug("Didn't find value sets for grouper {}", grouperId);
           }
-
         } else {
           logger.debug("Didn't find the value sets for the grouper for path {}", path);
         }
@@ -280,7 +357,6 @@ public class ValueSetSingleton {
 
       logger.debug("Grouper not found for path {}", path);
     }
-    logger.info("Found {} Value Sets for path {}", retVal.size(), path);
     return retVal;
   }
 
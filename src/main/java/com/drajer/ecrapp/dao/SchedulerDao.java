@@ -1,9 +1,22 @@
 package com.drajer.ecrapp.dao;
 
 import com.drajer.ecrapp.model.ScheduledTasks;
+import com.github.kagkarlsson.scheduler.task.SchedulableInstance;
+import java.util.Collection;
 import java.util.List;
 
 public interface SchedulerDao {
 
   List<ScheduledTasks> getScheduledTasks(String actionType, String launchId);
+
+  List<ScheduledTasks> getScheduledTasksByPrefix(String taskName, String taskInstancePrefix);
+
+  int scheduleTasks(List<SchedulableInstance<?>> instances);
+
+  int deleteScheduledTasks(String taskName, Collection<String> taskInstancePrefixes);
+
+  int deleteScheduledTasks(
+      String taskName,
+      Collection<String> taskInstancePrefixes,
+      Collection<String> taskInstanceParts);
 }
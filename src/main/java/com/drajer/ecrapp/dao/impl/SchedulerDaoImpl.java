@@ -3,10 +3,17 @@ package com.drajer.ecrapp.dao.impl;
 import com.drajer.ecrapp.dao.AbstractDao;
 import com.drajer.ecrapp.dao.SchedulerDao;
 import com.drajer.ecrapp.model.ScheduledTasks;
+import com.github.kagkarlsson.scheduler.serializer.Serializer;
+import com.github.kagkarlsson.scheduler.task.SchedulableInstance;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import org.hibernate.Criteria;
-import org.hibernate.criterion.MatchMode;
-import org.hibernate.criterion.Restrictions;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -17,15 +24,150 @@ public class SchedulerDaoImpl extends AbstractDao implements SchedulerDao {
   private static final String TASK_INSTANCE = "task_instance";
   private static final String TASK_NAME = "task_name";
 
+  /** The escape character used for the task instance prefixes in like conditions. */
+  private static final String LIKE_ESCAPE = "!";
+
+  @Value("${db-scheduler.table-name:scheduled_tasks}")
+  String tableName = "scheduled_tasks";
+
   @Override
   public List<ScheduledTasks> getScheduledTasks(String actionType, String launchId) {
-    Criteria criteria = getSession().createCriteria(ScheduledTasks.class);
+    return getScheduledTasksByPrefix("EICRTask", actionType + "_" + launchId + "_");
+  }
+
+  @Override
+  public List<ScheduledTasks> getScheduledTasksByPrefix(
+      String taskName, String taskInstancePrefix) {
+
+    return getSession()
+        .createQuery(
+            "from ScheduledTasks where "
+                + TASK_NAME
+                + " = :taskName and "
+                + TASK_INSTANCE
+                + " like :prefix escape '"
+                + LIKE_ESCAPE
+                + "'",
+            ScheduledTasks.class)
+        .setParameter("taskName", taskName)
+        .setParameter("prefix", escapeLike(taskInstancePrefix) + "%")
+        .list();
+  }
+
+  /**
+   * The method inserts the executions for the task instances the same way as the db-scheduler,
+   * using a single JDBC batch instead of one insert per task instance.
+   */
+  @Override
+  public int scheduleTasks(List<SchedulableInstance<?>> instances) {
+
+    String sql =
+        "insert into "
+            + tableName
+            + " (task_name, task_instance, task_data, execution_time, picked, version)"
+            + " values(?, ?, ?, ?, ?, ?)";
+
+    Instant now = Instant.now();
+
+    return getSession()
+        .doReturningWork(
+            connection -> {
+              try (PreparedStatement ps = connection.prepareStatement(sql)) {
+
+                for (SchedulableInstance<?> instance : instances) {
+                  ps.setString(1, instance.getTaskName());
+                  ps.setString(2, instance.getId());
+                  ps.setObject(
+                      3,
+                      Serializer.DEFAULT_JAVA_SERIALIZER.serialize(
+                          instance.getTaskInstance().getData()));
+                  ps.setTimestamp(4, Timestamp.from(instance.getNextExecutionTime(now)));
+                  ps.setBoolean(5, false);
+                  ps.setLong(6, 1L);
+                  ps.addBatch();
+                }
+
+                return getUpdateCount(ps.executeBatch());
+              }
+            });
+  }
 
-    String queryString = actionType + "_" + launchId + "_";
+  /**
+   * The method deletes the executions that are not currently picked for execution and whose task
+   * instance starts with one of the prefixes. Each prefix is deleted with a single statement on the
+   * primary key and all the statements are sent in a single JDBC batch.
+   */
+  @Override
+  public int deleteScheduledTasks(String taskName, Collection<String> taskInstancePrefixes) {
+    return deleteScheduledTasks(taskName, taskInstancePrefixes, Collections.emptyList());
+  }
+
+  /**
+   * The method also deletes the executions whose task instance contains one of the parts, it is
+   * used for the task instances created before their ids started with the prefix. The statements
+   * for the parts cannot use the primary key.
+   */
+  @Override
+  public int deleteScheduledTasks(
+      String taskName,
+      Collection<String> taskInstancePrefixes,
+      Collection<String> taskInstanceParts) {
+
+    String sql =
+        "delete from "
+            + tableName
+            + " where task_name = ? and task_instance like ? escape '"
+            + LIKE_ESCAPE
+            + "' and picked = ?";
+
+    return getSession()
+        .doReturningWork(
+            connection -> {
+              try (PreparedStatement ps = connection.prepareStatement(sql)) {
+
+                for (String prefix : taskInstancePrefixes) {
+                  addDelete(ps, taskName, escapeLike(prefix) + "%");
+                }
+
+                for (String part : taskInstanceParts) {
+                  addDelete(ps, taskName, "%" + escapeLike(part) + "%");
+                }
+
+                return getUpdateCount(ps.executeBatch());
+              }
+            });
+  }
+
+  private static void addDelete(PreparedStatement ps, String taskName, String pattern)
+      throws SQLException {
+    ps.setString(1, taskName);
+    ps.setString(2, pattern);
+    ps.setBoolean(3, false);
+    ps.addBatch();
+  }
+
+  /** The task instance ids contain underscores which have to be escaped in like conditions. */
+  static String escapeLike(String value) {
+    return value
+        .replace(LIKE_ESCAPE, LIKE_ESCAPE + LIKE_ESCAPE)
+        .replace("%", LIKE_ESCAPE + "%")
+        .replace("_", LIKE_ESCAPE + "_");
+  }
 
-    criteria.add(Restrictions.eq(TASK_NAME, "EICRTask"));
-    criteria.add(Restrictions.like(TASK_INSTANCE, queryString, MatchMode.START));
+  /**
+   * The method returns the number of rows updated by the batch, or -1 when the driver does not
+   * report the number of rows updated by a statement.
+   */
+  private static int getUpdateCount(int[] results) {
 
-    return criteria.list();
+    int count = 0;
+    for (int result : results) {
+      if (result == Statement.SUCCESS_NO_INFO) {
+        return -1;
+      } else if (result > 0) {
+        count += result;
+      }
+    }
+    return count;
   }
 }
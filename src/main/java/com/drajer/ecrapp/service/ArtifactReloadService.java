@@ -0,0 +1,115 @@
+package com.drajer.ecrapp.service;
+
+import com.drajer.bsa.service.KarParser;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ *
+ *
+ * <h1>ArtifactReloadService</h1>
+ *
+ * The ArtifactReloadService reloads the KARs and the eRSD without a restart. A reload builds the
+ * new KARs or value sets and actions off to the side and then replaces the current ones in a single
+ * update, executions that are in progress finish with the version they started with.
+ *
+ * <p>The reload is requested using the API, or when artifact.reload.watch.enabled is true, when the
+ * files in the KAR directory or the eRSD file change.
+ */
+@Service
+public class ArtifactReloadService {
+
+  private final Logger logger = LoggerFactory.getLogger(ArtifactReloadService.class);
+
+  @Autowired KarParser karParser;
+
+  @Autowired PlanDefinitionProcessor planDefinitionProcessor;
+
+  @Value("${kar.directory:default}")
+  String karDirectory;
+
+  @Value("${ersd.file.location:default.json}")
+  String ersdFileLocation;
+
+  @Value("${artifact.reload.watch.enabled:false}")
+  Boolean watchEnabled;
+
+  /** The fingerprints of the files when they were last loaded, computed by the first check. */
+  private Long karFingerprint;
+
+  private Long ersdFingerprint;
+
+  public void reloadKars() {
+
+    logger.info(" Reloading the KARs from {}", karDirectory);
+    karParser.loadKars();
+  }
+
+  public void reloadErsd() {
+
+    logger.info(" Reloading the ERSD from {}", ersdFileLocation);
+    planDefinitionProcessor.processResourceBundle();
+  }
+
+  /** Reloads the KARs or the eRSD when their files have changed since the previous check. */
+  @Scheduled(
+      fixedDelayString = "${artifact.reload.watch.interval-ms:60000}",
+      initialDelayString = "${artifact.reload.watch.interval-ms:60000}")
+  public synchronized void reloadChangedArtifacts() {
+
+    if (!Boolean.TRUE.equals(watchEnabled)) {
+      return;
+    }
+
+    long kars = getFingerprint(new File(karDirectory));
+
+    if (karFingerprint != null && karFingerprint != kars) {
+      logger.info(" KAR directory {} has changed ", karDirectory);
+      reloadKars();
+    }
+    karFingerprint = kars;
+
+    long ersd = getFingerprint(new File(ersdFileLocation));
+
+    if (ersdFingerprint != null && ersdFingerprint != ersd) {
+      logger.info(" ERSD File {} has changed ", ersdFileLocation);
+      reloadErsd();
+    }
+    ersdFingerprint = ersd;
+  }
+
+  /**
+   * @param file A file or directory.
+   * @return A fingerprint of the path, size and modification time of the file or of the files in
+   *     the directory.
+   */
+  private long getFingerprint(File file) {
+
+    if (!file.exists()) {
+      return 0;
+    }
+
+    try (Stream<Path> paths = Files.walk(file.toPath())) {
+      return paths
+          .map(Path::toFile)
+          .filter(File::isFile)
+          .mapToLong(
+              f ->
+                  31 * (31 * f.getPath().hashCode() + Long.hashCode(f.length())) + f.lastModified())
+          .sum();
+    } catch (IOException | RuntimeException e) {
+      logger.error(" Unable to check {} for changes ", file, e);
+    }
+
+    return 0;
+  }
+}
@@ -1,5 +1,7 @@
 package com.drajer.ecrapp.service;
 
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import com.drajer.eca.model.AbstractAction;
@@ -18,21 +20,24 @@ import com.drajer.eca.model.ReportabilityResponseAction;
 import com.drajer.eca.model.SubmitEicrAction;
 import com.drajer.eca.model.TimingSchedule;
 import com.drajer.eca.model.ValidateEicrAction;
+import com.drajer.ecrapp.config.TriggerCodeFilter;
 import com.drajer.ecrapp.config.ValueSetSingleton;
 import com.drajer.ecrapp.util.ApplicationUtils;
+import com.drajer.ecrapp.util.ErsdBundleReader;
 import com.drajer.ersd.service.ValueSetService;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import javax.annotation.PostConstruct;
-import org.hl7.fhir.r4.model.Bundle;
-import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r4.model.DataRequirement;
 import org.hl7.fhir.r4.model.DataRequirement.DataRequirementCodeFilterComponent;
 import org.hl7.fhir.r4.model.Duration;
@@ -42,6 +47,7 @@ import org.hl7.fhir.r4.model.PlanDefinition;
 import org.hl7.fhir.r4.model.PlanDefinition.PlanDefinitionActionComponent;
 import org.hl7.fhir.r4.model.PlanDefinition.PlanDefinitionActionConditionComponent;
 import org.hl7.fhir.r4.model.PlanDefinition.PlanDefinitionActionRelatedActionComponent;
+import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.ResourceType;
 import org.hl7.fhir.r4.model.Timing;
 import org.hl7.fhir.r4.model.Timing.TimingRepeatComponent;
@@ -84,6 +90,12 @@ public class PlanDefinitionProcessor {
   @Value("${ersd.file.location:default.json}")
   String ersdFileLocation;
 
+  @Value("${trigger.code.filter.enabled:false}")
+  Boolean triggerCodeFilterEnabled;
+
+  @Value("${trigger.code.filter.fpp:0.01}")
+  Double triggerCodeFilterFpp;
+
   private final Logger logger = LoggerFactory.getLogger(PlanDefinitionProcessor.class);
 
   @PostConstruct
@@ -91,210 +103,181 @@ public class PlanDefinitionProcessor {
     processResourceBundle();
   }
 
-  public void processResourceBundle() {
+  /**
+   * Reads the eRSD and replaces the value sets and actions of the legacy launches. The value sets
+   * are processed into a new ValueSetSingleton that replaces the current instance once it is
+   * complete, so the eRSD can be reloaded without a restart while trigger codes are being matched.
+   */
+  public synchronized void processResourceBundle() {
 
     // Reading Bundle with Id 506 from ersd server.
     // Bundle esrdBundle =
 
     logger.info(" Reading ERSD Bundle File ");
-    Bundle ersdBundle = readErsdBundleFromFile();
-    Bundle actualErsdBundle = null;
-
-    if (ersdBundle != null) {
-
-      if (ersdBundle.getEntry() != null) {
-        logger.info(" Bundle has been created with Entries : {}", ersdBundle.getEntry().size());
-      }
-
-      // Check to see if this is a searchset bundle.
-      if (ersdBundle.getType() == Bundle.BundleType.SEARCHSET) {
-
-        // Check if there is a bundle of type collection and use it.
-        // Typically it will be the first one.
-
-        logger.info("Found a Bundle from a search result, containing the actual ERSD Bundle");
-
-        List<BundleEntryComponent> innerBundle = ersdBundle.getEntry();
-
-        for (BundleEntryComponent bundleEntry : innerBundle) {
-
-          if (Optional.ofNullable(bundleEntry).isPresent()
-              && bundleEntry.getResource().getResourceType().equals(ResourceType.Bundle)) {
-
-            logger.debug(" Found a bundle within a bundle ");
-
-            Bundle ib = (Bundle) (bundleEntry.getResource());
-
-            if (ib.getType() == Bundle.BundleType.COLLECTION
-                && ib.getId().contains(ERSD_BUNDLE_ID_STRING)) {
-
-              logger.info(" Found the bundle which is the actual ERSD Bundle file ");
-              actualErsdBundle = ib;
-              break;
-            }
-          }
-        }
-      }
-
-      List<BundleEntryComponent> bundleEntries = null;
-
-      if (actualErsdBundle != null) {
-        logger.info(" Inner ERSD Bundle Found from where we need to extract the plan definition");
-        bundleEntries = actualErsdBundle.getEntry();
-      } else {
-        logger.info(
-            " Bundle read from configuration is a valid bundle to extract the plan definition");
-        bundleEntries = ersdBundle.getEntry();
-      }
-
-      ValueSet valueSet = null;
-      PlanDefinition planDefinition = null;
-      List<PlanDefinitionActionComponent> actions = null;
-      List<TriggerDefinition> triggerDefinitionsList = null;
-      Set<ValueSet> emergentValuesets = new HashSet<>();
-      Set<ValueSet> valuesets = new HashSet<>();
-      Set<ValueSet> grouperValueSets = new HashSet<>();
-      Map<EventTypes.EcrActionTypes, Set<AbstractAction>> acts = new HashMap<>();
 
-      for (BundleEntryComponent bundleEntry : bundleEntries) {
+    PlanDefinition planDefinition = null;
+    List<PlanDefinitionActionComponent> actions = null;
+    List<TriggerDefinition> triggerDefinitionsList = null;
+    Set<ValueSet> emergentValuesets = new HashSet<>();
+    Set<ValueSet> valuesets = new HashSet<>();
+    Set<ValueSet> grouperValueSets = new HashSet<>();
+    List<PlanDefinition> planDefinitions = new ArrayList<>();
+    Map<EventTypes.EcrActionTypes, Set<AbstractAction>> acts = new HashMap<>();
+    AtomicReference<String> rctcVersion = new AtomicReference<>();
 
-        if (Optional.ofNullable(bundleEntry).isPresent()) {
+    // The value sets are classified as the entries are read, the plan definitions are processed
+    // once all the value sets are available.
+    boolean ersdRead =
+        readErsdBundleFromFile(
+            resource -> {
+              if (resource.getResourceType().equals(ResourceType.ValueSet)) {
 
-          logger.debug(
-              " Bundle Entries present and is of type {}",
-              bundleEntry.getResource().getResourceType());
+                ValueSet valueSet = (ValueSet) resource;
 
-          if (bundleEntry.getResource().getResourceType().equals(ResourceType.ValueSet)) {
+                if (ApplicationUtils.isAEmergentValueSet(valueSet)) {
 
-            logger.debug(" Found Value set");
+                  logger.debug(" Found a Emergent Value Set {}", valueSet.getId());
 
-            valueSet = (ValueSet) bundleEntry.getResource();
+                  emergentValuesets.add(valueSet);
+                  valuesets.add(valueSet);
+                } else if (ApplicationUtils.isAGrouperValueSet(valueSet)) {
 
-            if (ApplicationUtils.isAEmergentValueSet(valueSet)) {
+                  logger.debug(" Found a Grouper Value Set {}", valueSet.getId());
+                  grouperValueSets.add(valueSet);
 
-              logger.debug(" Found a Emergent Value Set {}", valueSet.getId());
-
-              emergentValuesets.add(valueSet);
-              valuesets.add(valueSet);
-            } else if (ApplicationUtils.isAGrouperValueSet(valueSet)) {
+                } else {
+                  logger.debug(" Found a Regular Value Set {}", valueSet.getId());
+                  valuesets.add(valueSet);
+                }
 
-              logger.debug(" Found a Grouper Value Set {}", valueSet.getId());
-              // valueSetService.createValueSetGrouper(valueSet);
-              grouperValueSets.add(valueSet);
+              } else if (resource.getResourceType().equals(ResourceType.Library)) {
+                logger.debug(" Found the Library ");
+                Library lib = (Library) resource;
 
-            } else {
-              logger.debug(" Found a Regular Value Set {}", valueSet.getId());
-              // valueSetService.createValueSet(valueSet);
-              valuesets.add(valueSet);
-            }
+                if (lib.getId().contains("rctc")) {
 
-          } else if (bundleEntry.getResource().getResourceType().equals(ResourceType.Library)) {
-            logger.debug(" Found the Library ");
-            Library lib = (Library) bundleEntry.getResource();
+                  logger.debug(" Found Rctc Version {}", lib.getVersion());
+                  rctcVersion.set(lib.getVersion());
+                }
+              } else if (resource.getResourceType().equals(ResourceType.PlanDefinition)) {
+                planDefinitions.add((PlanDefinition) resource);
+              }
+            });
 
-            if (lib.getId().contains("rctc")) {
+    if (ersdRead) {
 
-              logger.debug(" Adding Rctc Version to the Action Repo {}", lib.getVersion());
-              ActionRepo.getInstance().setRctcVersion(lib.getVersion());
-            }
-          }
-        }
+      logger.info(
+          " Read {} Value Sets, {} Grouper Value Sets and {} Plan Definitions from the ERSD",
+          valuesets.size(),
+          grouperValueSets.size(),
+          planDefinitions.size());
+
+      ValueSetSingleton valueSetSingleton = ValueSetSingleton.newInstance();
+      valueSetSingleton.setEmergentValueSets(emergentValuesets);
+      valueSetSingleton.setValueSets(valuesets);
+      valueSetSingleton.setGrouperValueSets(grouperValueSets);
+
+      if (Boolean.TRUE.equals(triggerCodeFilterEnabled)) {
+
+        List<ValueSet> triggerValueSets = new ArrayList<>(valuesets);
+        triggerValueSets.addAll(emergentValuesets);
+        valueSetSingleton.setTriggerCodeFilter(
+            TriggerCodeFilter.create("ersd", triggerValueSets, triggerCodeFilterFpp));
       }
 
-      ValueSetSingleton.getInstance().setEmergentValueSets(emergentValuesets);
-      ValueSetSingleton.getInstance().setValueSets(valuesets);
-      ValueSetSingleton.getInstance().setGrouperValueSets(grouperValueSets);
-
-      for (BundleEntryComponent bundleEntry : bundleEntries) {
-
-        if (Optional.ofNullable(bundleEntry).isPresent()) {
-          logger.debug("Bundle exist");
+      for (PlanDefinition pd : planDefinitions) {
 
-          if (bundleEntry.getResource().getResourceType().equals(ResourceType.PlanDefinition)) {
-            planDefinition = (PlanDefinition) bundleEntry.getResource();
-            actions = planDefinition.getAction();
+        planDefinition = pd;
+        actions = planDefinition.getAction();
 
-            logger.info(" Found Plan Definition ");
-            if (actions != null && !actions.isEmpty()) {
+        logger.info(" Found Plan Definition ");
+        if (actions != null && !actions.isEmpty()) {
 
-              for (PlanDefinitionActionComponent action : actions) {
+          for (PlanDefinitionActionComponent action : actions) {
 
-                if (action.getId().equals("match-trigger")) {
+            if (action.getId().equals("match-trigger")) {
 
-                  logger.info(" Identified Match Trigger EICR Action ");
+              logger.info(" Identified Match Trigger EICR Action ");
 
-                  MatchTriggerAction mta = new MatchTriggerAction();
+              MatchTriggerAction mta = new MatchTriggerAction();
 
-                  populateActionData(mta, acts, action, EcrActionTypes.MATCH_TRIGGER);
+              populateActionData(mta, acts, action, EcrActionTypes.MATCH_TRIGGER);
 
-                  triggerDefinitionsList = action.getTrigger();
+              triggerDefinitionsList = action.getTrigger();
 
-                  if (triggerDefinitionsList != null && !triggerDefinitionsList.isEmpty()) {
+              if (triggerDefinitionsList != null && !triggerDefinitionsList.isEmpty()) {
 
-                    logger.info(" Number of Trigger Definitions {}", triggerDefinitionsList.size());
+                logger.info(" Number of Trigger Definitions {}", triggerDefinitionsList.size());
 
-                    for (TriggerDefinition triggerDefinition : triggerDefinitionsList) {
+                for (TriggerDefinition triggerDefinition : triggerDefinitionsList) {
 
-                      valueSetService.createPlanDefinitionAction(triggerDefinition);
-                    }
-                  }
+                  valueSetService.createPlanDefinitionAction(triggerDefinition, valueSetSingleton);
+                }
+              }
 
-                } else if (action.getId().equals("create-eicr")) {
+            } else if (action.getId().equals("create-eicr")) {
 
-                  logger.info(" Identified Create EICR Action ");
+              logger.info(" Identified Create EICR Action ");
 
-                  CreateEicrAction mta = new CreateEicrAction();
+              CreateEicrAction mta = new CreateEicrAction();
 
-                  populateActionData(mta, acts, action, EcrActionTypes.CREATE_EICR);
+              populateActionData(mta, acts, action, EcrActionTypes.CREATE_EICR);
 
-                } else if (action.getId().equals("periodic-update-eicr")) {
+            } else if (action.getId().equals("periodic-update-eicr")) {
 
-                  logger.info(" Identified Periodic Update EICR Action ");
+              logger.info(" Identified Periodic Update EICR Action ");
 
-                  PeriodicUpdateEicrAction mta = new PeriodicUpdateEicrAction();
+              PeriodicUpdateEicrAction mta = new PeriodicUpdateEicrAction();
 
-                  populateActionData(mta, acts, action, EcrActionTypes.PERIODIC_UPDATE_EICR);
+              populateActionData(mta, acts, action, EcrActionTypes.PERIODIC_UPDATE_EICR);
 
-                } else if (action.getId().equals("create-eicr-after-recheck")) {
+            } else if (action.getId().equals("create-eicr-after-recheck")) {
 
-                  logger.info(" Identified Create EICR After Recheck Action ");
+              logger.info(" Identified Create EICR After Recheck Action ");
 
-                  CreateEicrAfterRecheckAction cra = new CreateEicrAfterRecheckAction();
+              CreateEicrAfterRecheckAction cra = new CreateEicrAfterRecheckAction();
 
-                  populateActionData(cra, acts, action, EcrActionTypes.CREATE_EICR_AFTER_RECHECK);
+              populateActionData(cra, acts, action, EcrActionTypes.CREATE_EICR_AFTER_RECHECK);
 
-                } else if (action.getId().equals("close-out-eicr")) {
+            } else if (action.getId().equals("close-out-eicr")) {
 
-                  logger.info(" Identified Close Out EICR Action ");
+              logger.info(" Identified Close Out EICR Action ");
 
-                  CloseOutEicrAction mta = new CloseOutEicrAction();
+              CloseOutEicrAction mta = new CloseOutEicrAction();
 
-                  populateActionData(mta, acts, action, EcrActionTypes.CLOSE_OUT_EICR);
+              populateActionData(mta, acts, action, EcrActionTypes.CLOSE_OUT_EICR);
 
-                } else if (action.getId().equals("validate-eicr")) {
+            } else if (action.getId().equals("validate-eicr")) {
 
-                  logger.info(" Identified Validate EICR Action ");
+              logger.info(" Identified Validate EICR Action ");
 
-                  ValidateEicrAction mta = new ValidateEicrAction();
+              ValidateEicrAction mta = new ValidateEicrAction();
 
-                  populateActionData(mta, acts, action, EcrActionTypes.VALIDATE_EICR);
+              populateActionData(mta, acts, action, EcrActionTypes.VALIDATE_EICR);
 
-                } else if (action.getId().equals("route-and-send-eicr")) {
+            } else if (action.getId().equals("route-and-send-eicr")) {
 
-                  logger.info(" Identified Submit EICR Action ");
+              logger.info(" Identified Submit EICR Action ");
 
-                  SubmitEicrAction mta = new SubmitEicrAction();
+              SubmitEicrAction mta = new SubmitEicrAction();
 
-                  populateActionData(mta, acts, action, EcrActionTypes.SUBMIT_EICR);
+              populateActionData(mta, acts, action, EcrActionTypes.SUBMIT_EICR);
 
-                  populateRRCheckAction(acts, mta);
-                }
-              }
+              populateRRCheckAction(acts, mta);
             }
           }
         }
       }
 
+      ValueSetSingleton.setInstance(valueSetSingleton);
+      logger.info(" Replaced the Value Sets with the Value Sets of the ERSD ");
+
+      if (rctcVersion.get() != null) {
+
+        logger.debug(" Adding Rctc Version to the Action Repo {}", rctcVersion.get());
+        ActionRepo.getInstance().setRctcVersion(rctcVersion.get());
+      }
+
       if (acts != null) {
         ActionRepo.getInstance().setActions(acts);
 
@@ -336,19 +319,22 @@ public class PlanDefinitionProcessor {
     }
   }
 
-  private Bundle readErsdBundleFromFile() {
+  private boolean readErsdBundleFromFile(Consumer<Resource> handler) {
 
     logger.debug("About to read ERSD File {}", ersdFileLocation);
-    Bundle bundle = null;
-    try (InputStream in = new FileInputStream(new File(ersdFileLocation))) {
+    try (InputStream in =
+        new BufferedInputStream(new FileInputStream(new File(ersdFileLocation)))) {
       logger.debug("Reading ERSD File ");
 
-      bundle = jsonParser.parseResource(Bundle.class, in);
+      new ErsdBundleReader(
+              FhirContext.forCached(FhirVersionEnum.R4).newJsonParser(), ERSD_BUNDLE_ID_STRING)
+          .read(in, handler);
       logger.debug("Completed Reading ERSD File");
+      return true;
     } catch (Exception e) {
       logger.error("Exception Reading ERSD File", e);
     }
-    return bundle;
+    return false;
   }
 
   private void populateActionData(
@@ -1,9 +1,53 @@
 package com.drajer.ecrapp.service;
 
 import com.drajer.ecrapp.model.ScheduledTasks;
+import com.github.kagkarlsson.scheduler.task.SchedulableInstance;
+import java.util.Collection;
 import java.util.List;
 
 public interface SchedulerService {
 
   List<ScheduledTasks> getScheduledTasks(String actionType, String launchId);
+
+  /**
+   * Method to retrieve the timers of a task whose instance id starts with the prefix.
+   *
+   * @param taskName The name of the task.
+   * @param taskInstancePrefix The prefix of the task instance ids.
+   * @return The timers including the ones that are currently executing.
+   */
+  List<ScheduledTasks> getScheduledTasksByPrefix(String taskName, String taskInstancePrefix);
+
+  /**
+   * Method to create the timers for many task instances in a single batch.
+   *
+   * @param instances The task instances along with their execution time.
+   * @return The number of timers created, or -1 when the database does not report it.
+   */
+  int scheduleTasks(List<SchedulableInstance<?>> instances);
+
+  /**
+   * Method to cancel all the timers of a task whose instance id starts with one of the prefixes.
+   * Timers that are currently executing are not cancelled.
+   *
+   * @param taskName The name of the task.
+   * @param taskInstancePrefixes The prefixes of the task instance ids.
+   * @return The number of timers cancelled, or -1 when the database does not report it.
+   */
+  int cancelScheduledTasks(String taskName, Collection<String> taskInstancePrefixes);
+
+  /**
+   * Method to cancel all the timers of a task whose instance id starts with one of the prefixes or
+   * contains one of the parts. The parts are used for the timers created before their instance ids
+   * started with the prefix. Timers that are currently executing are not cancelled.
+   *
+   * @param taskName The name of the task.
+   * @param taskInstancePrefixes The prefixes of the task instance ids.
+   * @param taskInstanceParts The parts of the task instance ids.
+   * @return The number of timers cancelled, or -1 when the database does not report it.
+   */
+  int cancelScheduledTasks(
+      String taskName,
+      Collection<String> taskInstancePrefixes,
+      Collection<String> taskInstanceParts);
 }
@@ -2,6 +2,7 @@ package com.drajer.ecrapp.service;
 
 import com.drajer.eca.model.AbstractAction;
 import com.drajer.eca.model.ActionRepo;
+import com.drajer.eca.model.EcaUtils;
 import com.drajer.eca.model.EventTypes;
 import com.drajer.eca.model.EventTypes.EcrActionTypes;
 import com.drajer.eca.model.EventTypes.JobStatus;
@@ -29,6 +30,9 @@ import com.github.kagkarlsson.scheduler.Scheduler;
 import com.github.kagkarlsson.scheduler.task.TaskInstance;
 import com.github.kagkarlsson.scheduler.task.TaskInstanceId;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -37,6 +41,7 @@ import javax.annotation.PostConstruct;
 import javax.swing.*;
 import org.hibernate.ObjectDeletedException;
 import org.hl7.fhir.r4.model.Duration;
+import org.hl7.fhir.r4.model.Encounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -50,6 +55,7 @@ import org.springframework.stereotype.Service;
 public class WorkflowService {
 
   private static final Logger logger = LoggerFactory.getLogger(WorkflowService.class);
+  private static final String EICR_TASK = "EICRTask";
   private static WorkflowService workflowInstance = null;
 
   /*
@@ -155,11 +161,67 @@ public class WorkflowService {
 
     } else if (type == WorkflowEvent.SUBSCRIPTION_NOTIFICATION) {
 
-      // Do nothing for now.
+      if (Boolean.TRUE.equals(details.getEncounterClosed())) {
 
+        // The Periodic Update timers are no longer needed and the Close Out can be scheduled
+        // without waiting for the next timer to find out that the encounter is closed.
+        logger.info(
+            " Encounter : {} closed per subscription notification, Cancelling Periodic Update timers ",
+            details.getEncounterId());
+        cancelScheduledTasksForLaunch(details, EcrActionTypes.PERIODIC_UPDATE_EICR);
+
+        PatientExecutionState state = ApplicationUtils.getDetailStatus(details);
+        state.setPeriodicUpdateJobStatus(JobStatus.COMPLETED);
+        EcaUtils.updateDetailStatus(details, state);
+        launchService.saveOrUpdate(details);
+
+        // The Close Out is evaluated by a timer, outside of the notification request.
+        if (state.getCloseOutEicrStatus().getJobStatus() == JobStatus.NOT_STARTED) {
+          invokeScheduler(details.getId(), EcrActionTypes.CLOSE_OUT_EICR, Instant.now(), "");
+        }
+      } else {
+
+        // The updated encounter period is used by the next timer.
+        launchService.saveOrUpdate(details);
+      }
     }
   }
 
+  /**
+   * The method is used to update the launch for an Encounter when the EHR notifies that the
+   * Encounter was modified. The encounter period and status are updated in place and when the
+   * Encounter is closed the pending timers are cancelled and the Close Out is started.
+   *
+   * @param fhirServerUrl The FHIR Server that sent the notification.
+   * @param patientId The patient for the Encounter.
+   * @param encounter The Encounter received in the notification.
+   * @return true if a launch was found for the Encounter.
+   */
+  public boolean handleEncounterNotification(
+      String fhirServerUrl, String patientId, Encounter encounter) {
+
+    String encounterId = encounter.getIdElement().getIdPart();
+
+    LaunchDetails details =
+        launchService.getLaunchDetailsByPatientAndEncounter(patientId, encounterId, fhirServerUrl);
+
+    if (details == null) {
+      logger.debug(" No launch found for Patient : {} and Encounter : {}", patientId, encounterId);
+      return false;
+    }
+
+    logger.info(
+        " Encounter notification for launch : {}, Patient : {} and Encounter : {}",
+        details.getId(),
+        patientId,
+        encounterId);
+
+    EcaUtils.updateEncounterFromNotification(details, encounter);
+    handleWorkflowEvent(WorkflowEvent.SUBSCRIPTION_NOTIFICATION, details);
+
+    return true;
+  }
+
   public void executeEicrWorkflow(
       LaunchDetails details, WorkflowEvent launchType, String taskInstanceId) {
 
@@ -366,17 +428,7 @@ public class WorkflowService {
       logger.info("Scheduling {} task to execute at {}", actionType, t);
 
       task = ignored -> logger.info("Scheduling one time task to after!");
-      staticScheduler.schedule(
-          staticTaskConfiguration
-              .sampleOneTimeTask()
-              .instance(
-                  actionType.toString()
-                      + "_"
-                      + launchDetailsId
-                      + "_"
-                      + java.util.UUID.randomUUID().toString(),
-                  new TaskTimer(100L, launchDetailsId, actionType, t, MDC.getCopyOfContextMap())),
-          t);
+      staticScheduler.schedule(createTaskInstance(launchDetailsId, actionType, t), t);
 
       logger.debug("task  ::: {}", task);
     }
@@ -384,6 +436,22 @@ public class WorkflowService {
     return task;
   }
 
+  private static TaskInstance<TaskTimer> createTaskInstance(
+      Integer launchDetailsId, EcrActionTypes actionType, Instant t) {
+
+    return staticTaskConfiguration
+        .sampleOneTimeTask()
+        .instance(
+            getTaskInstancePrefix(actionType, launchDetailsId)
+                + java.util.UUID.randomUUID().toString(),
+            new TaskTimer(100L, launchDetailsId, actionType, t, MDC.getCopyOfContextMap()));
+  }
+
+  /** The task instance ids of the timers for a launch start with the action type and launch id. */
+  private static String getTaskInstancePrefix(EcrActionTypes actionType, Integer launchDetailsId) {
+    return actionType.toString() + "_" + launchDetailsId + "_";
+  }
+
   public static Boolean checkIfTasksExists(List<ScheduledTasks> tasks, String taskInstanceId) {
 
     int numOfTasksExisting = 0;
@@ -412,15 +480,7 @@ public class WorkflowService {
   public static void cancelAllScheduledTasksForLaunch(
       LaunchDetails launchDetails, Boolean deleteLaunchDetails) {
     logger.info("Cancelling the scheduled tasks for launch_id {}", launchDetails.getId());
-    List<ScheduledTasks> tasks =
-        staticSchedulerService.getScheduledTasks("", String.valueOf(launchDetails.getId()));
-    for (ScheduledTasks scheduledTask : tasks) {
-      TaskInstance taskInstance = new TaskInstance("EICRTask", scheduledTask.getTask_instance());
-      if (Boolean.FALSE.equals(isCurrentExecutionTask(taskInstance))) {
-        logger.info("Cancelling scheduled task {}", taskInstance.getId());
-        staticScheduler.cancel(taskInstance);
-      }
-    }
+    cancelAllScheduledTasksForLaunches(Collections.singletonList(launchDetails.getId()));
 
     if (Boolean.TRUE.equals(deleteLaunchDetails)) {
       workflowInstance.launchService.delete(launchDetails);
@@ -431,6 +491,37 @@ public class WorkflowService {
     }
   }
 
+  /**
+   * The method cancels the timers of all the actions for the launches using a single batch. Timers
+   * that are currently executing are not cancelled.
+   *
+   * @param launchDetailsIds The launches whose timers have to be cancelled.
+   * @return The number of timers cancelled.
+   */
+  public static int cancelAllScheduledTasksForLaunches(Collection<Integer> launchDetailsIds) {
+
+    List<String> prefixes = new ArrayList<>();
+
+    for (Integer launchDetailsId : launchDetailsIds) {
+      for (EcrActionTypes actionType : EcrActionTypes.values()) {
+        prefixes.add(getTaskInstancePrefix(actionType, launchDetailsId));
+      }
+    }
+
+    int count = staticSchedulerService.cancelScheduledTasks(EICR_TASK, prefixes);
+    logger.info(" Cancelled {} scheduled tasks for {} launches", count, launchDetailsIds.size());
+    return count;
+  }
+
+  public static int cancelScheduledTasksForLaunch(
+      LaunchDetails launchDetails, EcrActionTypes actionType) {
+    logger.info(
+        "Cancelling the scheduled {} tasks for launch_id {}", actionType, launchDetails.getId());
+    return staticSchedulerService.cancelScheduledTasks(
+        EICR_TASK,
+        Collections.singletonList(getTaskInstancePrefix(actionType, launchDetails.getId())));
+  }
+
   public static boolean isCurrentExecutionTask(TaskInstanceId taskInstanceId) {
 
     Boolean currentTask = false;
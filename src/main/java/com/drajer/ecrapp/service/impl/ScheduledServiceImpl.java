@@ -3,6 +3,9 @@ package com.drajer.ecrapp.service.impl;
 import com.drajer.ecrapp.dao.SchedulerDao;
 import com.drajer.ecrapp.model.ScheduledTasks;
 import com.drajer.ecrapp.service.SchedulerService;
+import com.github.kagkarlsson.scheduler.task.SchedulableInstance;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import javax.transaction.Transactional;
 import org.slf4j.Logger;
@@ -24,4 +27,48 @@ public class ScheduledServiceImpl implements SchedulerService {
     logger.info("ScheduledTasks:{}", tasksList);
     return tasksList;
   }
+
+  @Override
+  public List<ScheduledTasks> getScheduledTasksByPrefix(
+      String taskName, String taskInstancePrefix) {
+    return schedulerDao.getScheduledTasksByPrefix(taskName, taskInstancePrefix);
+  }
+
+  @Override
+  public int scheduleTasks(List<SchedulableInstance<?>> instances) {
+
+    if (instances.isEmpty()) {
+      return 0;
+    }
+
+    int count = schedulerDao.scheduleTasks(instances);
+    logger.info(" Scheduled {} tasks in a batch ", count);
+    return count;
+  }
+
+  @Override
+  public int cancelScheduledTasks(String taskName, Collection<String> taskInstancePrefixes) {
+    return cancelScheduledTasks(taskName, taskInstancePrefixes, Collections.emptyList());
+  }
+
+  @Override
+  public int cancelScheduledTasks(
+      String taskName,
+      Collection<String> taskInstancePrefixes,
+      Collection<String> taskInstanceParts) {
+
+    if (taskInstancePrefixes.isEmpty() && taskInstanceParts.isEmpty()) {
+      return 0;
+    }
+
+    int count =
+        schedulerDao.deleteScheduledTasks(taskName, taskInstancePrefixes, taskInstanceParts);
+    logger.info(
+        " Cancelled {} {} tasks for {} task instance prefixes and {} parts ",
+        count,
+        taskName,
+        taskInstancePrefixes.size(),
+        taskInstanceParts.size());
+    return count;
+  }
 }
@@ -11,6 +11,7 @@ import com.drajer.ecrapp.service.PlanDefinitionProcessor;
 import com.drajer.sof.model.LaunchDetails;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -58,11 +59,20 @@ public class ApplicationUtils {
 
   private static final Logger logger = LoggerFactory.getLogger(ApplicationUtils.class);
 
+  /** The reader for the execution state, it is thread safe and shared by all the actions. */
+  private static final ObjectReader STATE_READER =
+      new ObjectMapper().readerFor(PatientExecutionState.class);
+
   public static List<CanonicalType> getValueSetListFromGrouper(String grouperId) {
+    return getValueSetListFromGrouper(grouperId, ValueSetSingleton.getInstance());
+  }
+
+  public static List<CanonicalType> getValueSetListFromGrouper(
+      String grouperId, ValueSetSingleton valueSetSingleton) {
 
     List<CanonicalType> valueSetIdList = null;
 
-    for (ValueSet valueset : ValueSetSingleton.getInstance().getGrouperValueSets()) {
+    for (ValueSet valueset : valueSetSingleton.getGrouperValueSets()) {
 
       logger.debug("Looking for grouper value set for {}", grouperId);
 
@@ -98,10 +108,15 @@ public class ApplicationUtils {
   }
 
   public static ValueSet getValueSetGrouperFromId(String grouperId) {
+    return getValueSetGrouperFromId(grouperId, ValueSetSingleton.getInstance());
+  }
+
+  public static ValueSet getValueSetGrouperFromId(
+      String grouperId, ValueSetSingleton valueSetSingleton) {
 
     ValueSet valueSetGrouper = null;
 
-    for (ValueSet valueset : ValueSetSingleton.getInstance().getGrouperValueSets()) {
+    for (ValueSet valueset : valueSetSingleton.getGrouperValueSets()) {
       if (valueset.getUrl() != null && valueset.getUrl().equals(grouperId)) {
         logger.debug("Grouper Id {}", grouperId);
         valueSetGrouper = valueset;
@@ -112,6 +127,11 @@ public class ApplicationUtils {
   }
 
   public static Set<ValueSet> getValueSetByIds(List<CanonicalType> valueSetIdList) {
+    return getValueSetByIds(valueSetIdList, ValueSetSingleton.getInstance());
+  }
+
+  public static Set<ValueSet> getValueSetByIds(
+      List<CanonicalType> valueSetIdList, ValueSetSingleton valueSetSingleton) {
 
     Set<ValueSet> valueSets = new HashSet<>();
 
@@ -121,24 +141,16 @@ public class ApplicationUtils {
 
       for (CanonicalType canonicalType : valueSetIdList) {
 
-        for (ValueSet valueSet : ValueSetSingleton.getInstance().getValueSets()) {
+        ValueSet valueSet = valueSetSingleton.findValueSet(canonicalType.getValueAsString());
 
-          if (valueSet.getId().equalsIgnoreCase(canonicalType.getValueAsString())
-              || ((valueSet.getUrl() != null)
-                  && (valueSet.getUrl().equalsIgnoreCase(canonicalType.getValueAsString())))) {
-            valueSets.add(valueSet);
-            break;
-          }
+        if (valueSet != null) {
+          valueSets.add(valueSet);
         }
 
-        for (ValueSet valueSet : ValueSetSingleton.getInstance().getEmergentValueSets()) {
+        valueSet = valueSetSingleton.findEmergentValueSet(canonicalType.getValueAsString());
 
-          if (valueSet.getId().equalsIgnoreCase(canonicalType.getValueAsString())
-              || ((valueSet.getUrl() != null)
-                  && (valueSet.getUrl().equalsIgnoreCase(canonicalType.getValueAsString())))) {
-            valueSets.add(valueSet);
-            break;
-          }
+        if (valueSet != null) {
+          valueSets.add(valueSet);
         }
       }
     }
@@ -146,6 +158,11 @@ public class ApplicationUtils {
   }
 
   public static Set<ValueSet> getEmergentValueSetByIds(List<CanonicalType> valueSetIdList) {
+    return getEmergentValueSetByIds(valueSetIdList, ValueSetSingleton.getInstance());
+  }
+
+  public static Set<ValueSet> getEmergentValueSetByIds(
+      List<CanonicalType> valueSetIdList, ValueSetSingleton valueSetSingleton) {
 
     Set<ValueSet> valueSets = new HashSet<>();
 
@@ -155,38 +172,18 @@ public class ApplicationUtils {
 
         logger.debug("Checking Value set {}", canonicalType.getValueAsString());
 
-        for (ValueSet valueSet : ValueSetSingleton.getInstance().getValueSets()) {
-
-          if (valueSet.getId().equalsIgnoreCase(canonicalType.getValueAsString())
-              && isAEmergentValueSet(valueSet)) {
-            logger.debug("Found a Emergent Value Set for Grouper using Id {}", valueSet.getId());
-            valueSets.add(valueSet);
-            break;
-          } else if ((valueSet.getUrl() != null)
-              && (valueSet.getUrl().equalsIgnoreCase(canonicalType.getValueAsString()))
-              && isAEmergentValueSet(valueSet)) {
+        ValueSet valueSet = valueSetSingleton.findValueSet(canonicalType.getValueAsString());
 
-            logger.debug("Urls Matched for a Emergent Value Set {}", valueSet.getId());
-            valueSets.add(valueSet);
-            break;
-          }
+        if (valueSet != null && isAEmergentValueSet(valueSet)) {
+          logger.debug("Found a Emergent Value Set for Grouper {}", valueSet.getId());
+          valueSets.add(valueSet);
         }
 
-        for (ValueSet valueSet : ValueSetSingleton.getInstance().getEmergentValueSets()) {
-
-          if (valueSet.getId().equalsIgnoreCase(canonicalType.getValueAsString())
-              && isAEmergentValueSet(valueSet)) {
+        valueSet = valueSetSingleton.findEmergentValueSet(canonicalType.getValueAsString());
 
-            logger.debug("Found a Emergent Value Set for Grouper using Id {}", valueSet.getId());
-            valueSets.add(valueSet);
-            break;
-          } else if ((valueSet.getUrl() != null)
-              && (valueSet.getUrl().equalsIgnoreCase(canonicalType.getValueAsString()))
-              && isAEmergentValueSet(valueSet)) {
-            logger.debug("Urls Matched for a Emergent Value Set {}", valueSet.getId());
-            valueSets.add(valueSet);
-            break;
-          }
+        if (valueSet != null && isAEmergentValueSet(valueSet)) {
+          logger.debug("Found a Emergent Value Set for Grouper {}", valueSet.getId());
+          valueSets.add(valueSet);
         }
       }
     }
@@ -598,12 +595,11 @@ public class ApplicationUtils {
 
   public static PatientExecutionState getDetailStatus(LaunchDetails details) {
 
-    ObjectMapper mapper = new ObjectMapper();
     PatientExecutionState state = null;
 
     try {
 
-      state = mapper.readValue(details.getStatus(), PatientExecutionState.class);
+      state = STATE_READER.readValue(details.getStatus());
 
     } catch (JsonProcessingException e1) {
       String msg = "Unable to read/write execution state";
@@ -0,0 +1,226 @@
+package com.drajer.ecrapp.util;
+
+import ca.uhn.fhir.parser.IParser;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ *
+ * <h1>ErsdBundleReader</h1>
+ *
+ * The ErsdBundleReader reads the resources of an eRSD Bundle one entry at a time, instead of
+ * parsing the whole Bundle. Only the JSON of the current entry and its resource are held in memory.
+ *
+ * <p>When the Bundle is a searchset, the entries of the first collection Bundle in the searchset
+ * whose id contains the eRSD bundle id string are read, as the actual eRSD. When there is no such
+ * Bundle the other entries of the searchset are read. The id and type of a Bundle are expected
+ * before its entries, which is the order in which FHIR JSON is written. As when the Bundle is
+ * parsed, the id of each resource is replaced by the fullUrl of its entry.
+ */
+public class ErsdBundleReader {
+
+  private static final Logger logger = LoggerFactory.getLogger(ErsdBundleReader.class);
+
+  private static final String RESOURCE_TYPE = "resourceType";
+  private static final String BUNDLE = "Bundle";
+  private static final String SEARCHSET = "searchset";
+  private static final String COLLECTION = "collection";
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final IParser parser;
+  private final String ersdBundleIdString;
+
+  private boolean ersdBundleFound;
+
+  /**
+   * @param parser The parser for the resources of the entries, it is only used by this reader.
+   * @param ersdBundleIdString The string contained in the id of the eRSD Bundle of a searchset.
+   */
+  public ErsdBundleReader(IParser parser, String ersdBundleIdString) {
+    this.parser = parser;
+    this.ersdBundleIdString = ersdBundleIdString;
+  }
+
+  /**
+   * The method reads the resources of the eRSD Bundle in the order of the entries.
+   *
+   * @param in The eRSD Bundle JSON.
+   * @param handler Receives each resource.
+   * @throws IOException When the JSON cannot be read or is not a Bundle.
+   */
+  public void read(InputStream in, Consumer<Resource> handler) throws IOException {
+
+    ersdBundleFound = false;
+
+    try (JsonParser jp = mapper.getFactory().createParser(in)) {
+
+      if (jp.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("ERSD is not a JSON object");
+      }
+
+      List<Resource> searchsetResources = new ArrayList<>();
+
+      String type = readBundle(jp, false, handler, searchsetResources);
+
+      if (SEARCHSET.equals(type) && !ersdBundleFound) {
+        logger.info(" Searchset does not contain the ERSD Bundle, using the searchset entries ");
+        searchsetResources.forEach(handler);
+      }
+    }
+  }
+
+  /**
+   * Reads the fields of a Bundle, the parser is positioned after the start of the Bundle or after
+   * its resourceType.
+   *
+   * @return The type of the Bundle.
+   */
+  private String readBundle(
+      JsonParser jp, boolean inner, Consumer<Resource> handler, List<Resource> searchsetResources)
+      throws IOException {
+
+    String id = null;
+    String type = null;
+
+    while (jp.nextToken() == JsonToken.FIELD_NAME) {
+
+      String field = jp.getCurrentName();
+      JsonToken value = jp.nextToken();
+
+      if (RESOURCE_TYPE.equals(field) && !inner && !BUNDLE.equals(jp.getText())) {
+        throw new IOException("ERSD is not a Bundle: " + jp.getText());
+      } else if ("id".equals(field) && value == JsonToken.VALUE_STRING) {
+        id = jp.getText();
+      } else if ("type".equals(field) && value == JsonToken.VALUE_STRING) {
+        type = jp.getText();
+      } else if ("entry".equals(field) && value == JsonToken.START_ARRAY) {
+
+        if (!inner) {
+          readEntries(jp, SEARCHSET.equals(type), handler, searchsetResources);
+        } else if (!ersdBundleFound
+            && COLLECTION.equals(type)
+            && id != null
+            && id.contains(ersdBundleIdString)) {
+
+          logger.info(" Found the bundle which is the actual ERSD Bundle {}", id);
+          ersdBundleFound = true;
+          readEntries(jp, false, handler, null);
+        } else {
+          jp.skipChildren();
+        }
+      } else {
+        jp.skipChildren();
+      }
+    }
+
+    return type;
+  }
+
+  private void readEntries(
+      JsonParser jp,
+      boolean searchset,
+      Consumer<Resource> handler,
+      List<Resource> searchsetResources)
+      throws IOException {
+
+    while (jp.nextToken() == JsonToken.START_OBJECT) {
+
+      String fullUrl = null;
+      Resource resource = null;
+
+      while (jp.nextToken() == JsonToken.FIELD_NAME) {
+
+        String field = jp.getCurrentName();
+        JsonToken value = jp.nextToken();
+
+        if ("fullUrl".equals(field) && value == JsonToken.VALUE_STRING) {
+          fullUrl = jp.getText();
+        } else if ("resource".equals(field) && value == JsonToken.START_OBJECT) {
+          resource = readResource(jp, searchset, handler, searchsetResources);
+        } else {
+          jp.skipChildren();
+        }
+      }
+
+      if (resource != null) {
+
+        if (fullUrl != null && !fullUrl.isEmpty()) {
+          setIdFromFullUrl(resource, fullUrl);
+        }
+
+        if (searchset) {
+          searchsetResources.add(resource);
+        } else {
+          handler.accept(resource);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the resource of an entry, Bundles in a searchset are read entry by entry and Bundles in
+   * other Bundles are skipped.
+   *
+   * @return The resource, null for a Bundle.
+   */
+  private Resource readResource(
+      JsonParser jp,
+      boolean searchset,
+      Consumer<Resource> handler,
+      List<Resource> searchsetResources)
+      throws IOException {
+
+    ObjectNode node = mapper.createObjectNode();
+
+    while (jp.nextToken() == JsonToken.FIELD_NAME) {
+
+      String field = jp.getCurrentName();
+      jp.nextToken();
+
+      if (node.size() == 0 && RESOURCE_TYPE.equals(field) && BUNDLE.equals(jp.getText())) {
+
+        if (searchset) {
+          readBundle(jp, true, handler, searchsetResources);
+        } else {
+          skipObject(jp);
+        }
+        return null;
+      }
+
+      node.set(field, mapper.readTree(jp));
+    }
+
+    return (Resource) parser.parseResource(node.toString());
+  }
+
+  private void skipObject(JsonParser jp) throws IOException {
+
+    while (jp.nextToken() == JsonToken.FIELD_NAME) {
+      jp.nextToken();
+      jp.skipChildren();
+    }
+  }
+
+  private void setIdFromFullUrl(Resource resource, String fullUrl) {
+
+    IdType id = new IdType(fullUrl);
+
+    if (!id.hasVersionIdPart() && resource.getMeta().hasVersionId()) {
+      id = id.withVersion(resource.getMeta().getVersionId());
+    }
+
+    resource.setIdElement(id);
+  }
+}
@@ -1,5 +1,6 @@
 package com.drajer.ersd.service;
 
+import com.drajer.ecrapp.config.ValueSetSingleton;
 import org.hl7.fhir.r4.model.TriggerDefinition;
 import org.hl7.fhir.r4.model.ValueSet;
 
@@ -10,4 +11,11 @@ public interface ValueSetService {
   public void createValueSetGrouper(ValueSet valueSet);
 
   public void createPlanDefinitionAction(TriggerDefinition triggerDefinition);
+
+  /**
+   * Adds the trigger paths and groupers of the trigger definition to the ValueSetSingleton, used to
+   * build a new ValueSetSingleton before it replaces the current instance.
+   */
+  public void createPlanDefinitionAction(
+      TriggerDefinition triggerDefinition, ValueSetSingleton valueSetSingleton);
 }
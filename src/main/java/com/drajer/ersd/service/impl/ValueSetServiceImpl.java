@@ -65,6 +65,12 @@ public class ValueSetServiceImpl implements ValueSetService {
 
   @Override
   public void createPlanDefinitionAction(TriggerDefinition triggerDefinition) {
+    createPlanDefinitionAction(triggerDefinition, ValueSetSingleton.getInstance());
+  }
+
+  @Override
+  public void createPlanDefinitionAction(
+      TriggerDefinition triggerDefinition, ValueSetSingleton valueSetSingleton) {
 
     List<DataRequirement> datareqs = triggerDefinition.getData();
 
@@ -78,17 +84,18 @@ public class ValueSetServiceImpl implements ValueSetService {
       logger.info(" Getting Value Set List for Grouper {}", codeFilter.getValueSet());
 
       List<CanonicalType> valueSetIdList =
-          ApplicationUtils.getValueSetListFromGrouper(codeFilter.getValueSet());
+          ApplicationUtils.getValueSetListFromGrouper(codeFilter.getValueSet(), valueSetSingleton);
 
       logger.info(
           " Size of valueSetIdList = {}",
           ((valueSetIdList == null) ? "Null" : valueSetIdList.size()));
 
-      grouperToValueSets = ApplicationUtils.getValueSetByIds(valueSetIdList);
+      grouperToValueSets = ApplicationUtils.getValueSetByIds(valueSetIdList, valueSetSingleton);
 
       logger.info(" Size of Value Sets for Grouper : {}", grouperToValueSets.size());
 
-      grouperToEmergentValueSets = ApplicationUtils.getEmergentValueSetByIds(valueSetIdList);
+      grouperToEmergentValueSets =
+          ApplicationUtils.getEmergentValueSetByIds(valueSetIdList, valueSetSingleton);
 
       logger.debug(" Size of Covid Value Sets for Grouper : {}", grouperToEmergentValueSets.size());
     }
@@ -97,10 +104,11 @@ public class ValueSetServiceImpl implements ValueSetService {
     DataRequirementCodeFilterComponent codeFilter = dataRequirement.getCodeFilterFirstRep();
 
     List<CanonicalType> valueSetIdList =
-        ApplicationUtils.getValueSetListFromGrouper(codeFilter.getValueSet());
-    Set<ValueSet> valueSets = ApplicationUtils.getValueSetByIds(valueSetIdList);
+        ApplicationUtils.getValueSetListFromGrouper(codeFilter.getValueSet(), valueSetSingleton);
+    Set<ValueSet> valueSets = ApplicationUtils.getValueSetByIds(valueSetIdList, valueSetSingleton);
 
-    ValueSet valuSetGrouper = ApplicationUtils.getValueSetGrouperFromId(codeFilter.getValueSet());
+    ValueSet valuSetGrouper =
+        ApplicationUtils.getValueSetGrouperFromId(codeFilter.getValueSet(), valueSetSingleton);
 
     String path = dataRequirement.getType() + "." + codeFilter.getPath();
     logger.debug(
@@ -108,30 +116,28 @@ public class ValueSetServiceImpl implements ValueSetService {
         path,
         valuSetGrouper == null ? "NULL" : valuSetGrouper.getId());
 
-    ValueSetSingleton.getInstance().getTriggerPathToValueSetsMap().put(path, valueSets);
+    valueSetSingleton.getTriggerPathToValueSetsMap().put(path, valueSets);
 
-    if (ValueSetSingleton.getInstance().getTriggerPathToGrouperMap().containsKey(path)) {
+    if (valueSetSingleton.getTriggerPathToGrouperMap().containsKey(path)) {
       logger.debug(" Found Path in Grouper Map for {}", path);
       if (Boolean.FALSE.equals(
           ApplicationUtils.isSetContainsValueSet(
-              ValueSetSingleton.getInstance().getTriggerPathToGrouperMap().get(path),
-              valuSetGrouper))) {
-        ValueSetSingleton.getInstance().getTriggerPathToGrouperMap().get(path).add(valuSetGrouper);
+              valueSetSingleton.getTriggerPathToGrouperMap().get(path), valuSetGrouper))) {
+        valueSetSingleton.getTriggerPathToGrouperMap().get(path).add(valuSetGrouper);
       }
     } else {
       logger.debug(" Did not Find Path in Grouper Map for {}", path);
       Set<ValueSet> vs = new HashSet<>();
       vs.add(valuSetGrouper);
-      ValueSetSingleton.getInstance().getTriggerPathToGrouperMap().put(path, vs);
+      valueSetSingleton.getTriggerPathToGrouperMap().put(path, vs);
     }
 
     if (valuSetGrouper != null) {
 
       logger.debug(" Adding Grouper Id {} to map", codeFilter.getValueSet());
-      ValueSetSingleton.getInstance()
-          .addGrouperToValueSetMap(valuSetGrouper.getId(), grouperToValueSets);
-      ValueSetSingleton.getInstance()
-          .addGrouperToEmergentValueSetMap(valuSetGrouper.getId(), grouperToEmergentValueSets);
+      valueSetSingleton.addGrouperToValueSetMap(valuSetGrouper.getId(), grouperToValueSets);
+      valueSetSingleton.addGrouperToEmergentValueSetMap(
+          valuSetGrouper.getId(), grouperToEmergentValueSets);
     }
   }
 }
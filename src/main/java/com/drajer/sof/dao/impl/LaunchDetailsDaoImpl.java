@@ -1,9 +1,11 @@
 package com.drajer.sof.dao.impl;
 
+import com.drajer.eca.model.EcaUtils;
 import com.drajer.ecrapp.dao.AbstractDao;
 import com.drajer.sof.dao.LaunchDetailsDao;
 import com.drajer.sof.model.LaunchDetails;
 import org.hibernate.Criteria;
+import org.hibernate.FlushMode;
 import org.hibernate.criterion.Restrictions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,12 +18,99 @@ public class LaunchDetailsDaoImpl extends AbstractDao implements LaunchDetailsDa
 
   private final Logger logger = LoggerFactory.getLogger(LaunchDetailsDaoImpl.class);
 
+  private static final int MAX_STATUS_UPDATE_ATTEMPTS = 5;
+
   public LaunchDetails saveOrUpdate(LaunchDetails authDetails) {
+
+    // The status columns are not updatable, changes to the status are written using the status
+    // version and merged with any concurrent changes, the rest of the launch is then saved.
+    if (authDetails.getId() != null && authDetails.isStatusModified()) {
+      updateStatus(authDetails);
+    }
+
     getSession().saveOrUpdate(authDetails);
+    authDetails.setPersistedStatus(authDetails.getStatus());
+
     logger.info("Launch Details data successfully inserted in DB");
     return authDetails;
   }
 
+  /**
+   * The method writes the execution state of the launch if the state in the database has not been
+   * changed since it was read. When the state has been changed by another thread (for e.g a timer
+   * for another action of the same launch), the sections of the state that were changed by the
+   * caller are merged into the latest state and the update is retried. The queries do not flush the
+   * session, so that a pending update of the launch cannot overwrite the state without the version
+   * check.
+   *
+   * @param authDetails The launch whose status has to be written.
+   * @throws RuntimeException When the status could not be written after the maximum attempts.
+   */
+  public void updateStatus(LaunchDetails authDetails) {
+
+    for (int attempt = 1; attempt <= MAX_STATUS_UPDATE_ATTEMPTS; attempt++) {
+
+      int expectedVersion =
+          authDetails.getStatusVersion() != null ? authDetails.getStatusVersion() : 0;
+
+      int updated =
+          getSession()
+              .createQuery(
+                  "update LaunchDetails set status = :status, statusVersion = :newVersion"
+                      + " where id = :id and coalesce(statusVersion, 0) = :expectedVersion")
+              .setParameter("status", authDetails.getStatus())
+              .setParameter("newVersion", expectedVersion + 1)
+              .setParameter("id", authDetails.getId())
+              .setParameter("expectedVersion", expectedVersion)
+              .setHibernateFlushMode(FlushMode.MANUAL)
+              .executeUpdate();
+
+      if (updated == 1) {
+        authDetails.setStatusVersion(expectedVersion + 1);
+        authDetails.setPersistedStatus(authDetails.getStatus());
+        return;
+      }
+
+      Object[] current =
+          (Object[])
+              getSession()
+                  .createQuery("select status, statusVersion from LaunchDetails where id = :id")
+                  .setParameter("id", authDetails.getId())
+                  .setHibernateFlushMode(FlushMode.MANUAL)
+                  .uniqueResult();
+
+      if (current == null) {
+        logger.error(
+            " Launch Details {} no longer exists, status not updated", authDetails.getId());
+        return;
+      }
+
+      String currentStatus = (String) current[0];
+      Integer currentVersion = (Integer) current[1];
+
+      logger.info(
+          " Status of Launch Details {} changed concurrently from version {} to {}, merging changes",
+          authDetails.getId(),
+          expectedVersion,
+          currentVersion);
+
+      authDetails.setStatus(
+          EcaUtils.mergeDetailStatus(
+              authDetails.getPersistedStatus(), authDetails.getStatus(), currentStatus));
+      authDetails.setStatusVersion(currentVersion != null ? currentVersion : 0);
+      authDetails.setPersistedStatus(currentStatus);
+    }
+
+    String msg =
+        "Unable to update status of Launch Details "
+            + authDetails.getId()
+            + " after "
+            + MAX_STATUS_UPDATE_ATTEMPTS
+            + " attempts";
+    logger.error(msg);
+    throw new RuntimeException(msg);
+  }
+
   public LaunchDetails getAuthDetailsById(Integer id) {
     return getSession().get(LaunchDetails.class, id);
   }
@@ -209,4 +209,36 @@ public class Dstu2FhirData extends FhirData {
   public void setPregnancyConditions(List<Condition> pregnancyConditions) {
     this.pregnancyConditions = pregnancyConditions;
   }
+
+  /**
+   * The method applies the data collected by a query in its own Dstu2FhirData, the data found by
+   * the query replaces the current data. The queries run in parallel collect their data separately
+   * and are applied in the calling thread once they have completed.
+   *
+   * @param queryData The Dstu2FhirData of the query.
+   */
+  public void addQueryData(Dstu2FhirData queryData) {
+
+    addQueryCodes(queryData);
+    setPatient(getQueried(patient, queryData.getPatient()));
+    setPractitioner(getQueried(practitioner, queryData.getPractitioner()));
+    setEncounter(getQueried(encounter, queryData.getEncounter()));
+    setLocation(getQueried(location, queryData.getLocation()));
+    setOrganization(getQueried(organization, queryData.getOrganization()));
+    setConditions(getQueried(conditions, queryData.getConditions()));
+    setPregnancyConditions(getQueried(pregnancyConditions, queryData.getPregnancyConditions()));
+    setDiagReports(getQueried(diagReports, queryData.getDiagReports()));
+    setDiagOrders(getQueried(diagOrders, queryData.getDiagOrders()));
+    setLabResults(getQueried(labResults, queryData.getLabResults()));
+    setLabResultValueObservations(
+        getQueried(labResultValueObservations, queryData.getLabResultValueObservations()));
+    setTravelObs(getQueried(travelObs, queryData.getTravelObs()));
+    setPregnancyObs(getQueried(pregnancyObs, queryData.getPregnancyObs()));
+    setOccupationObs(getQueried(occupationObs, queryData.getOccupationObs()));
+    setImmunizations(getQueried(immunizations, queryData.getImmunizations()));
+    setMedications(getQueried(medications, queryData.getMedications()));
+    setMedicationAdministrations(
+        getQueried(medicationAdministrations, queryData.getMedicationAdministrations()));
+    setMedicationList(getQueried(medicationList, queryData.getMedicationList()));
+  }
 }
@@ -275,4 +275,39 @@ public abstract class FhirData {
   public void setR4LabResultValues(List<CodeableConcept> r4LabResultValues) {
     this.r4LabResultValues = r4LabResultValues;
   }
+
+  /**
+   * The method applies the codes collected by a query in its own FhirData, only the codes found by
+   * the query replace the current codes.
+   *
+   * @param queryData The FhirData of the query.
+   */
+  protected void addQueryCodes(FhirData queryData) {
+
+    conditionCodes = getQueried(conditionCodes, queryData.conditionCodes);
+    labResultCodes = getQueried(labResultCodes, queryData.labResultCodes);
+    labResultValues = getQueried(labResultValues, queryData.labResultValues);
+    medicationCodes = getQueried(medicationCodes, queryData.medicationCodes);
+    diagnosticOrderCodes = getQueried(diagnosticOrderCodes, queryData.diagnosticOrderCodes);
+    encounterCodes = getQueried(encounterCodes, queryData.encounterCodes);
+    immuniationCodes = getQueried(immuniationCodes, queryData.immuniationCodes);
+    diagnosticReportCodes = getQueried(diagnosticReportCodes, queryData.diagnosticReportCodes);
+    r4ConditionCodes = getQueried(r4ConditionCodes, queryData.r4ConditionCodes);
+    r4LabResultCodes = getQueried(r4LabResultCodes, queryData.r4LabResultCodes);
+    r4LabResultValues = getQueried(r4LabResultValues, queryData.r4LabResultValues);
+    r4MedicationCodes = getQueried(r4MedicationCodes, queryData.r4MedicationCodes);
+    r4ServiceRequestCodes = getQueried(r4ServiceRequestCodes, queryData.r4ServiceRequestCodes);
+    r4EncounterCodes = getQueried(r4EncounterCodes, queryData.r4EncounterCodes);
+    r4ImmunizationCodes = getQueried(r4ImmunizationCodes, queryData.r4ImmunizationCodes);
+    r4DiagnosticReportCodes =
+        getQueried(r4DiagnosticReportCodes, queryData.r4DiagnosticReportCodes);
+  }
+
+  protected static <T> T getQueried(T current, T queried) {
+    return queried != null ? queried : current;
+  }
+
+  protected static <T> List<T> getQueried(List<T> current, List<T> queried) {
+    return queried != null && !queried.isEmpty() ? queried : current;
+  }
 }
@@ -3,6 +3,7 @@ package com.drajer.sof.model;
 import com.drajer.cda.utils.CdaGeneratorConstants;
 import com.drajer.ecrapp.security.AESEncryption;
 import com.drajer.sof.utils.RefreshTokenScheduler;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.common.base.Strings;
 import java.time.Instant;
 import java.util.Date;
@@ -11,6 +12,7 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.PostLoad;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
@@ -104,12 +106,38 @@ public class LaunchDetails {
   @Column(name = "provider_uuid", nullable = true)
   private String providerUUID;
 
+  // The Encounter status and closure as last reported by the EHR, see EcaUtils.
+  @Column(name = "encounter_status", nullable = true)
+  private String encounterStatus;
+
+  @Column(name = "encounter_closed", nullable = true, columnDefinition = "int default 0")
+  @Type(type = "org.hibernate.type.NumericBooleanType")
+  private Boolean encounterClosed = false;
+
+  /** The time the Encounter status was last received in a subscription notification. */
+  @Column(name = "encounter_notification_ts", nullable = true)
+  @Temporal(TemporalType.TIMESTAMP)
+  private Date encounterNotificationTime;
+
+  // The status is only updated using the status version, see LaunchDetailsDao.updateStatus, so
+  // saving a stale copy of the launch does not overwrite it.
   @Column(
       name = "status",
       nullable = true,
+      updatable = false,
       columnDefinition = "TEXT") // Status can be active or completed.
   private String status;
 
+  @Column(
+      name = "status_version",
+      nullable = true,
+      updatable = false,
+      columnDefinition = "int default 0")
+  private Integer statusVersion = 0;
+
+  /** The status as it was last read from or written to the database. */
+  @Transient private String persistedStatus;
+
   @Column(name = "aa_id", nullable = true) // AA ID for creating CDA.
   private String assigningAuthorityId;
 
@@ -487,6 +515,57 @@ public class LaunchDetails {
     this.status = stat;
   }
 
+  public String getEncounterStatus() {
+    return encounterStatus;
+  }
+
+  public void setEncounterStatus(String encounterStatus) {
+    this.encounterStatus = encounterStatus;
+  }
+
+  public Boolean getEncounterClosed() {
+    return encounterClosed;
+  }
+
+  public void setEncounterClosed(Boolean encounterClosed) {
+    this.encounterClosed = encounterClosed;
+  }
+
+  public Date getEncounterNotificationTime() {
+    return encounterNotificationTime;
+  }
+
+  public void setEncounterNotificationTime(Date encounterNotificationTime) {
+    this.encounterNotificationTime = encounterNotificationTime;
+  }
+
+  public Integer getStatusVersion() {
+    return statusVersion;
+  }
+
+  public void setStatusVersion(Integer statusVersion) {
+    this.statusVersion = statusVersion;
+  }
+
+  @JsonIgnore
+  public String getPersistedStatus() {
+    return persistedStatus;
+  }
+
+  public void setPersistedStatus(String persistedStatus) {
+    this.persistedStatus = persistedStatus;
+  }
+
+  @JsonIgnore
+  public boolean isStatusModified() {
+    return !StringUtils.equals(status, persistedStatus);
+  }
+
+  @PostLoad
+  public void onLoad() {
+    persistedStatus = status;
+  }
+
   public String getDirectUser() {
     return directUser;
   }
@@ -56,6 +56,10 @@ public class R4FhirData extends FhirData {
   private Address jurisdiction;
   private List<Address> jurisdictions;
 
+  // The indexes used to resolve the references while creating the eICR.
+  private final ResourceIdIndex<Practitioner> practitionerIndex = new ResourceIdIndex<>();
+  private final ResourceIdIndex<Medication> medicationIndex = new ResourceIdIndex<>();
+
   public void prepareJurisdicationData() {
 
     if (location != null && location.getAddress() != null) {
@@ -100,6 +104,11 @@ public class R4FhirData extends FhirData {
   public Practitioner getPractitionerById(String id) {
 
     logger.debug("Id for retrieving practitioner = {}", id);
+
+    List<Practitioner> practs = practitionerIndex.getResourcesById(practitionersList, id);
+    if (!practs.isEmpty()) return practs.get(0);
+
+    // Fall back to matching a part of the id.
     for (Practitioner pr : practitionersList) {
 
       if (pr.getId().contains(id)) return pr;
@@ -108,6 +117,16 @@ public class R4FhirData extends FhirData {
     return null;
   }
 
+  /**
+   * The method returns the Medications with the id.
+   *
+   * @param id The id part of the Medication id.
+   * @return The Medications with the id in the order of the medication list.
+   */
+  public List<Medication> getMedicationsById(String id) {
+    return medicationIndex.getResourcesById(medicationList, id);
+  }
+
   public R4FhirData() {
 
     locationList = new ArrayList<>();
@@ -340,6 +359,46 @@ public class R4FhirData extends FhirData {
     this.diagReportObservations = diagReportObservations;
   }
 
+  /**
+   * The method applies the data collected by a query in its own R4FhirData, the data found by the
+   * query replaces the current data. The queries run in parallel collect their data separately and
+   * are applied in the calling thread once they have completed.
+   *
+   * @param queryData The R4FhirData of the query.
+   */
+  public void addQueryData(R4FhirData queryData) {
+
+    addQueryCodes(queryData);
+    setPatient(getQueried(patient, queryData.getPatient()));
+    setPractitioner(getQueried(practitioner, queryData.getPractitioner()));
+    setPractitionersList(getQueried(practitionersList, queryData.getPractitionersList()));
+    setEncounter(getQueried(encounter, queryData.getEncounter()));
+    setLocation(getQueried(location, queryData.getLocation()));
+    setLocationList(getQueried(locationList, queryData.getLocationList()));
+    setOrganization(getQueried(organization, queryData.getOrganization()));
+    setConditions(getQueried(conditions, queryData.getConditions()));
+    setEncounterDiagnosisConditions(
+        getQueried(encounterDiagnosisConditions, queryData.getEncounterDiagnosisConditions()));
+    setPregnancyConditions(getQueried(pregnancyConditions, queryData.getPregnancyConditions()));
+    setDiagReports(getQueried(diagReports, queryData.getDiagReports()));
+    setDiagReportObservations(
+        getQueried(diagReportObservations, queryData.getDiagReportObservations()));
+    setLabResults(getQueried(labResults, queryData.getLabResults()));
+    setLabResultValueObservations(
+        getQueried(labResultValueObservations, queryData.getLabResultValueObservations()));
+    setTravelObs(getQueried(travelObs, queryData.getTravelObs()));
+    setPregnancyObs(getQueried(pregnancyObs, queryData.getPregnancyObs()));
+    setOccupationObs(getQueried(occupationObs, queryData.getOccupationObs()));
+    setImmunizations(getQueried(immunizations, queryData.getImmunizations()));
+    setMedications(getQueried(medications, queryData.getMedications()));
+    setMedicationRequests(getQueried(medicationRequests, queryData.getMedicationRequests()));
+    setMedicationAdministrations(
+        getQueried(medicationAdministrations, queryData.getMedicationAdministrations()));
+    setMedicationList(getQueried(medicationList, queryData.getMedicationList()));
+    setServiceRequests(getQueried(serviceRequests, queryData.getServiceRequests()));
+    setProcedureList(getQueried(procedureList, queryData.getProcedureList()));
+  }
+
   @Override
   public String toString() {
     return "R4FhirData [data="
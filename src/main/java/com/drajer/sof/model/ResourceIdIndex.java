@@ -0,0 +1,64 @@
+package com.drajer.sof.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ *
+ *
+ * <h1>ResourceIdIndex</h1>
+ *
+ * The ResourceIdIndex indexes the resources of a list by the id part of the resource id, so that
+ * references can be resolved without scanning the list for every reference. The lists of the FHIR
+ * data are only appended to while the eICR is created, the index is brought up to date by indexing
+ * the resources added since the previous lookup and is rebuilt when the list is replaced or
+ * resources are removed.
+ */
+public class ResourceIdIndex<T extends Resource> {
+
+  /** The list that is indexed. */
+  private List<T> indexedResources;
+
+  /** The number of resources of the list that are indexed. */
+  private int indexedCount;
+
+  /** The resources in the order of the list, the Key is the id part of the resource id. */
+  private final Map<String, List<T>> resourcesById = new HashMap<>();
+
+  /**
+   * The method returns the resources of the list that have the id.
+   *
+   * @param resources The list of resources.
+   * @param id The id part of the resource id.
+   * @return The resources with the id in the order of the list.
+   */
+  public synchronized List<T> getResourcesById(List<T> resources, String id) {
+
+    if (resources == null || id == null) {
+      return Collections.emptyList();
+    }
+
+    if (resources != indexedResources || resources.size() < indexedCount) {
+      resourcesById.clear();
+      indexedResources = resources;
+      indexedCount = 0;
+    }
+
+    for (; indexedCount < resources.size(); indexedCount++) {
+
+      T res = resources.get(indexedCount);
+
+      if (res != null && res.getIdElement().getIdPart() != null) {
+        resourcesById
+            .computeIfAbsent(res.getIdElement().getIdPart(), key -> new ArrayList<>())
+            .add(res);
+      }
+    }
+
+    return Collections.unmodifiableList(resourcesById.getOrDefault(id, Collections.emptyList()));
+  }
+}
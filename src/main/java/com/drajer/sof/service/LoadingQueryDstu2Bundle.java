@@ -1,11 +1,11 @@
 package com.drajer.sof.service;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.base.composite.BaseContainedDt;
 import ca.uhn.fhir.model.base.composite.BaseResourceReferenceDt;
 import ca.uhn.fhir.model.dstu2.composite.ResourceReferenceDt;
 import ca.uhn.fhir.model.dstu2.resource.Bundle;
-import ca.uhn.fhir.model.dstu2.resource.Bundle.Entry;
 import ca.uhn.fhir.model.dstu2.resource.Condition;
 import ca.uhn.fhir.model.dstu2.resource.DiagnosticOrder;
 import ca.uhn.fhir.model.dstu2.resource.DiagnosticReport;
@@ -27,8 +27,11 @@ import com.drajer.ecrapp.util.ApplicationUtils;
 import com.drajer.sof.model.Dstu2FhirData;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.utils.Dstu2ResourcesData;
+import com.drajer.sof.utils.EhrQueryExecutor;
+import com.drajer.sof.utils.EhrQueryExecutor.EhrQuery;
 import com.drajer.sof.utils.FhirContextInitializer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import org.slf4j.Logger;
@@ -56,19 +59,29 @@ public class LoadingQueryDstu2Bundle {
         fhirContextInitializer.createClient(
             context, launchDetails, EventTypes.QueryType.LOADING_QUERY);
 
+    List<EhrQuery<IResource>> queries = new ArrayList<>();
+
     // GET Patient Details and Add to Bundle
-    try {
-      logger.info("Get Patient Data");
-      Patient patient =
-          (Patient)
-              fhirContextInitializer.getResouceById(
-                  launchDetails, client, context, "Patient", launchDetails.getLaunchPatientId());
-      Entry patientEntry = new Entry();
-      patientEntry.setResource(patient);
-      bundle.addEntry(patientEntry);
-    } catch (Exception e) {
-      logger.error("Error in getting Patient Data", e);
-    }
+    queries.add(
+        EhrQuery.of(
+            "Patient",
+            () -> {
+              try {
+                logger.info("Get Patient Data");
+                Patient patient =
+                    (Patient)
+                        fhirContextInitializer.getResouceById(
+                            launchDetails,
+                            client,
+                            context,
+                            "Patient",
+                            launchDetails.getLaunchPatientId());
+                return EhrQueryExecutor.listOf(patient);
+              } catch (Exception e) {
+                logger.error("Error in getting Patient Data", e);
+              }
+              return Collections.emptyList();
+            }));
 
     // Step 1: Get Encounters for Patient based on encId. (Create a method to get
     // encounters)
@@ -77,69 +90,80 @@ public class LoadingQueryDstu2Bundle {
     // Add to the bundle.
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of encounterCodes.
-    Encounter encounter = null;
-    try {
-      logger.info("Get Encounter Data");
-      encounter =
-          dstu2ResourcesData.getEncounterData(
-              context, client, launchDetails, dstu2FhirData, start, end);
-      if (encounter.getParticipant() != null) {
-        List<Participant> participants = encounter.getParticipant();
-        for (Participant participant : participants) {
-          if (participant.getIndividual() != null) {
-            ResourceReferenceDt practitionerReference = participant.getIndividual();
-            Practitioner practitioner =
-                (Practitioner)
-                    fhirContextInitializer.getResouceById(
-                        launchDetails,
-                        client,
-                        context,
-                        "Practitioner",
-                        practitionerReference.getReference().getIdPart());
-            Entry practitionerEntry = new Entry().setResource(practitioner);
-            bundle.addEntry(practitionerEntry);
-          }
-        }
-      }
-      if (encounter.getServiceProvider() != null) {
-        ResourceReferenceDt organizationReference = encounter.getServiceProvider();
-        if (organizationReference.getReference() != null
-            && !organizationReference.getReference().isEmpty()) {
-          Organization organization =
-              (Organization)
-                  fhirContextInitializer.getResouceById(
-                      launchDetails,
-                      client,
-                      context,
-                      "Organization",
-                      organizationReference.getReference().getIdPart());
-          Entry organizationEntry = new Entry().setResource(organization);
-          bundle.addEntry(organizationEntry);
-        }
-      }
-      if (encounter.getLocation() != null) {
-        List<Location> enocunterLocations = encounter.getLocation();
-        for (Location location : enocunterLocations) {
-          if (location.getLocation() != null) {
-            ResourceReferenceDt locationReference = location.getLocation();
-            ca.uhn.fhir.model.dstu2.resource.Location locationResource =
-                (ca.uhn.fhir.model.dstu2.resource.Location)
-                    fhirContextInitializer.getResouceById(
-                        launchDetails,
-                        client,
-                        context,
-                        "Location",
-                        locationReference.getReference().getIdPart());
-            Entry locationEntry = new Entry().setResource(locationResource);
-            bundle.addEntry(locationEntry);
-          }
-        }
-      }
-      Entry encounterEntry = new Entry().setResource(encounter);
-      bundle.addEntry(encounterEntry);
-    } catch (Exception e) {
-      logger.error("Error in getting Encounter Data", e);
-    }
+    Dstu2FhirData encounterData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Encounter",
+            () -> {
+              List<IResource> resources = new ArrayList<>();
+              try {
+                logger.info("Get Encounter Data");
+                Encounter enc =
+                    dstu2ResourcesData.getEncounterData(
+                        context, client, launchDetails, encounterData, start, end);
+                if (enc.getParticipant() != null) {
+                  List<Participant> participants = enc.getParticipant();
+                  for (Participant participant : participants) {
+                    if (participant.getIndividual() != null) {
+                      ResourceReferenceDt practitionerReference = participant.getIndividual();
+                      Practitioner practitioner =
+                          (Practitioner)
+                              fhirContextInitializer.getResouceById(
+                                  launchDetails,
+                                  client,
+                                  context,
+                                  "Practitioner",
+                                  practitionerReference.getReference().getIdPart());
+                      resources.addAll(EhrQueryExecutor.listOf(practitioner));
+                    }
+                  }
+                }
+                if (enc.getServiceProvider() != null) {
+                  ResourceReferenceDt organizationReference = enc.getServiceProvider();
+                  if (organizationReference.getReference() != null
+                      && !organizationReference.getReference().isEmpty()) {
+                    Organization organization =
+                        (Organization)
+                            fhirContextInitializer.getResouceById(
+                                launchDetails,
+                                client,
+                                context,
+                                "Organization",
+                                organizationReference.getReference().getIdPart());
+                    resources.addAll(EhrQueryExecutor.listOf(organization));
+                  }
+                }
+                if (enc.getLocation() != null) {
+                  List<Location> enocunterLocations = enc.getLocation();
+                  for (Location location : enocunterLocations) {
+                    if (location.getLocation() != null) {
+                      ResourceReferenceDt locationReference = location.getLocation();
+                      ca.uhn.fhir.model.dstu2.resource.Location locationResource =
+                          (ca.uhn.fhir.model.dstu2.resource.Location)
+                              fhirContextInitializer.getResouceById(
+                                  launchDetails,
+                                  client,
+                                  context,
+                                  "Location",
+                                  locationReference.getReference().getIdPart());
+                      resources.addAll(EhrQueryExecutor.listOf(locationResource));
+                    }
+                  }
+                }
+                resources.add(enc);
+              } catch (Exception e) {
+                logger.error("Error in getting Encounter Data", e);
+              }
+              return resources;
+            },
+            () -> dstu2FhirData.addQueryData(encounterData)));
+
+    List<IResource> resources = dstu2ResourcesData.executeQueries(launchDetails, queries);
+    dstu2ResourcesData.addEntries(bundle, resources);
+
+    // The remaining queries are filtered using the Encounter and run together.
+    Encounter encounter = getEncounter(resources);
+    queries = new ArrayList<>();
 
     // Step 2: Get Conditions for Patient (Write a method)
     // Filter the conditions based on encounter Reference if Encounter Reference is
@@ -149,20 +173,25 @@ public class LoadingQueryDstu2Bundle {
     // Add to the bundle
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of ConditionCodes.
-    try {
-      logger.info("Get Condition Data");
-      List<Condition> conditionsList =
-          dstu2ResourcesData.getConditionData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      logger.info("Filtered ConditionsList----> {}", conditionsList.size());
-      dstu2FhirData.setConditions(conditionsList);
-      for (Condition condition : conditionsList) {
-        Entry conditionsEntry = new Entry().setResource(condition);
-        bundle.addEntry(conditionsEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting Condition Data", e);
-    }
+    Dstu2FhirData conditionData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Condition",
+            () -> {
+              try {
+                logger.info("Get Condition Data");
+                List<Condition> conditionsList =
+                    dstu2ResourcesData.getConditionData(
+                        context, client, launchDetails, conditionData, encounter, start, end);
+                logger.info("Filtered ConditionsList----> {}", conditionsList.size());
+                conditionData.setConditions(conditionsList);
+                return new ArrayList<>(conditionsList);
+              } catch (Exception e) {
+                logger.error("Error in getting Condition Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> dstu2FhirData.addQueryData(conditionData)));
 
     // Get Observations for Patients and laboratory category (Write a method).
     // Filter the observations based on encounter Reference if encounter is present.
@@ -171,100 +200,122 @@ public class LoadingQueryDstu2Bundle {
     // Add to the bundle
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of labResultCodes.
-    try {
-      logger.info("Get Observation Data");
-      List<Observation> observationList =
-          dstu2ResourcesData.getObservationData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-
-      if (observationList != null && !observationList.isEmpty()) {
-        logger.info(FILTERED_OBSERVATIONS, observationList.size());
-        dstu2FhirData.setLabResults(observationList);
-        for (Observation observation : observationList) {
-          Entry observationsEntry = new Entry().setResource(observation);
-          bundle.addEntry(observationsEntry);
-        }
-      }
+    Dstu2FhirData observationData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Observation",
+            () -> {
+              List<IResource> observations = new ArrayList<>();
+              try {
+                logger.info("Get Observation Data");
+                List<Observation> observationList =
+                    dstu2ResourcesData.getObservationData(
+                        context, client, launchDetails, observationData, encounter, start, end);
 
-      if (dstu2FhirData.getLabResultValueObservations() != null
-          && !dstu2FhirData.getLabResultValueObservations().isEmpty()) {
-        logger.info(
-            "Filtered Value Observations----> {}",
-            dstu2FhirData.getLabResultValueObservations().size());
+                if (observationList != null && !observationList.isEmpty()) {
+                  logger.info(FILTERED_OBSERVATIONS, observationList.size());
+                  observationData.setLabResults(observationList);
+                  observations.addAll(observationList);
+                }
 
-        for (Observation observation : dstu2FhirData.getLabResultValueObservations()) {
-          Entry observationsEntry = new Entry().setResource(observation);
-          bundle.addEntry(observationsEntry);
-        }
-      }
+                if (observationData.getLabResultValueObservations() != null
+                    && !observationData.getLabResultValueObservations().isEmpty()) {
+                  logger.info(
+                      "Filtered Value Observations----> {}",
+                      observationData.getLabResultValueObservations().size());
+                  observations.addAll(observationData.getLabResultValueObservations());
+                }
 
-    } catch (Exception e) {
-      logger.error("Error in getting Observation Data", e);
-    }
+              } catch (Exception e) {
+                logger.error("Error in getting Observation Data", e);
+              }
+              return observations;
+            },
+            () -> dstu2FhirData.addQueryData(observationData)));
 
     // Get Pregnancy Observations
-    try {
-      logger.info("Get Pregnancy Observation Data");
-      List<Observation> observationList =
-          dstu2ResourcesData.getPregnancyObservationData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-
-      logger.info("Filtered Pregnancy Observations----> {}", observationList.size());
-
-      dstu2FhirData.setPregnancyObs(observationList);
-      for (Observation observation : observationList) {
-        Entry observationsEntry = new Entry().setResource(observation);
-        bundle.addEntry(observationsEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting Pregnancy Observation Data", e);
-    }
+    Dstu2FhirData pregnancyObsData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Pregnancy Observation",
+            () -> {
+              try {
+                logger.info("Get Pregnancy Observation Data");
+                List<Observation> observationList =
+                    dstu2ResourcesData.getPregnancyObservationData(
+                        context, client, launchDetails, pregnancyObsData, encounter, start, end);
+
+                logger.info("Filtered Pregnancy Observations----> {}", observationList.size());
+
+                pregnancyObsData.setPregnancyObs(observationList);
+                return new ArrayList<>(observationList);
+              } catch (Exception e) {
+                logger.error("Error in getting Pregnancy Observation Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> dstu2FhirData.addQueryData(pregnancyObsData)));
 
     // Get Travel Observations
-    try {
-      logger.info("Get Travel Observation Data");
-      List<Observation> observationList =
-          dstu2ResourcesData.getTravelObservationData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-
-      logger.info("Filtered Travel Observations----> {}", observationList.size());
-
-      dstu2FhirData.setTravelObs(observationList);
-      for (Observation observation : observationList) {
-        Entry observationsEntry = new Entry().setResource(observation);
-        bundle.addEntry(observationsEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting Travel Observation Data", e);
-    }
+    Dstu2FhirData travelObsData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Travel Observation",
+            () -> {
+              try {
+                logger.info("Get Travel Observation Data");
+                List<Observation> observationList =
+                    dstu2ResourcesData.getTravelObservationData(
+                        context, client, launchDetails, travelObsData, encounter, start, end);
+
+                logger.info("Filtered Travel Observations----> {}", observationList.size());
+
+                travelObsData.setTravelObs(observationList);
+                return new ArrayList<>(observationList);
+              } catch (Exception e) {
+                logger.error("Error in getting Travel Observation Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> dstu2FhirData.addQueryData(travelObsData)));
 
     // Get Social History Observations (Occupation)
-    try {
-      List<Observation> observationList =
-          dstu2ResourcesData.getSocialHistoryObservationDataOccupation(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      dstu2FhirData.setOccupationObs(observationList);
-      for (Observation observation : observationList) {
-        Entry observationsEntry = new Entry().setResource(observation);
-        bundle.addEntry(observationsEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting Social History Observation(Occupation) Data", e);
-    }
+    Dstu2FhirData occupationObsData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Occupation Observation",
+            () -> {
+              try {
+                List<Observation> observationList =
+                    dstu2ResourcesData.getSocialHistoryObservationDataOccupation(
+                        context, client, launchDetails, occupationObsData, encounter, start, end);
+                occupationObsData.setOccupationObs(observationList);
+                return new ArrayList<>(observationList);
+              } catch (Exception e) {
+                logger.error("Error in getting Social History Observation(Occupation) Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> dstu2FhirData.addQueryData(occupationObsData)));
 
     // Get Pregnancy Conditions
-    try {
-      List<Condition> conditionList =
-          dstu2ResourcesData.getPregnancyConditions(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      dstu2FhirData.setPregnancyConditions(conditionList);
-      for (Condition condition : conditionList) {
-        Entry conditionEntry = new Entry().setResource(condition);
-        bundle.addEntry(conditionEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting Pregnancy Conditions", e);
-    }
+    Dstu2FhirData pregnancyData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Pregnancy Condition",
+            () -> {
+              try {
+                List<Condition> conditionList =
+                    dstu2ResourcesData.getPregnancyConditions(
+                        context, client, launchDetails, pregnancyData, encounter, start, end);
+                pregnancyData.setPregnancyConditions(conditionList);
+                return new ArrayList<>(conditionList);
+              } catch (Exception e) {
+                logger.error("Error in getting Pregnancy Conditions", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> dstu2FhirData.addQueryData(pregnancyData)));
 
     // Get MedicationAdministration for Patients and laboratory category (Write a
     // method).
@@ -276,66 +327,75 @@ public class LoadingQueryDstu2Bundle {
     // Add to the bundle
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of medicationCodes.
-    try {
-      logger.info("Get MedicationAdministration Data");
-      List<MedicationAdministration> medAdministrationsList =
-          dstu2ResourcesData.getMedicationAdministrationData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      logger.info(
-          "Filtered MedicationAdministration-----------> {}", medAdministrationsList.size());
-      dstu2FhirData.setMedicationAdministrations(medAdministrationsList);
-      for (MedicationAdministration medAdministration : medAdministrationsList) {
-        if (medAdministration.getMedication() != null
-            && !medAdministration.getMedication().isEmpty()
-            && medAdministration.getMedication() instanceof ResourceReferenceDt) {
-          BaseResourceReferenceDt medRef =
-              (BaseResourceReferenceDt) medAdministration.getMedication();
-          String medReference = medRef.getReference().getValue();
-          if (medReference.startsWith("#")) {
-            BaseContainedDt medAdministrationContained = medAdministration.getContained();
-            List<Medication> containedResources =
-                (List<Medication>) medAdministrationContained.getContainedResources();
-            if (containedResources
-                .stream()
-                .anyMatch(resource -> resource.getIdElement().getValue().equals(medReference))) {
-              logger.info(
-                  "Medication Resource exists in MedicationAdministration.contained. So no need to add again in Bundle.");
-            }
-          } else {
-            logger.info("Medication Reference Found=============>");
-            Medication medication =
-                dstu2ResourcesData.getMedicationData(
-                    context, client, launchDetails, dstu2FhirData, medReference);
-            Entry medicationEntry = new Entry().setResource(medication);
-            bundle.addEntry(medicationEntry);
-            if (medication != null) {
-              List<Medication> medicationList = new ArrayList<>();
-              medicationList.add(medication);
-              dstu2FhirData.setMedicationList(medicationList);
-            }
-          }
-        }
-        Entry medAdministrationEntry = new Entry().setResource(medAdministration);
-        bundle.addEntry(medAdministrationEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting the MedicationAdministration Data", e);
-    }
+    // The Medication queries update the same Medication codes and are run together.
+    Dstu2FhirData medicationData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Medication",
+            () -> {
+              List<IResource> medications = new ArrayList<>();
+              try {
+                logger.info("Get MedicationAdministration Data");
+                List<MedicationAdministration> medAdministrationsList =
+                    dstu2ResourcesData.getMedicationAdministrationData(
+                        context, client, launchDetails, medicationData, encounter, start, end);
+                logger.info(
+                    "Filtered MedicationAdministration-----------> {}",
+                    medAdministrationsList.size());
+                medicationData.setMedicationAdministrations(medAdministrationsList);
+                for (MedicationAdministration medAdministration : medAdministrationsList) {
+                  if (medAdministration.getMedication() != null
+                      && !medAdministration.getMedication().isEmpty()
+                      && medAdministration.getMedication() instanceof ResourceReferenceDt) {
+                    BaseResourceReferenceDt medRef =
+                        (BaseResourceReferenceDt) medAdministration.getMedication();
+                    String medReference = medRef.getReference().getValue();
+                    if (medReference.startsWith("#")) {
+                      BaseContainedDt medAdministrationContained = medAdministration.getContained();
+                      List<Medication> containedResources =
+                          (List<Medication>) medAdministrationContained.getContainedResources();
+                      if (containedResources
+                          .stream()
+                          .anyMatch(
+                              resource ->
+                                  resource.getIdElement().getValue().equals(medReference))) {
+                        logger.info(
+                            "Medication Resource exists in MedicationAdministration.contained. So no need to add again in Bundle.");
+                      }
+                    } else {
+                      logger.info("Medication Reference Found=============>");
+                      Medication medication =
+                          dstu2ResourcesData.getMedicationData(
+                              context, client, launchDetails, medicationData, medReference);
+                      if (medication != null) {
+                        medications.add(medication);
+                        List<Medication> medicationList = new ArrayList<>();
+                        medicationList.add(medication);
+                        medicationData.setMedicationList(medicationList);
+                      }
+                    }
+                  }
+                  medications.add(medAdministration);
+                }
+              } catch (Exception e) {
+                logger.error("Error in getting the MedicationAdministration Data", e);
+              }
 
-    try {
-      logger.info("Get MedicationStatement Data");
-      List<MedicationStatement> medStatementsList =
-          dstu2ResourcesData.getMedicationStatementData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      logger.info("Filtered MedicationStatement-----------> {}", medStatementsList.size());
-      for (MedicationStatement medStatement : medStatementsList) {
-        Entry medStatementEntry = new Entry().setResource(medStatement);
-        bundle.addEntry(medStatementEntry);
-      }
-      dstu2FhirData.setMedications(medStatementsList);
-    } catch (Exception e) {
-      logger.error("Error in getting the MedicationStatement Data", e);
-    }
+              try {
+                logger.info("Get MedicationStatement Data");
+                List<MedicationStatement> medStatementsList =
+                    dstu2ResourcesData.getMedicationStatementData(
+                        context, client, launchDetails, medicationData, encounter, start, end);
+                logger.info(
+                    "Filtered MedicationStatement-----------> {}", medStatementsList.size());
+                medications.addAll(medStatementsList);
+                medicationData.setMedications(medStatementsList);
+              } catch (Exception e) {
+                logger.error("Error in getting the MedicationStatement Data", e);
+              }
+              return medications;
+            },
+            () -> dstu2FhirData.addQueryData(medicationData)));
 
     // Get DiagnosticOrders for Patients (Write a method).
     // Filter the Diagnostic Orders based on encounter Reference if encounter is
@@ -345,21 +405,26 @@ public class LoadingQueryDstu2Bundle {
     // Add to the bundle
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of diagnosticOrderCodes.
-
-    try {
-      logger.info("Get DiagnosticOrder Data");
-      List<DiagnosticOrder> diagnosticOrdersList =
-          dstu2ResourcesData.getDiagnosticOrderData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      logger.info("Filtered DiagnosticOrders-----------> {}", diagnosticOrdersList.size());
-      dstu2FhirData.setDiagOrders(diagnosticOrdersList);
-      for (DiagnosticOrder diagnosticOrder : diagnosticOrdersList) {
-        Entry diagnosticOrderEntry = new Entry().setResource(diagnosticOrder);
-        bundle.addEntry(diagnosticOrderEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting the DiagnosticOrder Data", e);
-    }
+    Dstu2FhirData diagnosticOrderData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "DiagnosticOrder",
+            () -> {
+              try {
+                logger.info("Get DiagnosticOrder Data");
+                List<DiagnosticOrder> diagnosticOrdersList =
+                    dstu2ResourcesData.getDiagnosticOrderData(
+                        context, client, launchDetails, diagnosticOrderData, encounter, start, end);
+                logger.info(
+                    "Filtered DiagnosticOrders-----------> {}", diagnosticOrdersList.size());
+                diagnosticOrderData.setDiagOrders(diagnosticOrdersList);
+                return new ArrayList<>(diagnosticOrdersList);
+              } catch (Exception e) {
+                logger.error("Error in getting the DiagnosticOrder Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> dstu2FhirData.addQueryData(diagnosticOrderData)));
 
     // Get Immunizations for Patients and laboratory category (Write a method).
     // Filter the Immunizations based on encounter Reference if encounter is
@@ -367,19 +432,24 @@ public class LoadingQueryDstu2Bundle {
     // If encounter is not present, then filter based on times (Start and end, if
     // Immunizations time is between start and end times) -- Do this later.
     // Add to the bundle
-    try {
-      List<Immunization> immunizationsList =
-          dstu2ResourcesData.getImmunizationData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      logger.info("Filtered Immunizations-----------> {}", immunizationsList.size());
-      dstu2FhirData.setImmunizations(immunizationsList);
-      for (Immunization immunization : immunizationsList) {
-        Entry immunizationEntry = new Entry().setResource(immunization);
-        bundle.addEntry(immunizationEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting the Immunization Data", e);
-    }
+    Dstu2FhirData immunizationData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Immunization",
+            () -> {
+              try {
+                List<Immunization> immunizationsList =
+                    dstu2ResourcesData.getImmunizationData(
+                        context, client, launchDetails, immunizationData, encounter, start, end);
+                logger.info("Filtered Immunizations-----------> {}", immunizationsList.size());
+                immunizationData.setImmunizations(immunizationsList);
+                return new ArrayList<>(immunizationsList);
+              } catch (Exception e) {
+                logger.error("Error in getting the Immunization Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> dstu2FhirData.addQueryData(immunizationData)));
 
     // Get Diagnostic Reports for Patients (Write a method).
     // Filter the Diagnostic Reports based on encounter Reference if encounter is
@@ -387,19 +457,34 @@ public class LoadingQueryDstu2Bundle {
     // If encounter is not present, then filter based on times (Start and end, if
     // diagnostic Reports time is between start and end times) -- Do this later.
     // Add to the bundle
-    try {
-      List<DiagnosticReport> diagnosticReportList =
-          dstu2ResourcesData.getDiagnosticReportData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      logger.info("Filtered DiagnosticReports-----------> {}", diagnosticReportList.size());
-      dstu2FhirData.setDiagReports(diagnosticReportList);
-      for (DiagnosticReport diagnosticReport : diagnosticReportList) {
-        Entry diagnosticReportEntry = new Entry().setResource(diagnosticReport);
-        bundle.addEntry(diagnosticReportEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting the DiagnosticReport Data", e);
-    }
+    Dstu2FhirData diagnosticReportData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "DiagnosticReport",
+            () -> {
+              try {
+                List<DiagnosticReport> diagnosticReportList =
+                    dstu2ResourcesData.getDiagnosticReportData(
+                        context,
+                        client,
+                        launchDetails,
+                        diagnosticReportData,
+                        encounter,
+                        start,
+                        end);
+                logger.info(
+                    "Filtered DiagnosticReports-----------> {}", diagnosticReportList.size());
+                diagnosticReportData.setDiagReports(diagnosticReportList);
+                return new ArrayList<>(diagnosticReportList);
+              } catch (Exception e) {
+                logger.error("Error in getting the DiagnosticReport Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> dstu2FhirData.addQueryData(diagnosticReportData)));
+
+    dstu2ResourcesData.addEntries(
+        bundle, dstu2ResourcesData.executeQueries(launchDetails, queries));
 
     // Setting bundle to FHIR Data
     logger.info(
@@ -421,4 +506,14 @@ public class LoadingQueryDstu2Bundle {
         context.newJsonParser().encodeResourceToString(bundle), fileName);
     return bundle;
   }
+
+  private static Encounter getEncounter(List<IResource> resources) {
+
+    for (IResource resource : resources) {
+      if (resource instanceof Encounter) {
+        return (Encounter) resource;
+      }
+    }
+    return null;
+  }
 }
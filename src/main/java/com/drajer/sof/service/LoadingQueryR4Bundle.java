@@ -7,8 +7,11 @@ import com.drajer.eca.model.EventTypes;
 import com.drajer.ecrapp.util.ApplicationUtils;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.model.R4FhirData;
+import com.drajer.sof.utils.EhrQueryExecutor.EhrQuery;
 import com.drajer.sof.utils.FhirContextInitializer;
 import com.drajer.sof.utils.R4ResourcesData;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import org.hl7.fhir.r4.model.Bundle;
@@ -18,7 +21,7 @@ import org.hl7.fhir.r4.model.DiagnosticReport;
 import org.hl7.fhir.r4.model.Encounter;
 import org.hl7.fhir.r4.model.Immunization;
 import org.hl7.fhir.r4.model.MedicationStatement;
-import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,11 +51,57 @@ public class LoadingQueryR4Bundle {
     Encounter encounter =
         (Encounter) r4ResourcesData.getResourceFromBundle(bundle, Encounter.class);
 
-    r4ResourcesData.loadPractitionersLocationAndOrganization(
-        context, client, launchDetails, r4FhirData, encounter, bundle, start, end);
-
-    r4ResourcesData.loadMedicationsData(
-        context, client, launchDetails, r4FhirData, encounter, bundle, start, end);
+    List<EhrQuery<Resource>> queries = new ArrayList<>();
+
+    R4FhirData practitionerData = new R4FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Practitioner, Location and Organization",
+            () -> {
+              Bundle practitioners = new Bundle();
+              r4ResourcesData.loadPractitionersLocationAndOrganization(
+                  context,
+                  client,
+                  launchDetails,
+                  practitionerData,
+                  encounter,
+                  practitioners,
+                  start,
+                  end);
+              return getResources(practitioners);
+            },
+            () -> r4FhirData.addQueryData(practitionerData)));
+
+    // The Medication queries update the same Medication codes and are run together.
+    R4FhirData medicationData = new R4FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Medication",
+            () -> {
+              Bundle medications = new Bundle();
+              r4ResourcesData.loadMedicationsData(
+                  context,
+                  client,
+                  launchDetails,
+                  medicationData,
+                  encounter,
+                  medications,
+                  start,
+                  end);
+              List<Resource> resources = getResources(medications);
+
+              try {
+                List<MedicationStatement> medStatementsList =
+                    r4ResourcesData.getMedicationStatementData(
+                        context, client, launchDetails, medicationData, encounter, start, end);
+                medicationData.setMedications(medStatementsList);
+                resources.addAll(medStatementsList);
+              } catch (Exception e) {
+                logger.error("Error in getting the MedicationStatement Data", e);
+              }
+              return resources;
+            },
+            () -> r4FhirData.addQueryData(medicationData)));
 
     // Get Pregnancy Observations, will be used once support of pregnancy observation is added in
     // Social History section.
@@ -70,63 +119,42 @@ public class LoadingQueryR4Bundle {
     //      logger.error("Error in getting Pregnancy Observation Data", e);
     //    }
 
-    // Get Travel Observations
-    try {
-      List<Observation> observationList =
-          r4ResourcesData.getTravelObservationData(
-              context, client, launchDetails, r4FhirData, encounter, start, end);
-      r4FhirData.setTravelObs(observationList);
-      for (Observation observation : observationList) {
-        BundleEntryComponent observationsEntry =
-            new BundleEntryComponent().setResource(observation);
-        bundle.addEntry(observationsEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting Travel Observation Data", e);
-    }
-
-    // Get Social History Observations (Occupation)
-    try {
-      List<Observation> observationList =
-          r4ResourcesData.getSocialHistoryObservationDataOccupation(
-              context, client, launchDetails, r4FhirData, encounter, start, end);
-      r4FhirData.setOccupationObs(observationList);
-      for (Observation observation : observationList) {
-        BundleEntryComponent observationsEntry =
-            new BundleEntryComponent().setResource(observation);
-        bundle.addEntry(observationsEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting Social History Observation(Occupation) Data", e);
-    }
+    // Get Social History Observations (Travel and Occupation)
+    R4FhirData socialHistoryData = new R4FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Social History Observation",
+            () -> {
+              try {
+                return new ArrayList<>(
+                    r4ResourcesData.getSocialHistoryObservationData(
+                        context, client, launchDetails, socialHistoryData, encounter, start, end));
+              } catch (Exception e) {
+                logger.error("Error in getting Social History Observation Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> r4FhirData.addQueryData(socialHistoryData)));
 
     // Get Pregnancy Conditions
-    try {
-      List<Condition> conditionList =
-          r4ResourcesData.getPregnancyConditions(
-              context, client, launchDetails, r4FhirData, encounter, start, end);
-      r4FhirData.setPregnancyConditions(conditionList);
-      for (Condition condition : conditionList) {
-        BundleEntryComponent conditionEntry = new BundleEntryComponent().setResource(condition);
-        bundle.addEntry(conditionEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting Pregnancy Conditions", e);
-    }
-
-    try {
-      List<MedicationStatement> medStatementsList =
-          r4ResourcesData.getMedicationStatementData(
-              context, client, launchDetails, r4FhirData, encounter, start, end);
-      r4FhirData.setMedications(medStatementsList);
-      for (MedicationStatement medStatement : medStatementsList) {
-        BundleEntryComponent medStatementEntry =
-            new BundleEntryComponent().setResource(medStatement);
-        bundle.addEntry(medStatementEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting the MedicationStatement Data", e);
-    }
+    R4FhirData pregnancyData = new R4FhirData();
+    pregnancyData.setPregnancyConditions(r4FhirData.getPregnancyConditions());
+    queries.add(
+        EhrQuery.of(
+            "Pregnancy Condition",
+            () -> {
+              try {
+                List<Condition> conditionList =
+                    r4ResourcesData.getPregnancyConditions(
+                        context, client, launchDetails, pregnancyData, encounter, start, end);
+                pregnancyData.setPregnancyConditions(conditionList);
+                return new ArrayList<>(conditionList);
+              } catch (Exception e) {
+                logger.error("Error in getting Pregnancy Conditions", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> r4FhirData.addQueryData(pregnancyData)));
 
     // Get Immunizations for Patients and laboratory category (Write a method).
     // Filter the Immunizations based on encounter Reference if encounter is
@@ -134,19 +162,23 @@ public class LoadingQueryR4Bundle {
     // If encounter is not present, then filter based on times (Start and end, if
     // Immunizations time is between start and end times) -- Do this later.
     // Add to the bundle
-    try {
-      List<Immunization> immunizationsList =
-          r4ResourcesData.getImmunizationData(
-              context, client, launchDetails, r4FhirData, encounter, start, end);
-      r4FhirData.setImmunizations(immunizationsList);
-      for (Immunization immunization : immunizationsList) {
-        BundleEntryComponent immunizationEntry =
-            new BundleEntryComponent().setResource(immunization);
-        bundle.addEntry(immunizationEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting the Immunization Data", e);
-    }
+    R4FhirData immunizationData = new R4FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Immunization",
+            () -> {
+              try {
+                List<Immunization> immunizationsList =
+                    r4ResourcesData.getImmunizationData(
+                        context, client, launchDetails, immunizationData, encounter, start, end);
+                immunizationData.setImmunizations(immunizationsList);
+                return new ArrayList<>(immunizationsList);
+              } catch (Exception e) {
+                logger.error("Error in getting the Immunization Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> r4FhirData.addQueryData(immunizationData)));
 
     // Get Diagnostic Reports for Patients (Write a method).
     // Filter the Diagnostic Reports based on encounter Reference if encounter is
@@ -154,19 +186,31 @@ public class LoadingQueryR4Bundle {
     // If encounter is not present, then filter based on times (Start and end, if
     // diagnostic Reports time is between start and end times) -- Do this later.
     // Add to the bundle
-    try {
-      List<DiagnosticReport> diagnosticReportList =
-          r4ResourcesData.getDiagnosticReportData(
-              context, client, launchDetails, r4FhirData, encounter, start, end);
-      r4FhirData.setDiagReports(diagnosticReportList);
-      for (DiagnosticReport diagnosticReport : diagnosticReportList) {
-        BundleEntryComponent diagnosticReportEntry =
-            new BundleEntryComponent().setResource(diagnosticReport);
-        bundle.addEntry(diagnosticReportEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting the DiagnosticReport Data", e);
-    }
+    R4FhirData diagnosticReportData = new R4FhirData();
+    queries.add(
+        EhrQuery.of(
+            "DiagnosticReport",
+            () -> {
+              try {
+                List<DiagnosticReport> diagnosticReportList =
+                    r4ResourcesData.getDiagnosticReportData(
+                        context,
+                        client,
+                        launchDetails,
+                        diagnosticReportData,
+                        encounter,
+                        start,
+                        end);
+                diagnosticReportData.setDiagReports(diagnosticReportList);
+                return new ArrayList<>(diagnosticReportList);
+              } catch (Exception e) {
+                logger.error("Error in getting the DiagnosticReport Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> r4FhirData.addQueryData(diagnosticReportData)));
+
+    r4ResourcesData.addEntries(bundle, r4ResourcesData.executeQueries(launchDetails, queries));
 
     // Setting bundle to FHIR Data
     logger.info(
@@ -195,4 +239,13 @@ public class LoadingQueryR4Bundle {
         context.newJsonParser().encodeResourceToString(bundle), fileName);
     return bundle;
   }
+
+  private static List<Resource> getResources(Bundle bundle) {
+
+    List<Resource> resources = new ArrayList<>();
+    for (BundleEntryComponent entry : bundle.getEntry()) {
+      resources.add(entry.getResource());
+    }
+    return resources;
+  }
 }
@@ -1,11 +1,11 @@
 package com.drajer.sof.service;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.base.composite.BaseContainedDt;
 import ca.uhn.fhir.model.base.composite.BaseResourceReferenceDt;
 import ca.uhn.fhir.model.dstu2.composite.ResourceReferenceDt;
 import ca.uhn.fhir.model.dstu2.resource.Bundle;
-import ca.uhn.fhir.model.dstu2.resource.Bundle.Entry;
 import ca.uhn.fhir.model.dstu2.resource.Condition;
 import ca.uhn.fhir.model.dstu2.resource.DiagnosticOrder;
 import ca.uhn.fhir.model.dstu2.resource.DiagnosticReport;
@@ -25,8 +25,11 @@ import com.drajer.ecrapp.util.ApplicationUtils;
 import com.drajer.sof.model.Dstu2FhirData;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.utils.Dstu2ResourcesData;
+import com.drajer.sof.utils.EhrQueryExecutor;
+import com.drajer.sof.utils.EhrQueryExecutor.EhrQuery;
 import com.drajer.sof.utils.FhirContextInitializer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import org.slf4j.Logger;
@@ -54,19 +57,30 @@ public class TriggerQueryDstu2Bundle {
         fhirContextInitializer.createClient(
             context, launchDetails, EventTypes.QueryType.TRIGGER_QUERY);
 
+    List<EhrQuery<IResource>> queries = new ArrayList<>();
+
     // GET Patient Details and Add to Bundle
-    try {
-      logger.info("Get Patient Data");
-      Patient patient =
-          (Patient)
-              fhirContextInitializer.getResouceById(
-                  launchDetails, client, context, "Patient", launchDetails.getLaunchPatientId());
-      Entry patientEntry = new Entry();
-      patientEntry.setResource(patient);
-      bundle.addEntry(patientEntry);
-    } catch (Exception e) {
-      logger.error("Error in getting Patient Data", e);
-    }
+    queries.add(
+        EhrQuery.of(
+            "Patient",
+            () -> {
+              try {
+                logger.info("Get Patient Data");
+                Patient patient =
+                    (Patient)
+                        fhirContextInitializer.getResouceById(
+                            launchDetails,
+                            client,
+                            context,
+                            "Patient",
+                            launchDetails.getLaunchPatientId());
+                return EhrQueryExecutor.listOf(patient);
+              } catch (Exception e) {
+                logger.error("Error in getting Patient Data", e);
+              }
+              return Collections.emptyList();
+            }));
+
     // Step 1: Get Encounters for Patient based on encId. (Create a method to get
     // encounters)
     // If encId is null, find encounters for patient within the start and end time
@@ -74,69 +88,80 @@ public class TriggerQueryDstu2Bundle {
     // Add to the bundle.
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of encounterCodes.
-    Encounter encounter = null;
-    try {
-      logger.info("Get Encounter Data");
-      encounter =
-          dstu2ResourcesData.getEncounterData(
-              context, client, launchDetails, dstu2FhirData, start, end);
-      if (encounter.getParticipant() != null) {
-        List<Participant> participants = encounter.getParticipant();
-        for (Participant participant : participants) {
-          if (participant.getIndividual() != null) {
-            ResourceReferenceDt practitionerReference = participant.getIndividual();
-            Practitioner practitioner =
-                (Practitioner)
-                    fhirContextInitializer.getResouceById(
-                        launchDetails,
-                        client,
-                        context,
-                        "Practitioner",
-                        practitionerReference.getReference().getIdPart());
-            Entry practitionerEntry = new Entry().setResource(practitioner);
-            bundle.addEntry(practitionerEntry);
-          }
-        }
-      }
-      if (encounter.getServiceProvider() != null) {
-        ResourceReferenceDt organizationReference = encounter.getServiceProvider();
-        if (organizationReference.getReference() != null
-            && !organizationReference.getReference().isEmpty()) {
-          Organization organization =
-              (Organization)
-                  fhirContextInitializer.getResouceById(
-                      launchDetails,
-                      client,
-                      context,
-                      "Organization",
-                      organizationReference.getReference().getIdPart());
-          Entry organizationEntry = new Entry().setResource(organization);
-          bundle.addEntry(organizationEntry);
-        }
-      }
-      if (encounter.getLocation() != null) {
-        List<Location> enocunterLocations = encounter.getLocation();
-        for (Location location : enocunterLocations) {
-          if (location.getLocation() != null) {
-            ResourceReferenceDt locationReference = location.getLocation();
-            ca.uhn.fhir.model.dstu2.resource.Location locationResource =
-                (ca.uhn.fhir.model.dstu2.resource.Location)
-                    fhirContextInitializer.getResouceById(
-                        launchDetails,
-                        client,
-                        context,
-                        "Location",
-                        locationReference.getReference().getIdPart());
-            Entry locationEntry = new Entry().setResource(locationResource);
-            bundle.addEntry(locationEntry);
-          }
-        }
-      }
-      Entry encounterEntry = new Entry().setResource(encounter);
-      bundle.addEntry(encounterEntry);
-    } catch (Exception e) {
-      logger.error("Error in getting Encounter Data", e);
-    }
+    Dstu2FhirData encounterData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Encounter",
+            () -> {
+              List<IResource> resources = new ArrayList<>();
+              try {
+                logger.info("Get Encounter Data");
+                Encounter enc =
+                    dstu2ResourcesData.getEncounterData(
+                        context, client, launchDetails, encounterData, start, end);
+                if (enc.getParticipant() != null) {
+                  List<Participant> participants = enc.getParticipant();
+                  for (Participant participant : participants) {
+                    if (participant.getIndividual() != null) {
+                      ResourceReferenceDt practitionerReference = participant.getIndividual();
+                      Practitioner practitioner =
+                          (Practitioner)
+                              fhirContextInitializer.getResouceById(
+                                  launchDetails,
+                                  client,
+                                  context,
+                                  "Practitioner",
+                                  practitionerReference.getReference().getIdPart());
+                      resources.addAll(EhrQueryExecutor.listOf(practitioner));
+                    }
+                  }
+                }
+                if (enc.getServiceProvider() != null) {
+                  ResourceReferenceDt organizationReference = enc.getServiceProvider();
+                  if (organizationReference.getReference() != null
+                      && !organizationReference.getReference().isEmpty()) {
+                    Organization organization =
+                        (Organization)
+                            fhirContextInitializer.getResouceById(
+                                launchDetails,
+                                client,
+                                context,
+                                "Organization",
+                                organizationReference.getReference().getIdPart());
+                    resources.addAll(EhrQueryExecutor.listOf(organization));
+                  }
+                }
+                if (enc.getLocation() != null) {
+                  List<Location> enocunterLocations = enc.getLocation();
+                  for (Location location : enocunterLocations) {
+                    if (location.getLocation() != null) {
+                      ResourceReferenceDt locationReference = location.getLocation();
+                      ca.uhn.fhir.model.dstu2.resource.Location locationResource =
+                          (ca.uhn.fhir.model.dstu2.resource.Location)
+                              fhirContextInitializer.getResouceById(
+                                  launchDetails,
+                                  client,
+                                  context,
+                                  "Location",
+                                  locationReference.getReference().getIdPart());
+                      resources.addAll(EhrQueryExecutor.listOf(locationResource));
+                    }
+                  }
+                }
+                resources.add(enc);
+              } catch (Exception e) {
+                logger.error("Error in getting Encounter Data", e);
+              }
+              return resources;
+            },
+            () -> dstu2FhirData.addQueryData(encounterData)));
+
+    List<IResource> resources = dstu2ResourcesData.executeQueries(launchDetails, queries);
+    dstu2ResourcesData.addEntries(bundle, resources);
+
+    // The remaining queries are filtered using the Encounter and run together.
+    Encounter encounter = getEncounter(resources);
+    queries = new ArrayList<>();
 
     // Step 2: Get Conditions for Patient (Write a method)
     // Filter the conditions based on encounter Reference if Encounter Reference is
@@ -146,20 +171,25 @@ public class TriggerQueryDstu2Bundle {
     // Add to the bundle
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of ConditionCodes.
-    try {
-      logger.info("Get Condition Data");
-      List<Condition> conditionsList =
-          dstu2ResourcesData.getConditionData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      logger.info("Filtered ConditionsList----> {}", conditionsList.size());
-      dstu2FhirData.setConditions(conditionsList);
-      for (Condition condition : conditionsList) {
-        Entry conditionsEntry = new Entry().setResource(condition);
-        bundle.addEntry(conditionsEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting Condition Data", e);
-    }
+    Dstu2FhirData conditionData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Condition",
+            () -> {
+              try {
+                logger.info("Get Condition Data");
+                List<Condition> conditionsList =
+                    dstu2ResourcesData.getConditionData(
+                        context, client, launchDetails, conditionData, encounter, start, end);
+                logger.info("Filtered ConditionsList----> {}", conditionsList.size());
+                conditionData.setConditions(conditionsList);
+                return new ArrayList<>(conditionsList);
+              } catch (Exception e) {
+                logger.error("Error in getting Condition Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> dstu2FhirData.addQueryData(conditionData)));
 
     // Get Observations for Patients and laboratory category (Write a method).
     // Filter the observations based on encounter Reference if encounter is present.
@@ -168,20 +198,25 @@ public class TriggerQueryDstu2Bundle {
     // Add to the bundle
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of labResultCodes.
-    try {
-      logger.info("Get Observation Data");
-      List<Observation> observationList =
-          dstu2ResourcesData.getObservationData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      logger.info("Filtered Observations----> {}", observationList.size());
-      dstu2FhirData.setLabResults(observationList);
-      for (Observation observation : observationList) {
-        Entry observationsEntry = new Entry().setResource(observation);
-        bundle.addEntry(observationsEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting Observation Data", e);
-    }
+    Dstu2FhirData observationData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Observation",
+            () -> {
+              try {
+                logger.info("Get Observation Data");
+                List<Observation> observationList =
+                    dstu2ResourcesData.getObservationData(
+                        context, client, launchDetails, observationData, encounter, start, end);
+                logger.info("Filtered Observations----> {}", observationList.size());
+                observationData.setLabResults(observationList);
+                return new ArrayList<>(observationList);
+              } catch (Exception e) {
+                logger.error("Error in getting Observation Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> dstu2FhirData.addQueryData(observationData)));
 
     // Get MedicationAdministration for Patients and laboratory category (Write a
     // method).
@@ -193,53 +228,62 @@ public class TriggerQueryDstu2Bundle {
     // Add to the bundle
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of medicationCodes.
-    try {
-      logger.info("Get MedicationAdministration Data");
-      List<MedicationAdministration> medAdministrationsList =
-          dstu2ResourcesData.getMedicationAdministrationData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      logger.info(
-          "Filtered MedicationAdministration-----------> {}", medAdministrationsList.size());
-      dstu2FhirData.setMedicationAdministrations(medAdministrationsList);
-      for (MedicationAdministration medAdministration : medAdministrationsList) {
-        if (!medAdministration.getMedication().isEmpty()
-            && medAdministration.getMedication() != null) {
-          logger.info("med Administration:{}", medAdministration.getMedication());
-          if (medAdministration.getMedication() instanceof ResourceReferenceDt) {
-            BaseResourceReferenceDt medRef =
-                (BaseResourceReferenceDt) medAdministration.getMedication();
-            String medReference = medRef.getReference().getValue();
-            if (medReference.startsWith("#")) {
-              BaseContainedDt medAdministrationContained = medAdministration.getContained();
-              List<Medication> containedResources =
-                  (List<Medication>) medAdministrationContained.getContainedResources();
-              if (containedResources
-                  .stream()
-                  .anyMatch(resource -> resource.getIdElement().getValue().equals(medReference))) {
+    Dstu2FhirData medicationData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "MedicationAdministration",
+            () -> {
+              List<IResource> medications = new ArrayList<>();
+              try {
+                logger.info("Get MedicationAdministration Data");
+                List<MedicationAdministration> medAdministrationsList =
+                    dstu2ResourcesData.getMedicationAdministrationData(
+                        context, client, launchDetails, medicationData, encounter, start, end);
                 logger.info(
-                    "Medication Resource exists in MedicationAdministration.contained. So no need to add again in Bundle.");
-              }
-            } else {
-              logger.info("Medication Reference Found=============>");
-              Medication medication =
-                  dstu2ResourcesData.getMedicationData(
-                      context, client, launchDetails, dstu2FhirData, medReference);
-              Entry medicationEntry = new Entry().setResource(medication);
-              bundle.addEntry(medicationEntry);
-              if (medication != null) {
-                List<Medication> medicationList = new ArrayList<>();
-                medicationList.add(medication);
-                dstu2FhirData.setMedicationList(medicationList);
+                    "Filtered MedicationAdministration-----------> {}",
+                    medAdministrationsList.size());
+                medicationData.setMedicationAdministrations(medAdministrationsList);
+                for (MedicationAdministration medAdministration : medAdministrationsList) {
+                  if (medAdministration.getMedication() != null
+                      && !medAdministration.getMedication().isEmpty()
+                      && medAdministration.getMedication() instanceof ResourceReferenceDt) {
+                    BaseResourceReferenceDt medRef =
+                        (BaseResourceReferenceDt) medAdministration.getMedication();
+                    String medReference = medRef.getReference().getValue();
+                    if (medReference.startsWith("#")) {
+                      BaseContainedDt medAdministrationContained = medAdministration.getContained();
+                      List<Medication> containedResources =
+                          (List<Medication>) medAdministrationContained.getContainedResources();
+                      if (containedResources
+                          .stream()
+                          .anyMatch(
+                              resource ->
+                                  resource.getIdElement().getValue().equals(medReference))) {
+                        logger.info(
+                            "Medication Resource exists in MedicationAdministration.contained. So no need to add again in Bundle.");
+                      }
+                    } else {
+                      logger.info("Medication Reference Found=============>");
+                      Medication medication =
+                          dstu2ResourcesData.getMedicationData(
+                              context, client, launchDetails, medicationData, medReference);
+                      if (medication != null) {
+                        medications.add(medication);
+                        List<Medication> medicationList = new ArrayList<>();
+                        medicationList.add(medication);
+                        medicationData.setMedicationList(medicationList);
+                      }
+                    }
+                  }
+                  medications.add(medAdministration);
+                }
+              } catch (Exception e) {
+                logger.error("Error in getting the MedicationAdministration Data", e);
               }
-            }
-          }
-        }
-        Entry medAdministrationEntry = new Entry().setResource(medAdministration);
-        bundle.addEntry(medAdministrationEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting the MedicationAdministration Data", e);
-    }
+
+              return medications;
+            },
+            () -> dstu2FhirData.addQueryData(medicationData)));
 
     // Get DiagnosticOrders for Patients (Write a method).
     // Filter the Diagnostic Orders based on encounter Reference if encounter is
@@ -249,35 +293,55 @@ public class TriggerQueryDstu2Bundle {
     // Add to the bundle
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of diagnosticOrderCodes.
+    Dstu2FhirData diagnosticOrderData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "DiagnosticOrder",
+            () -> {
+              try {
+                logger.info("Get DiagnosticOrder Data");
+                List<DiagnosticOrder> diagnosticOrdersList =
+                    dstu2ResourcesData.getDiagnosticOrderData(
+                        context, client, launchDetails, diagnosticOrderData, encounter, start, end);
+                logger.info(
+                    "Filtered DiagnosticOrders-----------> {}", diagnosticOrdersList.size());
+                diagnosticOrderData.setDiagOrders(diagnosticOrdersList);
+                return new ArrayList<>(diagnosticOrdersList);
+              } catch (Exception e) {
+                logger.error("Error in getting the DiagnosticOrder Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> dstu2FhirData.addQueryData(diagnosticOrderData)));
 
-    try {
-      logger.info("Get DiagnosticOrder Data");
-      List<DiagnosticOrder> diagnosticOrdersList =
-          dstu2ResourcesData.getDiagnosticOrderData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      logger.info("Filtered DiagnosticOrders-----------> {}", diagnosticOrdersList.size());
-      dstu2FhirData.setDiagOrders(diagnosticOrdersList);
-      for (DiagnosticOrder diagnosticOrder : diagnosticOrdersList) {
-        Entry diagnosticOrderEntry = new Entry().setResource(diagnosticOrder);
-        bundle.addEntry(diagnosticOrderEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting the DiagnosticOrder Data", e);
-    }
+    Dstu2FhirData diagnosticReportData = new Dstu2FhirData();
+    queries.add(
+        EhrQuery.of(
+            "DiagnosticReport",
+            () -> {
+              try {
+                List<DiagnosticReport> diagnosticReportList =
+                    dstu2ResourcesData.getDiagnosticReportData(
+                        context,
+                        client,
+                        launchDetails,
+                        diagnosticReportData,
+                        encounter,
+                        start,
+                        end);
+                logger.info(
+                    "Filtered DiagnosticReports-----------> {}", diagnosticReportList.size());
+                diagnosticReportData.setDiagReports(diagnosticReportList);
+                return new ArrayList<>(diagnosticReportList);
+              } catch (Exception e) {
+                logger.error("Error in getting the DiagnosticReport Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> dstu2FhirData.addQueryData(diagnosticReportData)));
 
-    try {
-      List<DiagnosticReport> diagnosticReportList =
-          dstu2ResourcesData.getDiagnosticReportData(
-              context, client, launchDetails, dstu2FhirData, encounter, start, end);
-      logger.info("Filtered DiagnosticReports-----------> {}", diagnosticReportList.size());
-      dstu2FhirData.setDiagReports(diagnosticReportList);
-      for (DiagnosticReport diagnosticReport : diagnosticReportList) {
-        Entry diagnosticReportEntry = new Entry().setResource(diagnosticReport);
-        bundle.addEntry(diagnosticReportEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting the DiagnosticReport Data", e);
-    }
+    dstu2ResourcesData.addEntries(
+        bundle, dstu2ResourcesData.executeQueries(launchDetails, queries));
 
     // Setting bundle to FHIR Data
     logger.info(
@@ -301,4 +365,14 @@ public class TriggerQueryDstu2Bundle {
 
     return bundle;
   }
+
+  private static Encounter getEncounter(List<IResource> resources) {
+
+    for (IResource resource : resources) {
+      if (resource instanceof Encounter) {
+        return (Encounter) resource;
+      }
+    }
+    return null;
+  }
 }
@@ -1,6 +1,7 @@
 package com.drajer.sof.utils;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.IResource;
 import ca.uhn.fhir.model.dstu2.composite.CodeableConceptDt;
 import ca.uhn.fhir.model.dstu2.composite.CodingDt;
 import ca.uhn.fhir.model.dstu2.composite.PeriodDt;
@@ -21,6 +22,7 @@ import ca.uhn.fhir.rest.client.api.IGenericClient;
 import com.drajer.cdafromdstu2.Dstu2CdaFhirUtilities;
 import com.drajer.sof.model.Dstu2FhirData;
 import com.drajer.sof.model.LaunchDetails;
+import com.drajer.sof.utils.EhrQueryExecutor.EhrQuery;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -38,6 +40,9 @@ public class Dstu2ResourcesData {
   public static final String OBSERVATION = "Observation";
   @Autowired FhirContextInitializer resourceData;
 
+  @Autowired(required = false)
+  EhrQueryExecutor ehrQueryExecutor;
+
   private static final Logger logger = LoggerFactory.getLogger(Dstu2ResourcesData.class);
 
   private List<CodeableConceptDt> findEncounterCodes(Encounter encounter) {
@@ -122,6 +127,31 @@ public class Dstu2ResourcesData {
     return immunizationCodes;
   }
 
+  /**
+   * The method runs the queries using the EhrQueryExecutor, the queries are run one after another
+   * when there is no executor.
+   *
+   * @param launchDetails The launch for which the queries are run.
+   * @param queries The queries to run.
+   * @return The resources returned by the queries.
+   */
+  public List<IResource> executeQueries(
+      LaunchDetails launchDetails, List<EhrQuery<IResource>> queries) {
+
+    if (ehrQueryExecutor == null) {
+      return EhrQueryExecutor.executeSequentially(queries);
+    }
+
+    return ehrQueryExecutor.executeQueries(launchDetails, queries);
+  }
+
+  public void addEntries(Bundle bundle, List<IResource> resources) {
+
+    for (IResource resource : resources) {
+      bundle.addEntry(new Entry().setResource(resource));
+    }
+  }
+
   public Encounter getEncounterData(
       FhirContext context,
       IGenericClient client,
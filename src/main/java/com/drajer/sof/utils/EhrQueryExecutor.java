@@ -0,0 +1,346 @@
+package com.drajer.sof.utils;
+
+import com.drajer.ecrapp.util.ApplicationUtils;
+import com.drajer.sof.model.LaunchDetails;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ *
+ * <h1>EhrQueryExecutor</h1>
+ *
+ * The EhrQueryExecutor runs the independent queries of the Loading and Trigger queries
+ * concurrently. The number of queries running against a single EHR is limited so that one launch
+ * cannot flood the EHR with requests, the permit for a query is acquired before the query is
+ * submitted so that the threads of the executor never wait for an EHR. Each query is given its own
+ * time limit, queries that do not complete within the time limit are cancelled and the results of
+ * the other queries are returned so that the eICR can be created with partial data.
+ *
+ * <p>A cancelled query may still be running in the EHR client, so the queries must not update the
+ * FHIR Data of the launch. Each query collects its data separately and the update of a query is
+ * applied in the calling thread only when the query has completed, the resources returned by the
+ * queries are assembled in the order of the queries.
+ */
+@Component
+public class EhrQueryExecutor {
+
+  private static final Logger logger = LoggerFactory.getLogger(EhrQueryExecutor.class);
+
+  @Value("${ehr.query.parallel-execution.enabled:false}")
+  Boolean parallelExecutionEnabled;
+
+  @Value("${ehr.query.parallel-execution.threads:8}")
+  Integer parallelExecutionThreads;
+
+  @Value("${ehr.query.parallel-execution.max-per-ehr:4}")
+  Integer maxQueriesPerEhr;
+
+  @Value("${ehr.query.timeout-seconds:60}")
+  Integer queryTimeoutSeconds;
+
+  /** The executor used to run the queries in parallel. */
+  private ExecutorService queryExecutor;
+
+  /** The permits for running queries against each EHR, the Key is the EHR Server URL. */
+  private final Map<String, Semaphore> ehrPermits = new ConcurrentHashMap<>();
+
+  /**
+   * The EhrQuery is a single named query, the query returns the resources to be added to the
+   * bundle. The optional update applies the data collected by the query to the FHIR Data of the
+   * launch, it is run in the calling thread after the query has completed.
+   */
+  public static class EhrQuery<T> {
+
+    private final String name;
+
+    private final Callable<List<T>> query;
+
+    private final Runnable update;
+
+    private EhrQuery(String name, Callable<List<T>> query, Runnable update) {
+      this.name = name;
+      this.query = query;
+      this.update = update;
+    }
+
+    public static <T> EhrQuery<T> of(String name, Callable<List<T>> query) {
+      return new EhrQuery<>(name, query, null);
+    }
+
+    public static <T> EhrQuery<T> of(String name, Callable<List<T>> query, Runnable update) {
+      return new EhrQuery<>(name, query, update);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Callable<List<T>> getQuery() {
+      return query;
+    }
+
+    public Runnable getUpdate() {
+      return update;
+    }
+  }
+
+  /**
+   * The QueryTask runs a query holding a permit of the EHR. The permit is released when the query
+   * returns, or when the task is cancelled before the query has started.
+   */
+  private static class QueryTask<T> extends FutureTask<List<T>> {
+
+    private final Semaphore permits;
+
+    private final AtomicBoolean claimed;
+
+    /** The time by which the query has to complete, in nanoseconds. */
+    private final long deadline;
+
+    private QueryTask(
+        EhrQuery<T> query, Semaphore permits, Map<String, String> mdcContext, long timeoutNanos) {
+      this(query, permits, mdcContext, timeoutNanos, new AtomicBoolean());
+    }
+
+    private QueryTask(
+        EhrQuery<T> query,
+        Semaphore permits,
+        Map<String, String> mdcContext,
+        long timeoutNanos,
+        AtomicBoolean claimed) {
+      super(
+          () -> {
+            if (!claimed.compareAndSet(false, true)) {
+              return Collections.emptyList();
+            }
+
+            try {
+              if (mdcContext != null) {
+                MDC.setContextMap(mdcContext);
+              }
+
+              logger.debug(" Running {} query ", query.getName());
+              return query.getQuery().call();
+            } finally {
+              permits.release();
+              MDC.clear();
+            }
+          });
+      this.permits = permits;
+      this.claimed = claimed;
+      this.deadline = System.nanoTime() + timeoutNanos;
+    }
+
+    @Override
+    protected void done() {
+
+      // The query never started, so the permit acquired for it is released here.
+      if (claimed.compareAndSet(false, true)) {
+        permits.release();
+      }
+    }
+  }
+
+  @PostConstruct
+  public void initializeExecutor() {
+
+    if (Boolean.TRUE.equals(parallelExecutionEnabled)) {
+      logger.info(
+          " Initializing EHR Query executor with {} threads and {} queries per EHR ",
+          parallelExecutionThreads,
+          maxQueriesPerEhr);
+      queryExecutor =
+          Executors.newFixedThreadPool(
+              parallelExecutionThreads, new CustomizableThreadFactory("EhrQueryExecutor-"));
+    }
+  }
+
+  @PreDestroy
+  public void shutdownExecutor() {
+
+    if (queryExecutor != null) {
+      queryExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * The method runs the queries and returns the resources from all the queries that completed. The
+   * updates of the completed queries are applied in the calling thread.
+   *
+   * @param launchDetails The launch for which the queries are run.
+   * @param queries The queries to run.
+   * @return The resources returned by the queries, in the order of the queries.
+   */
+  public <T> List<T> executeQueries(LaunchDetails launchDetails, List<EhrQuery<T>> queries) {
+
+    if (queryExecutor == null || queries.size() <= 1) {
+      return executeSequentially(queries);
+    }
+
+    Semaphore permits = getPermits(launchDetails);
+    Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+    long timeoutNanos = TimeUnit.SECONDS.toNanos(queryTimeoutSeconds);
+    List<QueryTask<T>> tasks = new ArrayList<>();
+    List<T> results = new ArrayList<>();
+
+    try {
+      for (EhrQuery<T> query : queries) {
+        tasks.add(submitQuery(query, permits, mdcContext, timeoutNanos));
+      }
+    } catch (InterruptedException e) {
+      tasks.forEach(EhrQueryExecutor::cancel);
+      Thread.currentThread().interrupt();
+      logger.error(" Interrupted while submitting the EHR queries ");
+      return results;
+    }
+
+    for (int i = 0; i < queries.size(); i++) {
+
+      EhrQuery<T> query = queries.get(i);
+      QueryTask<T> task = tasks.get(i);
+
+      if (task == null) {
+        continue;
+      }
+
+      try {
+        List<T> result =
+            task.get(Math.max(0, task.deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        applyResult(query, result, results);
+      } catch (TimeoutException e) {
+        task.cancel(true);
+        logger.error(
+            " {} query did not complete within {} seconds, continuing without the results ",
+            query.getName(),
+            queryTimeoutSeconds);
+      } catch (CancellationException e) {
+        logger.error(" {} query was cancelled, continuing without the results ", query.getName());
+      } catch (InterruptedException e) {
+        tasks.forEach(EhrQueryExecutor::cancel);
+        Thread.currentThread().interrupt();
+        logger.error(" Interrupted while waiting for the {} query ", query.getName());
+        break;
+      } catch (ExecutionException e) {
+        handleFailure(query, e.getCause());
+      }
+    }
+
+    return results;
+  }
+
+  /**
+   * The method is used when parallel execution is disabled, it can also be used directly by
+   * components that were created without an EhrQueryExecutor.
+   *
+   * @param queries The queries to run.
+   * @return The resources returned by the queries, in the order of the queries.
+   */
+  public static <T> List<T> executeSequentially(List<EhrQuery<T>> queries) {
+
+    List<T> results = new ArrayList<>();
+
+    for (EhrQuery<T> query : queries) {
+      try {
+        applyResult(query, query.getQuery().call(), results);
+      } catch (Exception e) {
+        handleFailure(query, e);
+      }
+    }
+
+    return results;
+  }
+
+  /**
+   * The method acquires a permit of the EHR in the calling thread and submits the query. The query
+   * is skipped when no permit becomes available within the time limit.
+   */
+  private <T> QueryTask<T> submitQuery(
+      EhrQuery<T> query, Semaphore permits, Map<String, String> mdcContext, long timeoutNanos)
+      throws InterruptedException {
+
+    if (!permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+      logger.error(
+          " {} query could not be started within {} seconds, continuing without the results ",
+          query.getName(),
+          queryTimeoutSeconds);
+      return null;
+    }
+
+    QueryTask<T> task = new QueryTask<>(query, permits, mdcContext, timeoutNanos);
+
+    try {
+      queryExecutor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.cancel(false);
+      logger.error(
+          " {} query could not be submitted, continuing without the results ", query.getName());
+    }
+
+    return task;
+  }
+
+  private static <T> void applyResult(EhrQuery<T> query, List<T> result, List<T> results) {
+
+    if (query.getUpdate() != null) {
+      query.getUpdate().run();
+    }
+
+    if (result != null) {
+      results.addAll(result);
+    }
+  }
+
+  private static void cancel(QueryTask<?> task) {
+
+    if (task != null) {
+      task.cancel(true);
+    }
+  }
+
+  private Semaphore getPermits(LaunchDetails launchDetails) {
+
+    String ehrUrl = launchDetails.getEhrServerURL();
+
+    return ehrPermits.computeIfAbsent(
+        ehrUrl != null ? ehrUrl : "", key -> new Semaphore(Math.max(1, maxQueriesPerEhr), true));
+  }
+
+  private static void handleFailure(EhrQuery<?> query, Throwable cause) {
+
+    if (cause instanceof Exception) {
+      ApplicationUtils.handleException(
+          (Exception) cause, " Error in running the " + query.getName() + " query", LogLevel.ERROR);
+    } else {
+      logger.error(" Error in running the {} query", query.getName(), cause);
+    }
+  }
+
+  /** Returns an unmodifiable list containing the resource or an empty list for null. */
+  public static <T> List<T> listOf(T resource) {
+    return resource != null ? Collections.singletonList(resource) : Collections.emptyList();
+  }
+}
@@ -9,13 +9,17 @@ import com.drajer.ecrapp.service.WorkflowService;
 import com.drajer.ecrapp.util.ApplicationUtils;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.sof.model.R4FhirData;
+import com.drajer.sof.utils.EhrQueryExecutor.EhrQuery;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.*;
@@ -36,6 +40,9 @@ public class R4ResourcesData {
 
   @Autowired FhirContextInitializer fhirContextInitializer;
 
+  @Autowired(required = false)
+  EhrQueryExecutor ehrQueryExecutor;
+
   private final Logger logger = LoggerFactory.getLogger(R4ResourcesData.class);
 
   private static final String OBSERVATION = "Observation";
@@ -44,6 +51,30 @@ public class R4ResourcesData {
   private static final String OBSERVATION_SOCIAL_HISTORY = "social-history";
   private static final String ENTERED_IN_ERROR = "entered-in-error";
 
+  /** The travel history Observation codes, as system|code. */
+  private static final Set<String> TRAVEL_CODES =
+      getCodeTokens(
+          QueryConstants.getTravelHistorySmtCodes(),
+          QueryConstants.SNOMED_CODE_SYSTEM,
+          new String[] {QueryConstants.TRAVEL_CODE},
+          QueryConstants.LOINC_CODE_SYSTEM);
+
+  /** The occupation Observation codes, as system|code. */
+  private static final Set<String> OCCUPATION_CODES =
+      getCodeTokens(
+          QueryConstants.getOccupationSmtCodes(),
+          QueryConstants.SNOMED_CODE_SYSTEM,
+          QueryConstants.getOccupationLoincCodes(),
+          QueryConstants.LOINC_CODE_SYSTEM);
+
+  /** The pregnancy Condition codes. */
+  private static final Set<String> PREGNANCY_CONDITION_CODES =
+      new HashSet<>(Arrays.asList(QueryConstants.getPregnancySmtCodes()));
+
+  /** The code parameter used to search the occupation and travel Observations together. */
+  private static final String SOCIAL_HISTORY_CODES =
+      String.join(",", OCCUPATION_CODES) + "," + String.join(",", TRAVEL_CODES);
+
   private static final String ENCOUNTER_DIAGNOSIS_CONDITION = "encounter-diagnosis";
   private static final String PROBLEM_LIST_CONDITION = "problem-list-item";
 
@@ -167,6 +198,7 @@ public class R4ResourcesData {
     int conditionInError = 0;
     int conditionMissingAbatement = 0;
     List<Condition> encounterDiagnosisConditions = new ArrayList<>();
+    List<Condition> pregnancyConditions = new ArrayList<>();
 
     if (bundle != null && bundle.getEntry() != null) {
       for (BundleEntryComponent entry : bundle.getEntry()) {
@@ -179,20 +211,17 @@ public class R4ResourcesData {
                 .getCode()
                 .equals(ENTERED_IN_ERROR))) {
 
+          boolean foundPregnancyCondition = isPregnancyCondition(condition);
+          if (foundPregnancyCondition && isConditionActive(condition)) {
+            logger.debug("Added condition to pregnancy conditions {}", condition.getId());
+            pregnancyConditions.add(condition);
+          }
+
           if (isConditionActive(condition) && condition.hasCategory()) {
             List<CodeableConcept> conditionCategory = condition.getCategory();
             for (CodeableConcept categoryCodeableConcept : conditionCategory) {
               List<Coding> categoryCodingList = categoryCodeableConcept.getCoding();
               for (Coding categoryCoding : categoryCodingList) {
-                boolean foundPregnancyCondition =
-                    condition
-                        .getCode()
-                        .getCoding()
-                        .stream()
-                        .anyMatch(
-                            coding ->
-                                Arrays.stream(QueryConstants.getPregnancySmtCodes())
-                                    .anyMatch(coding.getCode()::equals));
                 if (categoryCoding.getCode().equals(PROBLEM_LIST_CONDITION)
                     && !foundPregnancyCondition) {
                   logger.debug("Added condition to problem list {}", condition.getId());
@@ -226,6 +255,7 @@ public class R4ResourcesData {
       r4FhirData.setConditions(problemConditions);
       r4FhirData.setEncounterDiagnosisConditions(encounterDiagnosisConditions);
       r4FhirData.setR4ConditionCodes(conditionCodes);
+      r4FhirData.setPregnancyConditions(pregnancyConditions);
       logger.info(
           "Total Conditions:{} Filtered Problem:{} Filtered Encounter Diagnosis:{} Entered InError:{} Missing Abatement:{}",
           bundle.getEntry().size(),
@@ -267,9 +297,7 @@ public class R4ResourcesData {
       // Filter Observations based on Encounter Reference
       String encounterId = launchDetails.getEncounterId();
       if (StringUtils.isNotEmpty(encounterId)) {
-        bundle = filterObservationByStatus(bundle, ENTERED_IN_ERROR);
-        for (BundleEntryComponent entry : bundle.getEntry()) {
-          Observation observation = (Observation) entry.getResource();
+        for (Observation observation : filterObservationByStatus(bundle, ENTERED_IN_ERROR)) {
           if (!observation.getEncounter().isEmpty()
               && observation.getEncounter().getReferenceElement().getIdPart().equals(encounterId)) {
             observations.add(observation);
@@ -280,9 +308,7 @@ public class R4ResourcesData {
         // If Encounter Id is not present using start and end dates to filter
         // Observations
       } else {
-        bundle = filterObservationByStatus(bundle, ENTERED_IN_ERROR);
-        for (BundleEntryComponent entry : bundle.getEntry()) {
-          Observation observation = (Observation) entry.getResource();
+        for (Observation observation : filterObservationByStatus(bundle, ENTERED_IN_ERROR)) {
           // Checking If Issued Date is present in Observation resource
           if (observation.getIssued() != null) {
             if (isResourceWithinDateTime(start, end, observation.getIssued())) {
@@ -404,14 +430,22 @@ public class R4ResourcesData {
                 QueryConstants.LOINC_CODE_SYSTEM);
     List<Observation> observations = new ArrayList<>();
     if (bundle != null) {
-      bundle = filterObservationByStatus(bundle, ENTERED_IN_ERROR);
-      observations = filterObservation(bundle, encounter, start, end);
+      observations =
+          filterObservation(
+              filterObservationByStatus(bundle, ENTERED_IN_ERROR), encounter, start, end);
       logger.info("Filtered Pregnancy Observations ----> {}", observations.size());
     }
     return observations;
   }
 
-  public List<Observation> getTravelObservationData(
+  /**
+   * The method retrieves the travel and occupation Observations of the patient using a single
+   * search and classifies them using the travel codes. The travel Observations are set as the
+   * travel history and the remaining Observations as the occupation history of the R4FhirData.
+   *
+   * @return The travel and occupation Observations.
+   */
+  public List<Observation> getSocialHistoryObservationData(
       FhirContext context,
       IGenericClient client,
       LaunchDetails launchDetails,
@@ -420,20 +454,11 @@ public class R4ResourcesData {
       Date start,
       Date end) {
     logger.info(
-        "R4FhirData :{} Encounter :{} StartDate :{} and EndDate :{} in getTravelObservationData. ",
-        r4FhirData,
+        "Encounter :{} StartDate :{} and EndDate :{} in getSocialHistoryObservationData. ",
         encounter,
         start,
         end);
-    logger.trace("Get Travel Observation Data");
-
-    StringBuilder codeBuilder = new StringBuilder(2000);
-    for (String travelSnomedCode : QueryConstants.getTravelHistorySmtCodes()) {
-      codeBuilder.append(QueryConstants.SNOMED_CODE_SYSTEM + "|" + travelSnomedCode + ",");
-    }
-    codeBuilder.append(QueryConstants.LOINC_CODE_SYSTEM + "|" + QueryConstants.TRAVEL_CODE);
-    codeBuilder.trimToSize();
-    String codes = codeBuilder.toString();
+    logger.trace("Get Social History Observation Data (Travel and Occupation)");
 
     String url =
         launchDetails.getEhrServerURL()
@@ -442,69 +467,106 @@ public class R4ResourcesData {
             + "?patient="
             + launchDetails.getLaunchPatientId()
             + "&code="
-            + codes;
+            + SOCIAL_HISTORY_CODES;
 
-    Bundle travelCodeBundle =
+    Bundle socialHistoryBundle =
         (Bundle)
             FhirContextInitializer.getResourceBundleByUrl(
                 launchDetails, client, context, OBSERVATION, url);
 
-    List<Observation> observations = new ArrayList<>();
-    if (travelCodeBundle != null) {
-      travelCodeBundle = filterObservationByStatus(travelCodeBundle, ENTERED_IN_ERROR);
-      travelCodeBundle =
-          filterObservationsBundleByCategory(travelCodeBundle, OBSERVATION_SOCIAL_HISTORY);
-      observations = filterObservation(travelCodeBundle, encounter, start, end);
+    List<Observation> travelObservations = new ArrayList<>();
+    List<Observation> occupationObservations = new ArrayList<>();
+    if (socialHistoryBundle != null) {
+      List<Observation> travelCandidates = new ArrayList<>();
+      for (Observation observation :
+          filterObservationByStatus(socialHistoryBundle, ENTERED_IN_ERROR)) {
+        if (hasCode(observation.getCode(), TRAVEL_CODES)) {
+          if (hasCategory(observation, OBSERVATION_SOCIAL_HISTORY)) {
+            travelCandidates.add(observation);
+          }
+        } else {
+          occupationObservations.add(observation);
+        }
+      }
+      travelObservations = filterObservation(travelCandidates, encounter, start, end);
     }
 
-    logger.info("Filtered Travel Observations ----> {}", observations.size());
+    r4FhirData.setTravelObs(travelObservations);
+    r4FhirData.setOccupationObs(occupationObservations);
+    logger.info("Filtered Travel Observations ----> {}", travelObservations.size());
+    logger.info(
+        "Filtered Social History Occupation Observations ----> {}", occupationObservations.size());
+
+    List<Observation> observations = new ArrayList<>(travelObservations);
+    observations.addAll(occupationObservations);
     return observations;
   }
 
-  private Bundle filterObservationByStatus(Bundle bundle, String observationStatus) {
-    Bundle filteredBundle = new Bundle();
+  private List<Observation> filterObservationByStatus(Bundle bundle, String observationStatus) {
+    List<Observation> observations = new ArrayList<>();
     int observationInError = 0;
-    List<BundleEntryComponent> filteredEntryComponents = new ArrayList<>();
     for (BundleEntryComponent entryComp : bundle.getEntry()) {
       Observation observation = (Observation) entryComp.getResource();
       if (observation.hasStatus()) {
         if (!observation.getStatus().toCode().equals(observationStatus)) {
-          filteredEntryComponents.add(new BundleEntryComponent().setResource(observation));
+          observations.add(observation);
         } else {
           observationInError++;
         }
       }
     }
     logger.info("Skipped {} Observation with status entered-in-error", observationInError);
-    filteredBundle.setEntry(filteredEntryComponents);
-    return filteredBundle;
+    return observations;
   }
 
-  private Bundle filterObservationsBundleByCategory(
-      Bundle bundle, String observationSocialHistory) {
-    Bundle filteredBundle = new Bundle();
-    List<BundleEntryComponent> filteredEntryComponents = new ArrayList<>();
-    for (BundleEntryComponent entryComp : bundle.getEntry()) {
-      Observation observation = (Observation) entryComp.getResource();
-      List<CodeableConcept> observationCategories = observation.getCategory();
-      boolean isSocialHistory =
-          observationCategories
-              .stream()
-              .anyMatch(
-                  category ->
-                      category
-                          .getCoding()
-                          .stream()
-                          .anyMatch(coding -> coding.getCode().equals(observationSocialHistory)));
-      if (isSocialHistory) {
-        filteredEntryComponents.add(new BundleEntryComponent().setResource(observation));
+  private boolean hasCategory(Observation observation, String category) {
+    return observation
+        .getCategory()
+        .stream()
+        .anyMatch(
+            categoryConcept ->
+                categoryConcept
+                    .getCoding()
+                    .stream()
+                    .anyMatch(coding -> category.equals(coding.getCode())));
+  }
+
+  private boolean hasCode(CodeableConcept concept, Set<String> codes) {
+    for (Coding coding : concept.getCoding()) {
+      if (codes.contains(coding.getSystem() + "|" + coding.getCode())) {
+        return true;
       }
     }
-    filteredBundle.setEntry(filteredEntryComponents);
-    return filteredBundle;
+    return false;
   }
 
-  public List<Observation> getSocialHistoryObservationDataOccupation(
+  private boolean isPregnancyCondition(Condition condition) {
+    for (Coding coding : condition.getCode().getCoding()) {
+      if (PREGNANCY_CONDITION_CODES.contains(coding.getCode())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Set<String> getCodeTokens(
+      String[] snomedCodes, String snomedSystem, String[] loincCodes, String loincSystem) {
+    Set<String> tokens = new LinkedHashSet<>();
+    for (String code : snomedCodes) {
+      tokens.add(snomedSystem + "|" + code);
+    }
+    for (String code : loincCodes) {
+      tokens.add(loincSystem + "|" + code);
+    }
+    return Collections.unmodifiableSet(tokens);
+  }
+
+  /**
+   * The method returns the active pregnancy Conditions of the patient. The pregnancy Conditions
+   * found by getConditionData are reused, the EHR is only searched for the pregnancy codes when
+   * none were found in the Conditions already retrieved.
+   */
+  public List<Condition> getPregnancyConditions(
       FhirContext context,
       IGenericClient client,
       LaunchDetails launchDetails,
@@ -513,87 +575,46 @@ public class R4ResourcesData {
       Date start,
       Date end) {
     logger.info(
-        "R4FhirData :{} Encounter :{} StartDate :{} and EndDate :{} in getSocialHistoryObservationDataOccupation. ",
+        "R4FhirData :{} Encounter :{} StartDate :{} and EndDate :{} in getPregnancyConditions. ",
         r4FhirData,
         encounter,
         start,
         end);
-    logger.trace("Get Social History Observation Data (Occupation)");
-    List<Observation> observations = new ArrayList<>();
 
-    StringBuilder codeBuilder = new StringBuilder(2000);
-    for (String occupationCode : QueryConstants.getOccupationSmtCodes()) {
-      codeBuilder.append(QueryConstants.SNOMED_CODE_SYSTEM + "|" + occupationCode + ",");
+    if (r4FhirData.getPregnancyConditions() != null
+        && !r4FhirData.getPregnancyConditions().isEmpty()) {
+      logger.info(
+          "Using {} Pregnancy Conditions from the Condition Data",
+          r4FhirData.getPregnancyConditions().size());
+      return r4FhirData.getPregnancyConditions();
     }
 
-    for (String occupationCode : QueryConstants.getOccupationLoincCodes()) {
-      codeBuilder.append(QueryConstants.LOINC_CODE_SYSTEM + "|" + occupationCode + ",");
+    logger.trace("Get Pregnancy Conditions");
+    List<String> codes = new ArrayList<>();
+    for (String pregnancySnomedCode : PREGNANCY_CONDITION_CODES) {
+      codes.add(QueryConstants.SNOMED_CODE_SYSTEM + "|" + pregnancySnomedCode);
     }
-    codeBuilder.trimToSize();
-    String codes =
-        codeBuilder.substring(0, codeBuilder.length() - 1); // Remove extra "," at the end.
 
     String url =
         launchDetails.getEhrServerURL()
             + "/"
-            + OBSERVATION
+            + CONDITION
             + "?patient="
             + launchDetails.getLaunchPatientId()
             + "&code="
-            + codes;
+            + String.join(",", codes);
 
-    Bundle occupationCodesbundle =
+    Bundle pregnancyCodesbundle =
         (Bundle)
             FhirContextInitializer.getResourceBundleByUrl(
-                launchDetails, client, context, OBSERVATION, url);
-
-    if (occupationCodesbundle != null) {
-      occupationCodesbundle = filterObservationByStatus(occupationCodesbundle, ENTERED_IN_ERROR);
-      for (BundleEntryComponent entryComp : occupationCodesbundle.getEntry()) {
-        observations.add((Observation) entryComp.getResource());
-      }
-    }
+                launchDetails, client, context, CONDITION, url);
 
-    logger.info("Filtered Social History Occupation Observations ----> {}", observations.size());
-    return observations;
-  }
-
-  public List<Condition> getPregnancyConditions(
-      FhirContext context,
-      IGenericClient client,
-      LaunchDetails launchDetails,
-      R4FhirData r4FhirData,
-      Encounter encounter,
-      Date start,
-      Date end) {
-    logger.info(
-        "R4FhirData :{} Encounter :{} StartDate :{} and EndDate :{} in getPregnancyConditions. ",
-        r4FhirData,
-        encounter,
-        start,
-        end);
-    logger.trace("Get Pregnancy Conditions");
     List<Condition> conditions = new ArrayList<>();
-    for (String pregnancySnomedCode : QueryConstants.getPregnancySmtCodes()) {
-      Bundle pregnancyCodesbundle =
-          (Bundle)
-              resourceData.getResourceByPatientIdAndCode(
-                  launchDetails,
-                  client,
-                  context,
-                  CONDITION,
-                  pregnancySnomedCode,
-                  QueryConstants.SNOMED_CODE_SYSTEM);
-      if (pregnancyCodesbundle != null) {
-        for (BundleEntryComponent entryComp : pregnancyCodesbundle.getEntry()) {
-          Condition condition = (Condition) entryComp.getResource();
-          List<Coding> conditionCodes = condition.getCode().getCoding();
-          for (Coding conditionCoding : conditionCodes) {
-            if (conditionCoding.getCode().equalsIgnoreCase(pregnancySnomedCode)
-                && (isConditionActive(condition))) {
-              conditions.add(condition);
-            }
-          }
+    if (pregnancyCodesbundle != null) {
+      for (BundleEntryComponent entryComp : pregnancyCodesbundle.getEntry()) {
+        Condition condition = (Condition) entryComp.getResource();
+        if (isPregnancyCondition(condition) && isConditionActive(condition)) {
+          conditions.add(condition);
         }
       }
     }
@@ -1069,13 +1090,12 @@ public class R4ResourcesData {
   }
 
   public List<Observation> filterObservation(
-      Bundle bundle, Encounter encounter, Date start, Date end) {
+      List<Observation> bundleObservations, Encounter encounter, Date start, Date end) {
 
     List<Observation> observations = new ArrayList<>();
     // Filter Observations based on Encounter Reference
     if (encounter != null && !encounter.getIdElement().getValue().isEmpty()) {
-      for (BundleEntryComponent entry : bundle.getEntry()) {
-        Observation observation = (Observation) entry.getResource();
+      for (Observation observation : bundleObservations) {
         if (!observation.getEncounter().isEmpty()
             && observation
                 .getEncounter()
@@ -1088,8 +1108,7 @@ public class R4ResourcesData {
       // If Encounter Id is not present using start and end dates to filter
       // Observations
     } else {
-      for (BundleEntryComponent entry : bundle.getEntry()) {
-        Observation observation = (Observation) entry.getResource();
+      for (Observation observation : bundleObservations) {
         // Checking If Issued Date is present in Observation resource
         if (observation.getIssued() != null) {
           if (isResourceWithinDateTime(start, end, observation.getIssued())) {
@@ -1123,21 +1142,34 @@ public class R4ResourcesData {
       FhirContext context) {
 
     Bundle bundle = new Bundle();
+    List<EhrQuery<Resource>> queries = new ArrayList<>();
+
     // GET Patient Details and Add to Bundle
-    try {
-      Patient patient =
-          (Patient)
-              fhirContextInitializer.getResouceById(
-                  launchDetails, client, context, "Patient", launchDetails.getLaunchPatientId());
-      if (patient != null) {
-        r4FhirData.setPatient(patient);
-        BundleEntryComponent patientEntry = new BundleEntryComponent();
-        patientEntry.setResource(patient);
-        bundle.addEntry(patientEntry);
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting Patient Data", e);
-    }
+    R4FhirData patientData = new R4FhirData();
+    queries.add(
+        EhrQuery.of(
+            "Patient",
+            () -> {
+              try {
+                Patient patient =
+                    (Patient)
+                        fhirContextInitializer.getResouceById(
+                            launchDetails,
+                            client,
+                            context,
+                            "Patient",
+                            launchDetails.getLaunchPatientId());
+                if (patient != null) {
+                  patientData.setPatient(patient);
+                }
+                return EhrQueryExecutor.listOf(patient);
+              } catch (Exception e) {
+                logger.error("Error in getting Patient Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> r4FhirData.addQueryData(patientData)));
+
     // Step 1: Get Encounters for Patient based on encId. (Create a method to get
     // encounters)
     // If encId is null, find encounters for patient within the start and end time
@@ -1145,18 +1177,31 @@ public class R4ResourcesData {
     // Add to the bundle.
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of encounterCodes.
-    Encounter encounter = null;
-    try {
-      encounter = getEncounterData(context, client, launchDetails, r4FhirData, start, end);
+    R4FhirData encounterData = new R4FhirData();
+    queries.add(
+        EhrQuery.of(
+            ENCOUNTER,
+            () -> {
+              try {
+                Encounter enc =
+                    getEncounterData(context, client, launchDetails, encounterData, start, end);
+                if (enc != null) {
+                  encounterData.setEncounter(enc);
+                }
+                return EhrQueryExecutor.listOf(enc);
+              } catch (Exception e) {
+                ApplicationUtils.handleException(
+                    e, "Error in getting Encounter Data", LogLevel.ERROR);
+              }
+              return Collections.emptyList();
+            },
+            () -> r4FhirData.addQueryData(encounterData)));
 
-      if (encounter != null) {
-        r4FhirData.setEncounter(encounter);
-        BundleEntryComponent encounterEntry = new BundleEntryComponent().setResource(encounter);
-        bundle.addEntry(encounterEntry);
-      }
-    } catch (Exception e) {
-      ApplicationUtils.handleException(e, "Error in getting Encounter Data", LogLevel.ERROR);
-    }
+    addEntries(bundle, executeQueries(launchDetails, queries));
+
+    // The remaining queries are filtered using the Encounter and run together.
+    Encounter encounter = (Encounter) getResourceFromBundle(bundle, Encounter.class);
+    queries = new ArrayList<>();
 
     // Step 2: Get Conditions for Patient (Write a method)
     // Filter the conditions based on encounter Reference if Encounter Reference is
@@ -1166,19 +1211,25 @@ public class R4ResourcesData {
     // Add to the bundle
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of ConditionCodes.
-    try {
-      List<Condition> conditionsList =
-          getConditionData(context, client, launchDetails, r4FhirData, encounter, start, end);
-      if (conditionsList != null && !conditionsList.isEmpty()) {
-        // Already sorted and set in the getConditionData method
-        for (Condition condition : conditionsList) {
-          BundleEntryComponent conditionsEntry = new BundleEntryComponent().setResource(condition);
-          bundle.addEntry(conditionsEntry);
-        }
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting Condition Data", e);
-    }
+    R4FhirData conditionData = new R4FhirData();
+    queries.add(
+        EhrQuery.of(
+            CONDITION,
+            () -> {
+              try {
+                List<Condition> conditionsList =
+                    getConditionData(
+                        context, client, launchDetails, conditionData, encounter, start, end);
+                if (conditionsList != null) {
+                  // Already sorted and set in the getConditionData method
+                  return new ArrayList<>(conditionsList);
+                }
+              } catch (Exception e) {
+                logger.error("Error in getting Condition Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> r4FhirData.addQueryData(conditionData)));
 
     // Get Observations for Patients and laboratory category (Write a method).
     // Filter the observations based on encounter Reference if encounter is present.
@@ -1187,31 +1238,31 @@ public class R4ResourcesData {
     // Add to the bundle
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of labResultCodes.
-    try {
-      List<Observation> observationList =
-          getObservationData(context, client, launchDetails, r4FhirData, start, end);
-      if (observationList != null && !observationList.isEmpty()) {
-        r4FhirData.setLabResults(observationList);
-        for (Observation observation : observationList) {
-          BundleEntryComponent observationsEntry =
-              new BundleEntryComponent().setResource(observation);
-          bundle.addEntry(observationsEntry);
-        }
-      }
-
-      if (r4FhirData.getLabResultValueObservations() != null
-          && !r4FhirData.getLabResultValueObservations().isEmpty()) {
+    R4FhirData observationData = new R4FhirData();
+    queries.add(
+        EhrQuery.of(
+            OBSERVATION,
+            () -> {
+              List<Resource> observations = new ArrayList<>();
+              try {
+                List<Observation> observationList =
+                    getObservationData(context, client, launchDetails, observationData, start, end);
+                if (observationList != null && !observationList.isEmpty()) {
+                  observationData.setLabResults(observationList);
+                  observations.addAll(observationList);
+                }
 
-        for (Observation observation : r4FhirData.getLabResultValueObservations()) {
-          BundleEntryComponent observationsEntry =
-              new BundleEntryComponent().setResource(observation);
-          bundle.addEntry(observationsEntry);
-        }
-      }
+                if (observationData.getLabResultValueObservations() != null
+                    && !observationData.getLabResultValueObservations().isEmpty()) {
+                  observations.addAll(observationData.getLabResultValueObservations());
+                }
 
-    } catch (Exception e) {
-      logger.error("Error in getting Observation Data", e);
-    }
+              } catch (Exception e) {
+                logger.error("Error in getting Observation Data", e);
+              }
+              return observations;
+            },
+            () -> r4FhirData.addQueryData(observationData)));
 
     // Get ServiceRequest for Patients (Write a method).
     // Filter the ServiceRequest based on encounter Reference if encounter is
@@ -1221,24 +1272,55 @@ public class R4ResourcesData {
     // Add to the bundle
     // As you are adding to the bundle within Fhir Data, add the codeable concept
     // also to the list of ServiceRequestCodes.
+    R4FhirData serviceRequestData = new R4FhirData();
+    queries.add(
+        EhrQuery.of(
+            "ServiceRequest",
+            () -> {
+              try {
+                List<ServiceRequest> serviceRequestsList =
+                    getServiceRequestData(
+                        context, client, launchDetails, serviceRequestData, start, end);
+                if (serviceRequestsList != null && !serviceRequestsList.isEmpty()) {
+                  serviceRequestData.setServiceRequests(serviceRequestsList);
+                  return new ArrayList<>(serviceRequestsList);
+                }
+              } catch (Exception e) {
+                logger.error("Error in getting the ServiceRequest Data", e);
+              }
+              return Collections.emptyList();
+            },
+            () -> r4FhirData.addQueryData(serviceRequestData)));
 
-    try {
-      List<ServiceRequest> serviceRequestsList =
-          getServiceRequestData(context, client, launchDetails, r4FhirData, start, end);
-      if (serviceRequestsList != null && !serviceRequestsList.isEmpty()) {
-        r4FhirData.setServiceRequests(serviceRequestsList);
-        for (ServiceRequest serviceRequest : serviceRequestsList) {
-          BundleEntryComponent serviceRequestEntry =
-              new BundleEntryComponent().setResource(serviceRequest);
-          bundle.addEntry(serviceRequestEntry);
-        }
-      }
-    } catch (Exception e) {
-      logger.error("Error in getting the ServiceRequest Data", e);
-    }
+    addEntries(bundle, executeQueries(launchDetails, queries));
     return bundle;
   }
 
+  /**
+   * The method runs the queries using the EhrQueryExecutor, the queries are run one after another
+   * when there is no executor.
+   *
+   * @param launchDetails The launch for which the queries are run.
+   * @param queries The queries to run.
+   * @return The resources returned by the queries.
+   */
+  public List<Resource> executeQueries(
+      LaunchDetails launchDetails, List<EhrQuery<Resource>> queries) {
+
+    if (ehrQueryExecutor == null) {
+      return EhrQueryExecutor.executeSequentially(queries);
+    }
+
+    return ehrQueryExecutor.executeQueries(launchDetails, queries);
+  }
+
+  public void addEntries(Bundle bundle, List<Resource> resources) {
+
+    for (Resource resource : resources) {
+      bundle.addEntry(new BundleEntryComponent().setResource(resource));
+    }
+  }
+
   public Resource getResourceFromBundle(Bundle bundle, Class<?> resource) {
     try {
       for (BundleEntryComponent entry : bundle.getEntry()) {
@@ -0,0 +1,128 @@
+package com.drajer.bsa.auth.impl;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import com.drajer.bsa.model.HealthcareSetting;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.Key;
+import java.security.KeyStore;
+import javax.crypto.spec.SecretKeySpec;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BackendAuthorizationServiceImplTest {
+
+  private static final String PASSWORD = "password";
+  private static final String ALIAS = "ecr-jwt-client";
+
+  private WireMockServer wireMockServer;
+
+  private BackendAuthorizationServiceImpl authService;
+
+  private File keystore;
+
+  @Before
+  public void setUp() throws Exception {
+
+    wireMockServer = new WireMockServer(wireMockConfig().dynamicPort());
+    wireMockServer.start();
+
+    keystore = File.createTempFile("backend-auth", ".p12");
+    writeKeystore(new byte[32]);
+
+    authService = new BackendAuthorizationServiceImpl();
+    authService.jwksLocation = keystore.getAbsolutePath();
+    authService.password = PASSWORD;
+    authService.alias = ALIAS;
+    authService.presignAssertionsEnabled = true;
+    authService.initialize();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    authService.shutdown();
+    wireMockServer.stop();
+    Files.deleteIfExists(keystore.toPath());
+  }
+
+  private void writeKeystore(byte[] secret) throws Exception {
+
+    KeyStore ks = KeyStore.getInstance("PKCS12");
+    ks.load(null, null);
+    ks.setEntry(
+        ALIAS,
+        new KeyStore.SecretKeyEntry(new SecretKeySpec(secret, "HmacSHA256")),
+        new KeyStore.PasswordProtection(PASSWORD.toCharArray()));
+
+    try (OutputStream out = new FileOutputStream(keystore)) {
+      ks.store(out, PASSWORD.toCharArray());
+    }
+  }
+
+  @Test
+  public void testTokenEndpointIsDiscoveredOnce() throws Exception {
+
+    String baseUrl = "http://localhost:" + wireMockServer.port() + "/fhir";
+
+    wireMockServer.stubFor(
+        get(urlEqualTo("/fhir/.well-known/smart-configuration"))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(
+                        "{\"token_endpoint\":\"http://localhost:"
+                            + wireMockServer.port()
+                            + "/token\"}")));
+    wireMockServer.stubFor(
+        post(urlEqualTo("/token"))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody("{\"access_token\":\"token1\",\"expires_in\":300}")));
+
+    HealthcareSetting hs = new HealthcareSetting();
+    hs.setFhirServerBaseURL(baseUrl);
+    hs.setClientId("client1");
+
+    JSONObject first = authService.getAuthorizationToken(hs);
+    JSONObject second = authService.getAuthorizationToken(hs);
+
+    assertNotNull(first);
+    assertEquals("token1", first.getString("access_token"));
+    assertEquals("token1", second.getString("access_token"));
+
+    wireMockServer.verify(1, getRequestedFor(urlEqualTo("/fhir/.well-known/smart-configuration")));
+    wireMockServer.verify(2, postRequestedFor(urlEqualTo("/token")));
+  }
+
+  @Test
+  public void testSigningKeyIsReloadedWhenTheKeystoreChanges() throws Exception {
+
+    Key key = authService.getSigningKey();
+    assertSame(key, authService.getSigningKey());
+
+    byte[] secret = new byte[32];
+    secret[0] = 1;
+    writeKeystore(secret);
+    // Make sure the modification is detected on file systems with a coarse timestamp.
+    keystore.setLastModified(keystore.lastModified() + 2000);
+
+    assertNotEquals(key, authService.getSigningKey());
+  }
+}
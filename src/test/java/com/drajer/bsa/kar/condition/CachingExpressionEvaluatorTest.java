@@ -0,0 +1,142 @@
+package com.drajer.bsa.kar.condition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.IntegerType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencds.cqf.cql.evaluator.builder.DataProviderFactory;
+import org.opencds.cqf.cql.evaluator.builder.EndpointConverter;
+import org.opencds.cqf.cql.evaluator.builder.LibraryContentProviderFactory;
+import org.opencds.cqf.cql.evaluator.builder.ModelResolverFactory;
+import org.opencds.cqf.cql.evaluator.builder.TerminologyProviderFactory;
+import org.opencds.cqf.cql.evaluator.expression.ExpressionEvaluator;
+import org.opencds.cqf.cql.evaluator.library.CqlFhirParametersConverter;
+import org.opencds.cqf.cql.evaluator.spring.EvaluatorConfiguration;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+public class CachingExpressionEvaluatorTest {
+
+  private static AnnotationConfigApplicationContext context;
+
+  private CachingExpressionEvaluator evaluator;
+
+  @BeforeClass
+  public static void createContext() {
+    context = new AnnotationConfigApplicationContext();
+    context.registerBean(FhirContext.class, FhirContext::forR4);
+    context.register(EvaluatorConfiguration.class);
+    context.refresh();
+  }
+
+  @AfterClass
+  public static void closeContext() {
+    context.close();
+  }
+
+  @Before
+  public void setUp() {
+    evaluator = createEvaluator(2);
+  }
+
+  private CachingExpressionEvaluator createEvaluator(int maxCompiledExpressions) {
+    return new CachingExpressionEvaluator(
+        context.getBean(FhirContext.class),
+        context.getBean(CqlFhirParametersConverter.class),
+        context.getBean(LibraryContentProviderFactory.class),
+        context.getBean(DataProviderFactory.class),
+        context.getBean(TerminologyProviderFactory.class),
+        context.getBean(EndpointConverter.class),
+        context.getBean(ModelResolverFactory.class),
+        maxCompiledExpressions);
+  }
+
+  private Parameters createParameters(String name, org.hl7.fhir.r4.model.Type value) {
+    Parameters params = new Parameters();
+    params.addParameter().setName(name).setValue(value);
+    return params;
+  }
+
+  private boolean evaluate(String expression, Parameters params) {
+    return evaluate(evaluator, expression, params);
+  }
+
+  private boolean evaluate(
+      ExpressionEvaluator expressionEvaluator, String expression, Parameters params) {
+    Parameters result = (Parameters) expressionEvaluator.evaluate(expression, params);
+    return ((BooleanType) result.getParameter(FhirPathProcessor.PARAM)).booleanValue();
+  }
+
+  /** Returns the average time in nanoseconds of evaluating the expression with new values. */
+  private long timeEvaluations(
+      ExpressionEvaluator expressionEvaluator, String expression, int evaluations) {
+
+    long start = System.nanoTime();
+    for (int i = 0; i < evaluations; i++) {
+      evaluate(
+          expressionEvaluator,
+          expression,
+          createParameters("reportingDays", new IntegerType(10 + i % 10)));
+    }
+    return (System.nanoTime() - start) / evaluations;
+  }
+
+  @Test
+  public void testExpressionCompiledOncePerSignature() {
+
+    String expression = "reportingDays > 10";
+
+    assertTrue(evaluate(expression, createParameters("reportingDays", new IntegerType(14))));
+    assertEquals(1, evaluator.getCompiledExpressionCount());
+
+    // Different values for the same expression reuse the compiled expression.
+    assertEquals(
+        false, evaluate(expression, createParameters("reportingDays", new IntegerType(7))));
+    assertTrue(evaluate(expression, createParameters("reportingDays", new IntegerType(11))));
+    assertEquals(1, evaluator.getCompiledExpressionCount());
+
+    // A different type for the parameter is a different signature.
+    assertTrue(
+        evaluate("reportingDays = '14'", createParameters("reportingDays", new StringType("14"))));
+    assertEquals(2, evaluator.getCompiledExpressionCount());
+
+    evaluator.clearCache();
+    assertEquals(0, evaluator.getCompiledExpressionCount());
+  }
+
+  @Test
+  public void testCacheSizeIsLimited() {
+
+    assertTrue(evaluate("1 < 2", null));
+    assertTrue(evaluate("2 < 3", null));
+    assertTrue(evaluate("3 < 4", null));
+    assertTrue(evaluate("3 < 4", null));
+
+    assertEquals(2, evaluator.getCompiledExpressionCount());
+  }
+
+  @Test
+  public void testCachedEvaluationIsFasterThanCompiling() {
+
+    String expression = "reportingDays > 10 and reportingDays < 20";
+    ExpressionEvaluator uncached = context.getBean(ExpressionEvaluator.class);
+
+    // Warm up both evaluators, the first evaluation also compiles the included libraries.
+    timeEvaluations(uncached, expression, 2);
+    timeEvaluations(evaluator, expression, 2);
+
+    long compiling = timeEvaluations(uncached, expression, 10);
+    long cached = timeEvaluations(evaluator, expression, 10);
+
+    assertTrue(
+        "Cached evaluation took " + cached + " ns, compiling took " + compiling + " ns",
+        cached * 5 < compiling);
+  }
+}
@@ -0,0 +1,183 @@
+package com.drajer.bsa.kar.condition;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.drajer.bsa.kar.model.KnowledgeArtifact;
+import com.drajer.bsa.model.KarProcessingData;
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Endpoint;
+import org.hl7.fhir.r4.model.Enumerations.AdministrativeGender;
+import org.hl7.fhir.r4.model.MeasureReport;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencds.cqf.cql.evaluator.spring.EvaluatorConfiguration;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+public class KarCqlEngineTest {
+
+  private static final String LIBRARY_URL =
+      "http://hl7.org/fhir/us/chronic-ds/Library/ControllingBloodPressureFHIR";
+
+  private static final String MEASURE_URL =
+      "http://hl7.org/fhir/us/chronic-ds/Measure/ControllingBloodPressureFHIR";
+
+  private static final String EXPRESSION = "Initial Population";
+
+  private static AnnotationConfigApplicationContext context;
+
+  private final Endpoint karEndpoint =
+      new Endpoint()
+          .setAddress(
+              new File(
+                      "src/test/resources/Bsa/Scenarios/kars/bloodpressure/ChronicDSControllingBloodPressure-bundle.json")
+                  .getAbsolutePath())
+          .setConnectionType(new Coding().setCode("hl7-fhir-files"));
+
+  @BeforeClass
+  public static void createContext() {
+    context = new AnnotationConfigApplicationContext();
+    context.registerBean(FhirContext.class, FhirContext::forR4);
+    context.register(EvaluatorConfiguration.class, KarCqlEngineFactory.class);
+    context.refresh();
+  }
+
+  @AfterClass
+  public static void closeContext() {
+    context.close();
+  }
+
+  private Bundle createPatientData(String patientId) {
+
+    Patient patient = new Patient();
+    patient.setId(patientId);
+    patient.setGender(AdministrativeGender.FEMALE);
+    patient.setBirthDate(new Date(0));
+
+    Bundle bundle = new Bundle();
+    bundle.setType(Bundle.BundleType.COLLECTION);
+    bundle.addEntry().setResource(patient);
+
+    Encounter encounter = new Encounter();
+    encounter.setId(patientId + "-encounter");
+    encounter.setStatus(Encounter.EncounterStatus.FINISHED);
+    encounter.setSubject(new Reference("Patient/" + patientId));
+    encounter.addType().addCoding().setSystem("http://snomed.info/sct").setCode("185349003");
+    bundle.addEntry().setResource(encounter);
+    return bundle;
+  }
+
+  private Boolean evaluate(KarCqlEngine engine, String patientId) {
+
+    Set<String> expressions = Collections.singleton(EXPRESSION);
+
+    Parameters result =
+        engine.evaluate(
+            LIBRARY_URL,
+            patientId,
+            null,
+            karEndpoint,
+            karEndpoint,
+            null,
+            createPatientData(patientId),
+            expressions);
+
+    return ((BooleanType) result.getParameter(EXPRESSION)).getValue();
+  }
+
+  @Test
+  public void testLibrariesAndTerminologyAreReused() {
+
+    KarCqlEngine engine = context.getBean(KarCqlEngineFactory.class).createEngine(createArtifact());
+
+    assertEquals(Boolean.FALSE, evaluate(engine, "patient1"));
+
+    int compiledLibraries = engine.getCompiledLibraryCount();
+    int expandedValueSets = engine.getExpandedValueSetCount();
+    assertTrue(compiledLibraries > 1);
+    assertTrue(expandedValueSets > 0);
+
+    // The second patient reuses the libraries and value sets of the first.
+    assertEquals(Boolean.FALSE, evaluate(engine, "patient2"));
+    assertEquals(compiledLibraries, engine.getCompiledLibraryCount());
+    assertEquals(expandedValueSets, engine.getExpandedValueSetCount());
+  }
+
+  @Test
+  public void testEvaluateWithInputDataView() {
+
+    KarCqlEngine engine = context.getBean(KarCqlEngineFactory.class).createEngine(createArtifact());
+
+    KarProcessingData kd = new KarProcessingData();
+    for (BundleEntryComponent entry : createPatientData("patient3").getEntry()) {
+      kd.addResourceByType(entry.getResource().getResourceType(), entry.getResource());
+    }
+
+    Parameters result =
+        engine.evaluate(
+            LIBRARY_URL,
+            "patient3",
+            null,
+            karEndpoint,
+            karEndpoint,
+            null,
+            kd.getInputDataView(),
+            Collections.singleton(EXPRESSION));
+
+    assertEquals(Boolean.FALSE, ((BooleanType) result.getParameter(EXPRESSION)).getValue());
+    assertTrue(engine.getExpandedValueSetCount() > 0);
+  }
+
+  @Test
+  public void testEvaluateMeasure() {
+
+    KarCqlEngine engine = context.getBean(KarCqlEngineFactory.class).createEngine(createArtifact());
+
+    MeasureReport report =
+        engine.evaluateMeasure(
+            MEASURE_URL,
+            "2021-01-01",
+            "2021-12-31",
+            "subject",
+            "patient1",
+            karEndpoint,
+            karEndpoint,
+            createPatientData("patient1"));
+
+    assertNotNull(report);
+    assertEquals(MeasureReport.MeasureReportType.INDIVIDUAL, report.getType());
+
+    report =
+        engine.evaluateMeasure(
+            MEASURE_URL,
+            "2021-01-01",
+            "2021-12-31",
+            "subject",
+            "patient2",
+            karEndpoint,
+            karEndpoint,
+            createPatientData("patient2"));
+
+    assertNotNull(report);
+  }
+
+  private KnowledgeArtifact createArtifact() {
+    KnowledgeArtifact art = new KnowledgeArtifact();
+    art.setKarId("ChronicDSControllingBloodPressure");
+    return art;
+  }
+}
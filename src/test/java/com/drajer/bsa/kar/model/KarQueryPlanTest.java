@@ -0,0 +1,212 @@
+package com.drajer.bsa.kar.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Period;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.junit.Test;
+
+public class KarQueryPlanTest {
+
+  private static final String OBSERVATION_QUERY =
+      "Observation?patient=Patient/{{context.patientId}}";
+
+  private FhirQueryFilter createFilter(String dataReqId, String query, ResourceType rt) {
+
+    FhirQueryFilter filter = new FhirQueryFilter(query, false, rt);
+    filter.setDataReqId(dataReqId);
+    return filter;
+  }
+
+  @Test
+  public void testIdenticalQueriesAreMerged() {
+
+    HashMap<String, FhirQueryFilter> queries = new HashMap<>();
+    queries.put(
+        "labs",
+        createFilter("labs", OBSERVATION_QUERY + "&category=laboratory", ResourceType.Observation));
+    queries.put(
+        "labResults",
+        createFilter(
+            "labResults",
+            "Observation?category=laboratory&patient=Patient/{{context.patientId}}",
+            ResourceType.Observation));
+    queries.put(
+        "patient", createFilter("patient", "Patient/{{context.patientId}}", ResourceType.Patient));
+    queries.put(
+        "conditions",
+        createFilter(
+            "conditions",
+            "Condition?patient=Patient/{{context.patientId}}",
+            ResourceType.Condition));
+
+    KarQueryPlan plan = KarQueryPlan.createPlan(queries, false);
+
+    assertEquals(3, plan.getGroups().size());
+    assertSame(plan.getGroup("labs"), plan.getGroup("labResults"));
+
+    FhirQueryGroup group = plan.getGroup("labs");
+    assertEquals(2, group.getDataReqIds().size());
+    assertEquals(
+        "Observation?category=laboratory&patient=Patient/{{context.patientId}}",
+        group.getQueryString());
+    assertTrue(group.getDateParams().isEmpty());
+
+    assertEquals("Patient/{{context.patientId}}", plan.getGroup("patient").getQueryString());
+    assertFalse(plan.hasGroup("encounter"));
+  }
+
+  @Test
+  public void testQueriesDifferingByDatesAreMerged() {
+
+    HashMap<String, FhirQueryFilter> queries = new HashMap<>();
+    queries.put(
+        "allObservations",
+        createFilter("allObservations", OBSERVATION_QUERY, ResourceType.Observation));
+    queries.put(
+        "encounterObservations",
+        createFilter(
+            "encounterObservations",
+            OBSERVATION_QUERY
+                + "&date=ge{{context.encounterStartDate}}&date=le{{context.encounterEndDate}}",
+            ResourceType.Observation));
+
+    KarQueryPlan plan = KarQueryPlan.createPlan(queries, false);
+
+    assertEquals(1, plan.getGroups().size());
+
+    FhirQueryGroup group = plan.getGroup("encounterObservations");
+    assertEquals(OBSERVATION_QUERY, group.getQueryString());
+    assertTrue(group.getDateParams("allObservations").isEmpty());
+    assertEquals(2, group.getDateParams("encounterObservations").size());
+  }
+
+  @Test
+  public void testIncludesAndCustomQueries() {
+
+    HashMap<String, FhirQueryFilter> queries = new HashMap<>();
+    queries.put(
+        "meds",
+        createFilter(
+            "meds",
+            "MedicationRequest?patient=Patient/{{context.patientId}}",
+            ResourceType.MedicationRequest));
+    queries.put(
+        "observations", createFilter("observations", OBSERVATION_QUERY, ResourceType.Observation));
+
+    KarQueryPlan plan = KarQueryPlan.createPlan(queries, true);
+
+    assertEquals(
+        "MedicationRequest?patient=Patient/{{context.patientId}}&_include=MedicationRequest:medication",
+        plan.getGroup("meds").getQueryString());
+    assertEquals(OBSERVATION_QUERY, plan.getGroup("observations").getQueryString());
+
+    KarQueryPlan customized =
+        plan.customize(
+            Collections.singletonMap(
+                "meds", "MedicationRequest?patient={{context.patientId}}&status=active"));
+
+    assertEquals(
+        "MedicationRequest?patient={{context.patientId}}&status=active",
+        customized.getGroup("meds").getQueryString());
+
+    customized = plan.customize(Collections.singletonMap("meds", ""));
+    assertNull(customized.getGroup("meds"));
+  }
+
+  @Test
+  public void testCustomizedPlanIsKeptWithTheKnowledgeArtifact() {
+
+    HashMap<String, FhirQueryFilter> queries = new HashMap<>();
+    queries.put(
+        "observations", createFilter("observations", OBSERVATION_QUERY, ResourceType.Observation));
+
+    KnowledgeArtifact kar = new KnowledgeArtifact();
+    kar.setQueryPlan(KarQueryPlan.createPlan(queries, false));
+
+    KarQueryPlan customized =
+        kar.getCustomizedQueryPlan(
+            Collections.singletonMap("observations", OBSERVATION_QUERY + "&category=vital-signs"));
+
+    assertEquals(
+        OBSERVATION_QUERY + "&category=vital-signs",
+        customized.getGroup("observations").getQueryString());
+    assertSame(customized, kar.getCustomizedQueryPlan(Collections.emptyMap()));
+
+    // Reloading the KAR creates a new query plan, the customized plan is created again.
+    kar.setQueryPlan(KarQueryPlan.createPlan(queries, false));
+
+    assertEquals(
+        OBSERVATION_QUERY,
+        kar.getCustomizedQueryPlan(Collections.emptyMap())
+            .getGroup("observations")
+            .getQueryString());
+
+    assertNull(new KnowledgeArtifact().getCustomizedQueryPlan(Collections.emptyMap()));
+  }
+
+  @Test
+  public void testDateParamMatching() {
+
+    assertTrue(FhirQueryDateParam.isSupported(ResourceType.Observation, "date=ge2021-03-01"));
+    assertTrue(FhirQueryDateParam.isSupported(ResourceType.Observation, "_lastUpdated=2021"));
+    assertFalse(FhirQueryDateParam.isSupported(ResourceType.Observation, "date=sa2021-03-01"));
+    assertFalse(FhirQueryDateParam.isSupported(ResourceType.Observation, "category=laboratory"));
+    assertFalse(FhirQueryDateParam.isSupported(ResourceType.Patient, "date=ge2021-03-01"));
+
+    Observation obs = new Observation();
+    obs.setEffective(new DateTimeType("2021-03-05T10:00:00Z"));
+
+    FhirQueryDateParam ge = FhirQueryDateParam.parse("date=ge2021-03-01");
+    assertNotNull(ge);
+    assertTrue(ge.matches(obs));
+    assertFalse(FhirQueryDateParam.parse("date=le2021-03-04").matches(obs));
+    assertTrue(FhirQueryDateParam.parse("date=le2021-03-06").matches(obs));
+    assertFalse(FhirQueryDateParam.parse("date=gt2021-03-06").matches(obs));
+    assertFalse(ge.matches(new Observation()));
+
+    Encounter enc = new Encounter();
+    enc.setPeriod(new Period().setStartElement(new DateTimeType("2021-03-01")));
+    assertTrue(FhirQueryDateParam.parse("date=ge2021-04-01").matches(enc));
+    assertFalse(FhirQueryDateParam.parse("date=lt2021-02-01").matches(enc));
+
+    assertNull(FhirQueryDateParam.parse("date=ge{{context.encounterStartDate}}"));
+  }
+
+  @Test
+  public void testCoveringDateParams() {
+
+    List<List<FhirQueryDateParam>> dateParams = new ArrayList<>();
+    dateParams.add(
+        Arrays.asList(
+            FhirQueryDateParam.parse("date=ge2021-03-01"),
+            FhirQueryDateParam.parse("date=le2021-03-10")));
+    dateParams.add(Collections.singletonList(FhirQueryDateParam.parse("date=gt2021-02-15")));
+
+    // Only the lower bound is common to both data requirements.
+    assertEquals(
+        Collections.singletonList("date=ge2021-02-15"),
+        FhirQueryDateParam.getCoveringParams(dateParams));
+
+    dateParams.set(1, Collections.singletonList(FhirQueryDateParam.parse("date=2021-03-20")));
+    assertEquals(
+        Arrays.asList("date=ge2021-03-01", "date=le2021-03-20"),
+        FhirQueryDateParam.getCoveringParams(dateParams));
+
+    dateParams.add(Collections.emptyList());
+    assertTrue(FhirQueryDateParam.getCoveringParams(dateParams).isEmpty());
+  }
+}
@@ -0,0 +1,153 @@
+package com.drajer.bsa.kar.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KarSnapshotCacheTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private FhirContext context;
+  private File snapshotDirectory;
+
+  @Before
+  public void setUp() throws IOException {
+    context = FhirContext.forCached(FhirVersionEnum.R4);
+    snapshotDirectory = folder.newFolder("snapshots");
+  }
+
+  @Test
+  public void testUnchangedKarIsReadFromSnapshot() throws IOException {
+
+    File kar = writeKar("kar.json", "1.0.0");
+
+    KarSnapshotCache cache = new KarSnapshotCache(context, snapshotDirectory.getPath());
+    Bundle parsed = cache.readKar(kar);
+
+    assertNotNull(parsed);
+    assertEquals(1, snapshotDirectory.listFiles().length);
+
+    Bundle snapshot = new KarSnapshotCache(context, snapshotDirectory.getPath()).readKar(kar);
+
+    assertNotNull(snapshot);
+    assertEquals(
+        context.newJsonParser().encodeResourceToString(parsed),
+        context.newJsonParser().encodeResourceToString(snapshot));
+  }
+
+  @Test
+  public void testChangedKarReplacesSnapshot() throws IOException {
+
+    File kar = writeKar("kar.json", "1.0.0");
+    new KarSnapshotCache(context, snapshotDirectory.getPath()).readKar(kar);
+
+    kar = writeKar("kar.json", "2.0.0");
+    KarSnapshotCache cache = new KarSnapshotCache(context, snapshotDirectory.getPath());
+    Bundle bundle = cache.readKar(kar);
+
+    assertEquals("2.0.0", ((ValueSet) bundle.getEntryFirstRep().getResource()).getVersion());
+    assertEquals(2, snapshotDirectory.listFiles().length);
+
+    cache.removeUnusedSnapshots();
+    assertEquals(1, snapshotDirectory.listFiles().length);
+  }
+
+  @Test
+  public void testKarIsParsedWithoutSnapshotDirectory() throws IOException {
+
+    File kar = writeKar("kar.json", "1.0.0");
+    KarSnapshotCache cache = new KarSnapshotCache(context, null);
+
+    assertNotNull(cache.readKar(kar));
+    assertNull(cache.readKar(new File(folder.getRoot(), "missing.json")));
+  }
+
+  @Test
+  public void testSnapshotWithOtherClassesIsNotRead() throws IOException {
+
+    File kar = writeKar("kar.json", "1.0.0");
+    writeSnapshot(kar, new File("snapshot-test"));
+
+    Bundle bundle = new KarSnapshotCache(context, snapshotDirectory.getPath()).readKar(kar);
+
+    assertNotNull(bundle);
+    assertEquals("1.0.0", ((ValueSet) bundle.getEntryFirstRep().getResource()).getVersion());
+
+    // The snapshot is replaced by the parsed Bundle.
+    assertNotNull(new KarSnapshotCache(context, snapshotDirectory.getPath()).readKar(kar));
+  }
+
+  @Test
+  public void testSnapshotExceedingDepthIsNotRead() throws IOException {
+
+    List<Object> nested = new ArrayList<>();
+    List<Object> current = nested;
+    for (int i = 0; i < 500; i++) {
+      List<Object> next = new ArrayList<>();
+      current.add(next);
+      current = next;
+    }
+
+    File kar = writeKar("kar.json", "1.0.0");
+    writeSnapshot(kar, (Serializable) nested);
+
+    Bundle bundle = new KarSnapshotCache(context, snapshotDirectory.getPath()).readKar(kar);
+
+    assertNotNull(bundle);
+    assertEquals("1.0.0", ((ValueSet) bundle.getEntryFirstRep().getResource()).getVersion());
+  }
+
+  private void writeSnapshot(File kar, Serializable object) throws IOException {
+
+    String hash = com.google.common.io.Files.asByteSource(kar).hash(Hashing.sha256()).toString();
+
+    try (ObjectOutputStream out =
+        new ObjectOutputStream(new FileOutputStream(new File(snapshotDirectory, hash + ".ser")))) {
+      out.writeObject(object);
+    }
+  }
+
+  private File writeKar(String name, String version) throws IOException {
+
+    ValueSet vs = new ValueSet();
+    vs.setId("snapshot-test");
+    vs.setUrl("http://example.org/ValueSet/snapshot-test");
+    vs.setVersion(version);
+    vs.getCompose()
+        .addInclude()
+        .setSystem("http://snomed.info/sct")
+        .addConcept()
+        .setCode("840539006");
+
+    Bundle bundle = new Bundle();
+    bundle.setId("snapshot-test-kar");
+    bundle.setType(Bundle.BundleType.COLLECTION);
+    bundle.addEntry().setResource(vs);
+
+    File kar = new File(folder.getRoot(), name);
+    Files.write(
+        kar.toPath(),
+        context.newJsonParser().encodeResourceToString(bundle).getBytes(StandardCharsets.UTF_8));
+    return kar;
+  }
+}
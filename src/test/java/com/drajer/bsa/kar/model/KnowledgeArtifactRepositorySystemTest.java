@@ -0,0 +1,71 @@
+package com.drajer.bsa.kar.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.BeanUtils;
+
+public class KnowledgeArtifactRepositorySystemTest {
+
+  private KnowledgeArtifactRepositorySystem repo;
+
+  @Before
+  public void setUp() {
+    repo = BeanUtils.instantiateClass(KnowledgeArtifactRepositorySystem.class);
+  }
+
+  @Test
+  public void testReplacePublishesNewMap() {
+
+    KnowledgeArtifact v1 = createKar("kar-1", "1.0.0");
+    repo.add(v1);
+
+    Map<String, KnowledgeArtifact> before = repo.getArtifacts();
+
+    KnowledgeArtifact reloaded = createKar("kar-1", "1.0.0");
+    KnowledgeArtifact v2 = createKar("kar-1", "2.0.0");
+    repo.replace(Arrays.asList(reloaded, v2));
+
+    // Readers holding the previous map are not affected by the reload.
+    assertEquals(1, before.size());
+    assertSame(v1, before.get(v1.getVersionUniqueId()));
+
+    assertNotSame(before, repo.getArtifacts());
+    assertEquals(2, repo.getArtifacts().size());
+    assertSame(reloaded, repo.getById(v1.getVersionUniqueId()));
+    assertSame(v2, repo.getById(v2.getVersionUniqueId()));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testArtifactsCannotBeModifiedByCallers() {
+
+    repo.getArtifacts().put("kar-1|1.0.0", createKar("kar-1", "1.0.0"));
+  }
+
+  @Test
+  public void testAddDoesNotReplaceExistingVersion() {
+
+    KnowledgeArtifact v1 = createKar("kar-1", "1.0.0");
+    repo.add(v1);
+    repo.add(createKar("kar-1", "1.0.0"));
+
+    assertSame(v1, repo.getById(v1.getVersionUniqueId()));
+
+    repo.remove(v1.getVersionUniqueId());
+    assertNull(repo.getById(v1.getVersionUniqueId()));
+  }
+
+  private KnowledgeArtifact createKar(String id, String version) {
+
+    KnowledgeArtifact art = new KnowledgeArtifact();
+    art.setKarId(id);
+    art.setKarVersion(version);
+    return art;
+  }
+}
@@ -0,0 +1,108 @@
+package com.drajer.bsa.kar.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.drajer.bsa.kar.action.CheckTriggerCodes;
+import com.drajer.bsa.utils.BsaServiceUtils;
+import com.drajer.eca.model.MatchedTriggerCodes;
+import java.util.Arrays;
+import java.util.Collections;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.DataRequirement;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.javatuples.Pair;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TriggerCodeIndexTest {
+
+  private static final String SNOMED = "http://snomed.info/sct";
+  private static final String LOINC = "http://loinc.org";
+  private static final String DX_VS = "http://example.org/ValueSet/dxtc";
+  private static final String LAB_VS = "http://example.org/ValueSet/lotc";
+  private static final String UNUSED_VS = "http://example.org/ValueSet/unused";
+
+  private KnowledgeArtifact art;
+  private ValueSet dxValueSet;
+
+  @Before
+  public void setUp() {
+
+    art = new KnowledgeArtifact();
+
+    dxValueSet = new ValueSet();
+    dxValueSet.setUrl(DX_VS);
+    dxValueSet.setVersion("1.0.0");
+    dxValueSet.getCompose().addInclude().setSystem(SNOMED).addConcept().setCode("840539006");
+    art.addDependentValueSet(dxValueSet);
+
+    ValueSet labValueSet = new ValueSet();
+    labValueSet.setUrl(LAB_VS);
+    labValueSet.getExpansion().addContains().setSystem(LOINC).setCode("94500-6");
+    art.addDependentValueSet(labValueSet);
+
+    ValueSet unused = new ValueSet();
+    unused.setUrl(UNUSED_VS);
+    unused.getCompose().addInclude().setSystem(SNOMED).addConcept().setCode("840539006");
+    art.addDependentValueSet(unused);
+
+    DataRequirement conditions = new DataRequirement();
+    conditions.setId("conditions");
+    conditions.setType("Condition");
+    conditions.addCodeFilter().setPath("code").setValueSet(DX_VS);
+
+    DataRequirement labs = new DataRequirement();
+    labs.setId("labs");
+    labs.setType("Observation");
+    labs.addCodeFilter().setPath("code").setValueSet(LAB_VS);
+
+    CheckTriggerCodes act = new CheckTriggerCodes();
+    act.setActionId("check-trigger-codes");
+    act.setInputData(Arrays.asList(conditions, labs));
+    art.addAction(act);
+  }
+
+  @Test
+  public void testIndexContainsValueSetsOfCodeFilters() {
+
+    TriggerCodeIndex index = TriggerCodeIndex.createIndex(art);
+
+    assertTrue(index.isIndexed(DX_VS));
+    assertTrue(index.isIndexed(LAB_VS));
+    assertFalse(index.isIndexed(UNUSED_VS));
+    assertEquals(Collections.singleton(DX_VS), index.getValueSetsForCode(SNOMED, "840539006"));
+    assertEquals(Collections.singleton(LAB_VS), index.getValueSetsForCode(LOINC, "94500-6"));
+    assertTrue(index.getValueSetsForCode(LOINC, "840539006").isEmpty());
+  }
+
+  @Test
+  public void testMatchIsSameAsValueSetSearch() {
+
+    TriggerCodeIndex index = TriggerCodeIndex.createIndex(art);
+
+    CodeableConcept cc = new CodeableConcept();
+    cc.addCoding(new Coding().setSystem(LOINC).setCode("12345-6"));
+    cc.addCoding(new Coding().setSystem(SNOMED).setCode("840539006"));
+
+    Pair<Boolean, MatchedTriggerCodes> expected =
+        BsaServiceUtils.isCodeableConceptPresentInValueSet(dxValueSet, cc, "Condition.code", false);
+    Pair<Boolean, MatchedTriggerCodes> actual =
+        index.match(DX_VS, dxValueSet, cc, "Condition.code", false);
+
+    assertEquals(expected.getValue0(), actual.getValue0());
+    assertEquals(expected.getValue1().getValueSet(), actual.getValue1().getValueSet());
+    assertEquals(
+        expected.getValue1().getValueSetVersion(), actual.getValue1().getValueSetVersion());
+    assertEquals(expected.getValue1().getMatchedPath(), actual.getValue1().getMatchedPath());
+    assertEquals(expected.getValue1().getMatchedCodes(), actual.getValue1().getMatchedCodes());
+
+    CodeableConcept noMatch = new CodeableConcept();
+    noMatch.addCoding(new Coding().setSystem(LOINC).setCode("94500-6"));
+
+    assertNull(index.match(DX_VS, dxValueSet, noMatch, "Condition.code", false));
+  }
+}
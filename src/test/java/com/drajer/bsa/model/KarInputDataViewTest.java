@@ -0,0 +1,83 @@
+package com.drajer.bsa.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Parameters.ParametersParameterComponent;
+import org.hl7.fhir.r4.model.ResourceType;
+import org.junit.Test;
+
+public class KarInputDataViewTest {
+
+  private Observation createObservation(String id) {
+    Observation obs = new Observation();
+    obs.setId(id);
+    return obs;
+  }
+
+  @Test
+  public void testViewReusedUntilDataAdded() {
+
+    KarProcessingData kd = new KarProcessingData();
+    assertNull(kd.getInputResourcesAsBundle());
+
+    kd.addResourceByType(ResourceType.Observation, createObservation("obs1"));
+    kd.addResourceByType(ResourceType.Observation, createObservation("obs2"));
+
+    KarInputDataView view = kd.getInputDataView();
+    Bundle bundle = kd.getInputResourcesAsBundle();
+
+    assertEquals(2, bundle.getEntry().size());
+    assertSame(view, kd.getInputDataView());
+    assertSame(bundle, kd.getInputResourcesAsBundle());
+
+    Condition cond = new Condition();
+    cond.setId("cond1");
+    kd.addResourceByType(ResourceType.Condition, cond);
+
+    KarInputDataView current = kd.getInputDataView();
+    assertNotSame(view, current);
+    assertEquals(3, kd.getInputResourcesAsBundle().getEntry().size());
+    assertEquals(1, current.getResourcesByType("Condition").size());
+  }
+
+  @Test
+  public void testResourcesByType() {
+
+    KarProcessingData kd = new KarProcessingData();
+    kd.addResourceByType(ResourceType.Observation, createObservation("obs1"));
+
+    KarInputDataView view = kd.getInputDataView();
+
+    assertEquals(1, view.getResourcesByType("Observation").size());
+    assertTrue(view.getResourcesByType("Encounter").isEmpty());
+
+    Bundle observations = view.getBundleByType("Observation");
+    assertEquals(1, observations.getEntry().size());
+    assertSame(observations, view.getBundleByType("Observation"));
+    assertNull(view.getBundleByType("Encounter"));
+  }
+
+  @Test
+  public void testInputParametersDiscardedWithView() {
+
+    KarProcessingData kd = new KarProcessingData();
+    kd.getInputDataView()
+        .setInputParameters(
+            "action1",
+            Collections.singletonList(new ParametersParameterComponent().setName("%obs")));
+
+    assertEquals(1, kd.getInputDataView().getInputParameters("action1").size());
+
+    kd.addActionOutput("action2", createObservation("obs1"));
+
+    assertNull(kd.getInputDataView().getInputParameters("action1"));
+  }
+}
@@ -0,0 +1,106 @@
+package com.drajer.bsa.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.Test;
+
+public class NotificationDataCacheTest {
+
+  @Test
+  public void testLoaderExecutedOnceForSameKey() {
+
+    NotificationDataCache cache = new NotificationDataCache();
+    AtomicInteger calls = new AtomicInteger();
+    Patient patient = new Patient();
+
+    Resource first =
+        cache.get(
+            "Patient/1",
+            () -> {
+              calls.incrementAndGet();
+              return patient;
+            });
+    Resource second =
+        cache.get(
+            "Patient/1",
+            () -> {
+              calls.incrementAndGet();
+              return new Patient();
+            });
+
+    assertSame(patient, first);
+    assertSame(patient, second);
+    assertEquals(1, calls.get());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testNullResultsAndFailuresAreNotCached() {
+
+    NotificationDataCache cache = new NotificationDataCache();
+
+    assertNull(cache.get("Patient/2", () -> null));
+    assertFalse(cache.contains("Patient/2"));
+
+    try {
+      cache.get(
+          "Patient/3",
+          () -> {
+            throw new IllegalArgumentException("EHR Error");
+          });
+    } catch (IllegalArgumentException e) {
+      assertEquals("EHR Error", e.getMessage());
+    }
+
+    assertFalse(cache.contains("Patient/3"));
+    assertTrue(cache.get("Patient/3", Patient::new) instanceof Patient);
+  }
+
+  @Test
+  public void testConcurrentRequestsShareSingleLoad() throws Exception {
+
+    NotificationDataCache cache = new NotificationDataCache();
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    List<Future<Resource>> results = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      results.add(
+          executor.submit(
+              () -> {
+                start.await();
+                return cache.get(
+                    "Observation?patient=1",
+                    () -> {
+                      calls.incrementAndGet();
+                      return new Patient();
+                    });
+              }));
+    }
+
+    start.countDown();
+
+    Resource first = results.get(0).get(10, TimeUnit.SECONDS);
+    for (Future<Resource> result : results) {
+      assertSame(first, result.get(10, TimeUnit.SECONDS));
+    }
+
+    executor.shutdown();
+    assertEquals(1, calls.get());
+  }
+}
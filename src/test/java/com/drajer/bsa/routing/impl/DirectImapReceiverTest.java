@@ -0,0 +1,155 @@
+package com.drajer.bsa.routing.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.drajer.bsa.dao.DirectReceiverLeaseDao;
+import com.drajer.bsa.dao.HealthcareSettingsDao;
+import com.drajer.bsa.model.HealthcareSetting;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.mail.MessagingException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DirectImapReceiverTest {
+
+  private static final String ACCOUNT = "imap.hisp.example.com:993:user@direct.example.com";
+
+  @Mock HealthcareSettingsDao hsDao;
+
+  @Mock DirectReceiverLeaseDao leaseDao;
+
+  private DirectImapReceiver receiver;
+
+  private final List<HealthcareSetting> settings = new ArrayList<>();
+
+  /** The owner of the lease of each account. */
+  private final Map<String, String> leases = new HashMap<>();
+
+  private final List<DirectImapReceiver.AccountReceiver> started = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+
+    receiver =
+        new DirectImapReceiver() {
+          @Override
+          AccountReceiver createReceiver(String host, int port, String username, String password) {
+            AccountReceiver accountReceiver =
+                new AccountReceiver(host, port, username, password) {
+                  @Override
+                  void receive() throws MessagingException {
+                    try {
+                      Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                      Thread.currentThread().interrupt();
+                      stop();
+                    }
+                  }
+                };
+            started.add(accountReceiver);
+            return accountReceiver;
+          }
+        };
+
+    receiver.receiverEnabled = true;
+    receiver.instanceName = "test";
+    receiver.leaseTime = 90000L;
+    receiver.reconnectDelay = 10L;
+    receiver.hsDao = hsDao;
+    receiver.leaseDao = leaseDao;
+
+    when(hsDao.getAllHealthcareSettings()).thenAnswer(invocation -> new ArrayList<>(settings));
+    when(leaseDao.acquireLease(anyString(), anyString(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              String account = invocation.getArgument(0);
+              String owner = invocation.getArgument(1);
+              return owner.equals(leases.computeIfAbsent(account, key -> owner));
+            });
+
+    receiver.initializeExecutor();
+
+    settings.add(createDirectSetting());
+  }
+
+  @After
+  public void tearDown() {
+    receiver.shutdownReceivers();
+  }
+
+  @Test
+  public void testStartsOneReceiverPerAccount() {
+
+    settings.add(createDirectSetting());
+
+    HealthcareSetting notDirect = createDirectSetting();
+    notDirect.setIsDirect(false);
+    notDirect.setDirectUser("other@direct.example.com");
+    settings.add(notDirect);
+
+    receiver.manageReceivers();
+    receiver.manageReceivers();
+
+    assertEquals(1, started.size());
+    assertTrue(started.get(0).isRunning());
+    assertTrue(leases.containsKey(ACCOUNT));
+  }
+
+  @Test
+  public void testReceiverRunsOnlyOnLeaseOwner() {
+
+    leases.put(ACCOUNT, "other-instance");
+    receiver.manageReceivers();
+
+    assertTrue(started.isEmpty());
+
+    leases.clear();
+    receiver.manageReceivers();
+
+    assertEquals(1, started.size());
+
+    leases.put(ACCOUNT, "other-instance");
+    receiver.manageReceivers();
+
+    assertFalse(started.get(0).isRunning());
+    verify(leaseDao, never()).releaseLease(anyString(), anyString());
+  }
+
+  @Test
+  public void testStopsReceiverOfRemovedAccount() {
+
+    receiver.manageReceivers();
+    settings.clear();
+    receiver.manageReceivers();
+
+    assertEquals(1, started.size());
+    assertFalse(started.get(0).isRunning());
+    verify(leaseDao).releaseLease(eq(ACCOUNT), anyString());
+  }
+
+  private HealthcareSetting createDirectSetting() {
+
+    HealthcareSetting hs = new HealthcareSetting();
+    hs.setIsDirect(true);
+    hs.setImapUrl("imap.hisp.example.com");
+    hs.setImapPort("993");
+    hs.setDirectUser("user@direct.example.com");
+    return hs;
+  }
+}
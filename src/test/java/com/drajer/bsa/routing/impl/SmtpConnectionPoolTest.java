@@ -0,0 +1,160 @@
+package com.drajer.bsa.routing.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.NoSuchProviderException;
+import javax.mail.Provider;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.URLName;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SmtpConnectionPoolTest {
+
+  private static final List<FakeTransport> transports = new ArrayList<>();
+
+  private SmtpConnectionPool pool;
+
+  /** A Transport which records the messages instead of connecting to a HISP. */
+  public static class FakeTransport extends Transport {
+
+    private final List<Message> sent = new ArrayList<>();
+
+    private boolean dropped;
+
+    public FakeTransport(Session session, URLName urlname) {
+      super(session, urlname);
+      transports.add(this);
+    }
+
+    @Override
+    protected boolean protocolConnect(String host, int port, String user, String password) {
+      return true;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+      return !dropped && super.isConnected();
+    }
+
+    @Override
+    public void sendMessage(Message msg, Address[] addresses) throws MessagingException {
+      if (dropped) {
+        throw new MessagingException("Connection closed");
+      }
+      sent.add(msg);
+    }
+  }
+
+  @Before
+  public void setUp() {
+
+    transports.clear();
+
+    pool =
+        new SmtpConnectionPool() {
+          @Override
+          Session createSession() {
+            Session session = Session.getInstance(new Properties(), null);
+            try {
+              session.setProvider(
+                  new Provider(
+                      Provider.Type.TRANSPORT, "smtp", FakeTransport.class.getName(), "test", "1"));
+            } catch (NoSuchProviderException e) {
+              throw new IllegalStateException(e);
+            }
+            return session;
+          }
+        };
+    pool.maxConnections = 2;
+    pool.idleTimeout = 60000L;
+    pool.validateAfterIdle = 5000L;
+    pool.timeout = 1000;
+    pool.messagesPerMinute = 0;
+  }
+
+  @Test
+  public void testConnectionIsReusedForConsecutiveMessages() throws MessagingException {
+
+    send();
+    send();
+    send();
+
+    assertEquals(1, transports.size());
+    assertEquals(3, transports.get(0).sent.size());
+    assertTrue(transports.get(0).isConnected());
+  }
+
+  @Test
+  public void testReconnectsWhenConnectionWasClosed() throws MessagingException {
+
+    send();
+    transports.get(0).dropped = true;
+    send();
+
+    assertEquals(2, transports.size());
+    assertEquals(1, transports.get(0).sent.size());
+    assertEquals(1, transports.get(1).sent.size());
+  }
+
+  @Test
+  public void testIdleConnectionsAreClosed() throws MessagingException {
+
+    send();
+
+    pool.idleTimeout = -1L;
+    pool.closeIdleConnections();
+
+    assertFalse(transports.get(0).isConnected());
+
+    pool.idleTimeout = 60000L;
+    send();
+
+    assertEquals(2, transports.size());
+  }
+
+  @Test
+  public void testAccountsUseSeparateConnections() throws MessagingException {
+
+    send();
+    pool.send(
+        "smtp.hisp.example.com",
+        "465",
+        "other@direct.example.com",
+        "password",
+        createMessage(pool.getSession("smtp.hisp.example.com", "465", "other@direct.example.com")));
+
+    assertEquals(2, transports.size());
+  }
+
+  private void send() throws MessagingException {
+
+    Session session = pool.getSession("smtp.hisp.example.com", "465", "user@direct.example.com");
+    pool.send(
+        "smtp.hisp.example.com",
+        "465",
+        "user@direct.example.com",
+        "password",
+        createMessage(session));
+  }
+
+  private MimeMessage createMessage(Session session) throws MessagingException {
+
+    MimeMessage message = new MimeMessage(session);
+    message.setFrom(new InternetAddress("user@direct.example.com"));
+    message.setRecipients(Message.RecipientType.TO, "pha@direct.example.com");
+    message.setText("eICR");
+    return message;
+  }
+}
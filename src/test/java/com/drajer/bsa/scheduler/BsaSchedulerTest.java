@@ -0,0 +1,122 @@
+package com.drajer.bsa.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.drajer.bsa.kar.model.KnowledgeArtifact;
+import com.drajer.bsa.model.BsaTypes.ActionType;
+import com.drajer.bsa.model.BsaTypes.BsaJobType;
+import com.drajer.bsa.model.HealthcareSetting;
+import com.drajer.bsa.model.KarExecutionState;
+import com.drajer.bsa.model.KarProcessingData;
+import com.drajer.bsa.model.NotificationContext;
+import com.drajer.bsa.service.KarExecutionStateService;
+import com.drajer.ecrapp.config.SpringConfiguration;
+import com.drajer.ecrapp.model.ScheduledTasks;
+import com.drajer.ecrapp.service.SchedulerService;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = SpringConfiguration.class)
+@AutoConfigureTestDatabase
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = {"bsa.timer.coalescing.enabled=true"})
+public class BsaSchedulerTest {
+
+  private static final String ACTION_ID = "create-eicr";
+
+  @Autowired private BsaScheduler bsaScheduler;
+
+  @Autowired private KarExecutionStateService karExecutionStateService;
+
+  @Autowired private SchedulerService schedulerService;
+
+  private String timerKey;
+
+  private KarProcessingData createProcessingData() {
+
+    NotificationContext nc = new NotificationContext();
+    nc.setId(UUID.randomUUID());
+    nc.setPatientId("patient1");
+    nc.setNotificationResourceType("Encounter");
+    nc.setNotificationResourceId("encounter1");
+
+    HealthcareSetting hs = new HealthcareSetting();
+    hs.setFhirServerBaseURL("http://localhost/fhir");
+
+    KnowledgeArtifact kar = new KnowledgeArtifact();
+    kar.setKarId("kar1");
+    kar.setKarVersion("1.0.0");
+
+    KarProcessingData kd = new KarProcessingData();
+    kd.setNotificationContext(nc);
+    kd.setHealthcareSetting(hs);
+    kd.setKar(kar);
+    kd.setJobType(BsaJobType.DELAYED_REPORTING);
+    return kd;
+  }
+
+  @After
+  public void cleanUp() {
+    List<KarExecutionState> states =
+        karExecutionStateService.getKarExecutionStatesByTimerKey(timerKey);
+    bsaScheduler.cancelJobs(
+        states.stream().map(KarExecutionState::getId).collect(Collectors.toList()));
+    states.forEach(karExecutionStateService::delete);
+  }
+
+  @Test
+  public void testTimersForTheSameEncounterAreCoalesced() {
+
+    // Far enough in the future so that the scheduler does not pick the jobs.
+    Instant t = Instant.now().plus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.SECONDS);
+
+    KarProcessingData first = createProcessingData();
+    timerKey = BsaScheduler.getTimerKey(first, ACTION_ID);
+
+    // A state left behind by a job that already completed.
+    KarExecutionState stale = first.getKarExecutionState();
+    stale.setTimerKey(timerKey);
+    karExecutionStateService.saveOrUpdate(stale);
+
+    bsaScheduler.scheduleCoalescedJob(first, ACTION_ID, ActionType.CREATE_REPORT, t);
+
+    KarProcessingData second = createProcessingData();
+    bsaScheduler.scheduleCoalescedJob(
+        second, ACTION_ID, ActionType.CREATE_REPORT, t.minus(1, ChronoUnit.HOURS));
+
+    KarProcessingData third = createProcessingData();
+    bsaScheduler.scheduleCoalescedJob(
+        third, ACTION_ID, ActionType.CREATE_REPORT, t.plus(1, ChronoUnit.HOURS));
+
+    List<KarExecutionState> states =
+        karExecutionStateService.getKarExecutionStatesByTimerKey(timerKey);
+    assertEquals(1, states.size());
+    assertNull(karExecutionStateService.getKarExecutionStateById(stale.getId()));
+
+    // The pending job uses the latest notification and is executed at the earliest time.
+    KarExecutionState state = states.get(0);
+    assertEquals(third.getNotificationContext().getId(), state.getNcId());
+
+    List<ScheduledTasks> jobs =
+        schedulerService.getScheduledTasksByPrefix(
+            BsaScheduler.BSA_SCHEDULED_JOB, state.getId().toString() + "_");
+    assertEquals(1, jobs.size());
+    assertEquals(t.minus(1, ChronoUnit.HOURS), jobs.get(0).getExecution_time().toInstant());
+  }
+}
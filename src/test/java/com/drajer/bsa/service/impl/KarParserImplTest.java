@@ -0,0 +1,56 @@
+package com.drajer.bsa.service.impl;
+
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KarParserImplTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private KarParserImpl parser;
+
+  @Before
+  public void setUp() {
+    parser = new KarParserImpl();
+    parser.karSnapshotEnabled = true;
+  }
+
+  @Test
+  public void testSnapshotDirectoryIsNotRequiredWhenDisabled() {
+
+    parser.karSnapshotEnabled = false;
+    parser.karSnapshotDirectory = "";
+    parser.validateSnapshotDirectory();
+  }
+
+  @Test
+  public void testExistingAbsoluteSnapshotDirectoryIsAccepted() throws IOException {
+
+    parser.karSnapshotDirectory = folder.newFolder("snapshots").getAbsolutePath();
+    parser.validateSnapshotDirectory();
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testMissingSnapshotDirectoryFailsStartup() {
+
+    parser.karSnapshotDirectory = "";
+    parser.validateSnapshotDirectory();
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testRelativeSnapshotDirectoryFailsStartup() {
+
+    parser.karSnapshotDirectory = "kar-snapshots";
+    parser.validateSnapshotDirectory();
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testNonExistentSnapshotDirectoryFailsStartup() {
+
+    parser.karSnapshotDirectory = folder.getRoot().getAbsolutePath() + "/missing";
+    parser.validateSnapshotDirectory();
+  }
+}
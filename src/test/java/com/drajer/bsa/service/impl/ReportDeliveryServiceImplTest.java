@@ -0,0 +1,311 @@
+package com.drajer.bsa.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.drajer.bsa.dao.HealthcareSettingsDao;
+import com.drajer.bsa.dao.NotificationContextDao;
+import com.drajer.bsa.dao.PublicHealthMessagesDao;
+import com.drajer.bsa.dao.ReportSubmissionDao;
+import com.drajer.bsa.kar.model.KnowledgeArtifact;
+import com.drajer.bsa.kar.model.KnowledgeArtifactRepositorySystem;
+import com.drajer.bsa.model.BsaTypes.ReportDeliveryStatus;
+import com.drajer.bsa.model.BsaTypes.ReportTransportType;
+import com.drajer.bsa.model.HealthcareSetting;
+import com.drajer.bsa.model.KarProcessingData;
+import com.drajer.bsa.model.NotificationContext;
+import com.drajer.bsa.model.PublicHealthMessage;
+import com.drajer.bsa.model.ReportSubmission;
+import com.drajer.bsa.routing.impl.DirectTransportImpl;
+import com.drajer.bsa.routing.impl.RestfulTransportImpl;
+import com.drajer.bsa.scheduler.BsaScheduler;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Predicate;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReportDeliveryServiceImplTest {
+
+  @Mock ReportSubmissionDao submissionDao;
+
+  @Mock PublicHealthMessagesDao phDao;
+
+  @Mock HealthcareSettingsDao hsDao;
+
+  @Mock NotificationContextDao ncDao;
+
+  @Mock KnowledgeArtifactRepositorySystem knowledgeArtifactRepositorySystem;
+
+  @Mock DirectTransportImpl directSender;
+
+  @Mock RestfulTransportImpl restSubmitter;
+
+  @Mock BsaScheduler scheduler;
+
+  @InjectMocks ReportDeliveryServiceImpl service;
+
+  private PublicHealthMessage phm;
+  private HealthcareSetting hs;
+
+  @Before
+  public void setUp() {
+
+    phm = new PublicHealthMessage();
+    phm.setId(UUID.randomUUID());
+    phm.setSubmittedCdaData("<ClinicalDocument/>");
+
+    hs = new HealthcareSetting();
+    hs.setId(1);
+    hs.setSmtpUrl("smtp.hisp.example.com");
+
+    service.maxAttempts = 3;
+    service.initialRetryDelay = 1000L;
+    service.maxRetryDelay = 3000L;
+  }
+
+  @Test
+  public void testDeliverMarksSubmissionDelivered() {
+
+    mockDeliveryData();
+
+    ReportSubmission submission = createSubmission();
+    service.deliver(submission);
+
+    ArgumentCaptor<KarProcessingData> sent = ArgumentCaptor.forClass(KarProcessingData.class);
+    verify(directSender).sendEicrDataUsingDirect(sent.capture());
+
+    assertSame(phm, sent.getValue().getPhm());
+    assertSame(hs, sent.getValue().getHealthcareSetting());
+    assertEquals(phm.getSubmittedCdaData(), sent.getValue().getSubmittedCdaData());
+    assertEquals("correlation-1", sent.getValue().getxCorrelationId());
+
+    assertEquals(ReportDeliveryStatus.DELIVERED, submission.getDeliveryStatus());
+    assertEquals(Integer.valueOf(1), submission.getAttempts());
+    assertNotNull(submission.getDeliveredTime());
+    verify(submissionDao).saveOrUpdate(submission);
+  }
+
+  @Test
+  public void testNotificationContextAndKarAreRestoredForDelivery() {
+
+    mockDeliveryData();
+
+    NotificationContext nc = new NotificationContext();
+    nc.setId(UUID.randomUUID());
+    when(ncDao.getNotificationContextById(nc.getId())).thenReturn(nc);
+
+    KnowledgeArtifact kar = new KnowledgeArtifact();
+    phm.setKarUniqueId("kar-1");
+    when(knowledgeArtifactRepositorySystem.getById("kar-1")).thenReturn(kar);
+
+    ReportSubmission submission = createSubmission();
+    submission.setNcId(nc.getId());
+    service.deliver(submission);
+
+    ArgumentCaptor<KarProcessingData> sent = ArgumentCaptor.forClass(KarProcessingData.class);
+    verify(directSender).sendEicrDataUsingDirect(sent.capture());
+
+    assertSame(nc, sent.getValue().getNotificationContext());
+    assertSame(kar, sent.getValue().getKar());
+  }
+
+  @Test
+  public void testDeliveredReportSavesFingerprintAndChecksResponse() {
+
+    mockDeliveryData();
+
+    ReportSubmission submission = createSubmission();
+    submission.setReportFingerprint("fingerprint-1");
+    submission.setCheckResponseActionId("check-response");
+    submission.setKarExecutionStateId(UUID.randomUUID());
+    submission.setxRequestId("request-1");
+    service.deliver(submission);
+
+    assertEquals("fingerprint-1", phm.getSubmittedDataFingerprint());
+    verify(phDao).saveOrUpdate(phm);
+    verify(scheduler)
+        .scheduleResponseCheck(
+            submission.getKarExecutionStateId(), "check-response", "request-1", null);
+  }
+
+  @Test
+  public void testFailedDeliveryIsRetriedWithBackoff() {
+
+    mockDeliveryData();
+    doThrow(new RuntimeException("Connection refused"))
+        .when(directSender)
+        .sendEicrDataUsingDirect(any());
+
+    ReportSubmission submission = createSubmission();
+    submission.setReportFingerprint("fingerprint-1");
+    submission.setCheckResponseActionId("check-response");
+
+    long before = System.currentTimeMillis();
+    service.deliver(submission);
+
+    assertEquals(ReportDeliveryStatus.PENDING, submission.getDeliveryStatus());
+    assertEquals(Integer.valueOf(1), submission.getAttempts());
+    assertTrue(submission.getLastError().contains("Connection refused"));
+    assertTrue(submission.getNextAttemptTime().getTime() >= before + 1000L);
+
+    service.deliver(submission);
+
+    assertEquals(ReportDeliveryStatus.PENDING, submission.getDeliveryStatus());
+    assertEquals(Integer.valueOf(2), submission.getAttempts());
+    assertTrue(submission.getNextAttemptTime().getTime() >= before + 2000L);
+
+    assertNull(phm.getSubmittedDataFingerprint());
+    verify(scheduler, never()).scheduleResponseCheck(any(), any(), any(), any());
+  }
+
+  @Test
+  public void testMovedToDeadLetterAfterMaxAttempts() {
+
+    mockDeliveryData();
+    doThrow(new RuntimeException("Connection refused"))
+        .when(directSender)
+        .sendEicrDataUsingDirect(any());
+
+    ReportSubmission submission = createSubmission();
+    submission.setAttempts(2);
+    submission.setReportFingerprint("fingerprint-1");
+    service.deliver(submission);
+
+    assertEquals(ReportDeliveryStatus.DEAD_LETTER, submission.getDeliveryStatus());
+    assertEquals(Integer.valueOf(3), submission.getAttempts());
+    verify(submissionDao).saveOrUpdate(submission);
+
+    assertNull(phm.getSubmittedDataFingerprint());
+    verify(phDao, never()).saveOrUpdate(any());
+  }
+
+  @Test
+  public void testMissingReportMovedToDeadLetter() {
+
+    ReportSubmission submission = createSubmission();
+    service.deliver(submission);
+
+    verify(directSender, never()).sendEicrDataUsingDirect(any());
+    assertEquals(ReportDeliveryStatus.DEAD_LETTER, submission.getDeliveryStatus());
+  }
+
+  @Test
+  public void testLeaseIsRenewedWhileDelivering() throws InterruptedException {
+
+    service.outboxEnabled = true;
+    service.deliveryThreads = 1;
+    service.maxDeliveriesPerDestination = 1;
+    service.leaseTime = 600000L;
+    service.leaseRenewalInterval = 200000L;
+    service.initializeExecutor();
+
+    ReportSubmission submission = createSubmission();
+    mockDeliveryData();
+
+    when(submissionDao.claimDueSubmissions(any(), any(), anyInt(), any()))
+        .thenAnswer(
+            invocation -> {
+              Predicate<ReportSubmission> accept = invocation.getArgument(3);
+              return accept.test(submission)
+                  ? Collections.singletonList(submission)
+                  : Collections.emptyList();
+            });
+
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch sent = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              sending.countDown();
+              sent.await();
+              return null;
+            })
+        .when(directSender)
+        .sendEicrDataUsingDirect(any());
+
+    try {
+      service.deliverDueSubmissions();
+      sending.await();
+
+      service.renewLeases();
+      verify(submissionDao)
+          .renewLeases(eq(Collections.singletonList(submission.getId())), any(Date.class));
+
+    } finally {
+      sent.countDown();
+      service.shutdownExecutor();
+    }
+
+    verify(submissionDao, timeout(5000)).saveOrUpdate(submission);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testLeaseRenewalMustBeShorterThanLease() {
+
+    service.outboxEnabled = true;
+    service.leaseTime = 60000L;
+    service.leaseRenewalInterval = 60000L;
+    service.initializeExecutor();
+  }
+
+  @Test
+  public void testRetryDelayIsDoubledUpToMaximum() {
+
+    assertEquals(1000L, service.getRetryDelay(1));
+    assertEquals(2000L, service.getRetryDelay(2));
+    assertEquals(3000L, service.getRetryDelay(3));
+    assertEquals(3000L, service.getRetryDelay(100));
+  }
+
+  @Test
+  public void testDestinationIsTheHispOrRestfulEndpoint() {
+
+    assertEquals(
+        "smtp.hisp.example.com",
+        ReportDeliveryServiceImpl.getDestination(ReportTransportType.DIRECT, hs));
+
+    hs.setSmtpUrl(null);
+    assertEquals("", ReportDeliveryServiceImpl.getDestination(ReportTransportType.DIRECT, hs));
+    assertEquals("", ReportDeliveryServiceImpl.getDestination(ReportTransportType.RESTFUL, hs));
+  }
+
+  private void mockDeliveryData() {
+    when(phDao.getById(phm.getId())).thenReturn(phm);
+    when(hsDao.getHealthcareSettingById(hs.getId())).thenReturn(hs);
+  }
+
+  private ReportSubmission createSubmission() {
+
+    ReportSubmission submission = new ReportSubmission();
+    submission.setId(UUID.randomUUID());
+    submission.setPhMessageId(phm.getId());
+    submission.setHsId(hs.getId());
+    submission.setTransport(ReportTransportType.DIRECT);
+    submission.setDestination(hs.getSmtpUrl());
+    submission.setDeliveryStatus(ReportDeliveryStatus.IN_PROGRESS);
+    submission.setAttempts(0);
+    submission.setNextAttemptTime(new Date());
+    submission.setxCorrelationId("correlation-1");
+    return submission;
+  }
+}
@@ -3,6 +3,7 @@ package com.drajer.bsa.utils;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
@@ -13,6 +14,7 @@ import static org.mockito.Mockito.when;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import com.drajer.bsa.kar.action.CheckTriggerCodeStatusList;
+import com.drajer.bsa.kar.action.CreateReport;
 import com.drajer.bsa.kar.action.SubmitReport;
 import com.drajer.bsa.kar.model.BsaAction;
 import com.drajer.bsa.kar.model.FhirQueryFilter;
@@ -29,6 +31,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -42,6 +45,7 @@ import org.hl7.fhir.r4.model.Bundle.BundleType;
 import org.hl7.fhir.r4.model.CanonicalType;
 import org.hl7.fhir.r4.model.CodeableConcept;
 import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Condition;
 import org.hl7.fhir.r4.model.DataRequirement;
 import org.hl7.fhir.r4.model.DocumentReference;
 import org.hl7.fhir.r4.model.MessageHeader;
@@ -389,4 +393,57 @@ public class BsaServiceUtilsTest {
     Boolean cdaData = BsaServiceUtils.hasCdaData(patient);
     assertFalse(cdaData);
   }
+
+  @Test
+  public void getReportFingerprint() {
+
+    KnowledgeArtifact kar = new KnowledgeArtifact();
+    kar.setKarId("kar1");
+    kar.setKarVersion("1.0.0");
+
+    BsaAction action = new CreateReport();
+    action.setActionId("create-eicr-report");
+    List<DataRequirement> outputData = new ArrayList<>();
+    outputData.add(new DataRequirement().addProfile("http://hl7.org/fhir/us/ecr/eicr-cda"));
+    action.setOutputData(outputData);
+
+    Patient patient = new Patient();
+    patient.setId("patient1");
+    patient.getMeta().setVersionId("1");
+    Condition condition = new Condition();
+    condition.setId("condition1");
+
+    KarProcessingData first = new KarProcessingData();
+    first.setKar(kar);
+    first.addResourceByType(ResourceType.Patient, patient);
+    first.addResourceByType(ResourceType.Condition, condition);
+
+    KarProcessingData second = new KarProcessingData();
+    second.setKar(kar);
+    second.addResourceByType(ResourceType.Condition, condition.copy());
+    second.addResourceByType(ResourceType.Patient, patient.copy());
+
+    // The same data retrieved in a different order has the same fingerprint.
+    String fingerprint = BsaServiceUtils.getReportFingerprint(first, action);
+    assertEquals(fingerprint, BsaServiceUtils.getReportFingerprint(second, action));
+
+    // A new version of a resource changes the fingerprint.
+    patient.getMeta().setVersionId("2");
+    assertNotEquals(fingerprint, BsaServiceUtils.getReportFingerprint(first, action));
+
+    // Content changes are detected for resources without version information.
+    patient.getMeta().setVersionId("1");
+    condition.setRecordedDate(new Date());
+    assertNotEquals(fingerprint, BsaServiceUtils.getReportFingerprint(first, action));
+
+    // The same data used by another action or for another report profile is a different report.
+    fingerprint = BsaServiceUtils.getReportFingerprint(first, action);
+    BsaAction otherAction = new CreateReport();
+    otherAction.setActionId("create-close-out-report");
+    otherAction.setOutputData(action.getOutputData());
+    assertNotEquals(fingerprint, BsaServiceUtils.getReportFingerprint(first, otherAction));
+
+    action.getOutputData().get(0).addProfile("http://hl7.org/fhir/us/ecr/StructureDefinition/eicr");
+    assertNotEquals(fingerprint, BsaServiceUtils.getReportFingerprint(first, action));
+  }
 }
@@ -0,0 +1,130 @@
+package com.drajer.cda.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CdaSectionRendererTest {
+
+  private CdaSectionRenderer renderer;
+
+  @Before
+  public void setUp() {
+    renderer = new CdaSectionRenderer();
+    renderer.parallelRenderingEnabled = true;
+    renderer.parallelRenderingThreads = 4;
+    renderer.minResources = 10;
+    renderer.initializeExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    renderer.shutdownExecutor();
+  }
+
+  @Test
+  public void testSectionsAreRenderedInParallelAndConcatenatedInOrder() {
+
+    CountDownLatch latch = new CountDownLatch(3);
+    Map<String, Supplier<String>> sections = CdaSectionRenderer.newSectionMap();
+    sections.put("First", () -> awaitOthers(latch, "<first/>"));
+    sections.put("Second", () -> awaitOthers(latch, "<second/>"));
+    sections.put("Third", () -> awaitOthers(latch, "<third/>"));
+
+    // The sections only complete when they are generated at the same time.
+    assertEquals("<first/><second/><third/>", CdaSectionRenderer.renderSections(sections, 10));
+  }
+
+  @Test
+  public void testSmallDocumentsAreRenderedSequentially() {
+
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    Map<String, Supplier<String>> sections = CdaSectionRenderer.newSectionMap();
+    sections.put("First", () -> renderOn(threads, "<first/>"));
+    sections.put("Second", () -> renderOn(threads, "<second/>"));
+
+    assertEquals("<first/><second/>", CdaSectionRenderer.renderSections(sections, 9));
+    assertEquals(1, threads.size());
+    assertTrue(threads.contains(Thread.currentThread().getName()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSectionErrorsArePropagated() {
+
+    Map<String, Supplier<String>> sections = CdaSectionRenderer.newSectionMap();
+    sections.put("First", () -> "<first/>");
+    sections.put(
+        "Second",
+        () -> {
+          throw new IllegalStateException("Invalid data");
+        });
+
+    CdaSectionRenderer.renderSections(sections, 100);
+  }
+
+  @Test
+  public void testLargeDocumentsAreRenderedFasterInParallel() {
+
+    // The sections can only be generated at the same time with more than one processor.
+    assumeTrue(Runtime.getRuntime().availableProcessors() >= 2);
+
+    Map<String, Supplier<String>> sections = CdaSectionRenderer.newSectionMap();
+    for (int i = 0; i < 4; i++) {
+      sections.put("Section" + i, () -> renderRows(50000));
+    }
+
+    // Warm up both modes before timing them.
+    CdaSectionRenderer.renderSections(sections, 1);
+    CdaSectionRenderer.renderSections(sections, 100);
+
+    long start = System.nanoTime();
+    String sequential = CdaSectionRenderer.renderSections(sections, 1);
+    long sequentialTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    String parallel = CdaSectionRenderer.renderSections(sections, 100);
+    long parallelTime = System.nanoTime() - start;
+
+    assertEquals(sequential, parallel);
+    assertTrue(
+        "Parallel took " + parallelTime + " ns, sequential took " + sequentialTime + " ns",
+        parallelTime < sequentialTime);
+  }
+
+  private String renderRows(int rows) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < rows; i++) {
+      sb.append(CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TABLE_ROW_EL_NAME));
+      sb.append(
+          CdaGeneratorUtils.getXmlForTableBodyContent(
+              CdaGeneratorConstants.TABLE_BODY_ROW_EL_NAME, "Result " + i));
+      sb.append(CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_ROW_EL_NAME));
+    }
+    return sb.toString();
+  }
+
+  private String awaitOthers(CountDownLatch latch, String section) {
+    latch.countDown();
+    try {
+      assertTrue(latch.await(1, TimeUnit.SECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return section;
+  }
+
+  private String renderOn(Set<String> threads, String section) {
+    threads.add(Thread.currentThread().getName());
+    return section;
+  }
+}
@@ -0,0 +1,113 @@
+package com.drajer.cda.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+import org.junit.Test;
+
+public class CdaSectionTemplateTest {
+
+  private static final CdaSectionTemplate TEMPLATE =
+      CdaSectionTemplate.of(
+          CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID,
+          CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID_EXT,
+          CdaGeneratorConstants.PROB_SEC_CODE,
+          CdaGeneratorConstants.PROB_SEC_NAME,
+          CdaGeneratorConstants.PROB_SEC_TITLE,
+          CdaGeneratorConstants.PROB_TABLE_COL_1_TITLE,
+          CdaGeneratorConstants.PROB_TABLE_COL_2_TITLE);
+
+  private static String getSectionIdentification() {
+    return CdaGeneratorUtils.getXmlForTemplateId(CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID)
+        + CdaGeneratorUtils.getXmlForTemplateId(
+            CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID,
+            CdaGeneratorConstants.PROB_SEC_TEMPLATE_ID_EXT)
+        + CdaGeneratorUtils.getXmlForCD(
+            CdaGeneratorConstants.CODE_EL_NAME,
+            CdaGeneratorConstants.PROB_SEC_CODE,
+            CdaGeneratorConstants.LOINC_CODESYSTEM_OID,
+            CdaGeneratorConstants.LOINC_CODESYSTEM_NAME,
+            CdaGeneratorConstants.PROB_SEC_NAME)
+        + CdaGeneratorUtils.getXmlForText(
+            CdaGeneratorConstants.TITLE_EL_NAME, CdaGeneratorConstants.PROB_SEC_TITLE);
+  }
+
+  private static String renderWithTheGeneratorUtils() {
+    return CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME)
+        + CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.SECTION_EL_NAME)
+        + getSectionIdentification()
+        + CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TEXT_EL_NAME)
+        + CdaGeneratorUtils.getXmlForTableHeader(
+            Arrays.asList(
+                CdaGeneratorConstants.PROB_TABLE_COL_1_TITLE,
+                CdaGeneratorConstants.PROB_TABLE_COL_2_TITLE),
+            CdaGeneratorConstants.TABLE_BORDER,
+            CdaGeneratorConstants.TABLE_WIDTH)
+        + CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME)
+        + CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_BODY_EL_NAME)
+        + CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TABLE_EL_NAME)
+        + CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.TEXT_EL_NAME)
+        + CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME)
+        + CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME);
+  }
+
+  private static String renderWithTheTemplate() {
+    return TEMPLATE.getHeader()
+        + TEMPLATE.getTableStart()
+        + CdaSectionTemplate.TABLE_END
+        + CdaSectionTemplate.SECTION_END;
+  }
+
+  /** Returns the time in nanoseconds of rendering the section the number of times. */
+  private static long timeRendering(Supplier<String> renderer, int sections) {
+
+    long length = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < sections; i++) {
+      length += renderer.get().length();
+    }
+    long time = System.nanoTime() - start;
+
+    assertTrue(length > 0);
+    return time;
+  }
+
+  @Test
+  public void testSectionIsRenderedAsWithTheGeneratorUtils() {
+
+    assertEquals(renderWithTheGeneratorUtils(), renderWithTheTemplate());
+  }
+
+  @Test
+  public void testTemplateIsFasterThanTheGeneratorUtils() {
+
+    // Warm up both renderers before timing them.
+    timeRendering(CdaSectionTemplateTest::renderWithTheGeneratorUtils, 20000);
+    timeRendering(CdaSectionTemplateTest::renderWithTheTemplate, 20000);
+
+    long generatorUtils = timeRendering(CdaSectionTemplateTest::renderWithTheGeneratorUtils, 20000);
+    long template = timeRendering(CdaSectionTemplateTest::renderWithTheTemplate, 20000);
+
+    assertTrue(
+        "Template took " + template + " ns, generator utils took " + generatorUtils + " ns",
+        template * 2 < generatorUtils);
+  }
+
+  @Test
+  public void testEmptySectionHasNullFlavor() {
+
+    String expected =
+        CdaGeneratorUtils.getXmlForStartElement(CdaGeneratorConstants.COMP_EL_NAME)
+            + CdaGeneratorUtils.getXmlForNFSection(
+                CdaGeneratorConstants.SECTION_EL_NAME, CdaGeneratorConstants.NF_NI)
+            + getSectionIdentification()
+            + CdaGeneratorUtils.getXmlForText(
+                CdaGeneratorConstants.TEXT_EL_NAME, "No Problem Information")
+            + CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.SECTION_EL_NAME)
+            + CdaGeneratorUtils.getXmlForEndElement(CdaGeneratorConstants.COMP_EL_NAME);
+
+    assertEquals(expected, TEMPLATE.getEmptySection("No Problem Information"));
+  }
+}
@@ -14,6 +14,7 @@ import ca.uhn.fhir.rest.gclient.IReadExecutable;
 import ca.uhn.fhir.rest.gclient.IReadTyped;
 import com.drajer.cdafromdstu2.Dstu2CdaEicrGenerator;
 import com.drajer.cdafromr4.CdaEicrGeneratorFromR4;
+import com.drajer.eca.model.EventTypes.JobStatus;
 import com.drajer.ecrapp.config.AppConfig;
 import com.drajer.ecrapp.config.ValueSetSingleton;
 import com.drajer.ecrapp.fhir.utils.ecrretry.EcrFhirRetryableRead;
@@ -26,6 +27,7 @@ import com.drajer.sof.model.R4FhirData;
 import com.drajer.sof.service.LoadingQueryService;
 import com.drajer.sof.utils.FhirContextInitializer;
 import com.drajer.test.util.TestUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.*;
 import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -108,7 +110,7 @@ public class EcaUtilsTest {
     setupMockForMatchTrigger();
     when(mockDstu2Data.getCodesForExpression("mock test path")).thenReturn(ptCodes);
     when(ApplicationUtils.convertCodeableConceptsToString(ptCodes)).thenReturn(codesToMatch);
-    when(mockValueSet.getEmergentValueSetsAsStringForGrouper(anyString()))
+    when(mockValueSet.getMatchedCodesForGrouper(anyString(), eq(codesToMatch), eq(true)))
         .thenReturn(codesToMatchAgainst);
     when(mockDetails.getIsCovid()).thenReturn(true);
 
@@ -128,7 +130,8 @@ public class EcaUtilsTest {
     setupMockForMatchTrigger();
     when(mockDstu2Data.getCodesForExpression("mock test path")).thenReturn(ptCodes);
     when(ApplicationUtils.convertCodeableConceptsToString(ptCodes)).thenReturn(codesToMatch);
-    when(mockValueSet.getValueSetsAsStringForGrouper(anyString())).thenReturn(codesToMatchAgainst);
+    when(mockValueSet.getMatchedCodesForGrouper(anyString(), eq(codesToMatch), eq(false)))
+        .thenReturn(codesToMatchAgainst);
     when(mockDetails.getIsCovid()).thenReturn(false);
 
     // Test
@@ -147,7 +150,7 @@ public class EcaUtilsTest {
     setupMockForMatchTrigger();
     when(mockR4Data.getR4CodesForExpression("mock test path")).thenReturn(ptCodes1);
     when(ApplicationUtils.convertR4CodeableConceptsToString(ptCodes1)).thenReturn(codesToMatch);
-    when(mockValueSet.getEmergentValueSetsAsStringForGrouper(anyString()))
+    when(mockValueSet.getMatchedCodesForGrouper(anyString(), eq(codesToMatch), eq(true)))
         .thenReturn(codesToMatchAgainst);
     when(mockDetails.getIsCovid()).thenReturn(true);
 
@@ -166,7 +169,8 @@ public class EcaUtilsTest {
     setupMockForMatchTrigger();
     when(mockR4Data.getR4CodesForExpression("mock test path")).thenReturn(ptCodes1);
     when(ApplicationUtils.convertR4CodeableConceptsToString(ptCodes1)).thenReturn(codesToMatch);
-    when(mockValueSet.getValueSetsAsStringForGrouper(anyString())).thenReturn(codesToMatchAgainst);
+    when(mockValueSet.getMatchedCodesForGrouper(anyString(), eq(codesToMatch), eq(false)))
+        .thenReturn(codesToMatchAgainst);
     when(mockDetails.getIsCovid()).thenReturn(false);
 
     // Test
@@ -320,6 +324,138 @@ public class EcaUtilsTest {
     assertTrue(mockDetails.getStartDate() != null);
   }
 
+  @Test
+  public void testCheckEncounterCloseFromNotification() {
+
+    AppConfig appConfig = new AppConfig();
+    appConfig.setEncounterNotificationMaxAge(60);
+    when(ActionRepo.getInstance()).thenReturn(mockActionRepo);
+    when(mockActionRepo.getAppConfig()).thenReturn(appConfig);
+
+    LaunchDetails details = new LaunchDetails();
+    details.setEncounterId("123");
+
+    Encounter encounter = new Encounter();
+    encounter.setStatus(Encounter.EncounterStatus.INPROGRESS);
+    encounter.setPeriod(new Period().setStart(DateUtils.addDays(new Date(), -1)));
+
+    assertFalse(EcaUtils.updateEncounterFromNotification(details, encounter));
+    assertEquals("in-progress", details.getEncounterStatus());
+    assertEquals(encounter.getPeriod().getStart(), details.getStartDate());
+    assertFalse(EcaUtils.checkEncounterClose(details));
+
+    // The launch period is only widened by the notification.
+    Date launchStart = DateUtils.addDays(new Date(), -2);
+    details.setStartDate(launchStart);
+    assertFalse(EcaUtils.updateEncounterFromNotification(details, encounter));
+    assertEquals(launchStart, details.getStartDate());
+
+    // A notification without a status or end does not change the closure of the encounter.
+    assertFalse(EcaUtils.updateEncounterFromNotification(details, new Encounter()));
+    assertEquals("in-progress", details.getEncounterStatus());
+
+    encounter.setStatus(Encounter.EncounterStatus.FINISHED);
+    encounter.getPeriod().setEnd(new Date());
+
+    assertTrue(EcaUtils.updateEncounterFromNotification(details, encounter));
+    assertEquals(encounter.getPeriod().getEnd(), details.getEndDate());
+    assertTrue(EcaUtils.checkEncounterClose(details));
+
+    // The EHR is not queried while the notified status is current.
+    verify(mockActionRepo, never()).getFhirContextInitializer();
+  }
+
+  @Test
+  public void testLongRunningEncounterReportedOpenByNotification() {
+
+    AppConfig appConfig = new AppConfig();
+    appConfig.setEncounterNotificationMaxAge(60);
+    appConfig.setEnableSuspend(true);
+    appConfig.setSuspendThreshold(45);
+    when(ActionRepo.getInstance()).thenReturn(mockActionRepo);
+    when(mockActionRepo.getAppConfig()).thenReturn(appConfig);
+    when(mockActionRepo.getFhirContextInitializer()).thenReturn(mockFhirContextIntializer);
+
+    LaunchDetails details = new LaunchDetails();
+    details.setEncounterId("123");
+    details.setFhirVersion("R4");
+    details.setEhrServerURL("");
+    details.setAccessToken("");
+    details.setxRequestId("");
+
+    // The notification reports the encounter open without its start.
+    Encounter notified = new Encounter();
+    notified.setStatus(Encounter.EncounterStatus.INPROGRESS);
+    assertFalse(EcaUtils.updateEncounterFromNotification(details, notified));
+
+    FhirContext mockContext = Mockito.mock(FhirContext.class);
+    IRead read = mock(EcrFhirRetryableRead.class);
+    IReadTyped<IBaseResource> readType = mock(EcrFhirRetryableRead.class);
+    IGenericClient mockClient = Mockito.mock(IGenericClient.class);
+    IReadExecutable readExecutable = mock((IReadExecutable.class));
+    when(mockFhirContextIntializer.getFhirContext("R4")).thenReturn(mockContext);
+    when(mockFhirContextIntializer.createClient(mockContext, "", "", "")).thenReturn(mockClient);
+    when(mockClient.read()).thenReturn(read);
+    when(read.resource("Encounter")).thenReturn(readType);
+    when(readType.withId("123")).thenReturn(readExecutable);
+
+    Encounter encounter = new Encounter();
+    encounter.setStatus(Encounter.EncounterStatus.INPROGRESS);
+    encounter.setPeriod(new Period().setStart(DateUtils.addDays(new Date(), -90)));
+    when(readExecutable.execute()).thenReturn(encounter);
+
+    // The Encounter is queried for its start, so the long running encounter is suspended.
+    assertFalse(EcaUtils.checkEncounterClose(details));
+    assertEquals(encounter.getPeriod().getStart(), details.getStartDate());
+    assertTrue(EcaUtils.checkLongRunningEncounters(details));
+
+    // Once the start is known the current notification is used without querying the EHR.
+    assertFalse(EcaUtils.checkEncounterClose(details));
+    assertTrue(EcaUtils.checkLongRunningEncounters(details));
+    verify(readExecutable, times(1)).execute();
+  }
+
+  @Test
+  public void testMergeDetailStatus() throws Exception {
+
+    ObjectMapper mapper = new ObjectMapper();
+    PatientExecutionState base = new PatientExecutionState("patient1", "encounter1");
+    String baseStatus = mapper.writeValueAsString(base);
+
+    // Action being written closes out and submits an eICR.
+    PatientExecutionState changed = mapper.readValue(baseStatus, PatientExecutionState.class);
+    changed.getCloseOutEicrStatus().setJobStatus(JobStatus.SCHEDULED);
+    changed.getSubmitEicrStatus().add(createSubmitStatus("1"));
+
+    // Another action has concurrently matched the trigger codes and submitted an eICR.
+    PatientExecutionState current = mapper.readValue(baseStatus, PatientExecutionState.class);
+    current.getMatchTriggerStatus().setJobStatus(JobStatus.COMPLETED);
+    current.getSubmitEicrStatus().add(createSubmitStatus("2"));
+
+    String merged =
+        EcaUtils.mergeDetailStatus(
+            baseStatus, mapper.writeValueAsString(changed), mapper.writeValueAsString(current));
+    PatientExecutionState state = mapper.readValue(merged, PatientExecutionState.class);
+
+    assertEquals(JobStatus.SCHEDULED, state.getCloseOutEicrStatus().getJobStatus());
+    assertEquals(JobStatus.COMPLETED, state.getMatchTriggerStatus().getJobStatus());
+    assertEquals(2, state.getSubmitEicrStatus().size());
+
+    Set<String> eicrIds = new HashSet<>();
+    state.getSubmitEicrStatus().forEach(status -> eicrIds.add(status.geteICRId()));
+    assertTrue(eicrIds.contains("1"));
+    assertTrue(eicrIds.contains("2"));
+  }
+
+  private SubmitEicrStatus createSubmitStatus(String eicrId) {
+    SubmitEicrStatus status = new SubmitEicrStatus();
+    status.setActionId("submit-action");
+    status.setJobStatus(JobStatus.COMPLETED);
+    status.setEicrSubmitted(true);
+    status.seteICRId(eicrId);
+    return status;
+  }
+
   public void setupMockForMatchTrigger() {
 
     // CommonSetup
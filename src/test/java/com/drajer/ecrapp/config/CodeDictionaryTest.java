@@ -0,0 +1,82 @@
+package com.drajer.ecrapp.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.ValueSet.ConceptSetComponent;
+import org.junit.Test;
+
+public class CodeDictionaryTest {
+
+  private static final String SNOMED = "http://snomed.info/sct";
+  private static final String LOINC = "http://loinc.org";
+
+  private ValueSet createValueSet(String url) {
+
+    ValueSet vs = new ValueSet();
+    vs.setUrl(url);
+    vs.setVersion("1.0.0");
+
+    ConceptSetComponent include = vs.getCompose().addInclude().setSystem(SNOMED);
+    include.addConcept().setCode("840539006");
+    include.addConcept().setCode("186747009");
+    include.addConcept().setCode("840539006");
+
+    vs.getExpansion().addContains().setSystem(LOINC).setCode("94500-6");
+    vs.getExpansion().addContains().setSystem(LOINC).setCode("94309-2");
+    vs.getExpansion().addContains().setSystem(SNOMED).setCode("U07.1");
+
+    return vs;
+  }
+
+  @Test
+  public void testCodesArePresentInComposeAndExpansion() {
+
+    CodeDictionary dictionary = CodeDictionary.getInstance();
+    ValueSet vs = createValueSet("http://example.org/ValueSet/dictionary-test");
+
+    assertTrue(dictionary.isCodePresentInValueSet(vs, SNOMED, "840539006"));
+    assertTrue(dictionary.isCodePresentInValueSet(vs, SNOMED, "186747009"));
+    assertTrue(dictionary.isCodePresentInValueSet(vs, LOINC, "94309-2"));
+    assertFalse(dictionary.isCodePresentInValueSet(vs, LOINC, "840539006"));
+    assertFalse(dictionary.isCodePresentInValueSet(vs, SNOMED, "8405390"));
+    assertFalse(dictionary.isCodePresentInValueSet(vs, "http://unknown.org", "94309-2"));
+    assertFalse(dictionary.isCodePresentInValueSet(null, SNOMED, "840539006"));
+
+    assertTrue(dictionary.isCodePresentInExpansion(vs, LOINC, "94500-6"));
+    assertFalse(dictionary.isCodePresentInExpansion(vs, SNOMED, "840539006"));
+  }
+
+  @Test
+  public void testCodesPresentInExpansions() {
+
+    CodeDictionary dictionary = CodeDictionary.getInstance();
+    ValueSet first = createValueSet("http://example.org/ValueSet/dictionary-first");
+    ValueSet second = new ValueSet();
+    second.getExpansion().addContains().setSystem(LOINC).setCode("41458-1");
+
+    Set<String> codesToMatch =
+        new HashSet<>(
+            Arrays.asList(
+                LOINC + "|94500-6",
+                LOINC + "|41458-1",
+                SNOMED + "|840539006",
+                SNOMED + "|U07.1",
+                "invalid"));
+
+    Set<String> expected =
+        new HashSet<>(Arrays.asList(LOINC + "|94500-6", LOINC + "|41458-1", SNOMED + "|U07.1"));
+
+    assertEquals(
+        expected,
+        dictionary.getCodesPresentInExpansions(Arrays.asList(first, second), codesToMatch));
+    assertTrue(
+        dictionary.getCodesPresentInExpansions(Collections.emptyList(), codesToMatch).isEmpty());
+  }
+}
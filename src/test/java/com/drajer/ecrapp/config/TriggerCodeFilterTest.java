@@ -0,0 +1,98 @@
+package com.drajer.ecrapp.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TriggerCodeFilterTest {
+
+  private static final String SNOMED = "http://snomed.info/sct";
+  private static final String LOINC = "http://loinc.org";
+
+  private SimpleMeterRegistry registry;
+  private ValueSet vs;
+
+  @Before
+  public void setUp() {
+
+    registry = new SimpleMeterRegistry();
+    Metrics.addRegistry(registry);
+
+    vs = new ValueSet();
+    vs.setUrl("http://example.org/ValueSet/filter-test");
+    vs.getCompose().addInclude().setSystem(SNOMED).addConcept().setCode("840539006");
+
+    for (int i = 0; i < 1000; i++) {
+      vs.getExpansion().addContains().setSystem(LOINC).setCode("94500-" + i);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    Metrics.removeRegistry(registry);
+  }
+
+  @Test
+  public void testFilterAcceptsAllTriggerCodes() {
+
+    TriggerCodeFilter filter =
+        TriggerCodeFilter.create("filter-test", Collections.singletonList(vs), 0.01);
+
+    assertEquals(1001, filter.getCodeCount());
+    assertTrue(filter.mightContain(SNOMED + "|840539006"));
+
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(filter.mightContain(LOINC + "|94500-" + i));
+    }
+
+    CodeableConcept cc = new CodeableConcept();
+    cc.addCoding(new Coding().setSystem(LOINC).setCode("8867-4"));
+    cc.addCoding(new Coding().setSystem(SNOMED).setCode("840539006"));
+    assertTrue(filter.mightContain(cc));
+  }
+
+  @Test
+  public void testFilterRejectsCodesAndPublishesFpp() {
+
+    TriggerCodeFilter filter =
+        TriggerCodeFilter.create("filter-test-fpp", Collections.singletonList(vs), 0.01);
+
+    int accepted = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (filter.mightContain(LOINC + "|8867-" + i)) {
+        accepted++;
+      }
+    }
+    assertTrue(accepted < 50);
+
+    Set<String> codes =
+        new HashSet<>(Arrays.asList(SNOMED + "|840539006", SNOMED + "|not-a-trigger-code"));
+    assertTrue(filter.filter(codes).contains(SNOMED + "|840539006"));
+
+    assertFalse(filter.mightContain(new CodeableConcept()));
+
+    Gauge gauge =
+        registry
+            .find(TriggerCodeFilter.EXPECTED_FPP_METRIC)
+            .tag(TriggerCodeFilter.SOURCE_TAG, "filter-test-fpp")
+            .gauge();
+    assertNotNull(gauge);
+    assertEquals(filter.getExpectedFpp(), gauge.value(), 0.0);
+    assertTrue(gauge.value() < 0.02);
+  }
+}
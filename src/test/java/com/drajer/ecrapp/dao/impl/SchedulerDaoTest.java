@@ -0,0 +1,87 @@
+package com.drajer.ecrapp.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import com.drajer.eca.model.EventTypes.EcrActionTypes;
+import com.drajer.eca.model.TaskTimer;
+import com.drajer.ecrapp.config.SpringConfiguration;
+import com.github.kagkarlsson.scheduler.task.SchedulableInstance;
+import com.github.kagkarlsson.scheduler.task.TaskInstance;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = SpringConfiguration.class)
+@AutoConfigureTestDatabase
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+public class SchedulerDaoTest {
+
+  private static final String TASK_NAME = "EICRTask";
+
+  @Autowired private SchedulerDaoImpl schedulerDaoImpl;
+
+  private SchedulableInstance<?> createInstance(
+      EcrActionTypes actionType, Integer launchId, Instant t) {
+
+    String id = actionType + "_" + launchId + "_" + java.util.UUID.randomUUID().toString();
+
+    return SchedulableInstance.of(
+        new TaskInstance<>(TASK_NAME, id, new TaskTimer(100L, launchId, actionType, t, null)), t);
+  }
+
+  @Test
+  public void testScheduleAndCancelTasksInBatch() {
+
+    // Far enough in the future so that the scheduler does not pick the tasks.
+    Instant t = Instant.now().plus(1, ChronoUnit.DAYS);
+    List<SchedulableInstance<?>> instances = new ArrayList<>();
+
+    for (int launchId = 1; launchId <= 12; launchId++) {
+      instances.add(createInstance(EcrActionTypes.MATCH_TRIGGER, launchId, t));
+      instances.add(createInstance(EcrActionTypes.CLOSE_OUT_EICR, launchId, t));
+    }
+
+    assertEquals(24, schedulerDaoImpl.scheduleTasks(instances));
+    assertEquals(1, schedulerDaoImpl.getScheduledTasks("MATCH_TRIGGER", "1").size());
+
+    // The underscore in the prefix does not match launch 11 or 12.
+    assertEquals(
+        1,
+        schedulerDaoImpl.deleteScheduledTasks(
+            TASK_NAME, Collections.singletonList("MATCH_TRIGGER_1_")));
+    assertEquals(1, schedulerDaoImpl.getScheduledTasks("MATCH_TRIGGER", "11").size());
+
+    assertEquals(
+        3,
+        schedulerDaoImpl.deleteScheduledTasks(
+            TASK_NAME,
+            Arrays.asList("CLOSE_OUT_EICR_1_", "CLOSE_OUT_EICR_11_", "MATCH_TRIGGER_11_")));
+    assertEquals(0, schedulerDaoImpl.getScheduledTasks("CLOSE_OUT_EICR", "11").size());
+    assertEquals(1, schedulerDaoImpl.getScheduledTasks("CLOSE_OUT_EICR", "12").size());
+
+    // Task instances that contain the part are deleted along with the prefixes.
+    assertEquals(
+        2,
+        schedulerDaoImpl.deleteScheduledTasks(
+            TASK_NAME,
+            Collections.singletonList("CLOSE_OUT_EICR_12_"),
+            Collections.singletonList("_EICR_2_")));
+    assertEquals(0, schedulerDaoImpl.getScheduledTasks("CLOSE_OUT_EICR", "2").size());
+    assertEquals(1, schedulerDaoImpl.getScheduledTasks("MATCH_TRIGGER", "2").size());
+  }
+}
@@ -0,0 +1,108 @@
+package com.drajer.ecrapp.util;
+
+import static org.junit.Assert.assertEquals;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ErsdBundleReaderTest {
+
+  private static final String ERSD_FILE =
+      "src/test/resources/Bsa/Scenarios/kars/ErsdV2/ErsdV2Bundle1.json";
+
+  private FhirContext context;
+  private Bundle ersd;
+
+  @Before
+  public void setUp() throws IOException {
+
+    context = FhirContext.forCached(FhirVersionEnum.R4);
+
+    try (InputStream in = new FileInputStream(ERSD_FILE)) {
+      ersd = context.newJsonParser().parseResource(Bundle.class, in);
+    }
+  }
+
+  @Test
+  public void testReadsSameResourcesAsBundleParsing() throws IOException {
+
+    List<Resource> resources = new ArrayList<>();
+
+    try (InputStream in = new FileInputStream(ERSD_FILE)) {
+      new ErsdBundleReader(context.newJsonParser(), "rctc").read(in, resources::add);
+    }
+
+    assertResources(ersd.getEntry(), resources);
+  }
+
+  @Test
+  public void testReadsErsdBundleFromSearchset() throws IOException {
+
+    ersd.setId("rctc-ersd");
+
+    Bundle other = new Bundle();
+    other.setId("other");
+    other.setType(Bundle.BundleType.COLLECTION);
+    other.addEntry().setResource(new Library().setName("other"));
+
+    Bundle searchset = new Bundle();
+    searchset.setType(Bundle.BundleType.SEARCHSET);
+    searchset.addEntry().setResource(other);
+    searchset.addEntry().setResource(ersd);
+
+    List<Resource> resources = new ArrayList<>();
+    new ErsdBundleReader(context.newJsonParser(), "rctc").read(toStream(searchset), resources::add);
+
+    assertResources(ersd.getEntry(), resources);
+  }
+
+  @Test
+  public void testReadsSearchsetEntriesWithoutErsdBundle() throws IOException {
+
+    Bundle searchset = new Bundle();
+    searchset.setType(Bundle.BundleType.SEARCHSET);
+    searchset.addEntry().setResource(new Library().setName("searchset-library"));
+    searchset.addEntry().setResource(ersd);
+
+    List<Resource> resources = new ArrayList<>();
+    new ErsdBundleReader(context.newJsonParser(), "rctc").read(toStream(searchset), resources::add);
+
+    assertEquals(1, resources.size());
+    assertEquals("searchset-library", ((Library) resources.get(0)).getName());
+  }
+
+  private void assertResources(List<BundleEntryComponent> entries, List<Resource> resources) {
+
+    assertEquals(entries.size(), resources.size());
+
+    for (int i = 0; i < entries.size(); i++) {
+
+      Resource expected = entries.get(i).getResource();
+      Resource actual = resources.get(i);
+
+      assertEquals(expected.getResourceType(), actual.getResourceType());
+      assertEquals(expected.getId(), actual.getId());
+      assertEquals(
+          context.newJsonParser().encodeResourceToString(expected),
+          context.newJsonParser().encodeResourceToString(actual));
+    }
+  }
+
+  private InputStream toStream(Bundle bundle) {
+    return new ByteArrayInputStream(
+        context.newJsonParser().encodeResourceToString(bundle).getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -7,6 +7,10 @@ import com.drajer.ecrapp.config.SpringConfiguration;
 import com.drajer.sof.model.LaunchDetails;
 import com.drajer.test.util.TestUtils;
 import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -16,6 +20,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @RunWith(SpringRunner.class)
@@ -96,6 +101,82 @@ public class LaunchDetailsDaoTest {
     assertLaunchDetails(expectedLaunchDetails, actualLaunchDetails);
   }
 
+  @Test
+  public void updateStatusWithVersion() {
+    LaunchDetails savedLaunchDetails = launchDetailsDaoImpl.saveOrUpdate(expectedLaunchDetails);
+    assertEquals(Integer.valueOf(0), savedLaunchDetails.getStatusVersion());
+    assertFalse(savedLaunchDetails.isStatusModified());
+
+    savedLaunchDetails.setStatus("{\"patientId\":\"1\",\"encounterId\":\"2\"}");
+    launchDetailsDaoImpl.saveOrUpdate(savedLaunchDetails);
+
+    assertEquals(Integer.valueOf(1), savedLaunchDetails.getStatusVersion());
+    assertFalse(savedLaunchDetails.isStatusModified());
+  }
+
+  @Test
+  public void updateStatusMergesConcurrentChanges() {
+    expectedLaunchDetails.setStatus("{\"patientId\":\"1\",\"encounterId\":\"2\"}");
+    LaunchDetails savedLaunchDetails = launchDetailsDaoImpl.saveOrUpdate(expectedLaunchDetails);
+
+    // Another writer changes the encounter after this copy was read.
+    savedLaunchDetails.setStatus("{\"patientId\":\"1\",\"encounterId\":\"3\"}");
+    launchDetailsDaoImpl.updateStatus(savedLaunchDetails);
+    savedLaunchDetails.setStatusVersion(0);
+    savedLaunchDetails.setPersistedStatus("{\"patientId\":\"1\",\"encounterId\":\"2\"}");
+
+    savedLaunchDetails.setStatus("{\"patientId\":\"4\",\"encounterId\":\"2\"}");
+    launchDetailsDaoImpl.saveOrUpdate(savedLaunchDetails);
+
+    assertEquals(Integer.valueOf(2), savedLaunchDetails.getStatusVersion());
+    assertEquals("{\"patientId\":\"4\",\"encounterId\":\"3\"}", savedLaunchDetails.getStatus());
+  }
+
+  @Test
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void saveDoesNotOverwriteConcurrentStatusUpdate() throws Exception {
+    expectedLaunchDetails.setStatus("{\"patientId\":\"1\",\"encounterId\":\"2\"}");
+    Integer id = launchDetailsDaoImpl.saveOrUpdate(expectedLaunchDetails).getId();
+
+    // Each copy is read and saved in its own transaction, as by the controllers and the timers.
+    LaunchDetails staleCopy = launchDetailsDaoImpl.getAuthDetailsById(id);
+    LaunchDetails statusCopy = launchDetailsDaoImpl.getAuthDetailsById(id);
+    staleCopy.setAccessToken("new-access-token");
+    statusCopy.setStatus("{\"patientId\":\"1\",\"encounterId\":\"3\"}");
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      Future<?> save =
+          executor.submit(
+              () -> {
+                start.await();
+                return launchDetailsDaoImpl.saveOrUpdate(staleCopy);
+              });
+      Future<?> statusUpdate =
+          executor.submit(
+              () -> {
+                start.await();
+                launchDetailsDaoImpl.updateStatus(statusCopy);
+                return null;
+              });
+      start.countDown();
+      save.get();
+      statusUpdate.get();
+    } finally {
+      executor.shutdown();
+    }
+
+    LaunchDetails actualLaunchDetails = launchDetailsDaoImpl.getAuthDetailsById(id);
+    try {
+      assertEquals("{\"patientId\":\"1\",\"encounterId\":\"3\"}", actualLaunchDetails.getStatus());
+      assertEquals(Integer.valueOf(1), actualLaunchDetails.getStatusVersion());
+      assertEquals("new-access-token", actualLaunchDetails.getAccessToken());
+    } finally {
+      launchDetailsDaoImpl.delete(actualLaunchDetails);
+    }
+  }
+
   public void assertLaunchDetails(LaunchDetails expected, LaunchDetails actual) {
     assertEquals(expected.getClientId(), actual.getClientId());
     assertEquals(expected.getEhrServerURL(), actual.getEhrServerURL());
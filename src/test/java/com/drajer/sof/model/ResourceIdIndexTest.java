@@ -0,0 +1,70 @@
+package com.drajer.sof.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.hl7.fhir.r4.model.Medication;
+import org.hl7.fhir.r4.model.Practitioner;
+import org.junit.Test;
+
+public class ResourceIdIndexTest {
+
+  private static Medication createMedication(String id) {
+    Medication med = new Medication();
+    med.setId(id);
+    return med;
+  }
+
+  @Test
+  public void testResourcesAddedToTheListAreIndexed() {
+
+    ResourceIdIndex<Medication> index = new ResourceIdIndex<>();
+    List<Medication> meds = new ArrayList<>();
+    Medication first = createMedication("Medication/med1/_history/1");
+    meds.add(first);
+
+    assertEquals(Arrays.asList(first), index.getResourcesById(meds, "med1"));
+    assertTrue(index.getResourcesById(meds, "med2").isEmpty());
+
+    // Resources with the same id are returned in the order of the list.
+    Medication second = createMedication("med2");
+    Medication duplicate = createMedication("med1");
+    meds.add(second);
+    meds.add(duplicate);
+
+    assertEquals(Arrays.asList(first, duplicate), index.getResourcesById(meds, "med1"));
+    assertEquals(Arrays.asList(second), index.getResourcesById(meds, "med2"));
+  }
+
+  @Test
+  public void testIndexIsRebuiltForAReplacedList() {
+
+    ResourceIdIndex<Medication> index = new ResourceIdIndex<>();
+    Medication first = createMedication("med1");
+    Medication replacement = createMedication("med1");
+
+    assertEquals(Arrays.asList(first), index.getResourcesById(Arrays.asList(first), "med1"));
+    assertEquals(
+        Arrays.asList(replacement), index.getResourcesById(Arrays.asList(replacement), "med1"));
+    assertTrue(index.getResourcesById(null, "med1").isEmpty());
+  }
+
+  @Test
+  public void testPractitionerIsFoundById() {
+
+    Practitioner pr1 = new Practitioner();
+    pr1.setId("Practitioner/1234");
+    Practitioner pr2 = new Practitioner();
+    pr2.setId("Practitioner/123");
+
+    R4FhirData data = new R4FhirData();
+    data.setPractitionersList(Arrays.asList(pr1, pr2));
+
+    assertSame(pr2, data.getPractitionerById("123"));
+    assertSame(pr1, data.getPractitionerById("234"));
+  }
+}
@@ -0,0 +1,169 @@
+package com.drajer.sof.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.drajer.sof.model.LaunchDetails;
+import com.drajer.sof.utils.EhrQueryExecutor.EhrQuery;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EhrQueryExecutorTest {
+
+  private EhrQueryExecutor executor;
+
+  private LaunchDetails launchDetails;
+
+  @Before
+  public void setUp() {
+    executor = new EhrQueryExecutor();
+    executor.parallelExecutionEnabled = true;
+    executor.parallelExecutionThreads = 4;
+    executor.maxQueriesPerEhr = 2;
+    executor.queryTimeoutSeconds = 2;
+    executor.initializeExecutor();
+
+    launchDetails = new LaunchDetails();
+    launchDetails.setEhrServerURL("http://localhost/fhir");
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownExecutor();
+  }
+
+  @Test
+  public void testQueriesRunInParallel() {
+
+    CountDownLatch latch = new CountDownLatch(2);
+
+    List<EhrQuery<String>> queries =
+        Arrays.asList(
+            EhrQuery.of("First", () -> awaitOthers(latch, "first")),
+            EhrQuery.of("Second", () -> awaitOthers(latch, "second")));
+
+    // Both queries only complete when they are running at the same time.
+    assertEquals(Arrays.asList("first", "second"), executor.executeQueries(launchDetails, queries));
+  }
+
+  @Test
+  public void testTimedOutAndFailedQueriesAreSkipped() {
+
+    List<EhrQuery<String>> queries =
+        Arrays.asList(
+            EhrQuery.of("Patient", () -> Collections.singletonList("patient")),
+            EhrQuery.of(
+                "Slow",
+                () -> {
+                  Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                  return Collections.singletonList("slow");
+                }),
+            EhrQuery.of(
+                "Failed",
+                () -> {
+                  throw new IllegalStateException("EHR unavailable");
+                }),
+            EhrQuery.of("Condition", () -> Arrays.asList("condition1", "condition2")));
+
+    long start = System.currentTimeMillis();
+    List<String> results = executor.executeQueries(launchDetails, queries);
+
+    assertEquals(Arrays.asList("patient", "condition1", "condition2"), results);
+    assertTrue(System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(10));
+  }
+
+  @Test
+  public void testOnlyUpdatesOfCompletedQueriesAreApplied() {
+
+    List<String> updates = new ArrayList<>();
+    String caller = Thread.currentThread().getName();
+
+    List<EhrQuery<String>> queries =
+        Arrays.asList(
+            EhrQuery.of(
+                "Encounter",
+                () -> Collections.singletonList("encounter"),
+                () -> updates.add("encounter:" + Thread.currentThread().getName())),
+            EhrQuery.of(
+                "Slow",
+                () -> {
+                  Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                  return Collections.singletonList("slow");
+                },
+                () -> updates.add("slow")),
+            EhrQuery.of(
+                "Condition",
+                () -> Collections.singletonList("condition"),
+                () -> updates.add("condition:" + Thread.currentThread().getName())));
+
+    assertEquals(
+        Arrays.asList("encounter", "condition"), executor.executeQueries(launchDetails, queries));
+    assertEquals(Arrays.asList("encounter:" + caller, "condition:" + caller), updates);
+  }
+
+  @Test
+  public void testQueriesPerEhrAreLimited() {
+
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    List<EhrQuery<String>> queries = new ArrayList<>();
+
+    for (int i = 0; i < 8; i++) {
+      String name = "query" + i;
+      queries.add(
+          EhrQuery.of(
+              name,
+              () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(50);
+                running.decrementAndGet();
+                return Collections.singletonList(name);
+              }));
+    }
+
+    assertEquals(8, executor.executeQueries(launchDetails, queries).size());
+    assertTrue(maxRunning.get() <= 2);
+  }
+
+  @Test
+  public void testSequentialExecutionWhenDisabled() {
+
+    EhrQueryExecutor sequential = new EhrQueryExecutor();
+    List<String> threads = new ArrayList<>();
+
+    List<EhrQuery<String>> queries =
+        Arrays.asList(
+            EhrQuery.of(
+                "First",
+                () -> {
+                  threads.add(Thread.currentThread().getName());
+                  return Collections.singletonList("first");
+                }),
+            EhrQuery.of(
+                "Second",
+                () -> {
+                  threads.add(Thread.currentThread().getName());
+                  return null;
+                }));
+
+    assertEquals(
+        Collections.singletonList("first"), sequential.executeQueries(launchDetails, queries));
+    assertEquals(
+        Arrays.asList(Thread.currentThread().getName(), Thread.currentThread().getName()), threads);
+  }
+
+  private List<String> awaitOthers(CountDownLatch latch, String result)
+      throws InterruptedException {
+    latch.countDown();
+    assertTrue(latch.await(1, TimeUnit.SECONDS));
+    return Collections.singletonList(result);
+  }
+}
@@ -1,11 +1,21 @@
 package com.drajer.sof.utils;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import com.drajer.sof.model.LaunchDetails;
+import com.drajer.sof.model.R4FhirData;
 import com.drajer.test.util.TestUtils;
 import java.util.Date;
+import java.util.List;
+import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Condition;
 import org.hl7.fhir.r4.model.DateTimeType;
 import org.hl7.fhir.r4.model.DocumentReference;
@@ -42,4 +52,41 @@ public class R4ResourcesDataTest {
 
     assertTrue(dataObject.isConditionActive(cond1));
   }
+
+  @Test
+  public void testPregnancyConditionsClassifiedFromConditionData() {
+
+    Bundle bundle = new Bundle();
+    bundle.addEntry().setResource(createCondition("problem", "840539006"));
+    bundle.addEntry().setResource(createCondition("pregnancy", "77386006"));
+
+    FhirContextInitializer initializer = mock(FhirContextInitializer.class);
+    when(initializer.getResourceByPatientId(any(), any(), any(), eq("Condition")))
+        .thenReturn(bundle);
+
+    R4ResourcesData dataObject = new R4ResourcesData();
+    dataObject.resourceData = initializer;
+    R4FhirData r4FhirData = new R4FhirData();
+    LaunchDetails launchDetails = new LaunchDetails();
+
+    List<Condition> conditions =
+        dataObject.getConditionData(null, null, launchDetails, r4FhirData, null, null, null);
+
+    assertEquals(1, conditions.size());
+    assertEquals(1, r4FhirData.getConditions().size());
+    assertEquals(1, r4FhirData.getPregnancyConditions().size());
+
+    // The pregnancy Conditions are reused without searching the EHR again.
+    assertSame(
+        r4FhirData.getPregnancyConditions(),
+        dataObject.getPregnancyConditions(null, null, launchDetails, r4FhirData, null, null, null));
+  }
+
+  private Condition createCondition(String id, String code) {
+    Condition condition = new Condition();
+    condition.setId(id);
+    condition.getCode().addCoding().setSystem("http://snomed.info/sct").setCode(code);
+    condition.addCategory().addCoding().setCode("problem-list-item");
+    return condition;
+  }
 }